@@ -5,6 +5,7 @@ import org.apache.felix.scr.annotations.Reference;
 import org.apache.felix.scr.annotations.Service;
 import org.springframework.roo.shell.CliAvailabilityIndicator;
 import org.springframework.roo.shell.CliCommand;
+import org.springframework.roo.shell.CliOption;
 import org.springframework.roo.shell.CommandMarker;
 
 /**
@@ -21,8 +22,13 @@ public class BackupCommands implements CommandMarker {
   private BackupOperations backupOperations;
 
   @CliCommand(value = "backup", help = "Backup your project to a zip file")
-  public String backup() {
-    return backupOperations.backup();
+  public String backup(
+      @CliOption(key = "compressionLevel", mandatory = false, unspecifiedDefaultValue = "-1",
+          help = "The level at which to compress files, from 0 (none) to 9 (best), or -1 for the default") final int compressionLevel,
+      @CliOption(key = "incremental", mandatory = false, unspecifiedDefaultValue = "false",
+          specifiedDefaultValue = "true",
+          help = "Whether to only back up the files changed since the last incremental backup") final boolean incremental) {
+    return backupOperations.backup(compressionLevel, incremental);
   }
 
   @CliAvailabilityIndicator("backup")
@@ -0,0 +1,206 @@
+package org.springframework.roo.addon.backup;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+
+import org.apache.commons.io.FilenameUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.Validate;
+
+/**
+ * An entry of a backup archive, already compressed and ready for the
+ * {@link ZipAssembler} to write, so that entries can be compressed on
+ * different threads. Files too large to hold in memory are instead read and
+ * compressed by the assembler as it writes them.
+ *
+ * @since 2.0
+ */
+final class BackupEntry {
+
+  // Files larger than this are streamed into the archive, not held in memory
+  static final long MAX_IN_MEMORY_SIZE = 2 * 1024 * 1024;
+
+  // Files with these extensions are already compressed, so are stored as-is
+  private static final Set<String> COMPRESSED_EXTENSIONS = new HashSet<String>(Arrays.asList(
+      "7z", "bz2", "ear", "gif", "gz", "ico", "jar", "jpeg", "jpg", "mp3", "mp4", "png", "tgz",
+      "war", "webp", "woff", "woff2", "xz", "zip"));
+
+  /**
+   * Returns an entry for the given directory
+   *
+   * @param name the entry's name, without a trailing slash (required)
+   * @param time the directory's last modified time
+   * @return a non-<code>null</code> entry
+   */
+  static BackupEntry directory(final String name, final long time) {
+    return new BackupEntry(name + "/", time, ZipEntry.STORED, 0, 0, new byte[0], null, 0);
+  }
+
+  /**
+   * Reads the given file and compresses it at the given level, unless it's
+   * already compressed or wouldn't get any smaller, in which case it's stored
+   * as-is. A file larger than {@link #MAX_IN_MEMORY_SIZE} isn't read here,
+   * but by the {@link ZipAssembler}; it's compressed unless it's already
+   * compressed, whether or not that makes it any smaller.
+   *
+   * @param file the file to read (required)
+   * @param name the entry's name (required)
+   * @param compressionLevel the {@link Deflater} level, from
+   *            {@value Deflater#DEFAULT_COMPRESSION} to
+   *            {@value Deflater#BEST_COMPRESSION}
+   * @return a non-<code>null</code> entry
+   * @throws IOException if the file can't be read
+   */
+  static BackupEntry file(final File file, final String name, final int compressionLevel)
+      throws IOException {
+    Validate.notBlank(name, "Entry name required");
+    final boolean compressible =
+        compressionLevel != Deflater.NO_COMPRESSION
+            && !COMPRESSED_EXTENSIONS.contains(FilenameUtils.getExtension(name).toLowerCase());
+    if (file.length() > MAX_IN_MEMORY_SIZE) {
+      return new BackupEntry(name, file.lastModified(), compressible ? ZipEntry.DEFLATED
+          : ZipEntry.STORED, 0, file.length(), null, file, compressionLevel);
+    }
+
+    final byte[] contents;
+    final InputStream inputStream = new FileInputStream(file);
+    try {
+      contents = IOUtils.toByteArray(inputStream);
+    } finally {
+      IOUtils.closeQuietly(inputStream);
+    }
+
+    final CRC32 crc = new CRC32();
+    crc.update(contents);
+
+    if (compressible) {
+      final byte[] deflated = deflate(contents, compressionLevel);
+      if (deflated.length < contents.length) {
+        return new BackupEntry(name, file.lastModified(), ZipEntry.DEFLATED, crc.getValue(),
+            contents.length, deflated, null, 0);
+      }
+    }
+    return new BackupEntry(name, file.lastModified(), ZipEntry.STORED, crc.getValue(),
+        contents.length, contents, null, 0);
+  }
+
+  private static byte[] deflate(final byte[] contents, final int compressionLevel) {
+    // ZIP entries hold raw deflate data, without the ZLIB header
+    final Deflater deflater = new Deflater(compressionLevel, true);
+    try {
+      deflater.setInput(contents);
+      deflater.finish();
+      final ByteArrayOutputStream output = new ByteArrayOutputStream(contents.length / 2 + 64);
+      final byte[] buffer = new byte[8192];
+      while (!deflater.finished()) {
+        output.write(buffer, 0, deflater.deflate(buffer));
+      }
+      return output.toByteArray();
+    } finally {
+      deflater.end();
+    }
+  }
+
+  private final int compressionLevel;
+  private final long crc;
+  private final byte[] data;
+  private final File file;
+  private final int method;
+  private final String name;
+  private final long size;
+  private final long time;
+
+  private BackupEntry(final String name, final long time, final int method, final long crc,
+      final long size, final byte[] data, final File file, final int compressionLevel) {
+    this.name = name;
+    this.time = time;
+    this.method = method;
+    this.crc = crc;
+    this.size = size;
+    this.data = data;
+    this.file = file;
+    this.compressionLevel = compressionLevel;
+  }
+
+  /**
+   * Returns the level at which to compress a streamed entry
+   *
+   * @return see above
+   */
+  int getCompressionLevel() {
+    return compressionLevel;
+  }
+
+  /**
+   * Returns the CRC of the entry's contents
+   *
+   * @return zero for a streamed entry, whose CRC isn't known yet
+   */
+  long getCrc() {
+    return crc;
+  }
+
+  /**
+   * Returns the entry's data as it's to be written to the archive
+   *
+   * @return <code>null</code> for a streamed entry
+   */
+  byte[] getData() {
+    return data;
+  }
+
+  /**
+   * Returns the file to be read as the entry is written
+   *
+   * @return <code>null</code> unless this entry is streamed
+   */
+  File getFile() {
+    return file;
+  }
+
+  /**
+   * Returns the compression method
+   *
+   * @return {@link ZipEntry#STORED} or {@link ZipEntry#DEFLATED}
+   */
+  int getMethod() {
+    return method;
+  }
+
+  String getName() {
+    return name;
+  }
+
+  /**
+   * Returns the uncompressed size
+   *
+   * @return the size of the file when the entry was created, for a streamed
+   *         entry
+   */
+  long getSize() {
+    return size;
+  }
+
+  long getTime() {
+    return time;
+  }
+
+  /**
+   * Indicates whether the file is to be read and compressed as the entry is
+   * written, instead of being held in memory
+   *
+   * @return see above
+   */
+  boolean isStreamed() {
+    return file != null;
+  }
+}
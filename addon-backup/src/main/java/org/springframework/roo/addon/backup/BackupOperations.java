@@ -10,5 +10,16 @@ public interface BackupOperations {
 
   String backup();
 
+  /**
+   * Backs up the project to a ZIP file in its root directory
+   * 
+   * @param compressionLevel the level at which to compress files, from 0
+   *            (none) to 9 (best), or -1 for the default
+   * @param incremental whether to only back up the files that have changed
+   *            since the last incremental backup
+   * @return a message for the user
+   */
+  String backup(int compressionLevel, boolean incremental);
+
   boolean isBackupPossible();
 }
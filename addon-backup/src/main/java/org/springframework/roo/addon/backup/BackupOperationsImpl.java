@@ -1,17 +1,29 @@
 package org.springframework.roo.addon.backup;
 
+import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
 import java.io.FilenameFilter;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.Deque;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 import java.util.logging.Logger;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipOutputStream;
+import java.util.zip.Deflater;
 
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.Validate;
@@ -47,15 +59,37 @@ public class BackupOperationsImpl implements BackupOperations {
 
   protected void activate(final ComponentContext cContext) {
     this.context = cContext.getBundleContext();
+    pool = new ForkJoinPool();
   }
 
   private static final Logger LOGGER = HandlerUtils.getLogger(BackupOperationsImpl.class);
 
+  // The directory, relative to the user's home, holding the file recorded
+  // for each project by its last incremental backup; it's kept out of the
+  // project so that it's neither backed up nor picked up by version control
+  private static final String MANIFEST_DIRECTORY = ".spring-roo/backup";
+
   private FileManager fileManager;
+  private ForkJoinPool pool;
   private ProjectOperations projectOperations;
 
+  protected void deactivate(final ComponentContext cContext) {
+    if (pool != null) {
+      pool.shutdown();
+      pool = null;
+    }
+  }
+
   public String backup() {
+    return backup(Deflater.DEFAULT_COMPRESSION, false);
+  }
+
+  public String backup(final int compressionLevel, final boolean incremental) {
     Validate.isTrue(isBackupPossible(), "Project metadata unavailable");
+    Validate.isTrue(compressionLevel >= Deflater.DEFAULT_COMPRESSION
+        && compressionLevel <= Deflater.BEST_COMPRESSION,
+        "Compression level must be between %d and %d", Deflater.DEFAULT_COMPRESSION,
+        Deflater.BEST_COMPRESSION);
 
     // For Windows, make a date format that can legally form part of a
     // filename (ROO-277)
@@ -64,34 +98,60 @@ public class BackupOperationsImpl implements BackupOperations {
     final DateFormat df = new SimpleDateFormat(pattern);
     final long start = System.nanoTime();
 
-    ZipOutputStream zos = null;
+    int files = 0;
+    OutputStream outputStream = null;
     try {
       final File projectDirectory =
           new File(getProjectOperations().getPathResolver().getFocusedIdentifier(Path.ROOT, "."));
+      final File manifestFile = getManifestFile(projectDirectory);
+      final Properties lastManifest = incremental ? readManifest(manifestFile) : new Properties();
       final MutableFile file =
           getFileManager().createFile(
               FileUtils.getCanonicalPath(new File(projectDirectory, getProjectOperations()
                   .getFocusedProjectName() + "_" + df.format(new Date()) + ".zip")));
-      zos = new ZipOutputStream(file.getOutputStream());
-      zip(projectDirectory, projectDirectory, zos);
+      outputStream = new BufferedOutputStream(file.getOutputStream());
+
+      final Properties manifest = new Properties();
+      final List<Callable<BackupEntry>> tasks = new ArrayList<Callable<BackupEntry>>();
+      collect(projectDirectory, projectDirectory, compressionLevel, lastManifest, manifest, tasks);
+      final ZipAssembler assembler = new ZipAssembler(outputStream);
+      zip(tasks, assembler);
+      assembler.finish();
+      files = tasks.size();
+
+      if (incremental) {
+        writeManifest(manifestFile, manifest);
+      }
     } catch (final FileNotFoundException e) {
       LOGGER.fine("Could not determine project directory");
     } catch (final IOException e) {
       LOGGER.fine("Could not create backup archive");
     } finally {
-      IOUtils.closeQuietly(zos);
+      IOUtils.closeQuietly(outputStream);
     }
 
     final long milliseconds = (System.nanoTime() - start) / 1000000;
+    if (incremental) {
+      return "Incremental backup of " + files + " entries completed in " + milliseconds + " ms";
+    }
     return "Backup completed in " + milliseconds + " ms";
   }
 
-  public boolean isBackupPossible() {
-    return getProjectOperations().isFocusedProjectAvailable();
-  }
-
-  private void zip(final File directory, final File base, final ZipOutputStream zos)
-      throws IOException {
+  /**
+   * Adds a task for creating each entry of the backup to the given list, in
+   * the order they're to appear in the archive
+   * 
+   * @param directory the directory to back up
+   * @param base the project directory
+   * @param compressionLevel the compression level for files
+   * @param lastManifest the manifest of the last backup, of which unchanged
+   *            files are left out
+   * @param manifest the manifest to which to add each file found
+   * @param tasks the list of tasks to add to
+   */
+  private void collect(final File directory, final File base, final int compressionLevel,
+      final Properties lastManifest, final Properties manifest,
+      final List<Callable<BackupEntry>> tasks) {
     final File[] files = directory.listFiles(new FilenameFilter() {
       public boolean accept(final File dir, final String name) {
         // Don't use this directory if it's "target" under base
@@ -110,27 +170,146 @@ public class BackupOperationsImpl implements BackupOperations {
     });
 
     for (final File file : files) {
+      final String name =
+          file.getPath().substring(base.getPath().length() + 1).replace(File.separatorChar, '/');
       if (file.isDirectory()) {
         if (file.listFiles().length == 0) {
-          final ZipEntry dirEntry =
-              new ZipEntry(file.getPath().substring(base.getPath().length() + 1)
-                  + File.separatorChar);
-          zos.putNextEntry(dirEntry);
+          final long time = file.lastModified();
+          tasks.add(new Callable<BackupEntry>() {
+            public BackupEntry call() {
+              return BackupEntry.directory(name, time);
+            }
+          });
         }
-        zip(file, base, zos);
+        collect(file, base, compressionLevel, lastManifest, manifest, tasks);
       } else {
-        InputStream inputStream = null;
+        final String version = file.lastModified() + "," + file.length();
+        manifest.setProperty(name, version);
+        if (version.equals(lastManifest.getProperty(name))) {
+          continue;
+        }
+        tasks.add(new Callable<BackupEntry>() {
+          public BackupEntry call() throws IOException {
+            return BackupEntry.file(file, name, compressionLevel);
+          }
+        });
+      }
+    }
+  }
+
+  /**
+   * Returns the file recording the given project's files as of its last
+   * incremental backup
+   * 
+   * @param projectDirectory the project directory (required)
+   * @return a non-<code>null</code> file, which may not exist
+   */
+  private File getManifestFile(final File projectDirectory) {
+    final String projectPath = FileUtils.getCanonicalPath(projectDirectory);
+    return new File(new File(System.getProperty("user.home"), MANIFEST_DIRECTORY),
+        projectDirectory.getName() + "-" + Integer.toHexString(projectPath.hashCode())
+            + ".properties");
+  }
+
+  public boolean isBackupPossible() {
+    return getProjectOperations().isFocusedProjectAvailable();
+  }
+
+  private Properties readManifest(final File manifestFile) throws IOException {
+    final Properties manifest = new Properties();
+    if (manifestFile.isFile()) {
+      final InputStream inputStream = new FileInputStream(manifestFile);
+      try {
+        manifest.load(inputStream);
+      } finally {
+        IOUtils.closeQuietly(inputStream);
+      }
+    }
+    return manifest;
+  }
+
+  private void writeManifest(final File manifestFile, final Properties manifest)
+      throws IOException {
+    final File directory = manifestFile.getParentFile();
+    if (!directory.isDirectory() && !directory.mkdirs()) {
+      throw new IOException("Unable to create " + directory);
+    }
+    final OutputStream outputStream = new FileOutputStream(manifestFile);
+    try {
+      manifest.store(outputStream,
+          "Files as of the last incremental backup, as last modified time and size");
+    } finally {
+      IOUtils.closeQuietly(outputStream);
+    }
+  }
+
+  /**
+   * Writes the entries created by the given tasks to the given archive, in
+   * order. The tasks run in parallel if possible, with a bounded number of
+   * entries held in memory at once; files too large to be held in memory are
+   * compressed on this thread as they're written (see
+   * {@link BackupEntry#MAX_IN_MEMORY_SIZE}).
+   * 
+   * @param tasks the tasks creating the entries (required)
+   * @param assembler the archive to write to (required)
+   * @throws IOException
+   */
+  private void zip(final List<Callable<BackupEntry>> tasks, final ZipAssembler assembler)
+      throws IOException {
+    final ForkJoinPool currentPool = pool;
+    if (currentPool == null) {
+      for (final Callable<BackupEntry> task : tasks) {
         try {
-          final ZipEntry entry =
-              new ZipEntry(file.getPath().substring(base.getPath().length() + 1));
-          zos.putNextEntry(entry);
-
-          inputStream = new FileInputStream(file);
-          IOUtils.write(IOUtils.toByteArray(inputStream), zos);
-        } finally {
-          IOUtils.closeQuietly(inputStream);
+          assembler.write(task.call());
+        } catch (final IOException e) {
+          throw e;
+        } catch (final RuntimeException e) {
+          throw e;
+        } catch (final Exception e) {
+          throw new IllegalStateException(e);
+        }
+      }
+      return;
+    }
+
+    final int window = currentPool.getParallelism() * 2;
+    final Deque<Future<BackupEntry>> pending = new ArrayDeque<Future<BackupEntry>>(window);
+    try {
+      for (final Callable<BackupEntry> task : tasks) {
+        if (pending.size() == window) {
+          assembler.write(get(pending.removeFirst()));
         }
+        // A FutureTask reports the task's exception as it was thrown; a task
+        // submitted to the pool reports a copy, with checked exceptions
+        // wrapped
+        final FutureTask<BackupEntry> future = new FutureTask<BackupEntry>(task);
+        currentPool.execute(future);
+        pending.addLast(future);
+      }
+      while (!pending.isEmpty()) {
+        assembler.write(get(pending.removeFirst()));
+      }
+    } finally {
+      for (final Future<BackupEntry> future : pending) {
+        future.cancel(true);
+      }
+    }
+  }
+
+  private BackupEntry get(final Future<BackupEntry> future) throws IOException {
+    try {
+      return future.get();
+    } catch (final InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException(e);
+    } catch (final ExecutionException e) {
+      if (e.getCause() instanceof IOException) {
+        throw (IOException) e.getCause();
+      }
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
       }
+      throw new IllegalStateException(e.getCause());
     }
   }
 
@@ -0,0 +1,278 @@
+package org.springframework.roo.addon.backup;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.Calendar;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.Validate;
+
+/**
+ * Writes a ZIP archive from {@link BackupEntry}s that have already been
+ * compressed, in the order they're added. Unlike
+ * {@link java.util.zip.ZipOutputStream}, this lets the entries be compressed
+ * elsewhere, e.g. on other threads. Streamed entries are read and compressed
+ * as they're written, a deflated one being followed by a data descriptor and
+ * a stored one being read twice, as only deflated entries can have a data
+ * descriptor.
+ * <p>
+ * ZIP64 isn't supported, so an archive is limited to 65535 entries and 4 GB.
+ * Not thread safe.
+ *
+ * @since 2.0
+ */
+final class ZipAssembler {
+
+  private static final int BUFFER_SIZE = 64 * 1024;
+  private static final int CENTRAL_DIRECTORY_SIGNATURE = 0x02014b50;
+  private static final int DATA_DESCRIPTOR_SIGNATURE = 0x08074b50;
+  // General purpose flag: the CRC and sizes follow the data
+  private static final int DATA_DESCRIPTOR_FLAG = 0x0008;
+  private static final int END_OF_CENTRAL_DIRECTORY_SIGNATURE = 0x06054b50;
+  private static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+  private static final long MAX_ENTRIES = 0xFFFF;
+  private static final long MAX_SIZE = 0xFFFFFFFFL;
+  private static final Charset UTF_8 = Charset.forName("UTF-8");
+  // General purpose flag: names are UTF-8
+  private static final int UTF_8_FLAG = 0x0800;
+  private static final int VERSION = 20;
+
+  private final ByteArrayOutputStream centralDirectory = new ByteArrayOutputStream();
+  private int entries;
+  private long offset;
+  private final OutputStream outputStream;
+
+  /**
+   * Constructor
+   *
+   * @param outputStream the stream to write the archive to (required; not
+   *            closed by this class)
+   */
+  ZipAssembler(final OutputStream outputStream) {
+    Validate.notNull(outputStream, "Output stream required");
+    this.outputStream = outputStream;
+  }
+
+  private void checkSize(final long size) throws IOException {
+    if (size > MAX_SIZE) {
+      throw new IOException("Archive exceeds 4 GB");
+    }
+  }
+
+  /**
+   * Writes the central directory, completing the archive
+   *
+   * @throws IOException
+   */
+  void finish() throws IOException {
+    final byte[] directory = centralDirectory.toByteArray();
+    checkSize(offset + directory.length);
+    outputStream.write(directory);
+
+    final ByteArrayOutputStream end = new ByteArrayOutputStream();
+    writeInt(end, END_OF_CENTRAL_DIRECTORY_SIGNATURE);
+    writeShort(end, 0); // This disk
+    writeShort(end, 0); // Disk of the central directory
+    writeShort(end, entries);
+    writeShort(end, entries);
+    writeInt(end, directory.length);
+    writeInt(end, offset);
+    writeShort(end, 0); // Comment length
+    outputStream.write(end.toByteArray());
+    outputStream.flush();
+  }
+
+  private long getDosTime(final long time) {
+    final Calendar calendar = Calendar.getInstance();
+    calendar.setTimeInMillis(time);
+    final int year = calendar.get(Calendar.YEAR);
+    if (year < 1980) {
+      // 1980-01-01 00:00:00, the earliest DOS time
+      return 0x00210000L;
+    }
+    return (long) (year - 1980) << 25 | (calendar.get(Calendar.MONTH) + 1) << 21
+        | calendar.get(Calendar.DAY_OF_MONTH) << 16 | calendar.get(Calendar.HOUR_OF_DAY) << 11
+        | calendar.get(Calendar.MINUTE) << 5 | calendar.get(Calendar.SECOND) >> 1;
+  }
+
+  /**
+   * Writes the given entry to the archive
+   *
+   * @param entry the entry to write (required)
+   * @throws IOException
+   */
+  void write(final BackupEntry entry) throws IOException {
+    Validate.notNull(entry, "Entry required");
+    if (entries == MAX_ENTRIES) {
+      throw new IOException("Archive exceeds " + MAX_ENTRIES + " entries");
+    }
+    if (entry.isStreamed()) {
+      writeStreamed(entry);
+      return;
+    }
+    final byte[] name = entry.getName().getBytes(UTF_8);
+    final byte[] data = entry.getData();
+    final long dosTime = getDosTime(entry.getTime());
+
+    final byte[] header =
+        getLocalHeader(name, UTF_8_FLAG, entry.getMethod(), dosTime, entry.getCrc(), data.length,
+            entry.getSize());
+    checkSize(offset + header.length + data.length);
+    outputStream.write(header);
+    outputStream.write(data);
+
+    addToCentralDirectory(entry, name, UTF_8_FLAG, dosTime, entry.getCrc(), data.length,
+        entry.getSize());
+    offset += header.length + data.length;
+    entries++;
+  }
+
+  /**
+   * Writes the given streamed entry, reading its file
+   *
+   * @param entry the entry to write (required)
+   * @throws IOException
+   */
+  private void writeStreamed(final BackupEntry entry) throws IOException {
+    final File file = entry.getFile();
+    final byte[] name = entry.getName().getBytes(UTF_8);
+    final long dosTime = getDosTime(entry.getTime());
+    final long size = entry.getSize();
+    checkSize(size);
+
+    if (entry.getMethod() == ZipEntry.STORED) {
+      final long crc = FileUtils.checksumCRC32(file);
+      final byte[] header =
+          getLocalHeader(name, UTF_8_FLAG, ZipEntry.STORED, dosTime, crc, size, size);
+      checkSize(offset + header.length + size);
+      outputStream.write(header);
+      final InputStream inputStream = new FileInputStream(file);
+      try {
+        if (IOUtils.copyLarge(inputStream, outputStream, 0, size + 1) != size) {
+          throw new IOException("'" + file + "' changed while being backed up");
+        }
+      } finally {
+        IOUtils.closeQuietly(inputStream);
+      }
+      addToCentralDirectory(entry, name, UTF_8_FLAG, dosTime, crc, size, size);
+      offset += header.length + size;
+      entries++;
+      return;
+    }
+
+    final int flags = UTF_8_FLAG | DATA_DESCRIPTOR_FLAG;
+    final byte[] header = getLocalHeader(name, flags, ZipEntry.DEFLATED, dosTime, 0, 0, 0);
+    outputStream.write(header);
+    final CRC32 crc = new CRC32();
+    long compressedSize = 0;
+    long actualSize = 0;
+    // ZIP entries hold raw deflate data, without the ZLIB header
+    final Deflater deflater = new Deflater(entry.getCompressionLevel(), true);
+    final InputStream inputStream = new FileInputStream(file);
+    try {
+      final byte[] input = new byte[BUFFER_SIZE];
+      final byte[] output = new byte[BUFFER_SIZE];
+      int read;
+      while ((read = inputStream.read(input)) != -1) {
+        crc.update(input, 0, read);
+        actualSize += read;
+        deflater.setInput(input, 0, read);
+        while (!deflater.needsInput()) {
+          final int deflated = deflater.deflate(output);
+          outputStream.write(output, 0, deflated);
+          compressedSize += deflated;
+        }
+      }
+      deflater.finish();
+      while (!deflater.finished()) {
+        final int deflated = deflater.deflate(output);
+        outputStream.write(output, 0, deflated);
+        compressedSize += deflated;
+      }
+    } finally {
+      IOUtils.closeQuietly(inputStream);
+      deflater.end();
+    }
+    checkSize(actualSize);
+    checkSize(offset + header.length + compressedSize + 16);
+
+    final ByteArrayOutputStream descriptor = new ByteArrayOutputStream(16);
+    writeInt(descriptor, DATA_DESCRIPTOR_SIGNATURE);
+    writeInt(descriptor, crc.getValue());
+    writeInt(descriptor, compressedSize);
+    writeInt(descriptor, actualSize);
+    outputStream.write(descriptor.toByteArray());
+
+    addToCentralDirectory(entry, name, flags, dosTime, crc.getValue(), compressedSize,
+        actualSize);
+    offset += header.length + compressedSize + descriptor.size();
+    entries++;
+  }
+
+  /**
+   * Returns the local header of an entry with the given attributes
+   */
+  private byte[] getLocalHeader(final byte[] name, final int flags, final int method,
+      final long dosTime, final long crc, final long compressedSize, final long size)
+      throws IOException {
+    final ByteArrayOutputStream header = new ByteArrayOutputStream(30 + name.length);
+    writeInt(header, LOCAL_HEADER_SIGNATURE);
+    writeShort(header, VERSION);
+    writeShort(header, flags);
+    writeShort(header, method);
+    writeInt(header, dosTime);
+    writeInt(header, crc);
+    writeInt(header, compressedSize);
+    writeInt(header, size);
+    writeShort(header, name.length);
+    writeShort(header, 0); // Extra field length
+    header.write(name);
+    return header.toByteArray();
+  }
+
+  /**
+   * Adds the given entry, about to be written at the current offset, to the
+   * central directory
+   */
+  private void addToCentralDirectory(final BackupEntry entry, final byte[] name,
+      final int flags, final long dosTime, final long crc, final long compressedSize,
+      final long size) throws IOException {
+    writeInt(centralDirectory, CENTRAL_DIRECTORY_SIGNATURE);
+    writeShort(centralDirectory, VERSION); // Made by
+    writeShort(centralDirectory, VERSION); // Needed to extract
+    writeShort(centralDirectory, flags);
+    writeShort(centralDirectory, entry.getMethod());
+    writeInt(centralDirectory, dosTime);
+    writeInt(centralDirectory, crc);
+    writeInt(centralDirectory, compressedSize);
+    writeInt(centralDirectory, size);
+    writeShort(centralDirectory, name.length);
+    writeShort(centralDirectory, 0); // Extra field length
+    writeShort(centralDirectory, 0); // Comment length
+    writeShort(centralDirectory, 0); // Disk number
+    writeShort(centralDirectory, 0); // Internal attributes
+    // External attributes: the MS-DOS directory flag
+    writeInt(centralDirectory, entry.getName().endsWith("/") ? 0x10 : 0);
+    writeInt(centralDirectory, offset);
+    centralDirectory.write(name);
+  }
+
+  private void writeInt(final ByteArrayOutputStream output, final long value) {
+    writeShort(output, (int) (value & 0xFFFF));
+    writeShort(output, (int) (value >>> 16 & 0xFFFF));
+  }
+
+  private void writeShort(final ByteArrayOutputStream output, final int value) {
+    output.write(value & 0xFF);
+    output.write(value >>> 8 & 0xFF);
+  }
+}
@@ -0,0 +1,330 @@
+package org.springframework.roo.addon.backup;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit test of {@link ZipAssembler}, reading the archives it writes back with
+ * {@link java.util.zip}
+ *
+ * @since 2.0
+ */
+public class ZipAssemblerTest {
+
+  private static final byte[] COMPRESSIBLE;
+  private static final long TIME;
+
+  static {
+    final StringBuilder text = new StringBuilder();
+    for (int i = 0; i < 500; i++) {
+      text.append("Line ").append(i % 10).append(" of a backed up text file\n");
+    }
+    COMPRESSIBLE = text.toString().getBytes();
+
+    // Even seconds, as DOS times can't record odd ones
+    final Calendar calendar = Calendar.getInstance();
+    calendar.clear();
+    calendar.set(2015, Calendar.JUNE, 15, 10, 20, 30);
+    TIME = calendar.getTimeInMillis();
+  }
+
+  // Fixture
+  private File archive;
+  private File directory;
+
+  private File createFile(final String name, final byte[] contents) throws IOException {
+    final File file = new File(directory, name);
+    final OutputStream outputStream = new FileOutputStream(file);
+    try {
+      outputStream.write(contents);
+    } finally {
+      IOUtils.closeQuietly(outputStream);
+    }
+    assertTrue(file.setLastModified(TIME));
+    return file;
+  }
+
+  private static byte[] getLargeCompressibleContents() {
+    final ByteArrayOutputStream contents = new ByteArrayOutputStream();
+    while (contents.size() <= BackupEntry.MAX_IN_MEMORY_SIZE) {
+      contents.write(COMPRESSIBLE, 0, COMPRESSIBLE.length);
+    }
+    return contents.toByteArray();
+  }
+
+  private byte[] read(final ZipFile zipFile, final ZipEntry entry) throws IOException {
+    final InputStream inputStream = zipFile.getInputStream(entry);
+    try {
+      return IOUtils.toByteArray(inputStream);
+    } finally {
+      IOUtils.closeQuietly(inputStream);
+    }
+  }
+
+  private void write(final BackupEntry... entries) throws IOException {
+    final OutputStream outputStream = new FileOutputStream(archive);
+    try {
+      final ZipAssembler assembler = new ZipAssembler(outputStream);
+      for (final BackupEntry entry : entries) {
+        assembler.write(entry);
+      }
+      assembler.finish();
+    } finally {
+      IOUtils.closeQuietly(outputStream);
+    }
+  }
+
+  @Before
+  public void setUp() throws IOException {
+    archive = File.createTempFile("ZipAssemblerTest", ".zip");
+    directory = File.createTempFile("ZipAssemblerTest", "");
+    assertTrue(directory.delete() && directory.mkdir());
+  }
+
+  @After
+  public void tearDown() {
+    FileUtils.deleteQuietly(archive);
+    FileUtils.deleteQuietly(directory);
+  }
+
+  @Test
+  public void testDeflatedEntryIsReadBack() throws IOException {
+    // Set up
+    final File file = createFile("pom.xml", COMPRESSIBLE);
+    final CRC32 crc = new CRC32();
+    crc.update(COMPRESSIBLE);
+
+    // Invoke
+    write(BackupEntry.file(file, "pom.xml", Deflater.DEFAULT_COMPRESSION));
+
+    // Check
+    final ZipFile zipFile = new ZipFile(archive);
+    try {
+      final ZipEntry entry = zipFile.getEntry("pom.xml");
+      assertNotNull(entry);
+      assertEquals(ZipEntry.DEFLATED, entry.getMethod());
+      assertEquals(COMPRESSIBLE.length, entry.getSize());
+      assertTrue(entry.getCompressedSize() < entry.getSize());
+      assertEquals(crc.getValue(), entry.getCrc());
+      assertEquals(TIME, entry.getTime());
+      assertFalse(entry.isDirectory());
+      assertArrayEquals(COMPRESSIBLE, read(zipFile, entry));
+    } finally {
+      zipFile.close();
+    }
+  }
+
+  @Test
+  public void testStoredEntriesAreReadBack() throws IOException {
+    // Set up
+    final byte[] contents = {(byte) 0x89, 'P', 'N', 'G', 0, 1, 2, 3};
+    final File image = createFile("logo.png", contents);
+    final File text = createFile("README.txt", COMPRESSIBLE);
+
+    // Invoke
+    write(BackupEntry.file(image, "src/logo.png", Deflater.BEST_COMPRESSION),
+        BackupEntry.file(text, "README.txt", Deflater.NO_COMPRESSION));
+
+    // Check
+    final ZipFile zipFile = new ZipFile(archive);
+    try {
+      assertEquals(2, zipFile.size());
+      final ZipEntry imageEntry = zipFile.getEntry("src/logo.png");
+      assertEquals(ZipEntry.STORED, imageEntry.getMethod());
+      assertEquals(contents.length, imageEntry.getCompressedSize());
+      assertArrayEquals(contents, read(zipFile, imageEntry));
+      final ZipEntry textEntry = zipFile.getEntry("README.txt");
+      assertEquals(ZipEntry.STORED, textEntry.getMethod());
+      assertArrayEquals(COMPRESSIBLE, read(zipFile, textEntry));
+    } finally {
+      zipFile.close();
+    }
+  }
+
+  @Test
+  public void testDirectoryEntryIsReadBack() throws IOException {
+    // Invoke
+    write(BackupEntry.directory("src/main/resources", TIME));
+
+    // Check
+    final ZipFile zipFile = new ZipFile(archive);
+    try {
+      final ZipEntry entry = zipFile.getEntry("src/main/resources/");
+      assertNotNull(entry);
+      assertTrue(entry.isDirectory());
+      assertEquals(0, entry.getSize());
+      assertEquals(TIME, entry.getTime());
+    } finally {
+      zipFile.close();
+    }
+  }
+
+  @Test
+  public void testNonAsciiNamesAreReadBack() throws IOException {
+    // Set up
+    final String name = "src/main/resources/données/café_日本.properties";
+    final File file = createFile("cafe.properties", COMPRESSIBLE);
+
+    // Invoke
+    write(BackupEntry.directory("src/main/resources/données", TIME),
+        BackupEntry.file(file, name, Deflater.DEFAULT_COMPRESSION));
+
+    // Check: only the entries' UTF-8 flag overrides the reader's charset
+    final ZipFile zipFile = new ZipFile(archive, Charset.forName("ISO-8859-1"));
+    try {
+      assertTrue(zipFile.getEntry("src/main/resources/données/").isDirectory());
+      assertArrayEquals(COMPRESSIBLE, read(zipFile, zipFile.getEntry(name)));
+    } finally {
+      zipFile.close();
+    }
+  }
+
+  @Test
+  public void testLocalHeadersAreReadInOrder() throws IOException {
+    // Set up
+    final File text = createFile("a.txt", COMPRESSIBLE);
+    final File image = createFile("b.jpg", new byte[] {1, 2, 3});
+    final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+    final ZipAssembler assembler = new ZipAssembler(outputStream);
+
+    // Invoke
+    assembler.write(BackupEntry.file(text, "a.txt", Deflater.BEST_SPEED));
+    assembler.write(BackupEntry.directory("empty", TIME));
+    assembler.write(BackupEntry.file(image, "b.jpg", Deflater.BEST_SPEED));
+    assembler.finish();
+
+    // Check: reading sequentially relies on the local headers alone
+    final ZipInputStream zipInputStream =
+        new ZipInputStream(new ByteArrayInputStream(outputStream.toByteArray()));
+    final List<String> names = new ArrayList<String>();
+    try {
+      ZipEntry entry;
+      while ((entry = zipInputStream.getNextEntry()) != null) {
+        names.add(entry.getName());
+        final byte[] contents = IOUtils.toByteArray(zipInputStream);
+        if ("a.txt".equals(entry.getName())) {
+          assertArrayEquals(COMPRESSIBLE, contents);
+        }
+      }
+      assertNull(zipInputStream.getNextEntry());
+    } finally {
+      zipInputStream.close();
+    }
+    assertEquals(3, names.size());
+    assertEquals("a.txt", names.get(0));
+    assertEquals("empty/", names.get(1));
+    assertEquals("b.jpg", names.get(2));
+  }
+
+  @Test
+  public void testLargeFileIsStreamedAndReadBack() throws IOException {
+    // Set up
+    final byte[] contents = getLargeCompressibleContents();
+    final File large = createFile("large.txt", contents);
+    final File small = createFile("small.txt", COMPRESSIBLE);
+    final CRC32 crc = new CRC32();
+    crc.update(contents);
+    final BackupEntry largeEntry = BackupEntry.file(large, "large.txt", Deflater.BEST_SPEED);
+    assertTrue(largeEntry.isStreamed());
+    assertNull(largeEntry.getData());
+
+    // Invoke
+    write(largeEntry, BackupEntry.file(small, "small.txt", Deflater.BEST_SPEED));
+
+    // Check: the central directory has the sizes and CRC...
+    final ZipFile zipFile = new ZipFile(archive);
+    try {
+      final ZipEntry entry = zipFile.getEntry("large.txt");
+      assertEquals(ZipEntry.DEFLATED, entry.getMethod());
+      assertEquals(contents.length, entry.getSize());
+      assertTrue(entry.getCompressedSize() < entry.getSize());
+      assertEquals(crc.getValue(), entry.getCrc());
+      assertArrayEquals(contents, read(zipFile, entry));
+      assertArrayEquals(COMPRESSIBLE, read(zipFile, zipFile.getEntry("small.txt")));
+    } finally {
+      zipFile.close();
+    }
+
+    // ...and a sequential reader finds them in the data descriptor
+    final ZipInputStream zipInputStream = new ZipInputStream(new FileInputStream(archive));
+    try {
+      assertEquals("large.txt", zipInputStream.getNextEntry().getName());
+      assertArrayEquals(contents, IOUtils.toByteArray(zipInputStream));
+      assertEquals("small.txt", zipInputStream.getNextEntry().getName());
+      assertArrayEquals(COMPRESSIBLE, IOUtils.toByteArray(zipInputStream));
+      assertNull(zipInputStream.getNextEntry());
+    } finally {
+      zipInputStream.close();
+    }
+  }
+
+  @Test
+  public void testLargeCompressedFileIsStreamedAndStored() throws IOException {
+    // Set up
+    final byte[] contents = new byte[(int) BackupEntry.MAX_IN_MEMORY_SIZE + 1];
+    new Random(1).nextBytes(contents);
+    final File large = createFile("large.jar", contents);
+    final BackupEntry largeEntry = BackupEntry.file(large, "lib/large.jar", Deflater.BEST_SPEED);
+    assertTrue(largeEntry.isStreamed());
+
+    // Invoke
+    write(largeEntry);
+
+    // Check: a stored entry has no data descriptor, so the local header
+    // must already hold the sizes and CRC
+    final ZipInputStream zipInputStream = new ZipInputStream(new FileInputStream(archive));
+    try {
+      final ZipEntry entry = zipInputStream.getNextEntry();
+      assertEquals("lib/large.jar", entry.getName());
+      assertEquals(ZipEntry.STORED, entry.getMethod());
+      assertEquals(contents.length, entry.getSize());
+      assertArrayEquals(contents, IOUtils.toByteArray(zipInputStream));
+      assertNull(zipInputStream.getNextEntry());
+    } finally {
+      zipInputStream.close();
+    }
+  }
+
+  @Test
+  public void testEmptyArchiveIsReadBack() throws IOException {
+    // Invoke
+    write();
+
+    // Check
+    final ZipFile zipFile = new ZipFile(archive);
+    try {
+      assertEquals(0, zipFile.size());
+    } finally {
+      zipFile.close();
+    }
+  }
+}
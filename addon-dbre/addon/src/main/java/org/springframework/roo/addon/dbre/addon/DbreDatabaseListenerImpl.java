@@ -27,6 +27,7 @@ import org.osgi.framework.InvalidSyntaxException;
 import org.osgi.framework.ServiceReference;
 import org.springframework.roo.addon.dbre.addon.model.Column;
 import org.springframework.roo.addon.dbre.addon.model.Database;
+import org.springframework.roo.addon.dbre.addon.model.DatabaseSnapshot;
 import org.springframework.roo.addon.dbre.addon.model.DbreModelService;
 import org.springframework.roo.addon.dbre.addon.model.Table;
 import org.springframework.roo.addon.jpa.addon.identifier.Identifier;
@@ -89,6 +90,7 @@ public class DbreDatabaseListenerImpl extends AbstractHashCodeTrackingMetadataNo
   private TypeManagementService typeManagementService;
 
   private Map<JavaType, List<Identifier>> identifierResults;
+  private DatabaseSnapshot lastSnapshot;
 
   private void createIdentifierClass(final JavaType identifierType) {
     final List<AnnotationMetadataBuilder> identifierAnnotations =
@@ -215,8 +217,14 @@ public class DbreDatabaseListenerImpl extends AbstractHashCodeTrackingMetadataNo
   private void deserializeDatabase() {
     final Database database = getDbreModelService().getDatabase(true);
     if (database != null) {
-      identifierResults = new LinkedHashMap<JavaType, List<Identifier>>();
-      reverseEngineer(database);
+      // Taken before reverse engineering sets the destination package
+      final DatabaseSnapshot snapshot = new DatabaseSnapshot(database);
+      if (lastSnapshot == null || identifierResults == null) {
+        identifierResults = new LinkedHashMap<JavaType, List<Identifier>>();
+      }
+      // The identifiers of unchanged tables are kept from last time
+      reverseEngineer(database, snapshot.getChangedTables(lastSnapshot));
+      lastSnapshot = snapshot;
     }
   }
 
@@ -476,7 +484,14 @@ public class DbreDatabaseListenerImpl extends AbstractHashCodeTrackingMetadataNo
   }
 
   private void notify(final List<ClassOrInterfaceTypeDetails> entities) {
+    final Set<JavaType> identifierTypes = new HashSet<JavaType>();
+    for (final ClassOrInterfaceTypeDetails entity : entities) {
+      identifierTypes.add(getIdentifierType(entity.getName()));
+    }
     for (final ClassOrInterfaceTypeDetails managedIdentifierType : getManagedIdentifiers()) {
+      if (!identifierTypes.contains(managedIdentifierType.getName())) {
+        continue;
+      }
       final MetadataItem metadataItem =
           getMetadataService().evictAndGet(managedIdentifierType.getDeclaredByMetadataId());
       if (metadataItem != null) {
@@ -502,7 +517,15 @@ public class DbreDatabaseListenerImpl extends AbstractHashCodeTrackingMetadataNo
     }
   }
 
-  private void reverseEngineer(final Database database) {
+  /**
+   * Creates, updates and deletes the DBRE-managed entities of the given
+   * database
+   * 
+   * @param database the database (required)
+   * @param changedTables the tables that have changed since this was last
+   *            done; the entities of the other tables are left as they are
+   */
+  private void reverseEngineer(final Database database, final Set<Table> changedTables) {
     final Set<ClassOrInterfaceTypeDetails> managedEntities =
         getTypeLocationService().findClassesOrInterfaceDetailsWithAnnotation(ROO_DB_MANAGED);
     // Lookup the relevant destination package if not explicitly given
@@ -515,14 +538,19 @@ public class DbreDatabaseListenerImpl extends AbstractHashCodeTrackingMetadataNo
     final Set<Table> tables = new LinkedHashSet<Table>(database.getTables());
 
     // Manage existing entities with @RooDbManaged annotation
+    final List<ClassOrInterfaceTypeDetails> changedEntities =
+        new ArrayList<ClassOrInterfaceTypeDetails>();
     for (final ClassOrInterfaceTypeDetails managedEntity : managedEntities) {
       // Remove table from set as each managed entity is processed.
       // The tables that remain in the set will be used for creation of
       // new entities later
-      final Table table = updateOrDeleteManagedEntity(managedEntity, database);
+      final Table table = updateOrDeleteManagedEntity(managedEntity, database, changedTables);
       if (table != null) {
         tables.remove(table);
       }
+      if (table == null || changedTables.contains(table)) {
+        changedEntities.add(managedEntity);
+      }
     }
 
     // Create new entities from tables
@@ -540,9 +568,7 @@ public class DbreDatabaseListenerImpl extends AbstractHashCodeTrackingMetadataNo
         final JavaType javaType =
             DbreTypeUtils.suggestTypeNameForNewTable(table.getName(), schemaPackage);
         if (getTypeLocationService().getTypeDetails(javaType) == null) {
-          table.setIncludeNonPortableAttributes(database.isIncludeNonPortableAttributes());
-          table.setDisableVersionFields(database.isDisableVersionFields());
-          table.setDisableGeneratedIdentifiers(database.isDisableGeneratedIdentifiers());
+          setTableOptions(table, database);
           newEntities.add(createNewManagedEntityFromTable(javaType, table));
         }
       }
@@ -577,12 +603,18 @@ public class DbreDatabaseListenerImpl extends AbstractHashCodeTrackingMetadataNo
     final List<ClassOrInterfaceTypeDetails> allEntities =
         new ArrayList<ClassOrInterfaceTypeDetails>();
     allEntities.addAll(newEntities);
-    allEntities.addAll(managedEntities);
+    allEntities.addAll(changedEntities);
     notify(allEntities);
   }
 
+  private void setTableOptions(final Table table, final Database database) {
+    table.setIncludeNonPortableAttributes(database.isIncludeNonPortableAttributes());
+    table.setDisableVersionFields(database.isDisableVersionFields());
+    table.setDisableGeneratedIdentifiers(database.isDisableGeneratedIdentifiers());
+  }
+
   private Table updateOrDeleteManagedEntity(final ClassOrInterfaceTypeDetails managedEntity,
-      final Database database) {
+      final Database database, final Set<Table> changedTables) {
     // Update the attributes of the existing JPA-related annotation
     final AnnotationMetadata jpaAnnotation = getJpaAnnotation(managedEntity);
     Validate.validState(jpaAnnotation != null, "@%s not found on existing DBRE-managed entity %s",
@@ -612,9 +644,11 @@ public class DbreDatabaseListenerImpl extends AbstractHashCodeTrackingMetadataNo
       return null;
     }
 
-    table.setIncludeNonPortableAttributes(database.isIncludeNonPortableAttributes());
-    table.setDisableVersionFields(database.isDisableVersionFields());
-    table.setDisableGeneratedIdentifiers(database.isDisableGeneratedIdentifiers());
+    setTableOptions(table, database);
+    if (!changedTables.contains(table)) {
+      // The entity was updated from this table last time and still matches it
+      return table;
+    }
 
     // Update the @RooJpaEntity attributes
     final AnnotationMetadataBuilder jpaAnnotationBuilder =
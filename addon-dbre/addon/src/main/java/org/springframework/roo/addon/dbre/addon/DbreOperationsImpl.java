@@ -8,6 +8,7 @@ import java.util.Collections;
 import java.util.Set;
 import java.util.logging.Logger;
 
+import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.Validate;
 import org.apache.felix.scr.annotations.Component;
@@ -82,10 +83,13 @@ public class DbreOperationsImpl implements DbreOperations {
     } else {
       try {
         if (displayOnly) {
-          final Document document = DatabaseXmlUtils.getDatabaseDocument(database);
           final OutputStream outputStream =
               file != null ? new FileOutputStream(file) : new ByteArrayOutputStream();
-          XmlUtils.writeXml(outputStream, document);
+          try {
+            DatabaseXmlUtils.writeDatabase(database, outputStream);
+          } finally {
+            IOUtils.closeQuietly(outputStream);
+          }
           LOGGER.info(file != null ? "Database metadata written to file " + file.getAbsolutePath()
               : outputStream.toString());
         } else {
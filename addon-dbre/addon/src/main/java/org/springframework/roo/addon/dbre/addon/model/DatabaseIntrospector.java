@@ -4,6 +4,7 @@ import java.sql.Connection;
 import java.sql.DatabaseMetaData;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.Map;
@@ -87,7 +88,8 @@ public class DatabaseIntrospector extends AbstractIntrospector {
   }
 
   private Set<Table> getTables(final Schema schema) throws SQLException {
-    final Set<Table> tables = new LinkedHashSet<Table>();
+    // key: see getTableKey
+    final Map<String, Table> tables = new LinkedHashMap<String, Table>();
 
     final String[] types =
         view ? new String[] {TableType.TABLE.name(), TableType.VIEW.name()}
@@ -108,27 +110,46 @@ public class DatabaseIntrospector extends AbstractIntrospector {
           final Table table = new Table(tableName, new Schema(rs.getString("TABLE_SCHEM")));
           table.setCatalog(rs.getString("TABLE_CAT"));
           table.setDescription(rs.getString("REMARKS"));
+          tables.put(getTableKey(table.getCatalog(), table.getSchema().getName(), tableName),
+              table);
+        }
+      }
+    } finally {
+      rs.close();
+    }
 
-          readColumns(table);
-          readForeignKeys(table, false);
-          readForeignKeys(table, true);
-          readIndices(table);
+    if (!tables.isEmpty()) {
+      readColumns(getArtifact(schema.getName()), tables);
+    }
 
-          for (final String columnName : readPrimaryKeyNames(table)) {
-            final Column column = table.findColumn(columnName);
-            if (column != null) {
-              column.setPrimaryKey(true);
-            }
-          }
+    for (final Table table : tables.values()) {
+      readForeignKeys(table, false);
+      readForeignKeys(table, true);
+      readIndices(table);
 
-          tables.add(table);
+      for (final String columnName : readPrimaryKeyNames(table)) {
+        final Column column = table.findColumn(columnName);
+        if (column != null) {
+          column.setPrimaryKey(true);
         }
       }
-    } finally {
-      rs.close();
     }
 
-    return tables;
+    return new LinkedHashSet<Table>(tables.values());
+  }
+
+  /**
+   * Returns the key of the given table within the map of tables being read
+   * 
+   * @param catalog the table's catalog (can be <code>null</code>)
+   * @param schemaName the table's schema (can be <code>null</code>)
+   * @param tableName the table's name
+   * @return a non-<code>null</code> key
+   */
+  private String getTableKey(final String catalog, final String schemaName,
+      final String tableName) {
+    return StringUtils.defaultString(StringUtils.trimToNull(catalog)) + "."
+        + new Schema(schemaName).getName() + "." + tableName;
   }
 
   private boolean hasExcludedTable(final String tableName) {
@@ -172,23 +193,50 @@ public class DatabaseIntrospector extends AbstractIntrospector {
     return ignore;
   }
 
-  private void readColumns(final Table table) throws SQLException {
-    final ResultSet rs =
-        databaseMetaData.getColumns(table.getCatalog(), table.getSchema().getName(),
-            table.getName(), null);
-    try {
-      while (rs.next()) {
-        final Column column =
-            new Column(rs.getString("COLUMN_NAME"), rs.getInt("DATA_TYPE"),
-                rs.getString("TYPE_NAME"), rs.getInt("COLUMN_SIZE"), rs.getInt("DECIMAL_DIGITS"));
-        column.setDescription(rs.getString("REMARKS"));
-        column.setDefaultValue(rs.getString("COLUMN_DEF"));
-        column.setRequired("NO".equalsIgnoreCase(rs.getString("IS_NULLABLE")));
-
-        table.addColumn(column);
+  /**
+   * Reads the columns of the given tables with one query per catalog rather
+   * than one per table. Each column is routed to its table by catalog, schema
+   * and table name, as the table name pattern matches every table.
+   * 
+   * @param schemaName the schema pattern the tables were read with
+   * @param tables the tables to read, keyed as per {@link #getTableKey}
+   * @throws SQLException
+   */
+  private void readColumns(final String schemaName, final Map<String, Table> tables)
+      throws SQLException {
+    final Set<String> catalogs = new LinkedHashSet<String>();
+    for (final Table table : tables.values()) {
+      catalogs.add(table.getCatalog());
+    }
+    if (catalogs.contains(null)) {
+      // A null catalog doesn't narrow the search, so this covers them all
+      catalogs.retainAll(Collections.singleton(null));
+    }
+
+    for (final String catalog : catalogs) {
+      final ResultSet rs = databaseMetaData.getColumns(catalog, schemaName, "%", null);
+      try {
+        while (rs.next()) {
+          final Table table =
+              tables.get(getTableKey(rs.getString("TABLE_CAT"), rs.getString("TABLE_SCHEM"),
+                  rs.getString("TABLE_NAME")));
+          if (table == null) {
+            continue;
+          }
+
+          final Column column =
+              new Column(rs.getString("COLUMN_NAME"), rs.getInt("DATA_TYPE"),
+                  rs.getString("TYPE_NAME"), rs.getInt("COLUMN_SIZE"),
+                  rs.getInt("DECIMAL_DIGITS"));
+          column.setDescription(rs.getString("REMARKS"));
+          column.setDefaultValue(rs.getString("COLUMN_DEF"));
+          column.setRequired("NO".equalsIgnoreCase(rs.getString("IS_NULLABLE")));
+
+          table.addColumn(column);
+        }
+      } finally {
+        rs.close();
       }
-    } finally {
-      rs.close();
     }
   }
 
@@ -0,0 +1,62 @@
+package org.springframework.roo.addon.dbre.addon.model;
+
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.lang3.Validate;
+
+/**
+ * The persistent form of a {@link Database} at a given moment, against which a
+ * later version of it can be compared to find the tables that have changed.
+ * <p>
+ * Each table is compared by the XML written for it to the DBRE XML file, so
+ * anything that changes that XML (including the keys that other tables export
+ * to it) counts as a change.
+ *
+ * @since 2.0
+ */
+public class DatabaseSnapshot {
+
+  private final String optionsXml;
+  private final Set<Table> tables;
+  // key: table, value: its XML
+  private final Map<Table, String> tableXml = new HashMap<Table, String>();
+
+  /**
+   * Constructor
+   *
+   * @param database the database to take a snapshot of (required)
+   */
+  public DatabaseSnapshot(final Database database) {
+    Validate.notNull(database, "Database required");
+    optionsXml = DatabaseXmlUtils.getOptionsXml(database);
+    tables = new LinkedHashSet<Table>(database.getTables());
+    for (final Table table : tables) {
+      tableXml.put(table, DatabaseXmlUtils.getTableXml(table));
+    }
+  }
+
+  /**
+   * Returns the tables in this snapshot that are new or different since the
+   * given earlier snapshot. If the database's options have changed, every
+   * table is returned.
+   *
+   * @param previous the earlier snapshot (can be <code>null</code> if there
+   *            is none, in which case every table is returned)
+   * @return a non-<code>null</code> set
+   */
+  public Set<Table> getChangedTables(final DatabaseSnapshot previous) {
+    if (previous == null || !optionsXml.equals(previous.optionsXml)) {
+      return new LinkedHashSet<Table>(tables);
+    }
+    final Set<Table> changedTables = new LinkedHashSet<Table>();
+    for (final Table table : tables) {
+      if (!tableXml.get(table).equals(previous.tableXml.get(table))) {
+        changedTables.add(table);
+      }
+    }
+    return changedTables;
+  }
+}
@@ -1,6 +1,9 @@
 package org.springframework.roo.addon.dbre.addon.model;
 
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StringWriter;
 import java.util.EmptyStackException;
 import java.util.LinkedHashSet;
 import java.util.List;
@@ -8,16 +11,19 @@ import java.util.Set;
 
 import javax.xml.parsers.SAXParser;
 import javax.xml.parsers.SAXParserFactory;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
 
 import org.apache.commons.lang3.StringUtils;
 import org.springframework.roo.model.JavaPackage;
 import org.springframework.roo.support.util.XmlUtils;
-import org.w3c.dom.Comment;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 
 /**
- * Assists converting a {@link Database} to and from XML using DOM or SAX.
+ * Assists converting a {@link Database} to and from XML using DOM, SAX or
+ * StAX.
  * 
  * @author Alan Stewart
  * @author Juan Carlos García
@@ -38,48 +44,11 @@ public abstract class DatabaseXmlUtils {
   public static final String ON_UPDATE = "onUpdate";
   public static final String REFERENCE = "reference";
 
-  /**
-   * Adds an <option key="foo" value="true"> element as a child of the given
-   * parent element
-   * 
-   * @param document the XML document containing the parent and child
-   *            (required)
-   * @param parent the parent element to which to add a child (required)
-   * @param key the option key/name (required)
-   * @param value the option value
-   */
-  private static void addBooleanOptionElement(final Document document, final Element parent,
-      final String key, final boolean value) {
-    parent.appendChild(createOptionElement(key, String.valueOf(value), document));
-  }
-
-  private static void addForeignKeyElements(final Set<ForeignKey> foreignKeys,
-      final boolean exported, final Element tableElement, final Document document) {
-    for (final ForeignKey foreignKey : foreignKeys) {
-      final Element foreignKeyElement = document.createElement("foreign-key");
-      foreignKeyElement.setAttribute(NAME, foreignKey.getName());
-      foreignKeyElement.setAttribute(FOREIGN_TABLE, foreignKey.getForeignTableName());
-      foreignKeyElement.setAttribute(ON_DELETE, foreignKey.getOnDelete().getCode());
-      foreignKeyElement.setAttribute(ON_UPDATE, foreignKey.getOnUpdate().getCode());
-
-      final String foreignSchemaName = foreignKey.getForeignSchemaName();
-      if (!DbreModelService.NO_SCHEMA_REQUIRED.equals(foreignSchemaName)) {
-        foreignKeyElement.appendChild(createOptionElement("foreignSchemaName", foreignSchemaName,
-            document));
-      }
-
-      foreignKeyElement.appendChild(createOptionElement("exported", String.valueOf(exported),
-          document));
-
-      for (final Reference reference : foreignKey.getReferences()) {
-        final Element referenceElement = document.createElement(REFERENCE);
-        referenceElement.setAttribute(FOREIGN, reference.getForeignColumnName());
-        referenceElement.setAttribute(LOCAL, reference.getLocalColumnName());
-        foreignKeyElement.appendChild(referenceElement);
-      }
-      tableElement.appendChild(foreignKeyElement);
-    }
-  }
+  private static final String ENCODING = "UTF-8";
+  private static final String INDENT = "    ";
+  private static final XMLOutputFactory OUTPUT_FACTORY = XMLOutputFactory.newInstance();
+  private static final String WARNING =
+      "WARNING: DO NOT EDIT THIS FILE. THIS FILE IS MANAGED BY SPRING ROO.";
 
   private static void addIndices(final Table table, final Element tableElement,
       final IndexType indexType) {
@@ -98,98 +67,6 @@ public abstract class DatabaseXmlUtils {
     }
   }
 
-  private static Element createOptionElement(final String key, final String value,
-      final Document document) {
-    final Element option = document.createElement("option");
-    option.setAttribute("key", key);
-    option.setAttribute("value", value);
-    return option;
-  }
-
-  public static Document getDatabaseDocument(final Database database) {
-    final Document document = XmlUtils.getDocumentBuilder().newDocument();
-    final Comment comment =
-        document
-            .createComment("WARNING: DO NOT EDIT THIS FILE. THIS FILE IS MANAGED BY SPRING ROO.");
-    document.appendChild(comment);
-
-    final Element databaseElement = document.createElement("database");
-    databaseElement.setAttribute(NAME, "deprecated");
-
-    if (database.getDestinationPackage() != null) {
-      databaseElement.setAttribute("package", database.getDestinationPackage()
-          .getFullyQualifiedPackageName());
-    }
-
-    databaseElement.appendChild(createOptionElement("moduleName", database.getModuleName(),
-        document));
-    addBooleanOptionElement(document, databaseElement, "repository", database.isRepository());
-    addBooleanOptionElement(document, databaseElement, "service", database.isService());
-    addBooleanOptionElement(document, databaseElement, "includeNonPortableAttributes",
-        database.isIncludeNonPortableAttributes());
-    addBooleanOptionElement(document, databaseElement, "disableVersionFields",
-        database.isDisableVersionFields());
-    addBooleanOptionElement(document, databaseElement, "disableGeneratedIdentifiers",
-        database.isDisableGeneratedIdentifiers());
-    addBooleanOptionElement(document, databaseElement, "testAutomatically",
-        database.isTestAutomatically());
-
-    for (final Table table : database.getTables()) {
-      final Element tableElement = document.createElement("table");
-      tableElement.setAttribute(NAME, table.getName());
-      final String schemaName = table.getSchema().getName();
-      if (!DbreModelService.NO_SCHEMA_REQUIRED.equals(schemaName)) {
-        tableElement.setAttribute("alias", schemaName);
-      }
-      if (StringUtils.isNotBlank(table.getDescription())) {
-        tableElement.setAttribute(DESCRIPTION, table.getDescription());
-      }
-
-      for (final Column column : table.getColumns()) {
-        final Element columnElement = document.createElement("column");
-        columnElement.setAttribute(NAME, column.getName());
-        if (StringUtils.isNotBlank(column.getDescription())) {
-          columnElement.setAttribute(DESCRIPTION, column.getDescription());
-        }
-
-        columnElement.setAttribute("primaryKey", String.valueOf(column.isPrimaryKey()));
-        columnElement.setAttribute("required", String.valueOf(column.isRequired()));
-        columnElement.setAttribute("size", String.valueOf(column.getColumnSize()));
-        columnElement.setAttribute("scale", String.valueOf(column.getScale()));
-        columnElement.setAttribute("type", column.getDataType() + "," + column.getTypeName());
-
-        tableElement.appendChild(columnElement);
-      }
-
-      addForeignKeyElements(table.getImportedKeys(), false, tableElement, document);
-      addForeignKeyElements(table.getExportedKeys(), true, tableElement, document);
-
-      for (final Index index : table.getIndices()) {
-        final Element indexElement =
-            document.createElement(index.isUnique() ? IndexType.UNIQUE.name().toLowerCase()
-                : IndexType.INDEX.name().toLowerCase());
-        indexElement.setAttribute(NAME, index.getName());
-        for (final IndexColumn indexColumn : index.getColumns()) {
-          final Element indexColumnElement =
-              document.createElement((index.isUnique() ? IndexType.UNIQUE.name().toLowerCase()
-                  : IndexType.INDEX.name().toLowerCase()) + "-column");
-          indexColumnElement.setAttribute(NAME, indexColumn.getName());
-          indexElement.appendChild(indexColumnElement);
-        }
-        tableElement.appendChild(indexElement);
-      }
-
-      databaseElement.appendChild(tableElement);
-    }
-
-    document.appendChild(databaseElement);
-
-    // ROO-2355: transformer.setOutputProperty(OutputKeys.DOCTYPE_SYSTEM,
-    // "http://db.apache.org/torque/dtd/database_3_3.dtd");
-
-    return document;
-  }
-
   static Database readDatabase(final InputStream inputStream) {
     try {
       final SAXParserFactory spf = SAXParserFactory.newInstance();
@@ -319,4 +196,217 @@ public abstract class DatabaseXmlUtils {
 
     return database;
   }
+
+  private static XMLStreamWriter createWriter(final Object output) throws XMLStreamException {
+    // XMLOutputFactory is not guaranteed to be thread safe once configured
+    synchronized (OUTPUT_FACTORY) {
+      if (output instanceof OutputStream) {
+        return OUTPUT_FACTORY.createXMLStreamWriter((OutputStream) output, ENCODING);
+      }
+      return OUTPUT_FACTORY.createXMLStreamWriter((StringWriter) output);
+    }
+  }
+
+  /**
+   * Returns the XML for the given table's element, as written by
+   * {@link #writeDatabase(Database, OutputStream)}
+   * 
+   * @param table the table to write (required)
+   * @return a non-blank String
+   */
+  static String getTableXml(final Table table) {
+    final StringWriter output = new StringWriter();
+    try {
+      final XMLStreamWriter writer = createWriter(output);
+      writeTable(writer, 0, table);
+      writer.close();
+    } catch (final XMLStreamException e) {
+      throw new IllegalStateException(e);
+    }
+    return output.toString();
+  }
+
+  /**
+   * Returns the XML for the given database's options, i.e. its element's
+   * attributes and <code>option</code> elements, but not its tables
+   * 
+   * @param database the database to write (required)
+   * @return a non-blank String
+   */
+  static String getOptionsXml(final Database database) {
+    final StringWriter output = new StringWriter();
+    try {
+      final XMLStreamWriter writer = createWriter(output);
+      writeDatabaseStart(writer, database);
+      writeEndElement(writer, 0);
+      writer.close();
+    } catch (final XMLStreamException e) {
+      throw new IllegalStateException(e);
+    }
+    return output.toString();
+  }
+
+  /**
+   * Writes the given database to the given stream as a DBRE XML document,
+   * one element at a time, so that the XML for a large database is never
+   * held in memory as a whole.
+   * 
+   * @param database the database to write (required)
+   * @param outputStream the stream to write to (required; not closed by this
+   *            method)
+   */
+  public static void writeDatabase(final Database database, final OutputStream outputStream) {
+    try {
+      // StAX can't declare the document standalone="no" as a DOM serializer does
+      outputStream.write(("<?xml version=\"1.0\" encoding=\"" + ENCODING
+          + "\" standalone=\"no\"?>\n").getBytes(ENCODING));
+      final XMLStreamWriter writer = createWriter(outputStream);
+      writer.writeComment(WARNING);
+      writeDatabaseStart(writer, database);
+      for (final Table table : database.getTables()) {
+        writeTable(writer, 1, table);
+      }
+      writeEndElement(writer, 0);
+      writer.writeCharacters("\n");
+      writer.close();
+    } catch (final IOException e) {
+      throw new IllegalStateException(e);
+    } catch (final XMLStreamException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private static void writeDatabaseStart(final XMLStreamWriter writer, final Database database)
+      throws XMLStreamException {
+    writeStartElement(writer, 0, "database", true, NAME, "deprecated", "package",
+        database.getDestinationPackage() == null ? null : database.getDestinationPackage()
+            .getFullyQualifiedPackageName());
+    writeOptionElement(writer, 1, "moduleName", database.getModuleName());
+    writeOptionElement(writer, 1, "repository", String.valueOf(database.isRepository()));
+    writeOptionElement(writer, 1, "service", String.valueOf(database.isService()));
+    writeOptionElement(writer, 1, "includeNonPortableAttributes",
+        String.valueOf(database.isIncludeNonPortableAttributes()));
+    writeOptionElement(writer, 1, "disableVersionFields",
+        String.valueOf(database.isDisableVersionFields()));
+    writeOptionElement(writer, 1, "disableGeneratedIdentifiers",
+        String.valueOf(database.isDisableGeneratedIdentifiers()));
+    writeOptionElement(writer, 1, "testAutomatically",
+        String.valueOf(database.isTestAutomatically()));
+  }
+
+  private static void writeEndElement(final XMLStreamWriter writer, final int depth)
+      throws XMLStreamException {
+    writer.writeCharacters("\n" + StringUtils.repeat(INDENT, depth));
+    writer.writeEndElement();
+  }
+
+  private static void writeForeignKeyElements(final XMLStreamWriter writer, final int depth,
+      final Set<ForeignKey> foreignKeys, final boolean exported) throws XMLStreamException {
+    for (final ForeignKey foreignKey : foreignKeys) {
+      writeStartElement(writer, depth, "foreign-key", true, FOREIGN_TABLE,
+          foreignKey.getForeignTableName(), NAME, foreignKey.getName(), ON_DELETE, foreignKey
+              .getOnDelete().getCode(), ON_UPDATE, foreignKey.getOnUpdate().getCode());
+
+      final String foreignSchemaName = foreignKey.getForeignSchemaName();
+      if (!DbreModelService.NO_SCHEMA_REQUIRED.equals(foreignSchemaName)) {
+        writeOptionElement(writer, depth + 1, "foreignSchemaName", foreignSchemaName);
+      }
+
+      writeOptionElement(writer, depth + 1, "exported", String.valueOf(exported));
+
+      for (final Reference reference : foreignKey.getReferences()) {
+        writeStartElement(writer, depth + 1, REFERENCE, false, FOREIGN,
+            reference.getForeignColumnName(), LOCAL, reference.getLocalColumnName());
+      }
+      writeEndElement(writer, depth);
+    }
+  }
+
+  private static void writeOptionElement(final XMLStreamWriter writer, final int depth,
+      final String key, final String value) throws XMLStreamException {
+    writeStartElement(writer, depth, "option", false, "key", key, "value",
+        StringUtils.defaultString(value));
+  }
+
+  /**
+   * Starts an element, on a new line unless it's the root element
+   * 
+   * @param writer the writer to write to (required)
+   * @param depth the nesting depth of the element
+   * @param name the name of the element
+   * @param hasChildren whether the element will have children, otherwise it
+   *            is written as an empty element
+   * @param attributes the element's attributes as alternating names and
+   *            values, in the (alphabetical) order a DOM serializer writes them;
+   *            attributes with a <code>null</code> value are omitted
+   * @throws XMLStreamException
+   */
+  private static void writeStartElement(final XMLStreamWriter writer, final int depth,
+      final String name, final boolean hasChildren, final String... attributes)
+      throws XMLStreamException {
+    if (depth > 0) {
+      writer.writeCharacters("\n" + StringUtils.repeat(INDENT, depth));
+    }
+    if (hasChildren) {
+      writer.writeStartElement(name);
+    } else {
+      writer.writeEmptyElement(name);
+    }
+    for (int i = 0; i < attributes.length; i += 2) {
+      if (attributes[i + 1] != null) {
+        writer.writeAttribute(attributes[i], attributes[i + 1]);
+      }
+    }
+  }
+
+  private static void writeTable(final XMLStreamWriter writer, final int depth, final Table table)
+      throws XMLStreamException {
+    final boolean hasChildren =
+        !table.getColumns().isEmpty() || !table.getImportedKeys().isEmpty()
+            || !table.getExportedKeys().isEmpty() || !table.getIndices().isEmpty();
+    final String schemaName = table.getSchema().getName();
+    writeStartElement(
+        writer,
+        depth,
+        "table",
+        hasChildren,
+        "alias",
+        DbreModelService.NO_SCHEMA_REQUIRED.equals(schemaName) ? null : schemaName,
+        DESCRIPTION,
+        StringUtils.isNotBlank(table.getDescription()) ? table.getDescription() : null,
+        NAME,
+        table.getName());
+    if (!hasChildren) {
+      return;
+    }
+
+    for (final Column column : table.getColumns()) {
+      writeStartElement(writer, depth + 1, "column", false, DESCRIPTION,
+          StringUtils.isNotBlank(column.getDescription()) ? column.getDescription() : null, NAME,
+          column.getName(), "primaryKey", String.valueOf(column.isPrimaryKey()), "required",
+          String.valueOf(column.isRequired()), "scale", String.valueOf(column.getScale()), "size",
+          String.valueOf(column.getColumnSize()), "type",
+          column.getDataType() + "," + column.getTypeName());
+    }
+
+    writeForeignKeyElements(writer, depth + 1, table.getImportedKeys(), false);
+    writeForeignKeyElements(writer, depth + 1, table.getExportedKeys(), true);
+
+    for (final Index index : table.getIndices()) {
+      final String indexType =
+          index.isUnique() ? IndexType.UNIQUE.name().toLowerCase() : IndexType.INDEX.name()
+              .toLowerCase();
+      writeStartElement(writer, depth + 1, indexType, !index.getColumns().isEmpty(), NAME,
+          index.getName());
+      if (!index.getColumns().isEmpty()) {
+        for (final IndexColumn indexColumn : index.getColumns()) {
+          writeStartElement(writer, depth + 2, indexType + "-column", false, NAME,
+              indexColumn.getName());
+        }
+        writeEndElement(writer, depth + 1);
+      }
+    }
+
+    writeEndElement(writer, depth);
+  }
 }
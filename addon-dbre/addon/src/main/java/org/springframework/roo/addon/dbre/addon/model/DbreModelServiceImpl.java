@@ -1,8 +1,10 @@
 package org.springframework.roo.addon.dbre.addon.model;
 
 import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.FileInputStream;
 import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
 import java.sql.Connection;
 import java.sql.DatabaseMetaData;
 import java.util.Collections;
@@ -252,9 +254,14 @@ public class DbreModelServiceImpl implements DbreModelService {
   }
 
   public void writeDatabase(final Database database) {
-    final Document document = DatabaseXmlUtils.getDatabaseDocument(database);
-    getFileManager().createOrUpdateTextFileIfRequired(getDbreXmlPath(),
-        XmlUtils.nodeToString(document), true);
+    final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+    DatabaseXmlUtils.writeDatabase(database, outputStream);
+    try {
+      getFileManager().createOrUpdateTextFileIfRequired(getDbreXmlPath(),
+          outputStream.toString("UTF-8"), true);
+    } catch (final UnsupportedEncodingException e) {
+      throw new IllegalStateException(e);
+    }
   }
 
   /**
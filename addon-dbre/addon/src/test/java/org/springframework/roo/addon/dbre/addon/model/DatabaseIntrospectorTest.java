@@ -0,0 +1,297 @@
+package org.springframework.roo.addon.dbre.addon.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit test of {@link DatabaseIntrospector}, against a {@link DatabaseMetaData}
+ * that answers from canned rows the way a driver would
+ *
+ * @since 2.0
+ */
+public class DatabaseIntrospectorTest {
+
+  /**
+   * Answers the metadata queries from the rows added to it, filtering them
+   * by the query's catalog, schema and table arguments. As with H2, a
+   * <code>null</code> table name given for keys and indices matches no rows.
+   */
+  private static class StubDatabaseMetaData implements InvocationHandler {
+
+    // key: query method name, value: rows
+    private final Map<String, List<Map<String, Object>>> rows =
+        new HashMap<String, List<Map<String, Object>>>();
+    private final List<List<Object>> queries = new ArrayList<List<Object>>();
+
+    /**
+     * Adds a row to the results of the given query
+     *
+     * @param query the name of the {@link DatabaseMetaData} method
+     * @param values alternating column names and values
+     */
+    void add(final String query, final Object... values) {
+      final Map<String, Object> row = new HashMap<String, Object>();
+      for (int i = 0; i < values.length; i += 2) {
+        row.put((String) values[i], values[i + 1]);
+      }
+      if (!rows.containsKey(query)) {
+        rows.put(query, new ArrayList<Map<String, Object>>());
+      }
+      rows.get(query).add(row);
+    }
+
+    void addTable(final String catalog, final String schema, final String table) {
+      add("getTables", "TABLE_CAT", catalog, "TABLE_SCHEM", schema, "TABLE_NAME", table);
+    }
+
+    void addColumn(final String catalog, final String schema, final String table,
+        final String column) {
+      add("getColumns", "TABLE_CAT", catalog, "TABLE_SCHEM", schema, "TABLE_NAME", table,
+          "COLUMN_NAME", column, "DATA_TYPE", Types.INTEGER, "TYPE_NAME", "INTEGER");
+    }
+
+    int count(final String query) {
+      int count = 0;
+      for (final List<Object> executed : queries) {
+        if (executed.get(0).equals(query)) {
+          count++;
+        }
+      }
+      return count;
+    }
+
+    public Object invoke(final Object proxy, final Method method, final Object[] args) {
+      final String name = method.getName();
+      if (name.startsWith("stores")) {
+        return false;
+      }
+      if ("getDatabaseProductName".equals(name)) {
+        return "Stub";
+      }
+      if (method.getReturnType() != ResultSet.class) {
+        throw new UnsupportedOperationException(name);
+      }
+
+      final List<Object> query = new ArrayList<Object>();
+      query.add(name);
+      query.addAll(Arrays.asList(args));
+      queries.add(query);
+
+      final List<Map<String, Object>> results = new ArrayList<Map<String, Object>>();
+      final List<Map<String, Object>> candidates = rows.get(name);
+      if (candidates != null) {
+        final String prefix =
+            "getExportedKeys".equals(name) ? "PK" : "getImportedKeys".equals(name) ? "FK" : "";
+        for (final Map<String, Object> row : candidates) {
+          if (matches(args[0], row.get(prefix + "TABLE_CAT"), false)
+              && matches(args[1], row.get(prefix + "TABLE_SCHEM"), true)
+              && matchesTable(name, args[2], row.get(prefix + "TABLE_NAME"))) {
+            results.add(row);
+          }
+        }
+      }
+      return resultSet(results);
+    }
+
+    private boolean matches(final Object argument, final Object value, final boolean pattern) {
+      // A database without schemas ignores the schema pattern
+      if (argument == null || pattern && value == null) {
+        return true;
+      }
+      return pattern ? like((String) value, (String) argument) : argument.equals(value);
+    }
+
+    private boolean matchesTable(final String query, final Object argument, final Object value) {
+      if ("getTables".equals(query) || "getColumns".equals(query)) {
+        return argument == null || like((String) value, (String) argument);
+      }
+      // Keys, indices and primary keys take a table name, not a pattern
+      return argument != null && argument.equals(value);
+    }
+
+    private boolean like(final String value, final String pattern) {
+      return value != null && value.matches(pattern.replace("%", ".*").replace("_", "."));
+    }
+  }
+
+  private static ResultSet resultSet(final List<Map<String, Object>> rows) {
+    final Iterator<Map<String, Object>> iterator = rows.iterator();
+    return (ResultSet) Proxy.newProxyInstance(ResultSet.class.getClassLoader(),
+        new Class<?>[] {ResultSet.class}, new InvocationHandler() {
+          private Map<String, Object> row;
+
+          public Object invoke(final Object proxy, final Method method, final Object[] args) {
+            final String name = method.getName();
+            if ("next".equals(name)) {
+              row = iterator.hasNext() ? iterator.next() : null;
+              return row != null;
+            }
+            if ("close".equals(name)) {
+              return null;
+            }
+            final Object value = row.get(args[0]);
+            if ("getString".equals(name)) {
+              return value == null ? null : value.toString();
+            }
+            if ("getInt".equals(name)) {
+              return value == null ? 0 : ((Number) value).intValue();
+            }
+            if ("getShort".equals(name)) {
+              return value == null ? (short) 0 : ((Number) value).shortValue();
+            }
+            if ("getBoolean".equals(name)) {
+              return value != null && (Boolean) value;
+            }
+            throw new UnsupportedOperationException(name);
+          }
+        });
+  }
+
+  private StubDatabaseMetaData metaData;
+
+  private Database createDatabase(final String... schemaNames) throws Exception {
+    final DatabaseMetaData databaseMetaData =
+        (DatabaseMetaData) Proxy.newProxyInstance(DatabaseMetaData.class.getClassLoader(),
+            new Class<?>[] {DatabaseMetaData.class}, metaData);
+    final Connection connection =
+        (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+            new Class<?>[] {Connection.class}, new InvocationHandler() {
+              public Object invoke(final Object proxy, final Method method, final Object[] args) {
+                return databaseMetaData;
+              }
+            });
+    final Set<Schema> schemas = new LinkedHashSet<Schema>();
+    for (final String schemaName : schemaNames) {
+      schemas.add(new Schema(schemaName));
+    }
+    return new DatabaseIntrospector(connection, schemas, false, null, null).createDatabase();
+  }
+
+  private Set<String> getColumnNames(final Table table) {
+    final Set<String> columnNames = new LinkedHashSet<String>();
+    for (final Column column : table.getColumns()) {
+      columnNames.add(column.getName());
+    }
+    return columnNames;
+  }
+
+  @Before
+  public void setUp() {
+    metaData = new StubDatabaseMetaData();
+  }
+
+  @Test
+  public void testColumnsAreReadInOneQueryAndRoutedToTheirTable() throws Exception {
+    // Set up: the first table's name, as a pattern, also matches the second
+    metaData.addTable("CAT", "S", "A_B");
+    metaData.addTable("CAT", "S", "AXB");
+    metaData.addColumn("CAT", "S", "A_B", "ID");
+    metaData.addColumn("CAT", "S", "AXB", "CODE");
+    metaData.addColumn("CAT", "S", "UNLISTED", "NAME");
+
+    // Invoke
+    final Database database = createDatabase("S");
+
+    // Check
+    assertEquals(1, metaData.count("getColumns"));
+    assertEquals(Collections.singleton("ID"), getColumnNames(database.getTable("A_B", "S")));
+    assertEquals(Collections.singleton("CODE"), getColumnNames(database.getTable("AXB", "S")));
+  }
+
+  @Test
+  public void testColumnsAreReadFromEachTablesOwnCatalog() throws Exception {
+    // Set up
+    metaData.addTable("CAT1", "S", "T");
+    metaData.addTable("CAT2", "S", "T");
+    metaData.addColumn("CAT1", "S", "T", "ID");
+    metaData.addColumn("CAT2", "S", "T", "OTHER");
+
+    // Invoke
+    final Database database = createDatabase("S");
+
+    // Check
+    assertEquals(2, metaData.count("getColumns"));
+    final Table table = database.getTable("T", "S");
+    assertEquals("CAT1", table.getCatalog());
+    assertEquals(Collections.singleton("ID"), getColumnNames(table));
+  }
+
+  @Test
+  public void testColumnsOfTablesWithoutASchemaAreRead() throws Exception {
+    // Set up
+    metaData.addTable("CAT", null, "T");
+    metaData.addColumn("CAT", null, "T", "ID");
+
+    // Invoke
+    final Database database = createDatabase(DbreModelService.NO_SCHEMA_REQUIRED);
+
+    // Check
+    assertEquals(Collections.singleton("ID"), getColumnNames(database.getTable("T",
+        DbreModelService.NO_SCHEMA_REQUIRED)));
+  }
+
+  @Test
+  public void testKeysAndIndicesAreReadForEachTable() throws Exception {
+    // Set up
+    metaData.addTable("CAT", "S", "PARENT");
+    metaData.addTable("CAT", "S", "CHILD");
+    metaData.addColumn("CAT", "S", "PARENT", "ID");
+    metaData.addColumn("CAT", "S", "CHILD", "ID");
+    metaData.addColumn("CAT", "S", "CHILD", "PARENT_ID");
+    metaData.add("getPrimaryKeys", "TABLE_CAT", "CAT", "TABLE_SCHEM", "S", "TABLE_NAME",
+        "PARENT", "COLUMN_NAME", "ID");
+    metaData.add("getPrimaryKeys", "TABLE_CAT", "CAT", "TABLE_SCHEM", "S", "TABLE_NAME",
+        "CHILD", "COLUMN_NAME", "ID");
+    final Object[] foreignKey =
+        {"PKTABLE_CAT", "CAT", "PKTABLE_SCHEM", "S", "PKTABLE_NAME", "PARENT", "PKCOLUMN_NAME",
+            "ID", "FKTABLE_CAT", "CAT", "FKTABLE_SCHEM", "S", "FKTABLE_NAME", "CHILD",
+            "FKCOLUMN_NAME", "PARENT_ID", "FK_NAME", "FK_CHILD_PARENT"};
+    metaData.add("getImportedKeys", foreignKey);
+    metaData.add("getExportedKeys", foreignKey);
+    metaData.add("getIndexInfo", "TABLE_CAT", "CAT", "TABLE_SCHEM", "S", "TABLE_NAME", "CHILD",
+        "INDEX_NAME", "IX_CHILD_PARENT", "COLUMN_NAME", "PARENT_ID", "NON_UNIQUE", true, "TYPE",
+        DatabaseMetaData.tableIndexOther);
+
+    // Invoke
+    final Database database = createDatabase("S");
+
+    // Check
+    final Table parent = database.getTable("PARENT", "S");
+    final Table child = database.getTable("CHILD", "S");
+    assertTrue(parent.findColumn("ID").isPrimaryKey());
+    assertTrue(child.findColumn("ID").isPrimaryKey());
+    assertFalse(child.findColumn("PARENT_ID").isPrimaryKey());
+    final ForeignKey importedKey = child.getImportedKey("FK_CHILD_PARENT");
+    assertNotNull(importedKey);
+    assertEquals(parent, importedKey.getForeignTable());
+    assertEquals(1, parent.getExportedKeys().size());
+    assertEquals("IX_CHILD_PARENT", child.getIndices().iterator().next().getName());
+    assertTrue(parent.getIndices().isEmpty());
+    for (final String query : Arrays.asList("getPrimaryKeys", "getImportedKeys",
+        "getExportedKeys", "getIndexInfo")) {
+      assertEquals(query, 2, metaData.count(query));
+    }
+  }
+}
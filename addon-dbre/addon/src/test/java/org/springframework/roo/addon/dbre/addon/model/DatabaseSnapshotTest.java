@@ -0,0 +1,145 @@
+package org.springframework.roo.addon.dbre.addon.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.sql.Types;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import org.junit.Test;
+
+/**
+ * Unit test of {@link DatabaseSnapshot}
+ *
+ * @since 2.0
+ */
+public class DatabaseSnapshotTest {
+
+  private static final String SCHEMA = "APP";
+
+  private static Table createTable(final String name, final String... columnNames) {
+    final Table table = new Table(name, new Schema(SCHEMA));
+    for (final String columnName : columnNames) {
+      table.addColumn(new Column(columnName, Types.INTEGER, "INTEGER", 10, 0));
+    }
+    return table;
+  }
+
+  private static Database createDatabase(final Table... tables) {
+    return new Database(new LinkedHashSet<Table>(Arrays.asList(tables)));
+  }
+
+  private static Database createOwnersAndPets() {
+    return createDatabase(createTable("OWNER", "ID"), createTable("PET", "ID", "OWNER_ID"),
+        createTable("VET", "ID"));
+  }
+
+  private static Set<String> getNames(final Set<Table> tables) {
+    final Set<String> names = new LinkedHashSet<String>();
+    for (final Table table : tables) {
+      names.add(table.getName());
+    }
+    return names;
+  }
+
+  private static Set<String> names(final String... names) {
+    return new LinkedHashSet<String>(Arrays.asList(names));
+  }
+
+  @Test
+  public void testEveryTableHasChangedWithoutAPreviousSnapshot() {
+    // Set up
+    final DatabaseSnapshot snapshot = new DatabaseSnapshot(createOwnersAndPets());
+
+    // Invoke
+    final Set<Table> changedTables = snapshot.getChangedTables(null);
+
+    // Check
+    assertEquals(names("OWNER", "PET", "VET"), getNames(changedTables));
+  }
+
+  @Test
+  public void testNoTableHasChangedInAnEqualDatabase() {
+    // Set up
+    final DatabaseSnapshot previous = new DatabaseSnapshot(createOwnersAndPets());
+    final DatabaseSnapshot snapshot = new DatabaseSnapshot(createOwnersAndPets());
+
+    // Invoke
+    final Set<Table> changedTables = snapshot.getChangedTables(previous);
+
+    // Check
+    assertTrue(changedTables.isEmpty());
+  }
+
+  @Test
+  public void testOnlyTheTableWithANewColumnHasChanged() {
+    // Set up
+    final DatabaseSnapshot previous = new DatabaseSnapshot(createOwnersAndPets());
+    final DatabaseSnapshot snapshot =
+        new DatabaseSnapshot(createDatabase(createTable("OWNER", "ID"),
+            createTable("PET", "ID", "OWNER_ID", "NAME"), createTable("VET", "ID")));
+
+    // Invoke
+    final Set<Table> changedTables = snapshot.getChangedTables(previous);
+
+    // Check
+    assertEquals(names("PET"), getNames(changedTables));
+  }
+
+  @Test
+  public void testAnAddedTableHasChanged() {
+    // Set up
+    final DatabaseSnapshot previous = new DatabaseSnapshot(createOwnersAndPets());
+    final DatabaseSnapshot snapshot =
+        new DatabaseSnapshot(createDatabase(createTable("OWNER", "ID"),
+            createTable("PET", "ID", "OWNER_ID"), createTable("VET", "ID"),
+            createTable("VISIT", "ID")));
+
+    // Invoke
+    final Set<Table> changedTables = snapshot.getChangedTables(previous);
+
+    // Check
+    assertEquals(names("VISIT"), getNames(changedTables));
+  }
+
+  @Test
+  public void testANewForeignKeyChangesBothOfItsTables() {
+    // Set up
+    final DatabaseSnapshot previous = new DatabaseSnapshot(createOwnersAndPets());
+    final Table owner = createTable("OWNER", "ID");
+    final Table pet = createTable("PET", "ID", "OWNER_ID");
+    final ForeignKey importedKey = new ForeignKey("FK_PET_OWNER", "OWNER");
+    importedKey.setForeignSchemaName(SCHEMA);
+    importedKey.addReference(new Reference("OWNER_ID", "ID"));
+    pet.addImportedKey(importedKey);
+    final ForeignKey exportedKey = new ForeignKey("FK_PET_OWNER", "PET");
+    exportedKey.setForeignSchemaName(SCHEMA);
+    exportedKey.addReference(new Reference("ID", "OWNER_ID"));
+    owner.addExportedKey(exportedKey);
+    final DatabaseSnapshot snapshot =
+        new DatabaseSnapshot(createDatabase(owner, pet, createTable("VET", "ID")));
+
+    // Invoke
+    final Set<Table> changedTables = snapshot.getChangedTables(previous);
+
+    // Check
+    assertEquals(names("OWNER", "PET"), getNames(changedTables));
+  }
+
+  @Test
+  public void testEveryTableHasChangedWhenTheOptionsHave() {
+    // Set up
+    final DatabaseSnapshot previous = new DatabaseSnapshot(createOwnersAndPets());
+    final Database database = createOwnersAndPets();
+    database.setRepository(true);
+    final DatabaseSnapshot snapshot = new DatabaseSnapshot(database);
+
+    // Invoke
+    final Set<Table> changedTables = snapshot.getChangedTables(previous);
+
+    // Check
+    assertEquals(names("OWNER", "PET", "VET"), getNames(changedTables));
+  }
+}
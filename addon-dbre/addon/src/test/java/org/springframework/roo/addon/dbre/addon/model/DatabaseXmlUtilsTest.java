@@ -0,0 +1,240 @@
+package org.springframework.roo.addon.dbre.addon.model;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.sql.Types;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import org.apache.commons.lang3.StringUtils;
+import org.junit.Test;
+import org.springframework.roo.model.JavaPackage;
+import org.springframework.roo.support.util.XmlUtils;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+/**
+ * Unit test of {@link DatabaseXmlUtils}
+ *
+ * @since 2.0
+ */
+public class DatabaseXmlUtilsTest {
+
+  private static final String SCHEMA = "APP";
+
+  /**
+   * Builds the DOM that DBRE wrote its XML file from before the file was
+   * streamed; {@link DatabaseXmlUtils#writeDatabase} must produce the same
+   * text as serializing this document.
+   */
+  private static Document getDatabaseDocument(final Database database) {
+    final Document document = XmlUtils.getDocumentBuilder().newDocument();
+    document.appendChild(document
+        .createComment("WARNING: DO NOT EDIT THIS FILE. THIS FILE IS MANAGED BY SPRING ROO."));
+
+    final Element databaseElement = document.createElement("database");
+    databaseElement.setAttribute("name", "deprecated");
+    if (database.getDestinationPackage() != null) {
+      databaseElement.setAttribute("package", database.getDestinationPackage()
+          .getFullyQualifiedPackageName());
+    }
+    databaseElement.appendChild(createOptionElement(document, "moduleName",
+        database.getModuleName()));
+    databaseElement.appendChild(createOptionElement(document, "repository",
+        String.valueOf(database.isRepository())));
+    databaseElement.appendChild(createOptionElement(document, "service",
+        String.valueOf(database.isService())));
+    databaseElement.appendChild(createOptionElement(document, "includeNonPortableAttributes",
+        String.valueOf(database.isIncludeNonPortableAttributes())));
+    databaseElement.appendChild(createOptionElement(document, "disableVersionFields",
+        String.valueOf(database.isDisableVersionFields())));
+    databaseElement.appendChild(createOptionElement(document, "disableGeneratedIdentifiers",
+        String.valueOf(database.isDisableGeneratedIdentifiers())));
+    databaseElement.appendChild(createOptionElement(document, "testAutomatically",
+        String.valueOf(database.isTestAutomatically())));
+
+    for (final Table table : database.getTables()) {
+      final Element tableElement = document.createElement("table");
+      tableElement.setAttribute("name", table.getName());
+      final String schemaName = table.getSchema().getName();
+      if (!DbreModelService.NO_SCHEMA_REQUIRED.equals(schemaName)) {
+        tableElement.setAttribute("alias", schemaName);
+      }
+      if (StringUtils.isNotBlank(table.getDescription())) {
+        tableElement.setAttribute("description", table.getDescription());
+      }
+
+      for (final Column column : table.getColumns()) {
+        final Element columnElement = document.createElement("column");
+        columnElement.setAttribute("name", column.getName());
+        if (StringUtils.isNotBlank(column.getDescription())) {
+          columnElement.setAttribute("description", column.getDescription());
+        }
+        columnElement.setAttribute("primaryKey", String.valueOf(column.isPrimaryKey()));
+        columnElement.setAttribute("required", String.valueOf(column.isRequired()));
+        columnElement.setAttribute("size", String.valueOf(column.getColumnSize()));
+        columnElement.setAttribute("scale", String.valueOf(column.getScale()));
+        columnElement.setAttribute("type", column.getDataType() + "," + column.getTypeName());
+        tableElement.appendChild(columnElement);
+      }
+
+      addForeignKeyElements(document, tableElement, table.getImportedKeys(), false);
+      addForeignKeyElements(document, tableElement, table.getExportedKeys(), true);
+
+      for (final Index index : table.getIndices()) {
+        final String indexType = index.isUnique() ? "unique" : "index";
+        final Element indexElement = document.createElement(indexType);
+        indexElement.setAttribute("name", index.getName());
+        for (final IndexColumn indexColumn : index.getColumns()) {
+          final Element indexColumnElement = document.createElement(indexType + "-column");
+          indexColumnElement.setAttribute("name", indexColumn.getName());
+          indexElement.appendChild(indexColumnElement);
+        }
+        tableElement.appendChild(indexElement);
+      }
+
+      databaseElement.appendChild(tableElement);
+    }
+
+    document.appendChild(databaseElement);
+    return document;
+  }
+
+  private static void addForeignKeyElements(final Document document, final Element tableElement,
+      final Set<ForeignKey> foreignKeys, final boolean exported) {
+    for (final ForeignKey foreignKey : foreignKeys) {
+      final Element foreignKeyElement = document.createElement("foreign-key");
+      foreignKeyElement.setAttribute("name", foreignKey.getName());
+      foreignKeyElement.setAttribute("foreignTable", foreignKey.getForeignTableName());
+      foreignKeyElement.setAttribute("onDelete", foreignKey.getOnDelete().getCode());
+      foreignKeyElement.setAttribute("onUpdate", foreignKey.getOnUpdate().getCode());
+      if (!DbreModelService.NO_SCHEMA_REQUIRED.equals(foreignKey.getForeignSchemaName())) {
+        foreignKeyElement.appendChild(createOptionElement(document, "foreignSchemaName",
+            foreignKey.getForeignSchemaName()));
+      }
+      foreignKeyElement.appendChild(createOptionElement(document, "exported",
+          String.valueOf(exported)));
+      for (final Reference reference : foreignKey.getReferences()) {
+        final Element referenceElement = document.createElement("reference");
+        referenceElement.setAttribute("foreign", reference.getForeignColumnName());
+        referenceElement.setAttribute("local", reference.getLocalColumnName());
+        foreignKeyElement.appendChild(referenceElement);
+      }
+      tableElement.appendChild(foreignKeyElement);
+    }
+  }
+
+  private static Element createOptionElement(final Document document, final String key,
+      final String value) {
+    final Element option = document.createElement("option");
+    option.setAttribute("key", key);
+    option.setAttribute("value", value);
+    return option;
+  }
+
+  private static Column createColumn(final String name, final boolean primaryKey) {
+    final Column column = new Column(name, Types.VARCHAR, "VARCHAR", 255, 0);
+    column.setPrimaryKey(primaryKey);
+    column.setRequired(primaryKey);
+    return column;
+  }
+
+  private static ForeignKey createForeignKey(final String name, final String foreignTable,
+      final String foreignSchema, final String localColumn, final String foreignColumn) {
+    final ForeignKey foreignKey = new ForeignKey(name, foreignTable);
+    foreignKey.setForeignSchemaName(foreignSchema);
+    foreignKey.addReference(new Reference(localColumn, foreignColumn));
+    return foreignKey;
+  }
+
+  private static Database createDatabase() {
+    final Table owner = new Table("OWNER", new Schema(SCHEMA));
+    owner.setDescription("Owners & <their> \"pets\" – café");
+    owner.addColumn(createColumn("ID", true));
+    final Column name = createColumn("NAME", false);
+    name.setDescription("Nom complet");
+    owner.addColumn(name);
+    final Index uniqueName = new Index("UQ_OWNER_NAME");
+    uniqueName.setUnique(true);
+    uniqueName.addColumn(new IndexColumn("NAME"));
+    owner.addIndex(uniqueName);
+
+    final Table pet = new Table("PET", new Schema(SCHEMA));
+    pet.addColumn(createColumn("ID", true));
+    pet.addColumn(createColumn("OWNER_ID", false));
+    final ForeignKey petOwner = createForeignKey("FK_PET_OWNER", "OWNER", SCHEMA, "OWNER_ID", "ID");
+    petOwner.setOnDelete(CascadeAction.CASCADE);
+    pet.addImportedKey(petOwner);
+    owner.addExportedKey(createForeignKey("FK_PET_OWNER", "PET", SCHEMA, "ID", "OWNER_ID"));
+    final Index ownerIndex = new Index("IX_PET_OWNER");
+    ownerIndex.addColumn(new IndexColumn("OWNER_ID"));
+    pet.addIndex(ownerIndex);
+    pet.addIndex(new Index("IX_EMPTY"));
+
+    final Table audit = new Table("AUDIT", new Schema(DbreModelService.NO_SCHEMA_REQUIRED));
+    final Table empty = new Table("EMPTY", new Schema(SCHEMA));
+
+    final Set<Table> tables = new LinkedHashSet<Table>();
+    tables.add(owner);
+    tables.add(pet);
+    tables.add(audit);
+    tables.add(empty);
+    return new Database(tables);
+  }
+
+  private static String write(final Database database) throws Exception {
+    final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+    DatabaseXmlUtils.writeDatabase(database, outputStream);
+    return outputStream.toString("UTF-8");
+  }
+
+  @Test
+  public void testWriteDatabaseMatchesTheDomSerialization() throws Exception {
+    // Set up
+    final Database database = createDatabase();
+    database.setModuleName("core");
+    database.setDestinationPackage(new JavaPackage("com.example.petclinic"));
+    database.setRepository(true);
+    database.setDisableVersionFields(true);
+
+    // Invoke
+    final String xml = write(database);
+
+    // Check
+    assertEquals(XmlUtils.nodeToString(getDatabaseDocument(database)), xml);
+  }
+
+  @Test
+  public void testWriteDatabaseWithDefaultOptionsMatchesTheDomSerialization() throws Exception {
+    // Set up
+    final Database database = createDatabase();
+    database.setModuleName("");
+
+    // Invoke
+    final String xml = write(database);
+
+    // Check
+    assertEquals(XmlUtils.nodeToString(getDatabaseDocument(database)), xml);
+  }
+
+  @Test
+  public void testWrittenDatabaseIsReadBack() throws Exception {
+    // Set up
+    final Database database = createDatabase();
+    database.setModuleName("core");
+    database.setService(true);
+    final String xml = write(database);
+
+    // Invoke
+    final Database read =
+        DatabaseXmlUtils.readDatabase(new ByteArrayInputStream(xml.getBytes("UTF-8")));
+
+    // Check
+    assertEquals(database.getTables(), read.getTables());
+    assertEquals("core", read.getModuleName());
+    assertEquals(true, read.isService());
+    assertEquals(xml, write(read));
+  }
+}
@@ -1,12 +1,13 @@
 package org.springframework.roo.addon.web.mvc.jsp.roundtrip;
 
-import java.io.File;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 
-import org.apache.commons.codec.digest.DigestUtils;
-import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.Validate;
 import org.apache.felix.scr.annotations.Component;
 import org.apache.felix.scr.annotations.Reference;
@@ -27,39 +28,64 @@ import org.w3c.dom.Document;
 @Service
 public class DefaultXmlRoundTripFileManager implements XmlRoundTripFileManager {
 
+  /**
+   * The contents of a file and of the document last proposed for it
+   */
+  private static class RoundTrip {
+
+    private final byte[] original;
+    private final String proposed;
+
+    RoundTrip(final byte[] original, final String proposed) {
+      this.original = original;
+      this.proposed = proposed;
+    }
+
+    boolean isFor(final byte[] original, final String proposed) {
+      return this.proposed.equals(proposed) && Arrays.equals(this.original, original);
+    }
+  }
+
   @Reference
   private FileManager fileManager;
-  private final Map<String, String> fileContentsMap = new HashMap<String, String>();
+  // key: file name, value: the last round trip of that file
+  private final Map<String, RoundTrip> lastRoundTrips = new HashMap<String, RoundTrip>();
 
   public void writeToDiskIfNecessary(final String filename, final Document proposed) {
     Validate.notNull(filename, "The file name is required");
     Validate.notNull(proposed, "The proposed document is required");
     if (fileManager.exists(filename)) {
       final String proposedContents = XmlUtils.nodeToString(proposed);
+      final byte[] originalContents;
+      final InputStream inputStream = fileManager.getInputStream(filename);
       try {
-        final String contents = FileUtils.readFileToString(new File(filename)) + proposedContents;
-        final String contentsSha = DigestUtils.shaHex(contents);
-        final String lastContents = fileContentsMap.get(filename);
-        if (lastContents != null && contentsSha.equals(lastContents)) {
-          return;
-        }
-        fileContentsMap.put(filename, contentsSha);
-      } catch (final IOException ignored) {
+        originalContents = IOUtils.toByteArray(inputStream);
+      } catch (final IOException e) {
+        throw new IllegalStateException("Failed to read " + filename + " : " + e.getMessage());
+      } finally {
+        IOUtils.closeQuietly(inputStream);
+      }
+      final RoundTrip lastRoundTrip = lastRoundTrips.get(filename);
+      if (lastRoundTrip != null && lastRoundTrip.isFor(originalContents, proposedContents)) {
+        return;
       }
       try {
-        final Document original = XmlUtils.readXml(fileManager.getInputStream(filename));
+        final Document original = XmlUtils.readXml(new ByteArrayInputStream(originalContents));
         if (XmlRoundTripUtils.compareDocuments(original, proposed)) {
           DomUtils.removeTextNodes(original);
           final String updateContents = XmlUtils.nodeToString(original);
           fileManager.createOrUpdateTextFileIfRequired(filename, updateContents, false);
+          // The file manager now returns the updated contents
+          lastRoundTrips.put(filename, new RoundTrip(updateContents.getBytes(), proposedContents));
+        } else {
+          lastRoundTrips.put(filename, new RoundTrip(originalContents, proposedContents));
         }
       } catch (final Exception e) {
         throw new IllegalStateException("Failed to write " + filename + " : " + e.getMessage());
       }
     } else {
       final String contents = XmlUtils.nodeToString(proposed);
-      final String contentsSha = DigestUtils.shaHex(contents + contents);
-      fileContentsMap.put(filename, contentsSha);
+      lastRoundTrips.put(filename, new RoundTrip(contents.getBytes(), contents));
       fileManager.createOrUpdateTextFileIfRequired(filename, contents, false);
     }
   }
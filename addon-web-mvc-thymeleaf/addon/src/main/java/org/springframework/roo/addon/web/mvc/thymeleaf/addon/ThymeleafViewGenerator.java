@@ -1,7 +1,9 @@
 package org.springframework.roo.addon.web.mvc.thymeleaf.addon;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.apache.commons.lang3.StringUtils;
 import org.apache.felix.scr.annotations.Component;
@@ -71,37 +73,103 @@ public class ThymeleafViewGenerator extends AbstractFreeMarkerViewGenerationServ
     return Jsoup.parse(content, "", Parser.xmlParser());
   }
 
+  /**
+   * Indexes the given element and its descendants by id, keeping the first
+   * element in document order for each id
+   * 
+   * @param index the index to add to
+   * @param root the element to index
+   */
+  private static void addToIndex(final Map<String, Element> index, final Element root) {
+    for (final Element element : root.getAllElements()) {
+      final String id = element.id();
+      if (StringUtils.isNotEmpty(id) && !index.containsKey(id)) {
+        index.put(id, element);
+      }
+    }
+  }
+
+  private static void removeFromIndex(final Map<String, Element> index, final Element root) {
+    for (final Element element : root.getAllElements()) {
+      if (index.get(element.id()) == element) {
+        index.remove(element.id());
+      }
+    }
+  }
+
+  /**
+   * Replaces the given existing element with a copy of the given new one,
+   * unless they're already the same
+   * 
+   * @param existingElement the element to replace
+   * @param newElement the element to copy
+   * @param existingIndex the index of the existing document to update (can
+   *            be <code>null</code>)
+   * @return whether the element was replaced
+   */
+  private static boolean replace(final Element existingElement, final Element newElement,
+      final Map<String, Element> existingIndex) {
+    if (existingElement.outerHtml().equals(newElement.outerHtml())) {
+      return false;
+    }
+    final Element replacement = newElement.clone();
+    if (existingIndex != null) {
+      removeFromIndex(existingIndex, existingElement);
+    }
+    existingElement.replaceWith(replacement);
+    if (existingIndex != null) {
+      // Ids that were only in the replaced element are now gone, while the
+      // replacement's ids take precedence over any later duplicates
+      final Map<String, Element> replacementIndex = new HashMap<String, Element>();
+      addToIndex(replacementIndex, replacement);
+      existingIndex.putAll(replacementIndex);
+    }
+    return true;
+  }
+
   @Override
   public Document merge(Document existingDoc, Document newDoc, List<String> requiredIds) {
     List<Element> elementsNotFound = new ArrayList<Element>();
     Element existingParent = null;
     String existingSiblingId = null;
+    boolean changed = false;
+
+    // Index both documents by id once, rather than searching them for each id
+    final Map<String, Element> newIndex = new HashMap<String, Element>();
+    addToIndex(newIndex, newDoc);
 
     // Clean non user-managed elements
     for (Element existingElement : existingDoc.select("[data-z]")) {
+      if (existingElement.ownerDocument() == null) {
+        // Inside an element that has already been replaced
+        continue;
+      }
       if (existingElement.hasAttr("id") && !existingElement.attr("data-z").equals("user-managed")) {
-        final Element newElement = newDoc.select("#" + existingElement.attr("id")).first();
+        final Element newElement = newIndex.get(existingElement.attr("id"));
         if (newElement != null) {
-          existingElement.replaceWith(newElement.clone());
+          changed |= replace(existingElement, newElement, null);
         }
       }
     }
 
     if (requiredIds == null) {
-      return existingDoc;
+      return changed ? existingDoc : null;
     }
 
+    final Map<String, Element> existingIndex = new HashMap<String, Element>();
+    addToIndex(existingIndex, existingDoc);
+
     // Include required elements
     for (String id : requiredIds) {
 
       // Required element does not exist
-      final Element newElement = newDoc.select("#" + id).first();
+      final Element newElement = newIndex.get(id);
       if (newElement == null) {
         continue;
       }
 
       // Check if required element exists in the existing doc
-      Element existingElement = existingDoc.select("#" + id).first();
+      Element existingElement = existingIndex.get(id);
       if (existingElement == null) {
 
         // Required element not found
@@ -111,15 +179,19 @@ public class ThymeleafViewGenerator extends AbstractFreeMarkerViewGenerationServ
         // Check if element is user-managed
         if (!existingElement.hasAttr("data-z")
             || !existingElement.attr("data-z").equals("user-managed")) {
-          existingElement.replaceWith(newElement.clone());
+          changed |= replace(existingElement, newElement, existingIndex);
         }
         existingSiblingId = id;
       }
     }
 
+    if (elementsNotFound.isEmpty()) {
+      return changed ? existingDoc : null;
+    }
+
     // Find a parent element to include non-found elements as children
     if (existingSiblingId == null) {
-      existingParent = existingDoc.select("#containerFields").first();
+      existingParent = existingIndex.get("containerFields");
     }
 
     // Include element not found
@@ -127,7 +199,7 @@ public class ThymeleafViewGenerator extends AbstractFreeMarkerViewGenerationServ
 
       if (existingSiblingId != null) {
         // Add sibling
-        existingDoc.select("#" + existingSiblingId).first().after(elementNotFound.clone());
+        existingIndex.get(existingSiblingId).after(elementNotFound.clone());
         continue;
       }
 
@@ -139,7 +211,7 @@ public class ThymeleafViewGenerator extends AbstractFreeMarkerViewGenerationServ
           if (!parent.hasAttr("id")) {
             parent = parent.parent();
           } else {
-            existingParent = existingDoc.select("#" + parent.attr("id")).first();
+            existingParent = existingIndex.get(parent.attr("id"));
             if (existingParent != null) {
               break;
             }
@@ -0,0 +1,162 @@
+package org.springframework.roo.addon.web.mvc.thymeleaf.addon;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.anyBoolean;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.contains;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.jsoup.nodes.Document;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.roo.process.manager.FileManager;
+
+/**
+ * Unit test of {@link ThymeleafViewGenerator}'s merging and writing of views
+ *
+ * @since 2.0
+ */
+public class ThymeleafViewGeneratorTest {
+
+  private static final String VIEW_PATH = "/templates/owners/list.html";
+
+  // Fixture
+  private FileManager fileManager;
+  private ThymeleafViewGenerator generator;
+
+  private static String page(final String... elements) {
+    final StringBuilder page = new StringBuilder("<html><body><div id=\"containerFields\">");
+    for (final String element : elements) {
+      page.append(element);
+    }
+    return page.append("</div></body></html>").toString();
+  }
+
+  private Document merge(final String existing, final String generated,
+      final List<String> requiredIds) {
+    return generator.merge(generator.parse(existing), generator.parse(generated), requiredIds);
+  }
+
+  @Before
+  public void setUp() {
+    fileManager = mock(FileManager.class);
+    generator = new ThymeleafViewGenerator() {
+      @Override
+      public FileManager getFileManager() {
+        return fileManager;
+      }
+    };
+  }
+
+  @Test
+  public void testMergeReplacesGeneratedElements() {
+    // Set up
+    final String existing =
+        page("<span id=\"name\" data-z=\"1a2b\">Name</span>",
+            "<span id=\"email\" data-z=\"3c4d\">Email</span>");
+    final String generated =
+        page("<span id=\"name\" data-z=\"5e6f\">Full name</span>",
+            "<span id=\"email\" data-z=\"3c4d\">Email</span>");
+
+    // Invoke
+    final Document merged = merge(existing, generated, null);
+
+    // Check
+    assertNotNull(merged);
+    assertEquals("Full name", merged.getElementById("name").text());
+    assertEquals("5e6f", merged.getElementById("name").attr("data-z"));
+    assertEquals(1, merged.select("#name").size());
+    assertEquals("Email", merged.getElementById("email").text());
+  }
+
+  @Test
+  public void testMergeAddsMissingRequiredElementsAfterTheLastFoundOne() {
+    // Set up
+    final String existing = page("<span id=\"name\" data-z=\"1a2b\">Name</span>");
+    final String generated =
+        page("<span id=\"name\" data-z=\"1a2b\">Name</span>",
+            "<span id=\"email\" data-z=\"3c4d\">Email</span>");
+
+    // Invoke
+    final Document merged = merge(existing, generated, Arrays.asList("name", "email"));
+
+    // Check
+    assertNotNull(merged);
+    assertEquals("email", merged.getElementById("name").nextElementSibling().id());
+  }
+
+  @Test
+  public void testMergeKeepsUserManagedElements() {
+    // Set up
+    final String existing =
+        page("<span id=\"name\" data-z=\"user-managed\">My own name</span>",
+            "<span id=\"email\" data-z=\"3c4d\">Email</span>");
+    final String generated =
+        page("<span id=\"name\" data-z=\"5e6f\">Full name</span>",
+            "<span id=\"email\" data-z=\"7a8b\">E-mail</span>");
+
+    // Invoke
+    final Document merged = merge(existing, generated, Arrays.asList("name", "email"));
+
+    // Check
+    assertNotNull(merged);
+    assertEquals("My own name", merged.getElementById("name").text());
+    assertEquals("user-managed", merged.getElementById("name").attr("data-z"));
+    assertEquals("E-mail", merged.getElementById("email").text());
+  }
+
+  @Test
+  public void testMergeOfOnlyUserManagedChangesIsANoOp() {
+    // Set up
+    final String existing = page("<span id=\"name\" data-z=\"user-managed\">My own name</span>");
+    final String generated = page("<span id=\"name\" data-z=\"5e6f\">Full name</span>");
+
+    // Invoke
+    final Document merged = merge(existing, generated, Arrays.asList("name"));
+
+    // Check
+    assertNull(merged);
+  }
+
+  @Test
+  public void testNoOpMergeIsNotWritten() {
+    // Set up
+    final String page =
+        page("<span id=\"name\" data-z=\"1a2b\">Name</span>",
+            "<span id=\"email\" data-z=\"3c4d\">Email</span>");
+
+    // Invoke
+    final Document merged = merge(page, page, Arrays.asList("name", "email"));
+    generator.writeDoc(merged, VIEW_PATH);
+
+    // Check
+    assertNull(merged);
+    verify(fileManager, never()).createOrUpdateTextFileIfRequired(anyString(), anyString(),
+        anyBoolean());
+  }
+
+  @Test
+  public void testChangedMergeIsWritten() {
+    // Set up
+    final String existing = page("<span id=\"name\" data-z=\"1a2b\">Name</span>");
+    final String generated = page("<span id=\"name\" data-z=\"5e6f\">Full name</span>");
+
+    // Invoke
+    final Document merged = merge(existing, generated, null);
+    generator.writeDoc(merged, VIEW_PATH);
+
+    // Check
+    assertTrue(merged.html().contains("Full name"));
+    verify(fileManager).createOrUpdateTextFileIfRequired(eq(VIEW_PATH), contains("Full name"),
+        eq(false));
+  }
+}
@@ -5,11 +5,17 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Calendar;
+import java.util.Collections;
 import java.util.Date;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Locale;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 import java.util.logging.Logger;
 
 import org.apache.commons.io.FileUtils;
@@ -66,25 +72,123 @@ public abstract class AbstractViewGenerationService<DOC> implements MVCViewGener
   private MemberDetailsScanner memberDetailsScanner;
   private I18nOperationsImpl i18nOperationsImpl;
 
+  // Renders, parses and merges views concurrently
+  private ForkJoinPool pool;
+
+  /**
+   * A view to generate, prepared on the calling thread so that rendering,
+   * parsing and merging it can be done on any thread. {@link #parse(String)},
+   * {@link #loadExistingDoc(String)} and {@link #merge(Object, Object, List)}
+   * must therefore be thread-safe.
+   */
+  private class ViewTask implements Callable<DOC> {
+
+    private final boolean exists;
+    private final Callable<DOC> processTask;
+    private final List<String> requiredIds;
+    private final String viewName;
+
+    ViewTask(final String templateName, final ViewContext ctx, final String viewName,
+        final List<String> requiredIds) {
+      this.processTask = getProcessTask(templateName, ctx);
+      this.viewName = viewName;
+      this.requiredIds = requiredIds;
+      // Check if new view to generate exists or not
+      this.exists = existsFile(viewName);
+    }
+
+    public DOC call() throws Exception {
+      final DOC newDoc = processTask.call();
+      if (exists) {
+        return merge(loadExistingDoc(viewName), newDoc, requiredIds);
+      }
+      return newDoc;
+    }
+  }
+
   // ------------ OSGi component attributes ----------------
   protected BundleContext context;
 
   protected void activate(final ComponentContext context) {
     this.context = context.getBundleContext();
+    pool = new ForkJoinPool();
+  }
+
+  protected void deactivate(final ComponentContext context) {
+    if (pool != null) {
+      pool.shutdown();
+      pool = null;
+    }
   }
 
   protected abstract DOC process(String templateName, ViewContext ctx);
 
+  /**
+   * Returns a task that processes the given template. Everything that depends
+   * on the given context or on other services is done before returning it, so
+   * that the task can be run on any thread while the context is reused.
+   * <p>
+   * By default, the template is processed on the calling thread.
+   * 
+   * @param templateName
+   * @param ctx
+   * @return a task returning the same document as
+   *         {@link #process(String, ViewContext)}
+   */
+  protected Callable<DOC> getProcessTask(String templateName, ViewContext ctx) {
+    final DOC doc = process(templateName, ctx);
+    return new Callable<DOC>() {
+      public DOC call() {
+        return doc;
+      }
+    };
+  }
+
   protected abstract DOC parse(String content);
 
+  /**
+   * Merges a newly generated view into the existing one
+   * 
+   * @param existingDoc the view as it currently is on disk
+   * @param newDoc the view as generated now
+   * @param requiredIds the ids of the generated elements to add to the
+   *            existing view if it lacks them (can be <code>null</code>)
+   * @return the merged view, or <code>null</code> if merging didn't change
+   *         the existing view, so that it needn't be written
+   */
   protected abstract DOC merge(DOC existingDoc, DOC newDoc, List<String> requiredIds);
 
   protected abstract String getTemplatesLocation();
 
+  /**
+   * Writes the given view to disk
+   * 
+   * @param document the view to write; nothing is written if it's
+   *            <code>null</code>
+   * @param viewPath the path to write it to
+   */
   protected abstract void writeDoc(DOC document, String viewPath);
 
+  @Override
+  public void addEntityViews(String moduleName, MemberDetails entityDetails, ViewContext ctx,
+      boolean readOnly) {
+    List<ViewTask> views = new ArrayList<ViewTask>();
+    views.add(prepareListView(moduleName, entityDetails, ctx));
+    views.add(prepareShowView(moduleName, entityDetails, ctx));
+    if (!readOnly) {
+      views.add(prepareCreateView(moduleName, entityDetails, ctx));
+      views.add(prepareUpdateView(moduleName, entityDetails, ctx));
+    }
+    generate(views);
+  }
+
   @Override
   public void addListView(String moduleName, MemberDetails entityDetails, ViewContext ctx) {
+    generate(Collections.singletonList(prepareListView(moduleName, entityDetails, ctx)));
+  }
+
+  private ViewTask prepareListView(String moduleName, MemberDetails entityDetails,
+      ViewContext ctx) {
 
     // Getting entity fields that should be included on view
     List<FieldItem> fields = getFieldViewItems(entityDetails, ctx.getEntityName(), true, ctx);
@@ -93,27 +197,22 @@ public abstract class AbstractViewGenerationService<DOC> implements MVCViewGener
     ctx.addExtraParameter("fields", fields);
     ctx.addExtraParameter("details", details);
 
-    // Process elements to generate 
-    DOC newDoc = process("list", ctx);
-
     // Getting new viewName
     String viewName =
         getViewsFolder(moduleName).concat(ctx.getControllerPath()).concat("/").concat("/list")
             .concat(getViewsExtension());
 
-    // Check if new view to generate exists or not
-    if (existsFile(viewName)) {
-      newDoc =
-          merge(loadExistingDoc(viewName), newDoc, Arrays.asList(ctx.getEntityName() + "Table"));
-    }
-
-    // Write newDoc on disk
-    writeDoc(newDoc, viewName);
-
+    // Process elements to generate 
+    return new ViewTask("list", ctx, viewName, Arrays.asList(ctx.getEntityName() + "Table"));
   }
 
   @Override
   public void addShowView(String moduleName, MemberDetails entityDetails, ViewContext ctx) {
+    generate(Collections.singletonList(prepareShowView(moduleName, entityDetails, ctx)));
+  }
+
+  private ViewTask prepareShowView(String moduleName, MemberDetails entityDetails,
+      ViewContext ctx) {
 
     // Getting entity fields that should be included on view
     List<FieldItem> fields = getFieldViewItems(entityDetails, ctx.getEntityName(), false, ctx);
@@ -122,87 +221,75 @@ public abstract class AbstractViewGenerationService<DOC> implements MVCViewGener
     ctx.addExtraParameter("fields", fields);
     ctx.addExtraParameter("details", details);
 
-    // Process elements to generate 
-    DOC newDoc = process("show", ctx);
-
     // Getting new viewName
     String viewName =
         getViewsFolder(moduleName).concat(ctx.getControllerPath()).concat("/").concat("/show")
             .concat(getViewsExtension());
 
-    // Check if new view to generate exists or not
-    if (existsFile(viewName)) {
-
-      List<String> requiredIds = new ArrayList<String>();
-      for (FieldItem field : fields) {
-        requiredIds.add(field.getFieldName());
-      }
-      newDoc = merge(loadExistingDoc(viewName), newDoc, requiredIds);
+    // Generate ids to search when merge new and existing doc
+    List<String> requiredIds = new ArrayList<String>();
+    for (FieldItem field : fields) {
+      requiredIds.add(field.getFieldName());
     }
 
-    // Write newDoc on disk
-    writeDoc(newDoc, viewName);
-
+    // Process elements to generate 
+    return new ViewTask("show", ctx, viewName, requiredIds);
   }
 
   @Override
   public void addCreateView(String moduleName, MemberDetails entityDetails, ViewContext ctx) {
+    generate(Collections.singletonList(prepareCreateView(moduleName, entityDetails, ctx)));
+  }
+
+  private ViewTask prepareCreateView(String moduleName, MemberDetails entityDetails,
+      ViewContext ctx) {
 
     // Getting entity fields that should be included on view
     List<FieldItem> fields = getFieldViewItems(entityDetails, ctx.getEntityName(), false, ctx);
 
     ctx.addExtraParameter("fields", fields);
 
-    // Process elements to generate 
-    DOC newDoc = process("create", ctx);
-
     // Getting new viewName
     String viewName =
         getViewsFolder(moduleName).concat(ctx.getControllerPath()).concat("/").concat("/create")
             .concat(getViewsExtension());
 
-    // Check if new view to generate exists or not
-    if (existsFile(viewName)) {
-      List<String> requiredIds = new ArrayList<String>();
-      for (FieldItem field : fields) {
-        requiredIds.add(field.getFieldName());
-      }
-      newDoc = merge(loadExistingDoc(viewName), newDoc, requiredIds);
+    // Generate ids to search when merge new and existing doc
+    List<String> requiredIds = new ArrayList<String>();
+    for (FieldItem field : fields) {
+      requiredIds.add(field.getFieldName());
     }
 
-    // Write newDoc on disk
-    writeDoc(newDoc, viewName);
-
+    // Process elements to generate 
+    return new ViewTask("create", ctx, viewName, requiredIds);
   }
 
   @Override
   public void addUpdateView(String moduleName, MemberDetails entityDetails, ViewContext ctx) {
+    generate(Collections.singletonList(prepareUpdateView(moduleName, entityDetails, ctx)));
+  }
+
+  private ViewTask prepareUpdateView(String moduleName, MemberDetails entityDetails,
+      ViewContext ctx) {
 
     // Getting entity fields that should be included on view
     List<FieldItem> fields = getFieldViewItems(entityDetails, ctx.getEntityName(), false, ctx);
 
     ctx.addExtraParameter("fields", fields);
 
-    // Process elements to generate 
-    DOC newDoc = process("edit", ctx);
-
     // Getting new viewName
     String viewName =
         getViewsFolder(moduleName).concat(ctx.getControllerPath()).concat("/").concat("/edit")
             .concat(getViewsExtension());
 
-    // Check if new view to generate exists or not
-    if (existsFile(viewName)) {
-      List<String> requiredIds = new ArrayList<String>();
-      for (FieldItem field : fields) {
-        requiredIds.add(field.getFieldName());
-      }
-      newDoc = merge(loadExistingDoc(viewName), newDoc, requiredIds);
+    // Generate ids to search when merge new and existing doc
+    List<String> requiredIds = new ArrayList<String>();
+    for (FieldItem field : fields) {
+      requiredIds.add(field.getFieldName());
     }
 
-    // Write newDoc on disk
-    writeDoc(newDoc, viewName);
-
+    // Process elements to generate 
+    return new ViewTask("edit", ctx, viewName, requiredIds);
   }
 
   @Override
@@ -308,6 +395,10 @@ public abstract class AbstractViewGenerationService<DOC> implements MVCViewGener
 
   @Override
   public void addMenu(String moduleName, ViewContext ctx) {
+    generate(Collections.singletonList(prepareMenu(moduleName, ctx)));
+  }
+
+  private ViewTask prepareMenu(String moduleName, ViewContext ctx) {
     // First of all, generate a list of MenuEntries based on existing controllers
     List<MenuEntry> menuEntries = new ArrayList<MenuEntry>();
 
@@ -345,20 +436,11 @@ public abstract class AbstractViewGenerationService<DOC> implements MVCViewGener
       requiredIds.add(entry.getEntityName() + "Entry");
     }
 
-    // Process elements to generate 
-    DOC newDoc = process("fragments/menu", ctx);
-
     // Getting new viewName
     String viewName = getFragmentsFolder(moduleName).concat("/menu").concat(getViewsExtension());
 
-    // Check if new view to generate exists or not
-    if (existsFile(viewName)) {
-      newDoc = merge(loadExistingDoc(viewName), newDoc, requiredIds);
-    }
-
-    // Write newDoc on disk
-    writeDoc(newDoc, viewName);
-
+    // Process elements to generate 
+    return new ViewTask("fragments/menu", ctx, viewName, requiredIds);
   }
 
   @Override
@@ -418,14 +500,15 @@ public abstract class AbstractViewGenerationService<DOC> implements MVCViewGener
 
   @Override
   public void addLanguages(String moduleName, ViewContext ctx) {
+    generate(Collections.singletonList(prepareLanguages(moduleName, ctx)));
+  }
+
+  private ViewTask prepareLanguages(String moduleName, ViewContext ctx) {
 
     // Add installed languages
     List<I18n> installedLanguages = getI18nOperationsImpl().getInstalledLanguages(moduleName);
     ctx.addExtraParameter("languages", installedLanguages);
 
-    // Process elements to generate 
-    DOC newDoc = process("fragments/languages", ctx);
-
     // Getting new viewName
     String viewName =
         getFragmentsFolder(moduleName).concat("/languages").concat(getViewsExtension());
@@ -436,21 +519,71 @@ public abstract class AbstractViewGenerationService<DOC> implements MVCViewGener
       requiredIds.add(language.getLocale().getLanguage() + "Flag");
     }
 
-    // Check if new view to generate exists or not
-    if (existsFile(viewName)) {
-      newDoc = merge(loadExistingDoc(viewName), newDoc, requiredIds);
-    }
-
-    // Write newDoc on disk
-    writeDoc(newDoc, viewName);
+    // Process elements to generate 
+    return new ViewTask("fragments/languages", ctx, viewName, requiredIds);
   }
 
   @Override
   public void updateMenuView(String moduleName, ViewContext ctx) {
     // TODO: This method should update menu view with the new 
     // controller to include, instead of regenerate menu view page.
-    addMenu(moduleName, ctx);
-    addLanguages(moduleName, ctx);
+    List<ViewTask> views = new ArrayList<ViewTask>();
+    views.add(prepareMenu(moduleName, ctx));
+    views.add(prepareLanguages(moduleName, ctx));
+    generate(views);
+  }
+
+  /**
+   * Renders, parses and merges the given views, concurrently if possible, and
+   * writes each one as soon as it and the ones before it are done, so that
+   * they're written in the given order and from the calling thread
+   * 
+   * @param views the views to generate
+   */
+  private void generate(List<ViewTask> views) {
+    if (pool == null || views.size() < 2) {
+      for (ViewTask view : views) {
+        try {
+          writeDoc(view.call(), view.viewName);
+        } catch (RuntimeException e) {
+          throw e;
+        } catch (Exception e) {
+          throw new IllegalStateException(e);
+        }
+      }
+      return;
+    }
+
+    // Run each view as a FutureTask, which reports a view's exception as it
+    // was thrown; a task submitted to the pool reports a copy of it instead,
+    // with checked exceptions wrapped
+    List<Future<DOC>> futures = new ArrayList<Future<DOC>>(views.size());
+    for (ViewTask view : views) {
+      FutureTask<DOC> future = new FutureTask<DOC>(view);
+      pool.execute(future);
+      futures.add(future);
+    }
+    try {
+      for (int i = 0; i < views.size(); i++) {
+        writeDoc(futures.get(i).get(), views.get(i).viewName);
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException(e);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      if (e.getCause() instanceof Error) {
+        throw (Error) e.getCause();
+      }
+      throw new IllegalStateException(e.getCause());
+    } finally {
+      // Don't generate the remaining views if one of them failed
+      for (Future<DOC> future : futures) {
+        future.cancel(false);
+      }
+    }
   }
 
   @Override
@@ -152,21 +152,9 @@ public abstract class AbstractViewGeneratorMetadataProvider extends
     // Use provided MVCViewGenerationService to generate views
     MVCViewGenerationService viewGenerationService = getViewGenerationService();
 
-    // Add list view
-    viewGenerationService.addListView(this.controller.getType().getModule(), entityDetails, ctx);
-
-    // Add show view
-    viewGenerationService.addShowView(this.controller.getType().getModule(), entityDetails, ctx);
-
-    if (!readOnly) {
-      // If not readOnly, add create view
-      viewGenerationService
-          .addCreateView(this.controller.getType().getModule(), entityDetails, ctx);
-
-      // If not readOnly, add update view
-      viewGenerationService
-          .addUpdateView(this.controller.getType().getModule(), entityDetails, ctx);
-    }
+    // Add list and show views and, if not readOnly, create and update views
+    viewGenerationService.addEntityViews(this.controller.getType().getModule(), entityDetails,
+        ctx, readOnly);
 
     // Update menu view every time that new controller has been modified
     // TODO: Maybe, instead of modify all menu view, only new generated controller should
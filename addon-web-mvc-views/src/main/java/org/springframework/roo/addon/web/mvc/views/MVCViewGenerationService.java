@@ -56,6 +56,19 @@ public interface MVCViewGenerationService {
    */
   String getFragmentsFolder(String moduleName);
 
+  /**
+   * This operation will add the list and show views of an entity and, unless
+   * it's read only, its create and update views. The views are generated
+   * concurrently where possible, and written in that order.
+   * 
+   * @param moduleName module where views will be added
+   * @param entity Details of an entity to be able to generate views
+   * @param ctx ViewContext that contains necessary information about
+   *            the controller, the project, etc...
+   * @param readOnly whether the entity is read only
+   */
+  void addEntityViews(String moduleName, MemberDetails entity, ViewContext ctx, boolean readOnly);
+
   /**
    * This operation will add a list view using entityDetails 
    * and the provided context
@@ -1,6 +1,7 @@
 package org.springframework.roo.addon.web.mvc.views.template.engines;
 
 import java.io.File;
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.URL;
@@ -8,6 +9,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.concurrent.Callable;
 
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.io.output.StringBuilderWriter;
@@ -23,6 +25,9 @@ import org.springframework.roo.process.manager.FileManager;
 import org.springframework.roo.support.osgi.OSGiUtils;
 import org.springframework.roo.support.util.FileUtils;
 
+import freemarker.cache.ClassTemplateLoader;
+import freemarker.cache.FileTemplateLoader;
+import freemarker.cache.TemplateLoader;
 import freemarker.template.Configuration;
 import freemarker.template.Template;
 import freemarker.template.TemplateExceptionHandler;
@@ -35,6 +40,13 @@ public abstract class AbstractFreeMarkerViewGenerationService<DOC> extends
   @Reference
   FileManager fileManager;
 
+  // The configurations for the templates in this bundle and for the ones
+  // customized in the project, each kept for as long as this service so that
+  // every template is only compiled once (or once per change, if customized)
+  private Configuration bundleConfiguration;
+  private Configuration projectConfiguration;
+  private String projectTemplatesLocation;
+
   protected abstract Class<?> getResourceLoaderClass();
 
   protected boolean checkTemplates(String location, String templateName) {
@@ -42,25 +54,77 @@ public abstract class AbstractFreeMarkerViewGenerationService<DOC> extends
     return fileManager.exists(location.concat("/").concat(templateName).concat(".ftl"));
   }
 
-  protected DOC process(String templateName, ViewContext ctx) {
-    String content = "";
+  /**
+   * Creates a configuration that loads templates with the given loader. It is
+   * kept, along with the templates it caches, for as long as the loader's
+   * templates are used.
+   * 
+   * @param templateLoader the loader of either the bundle's or the project's
+   *            templates (required)
+   * @return a non-<code>null</code> configuration
+   */
+  protected Configuration createConfiguration(final TemplateLoader templateLoader) {
+    final Configuration cfg = new Configuration(new Version(2, 3, 23));
+    cfg.setTemplateExceptionHandler(TemplateExceptionHandler.RETHROW_HANDLER);
+    cfg.setTemplateLoader(templateLoader);
+    return cfg;
+  }
+
+  /**
+   * Returns the configuration from which to get the given template
+   * 
+   * @param templateName the name of the template, without extension
+   * @return a non-<code>null</code> configuration
+   * @throws IOException if the project's templates directory can't be used
+   */
+  private synchronized Configuration getConfiguration(final String templateName)
+      throws IOException {
+    final String templatesLocation = getTemplatesLocation();
+
+    // Check if exists some template. If not, use classpath to locate the template
+    if (checkTemplates(templatesLocation, templateName)) {
+      if (projectConfiguration == null || !templatesLocation.equals(projectTemplatesLocation)) {
+        projectConfiguration =
+            createConfiguration(new FileTemplateLoader(new File(templatesLocation)));
+        // Customized templates can be edited at any time, so check their
+        // modification time whenever they're used
+        projectConfiguration.setTemplateUpdateDelayMilliseconds(0);
+        projectTemplatesLocation = templatesLocation;
+      }
+      return projectConfiguration;
+    }
 
+    if (bundleConfiguration == null) {
+      bundleConfiguration =
+          createConfiguration(new ClassTemplateLoader(getResourceLoaderClass(), "templates"));
+      // The templates in the bundle never change
+      bundleConfiguration.setTemplateUpdateDelayMilliseconds(Long.MAX_VALUE);
+    }
+    return bundleConfiguration;
+  }
+
+  protected DOC process(String templateName, ViewContext ctx) {
     try {
+      return getProcessTask(templateName, ctx).call();
+    } catch (RuntimeException e) {
+      throw e;
+    } catch (Exception e) {
+      throw new IllegalStateException(e);
+    }
+  }
 
-      Configuration cfg = new Configuration(new Version(2, 3, 23));
-      cfg.setTemplateExceptionHandler(TemplateExceptionHandler.RETHROW_HANDLER);
+  /**
+   * Gets the template and its input on the calling thread, and leaves
+   * processing the template and parsing the result to the returned task
+   */
+  @Override
+  protected Callable<DOC> getProcessTask(final String templateName, ViewContext ctx) {
+    try {
 
-      // Check if exists some template. If not, use classpath to locate the template
-      if (checkTemplates(getTemplatesLocation(), templateName)) {
-        // Process using FreeMarker and setDirectoryForTemplateLoading
-        cfg.setDirectoryForTemplateLoading(new File(getTemplatesLocation()));
-      } else {
-        // Process using FreeMarker and setClassForTemplateLoading
-        cfg.setClassForTemplateLoading(getResourceLoaderClass(), "templates");
-      }
+      Configuration cfg = getConfiguration(templateName);
 
       // Prepare the template input:
-      Map<String, Object> input = new HashMap<String, Object>();
+      final Map<String, Object> input = new HashMap<String, Object>();
 
       // Getting project information from ViewContext
       input.put("projectName", ctx.getProjectName());
@@ -87,30 +151,44 @@ public abstract class AbstractFreeMarkerViewGenerationService<DOC> extends
         input.put(extraInformation.getKey(), extraInformation.getValue());
       }
 
-      Template template = cfg.getTemplate(templateName.concat(".ftl"));
-      StringBuilderWriter writer = new StringBuilderWriter();
-      template.process(input, writer);
-      writer.close();
+      final Template template = cfg.getTemplate(templateName.concat(".ftl"));
 
-      content = writer.toString();
+      return new Callable<DOC>() {
+        public DOC call() {
+          try {
+            StringBuilderWriter writer = new StringBuilderWriter();
+            template.process(input, writer);
+            writer.close();
 
-      if (StringUtils.isBlank(content)) {
-        throw new RuntimeException(String.format(
-            "ERROR: Error trying to generate final content from provided template '%s.ftl'",
-            templateName));
-      }
+            String content = writer.toString();
+
+            if (StringUtils.isBlank(content)) {
+              throw new RuntimeException(String.format(
+                  "ERROR: Error trying to generate final content from provided template '%s.ftl'",
+                  templateName));
+            }
+
+            return parse(content);
 
-      return parse(content);
+          } catch (Exception e) {
+            throw getProcessException(templateName, e);
+          }
+        }
+      };
 
     } catch (Exception e) {
-      throw new RuntimeException(
-          String.format(
-              "ERROR: Error trying to generate final content from provided template '%s.ftl'. You should provide a valid .ftl file",
-              templateName), e);
+      throw getProcessException(templateName, e);
     }
 
   }
 
+  private RuntimeException getProcessException(String templateName, Exception e) {
+    return new RuntimeException(
+        String.format(
+            "ERROR: Error trying to generate final content from provided template '%s.ftl'. You should provide a valid .ftl file",
+            templateName), e);
+  }
+
   /**
    * This method will copy the contents of a directory to another if the
    * resource does not already exist in the target directory
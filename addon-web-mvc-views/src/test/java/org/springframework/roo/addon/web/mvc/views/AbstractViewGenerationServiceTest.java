@@ -0,0 +1,265 @@
+package org.springframework.roo.addon.web.mvc.views;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.osgi.service.component.ComponentContext;
+import org.springframework.roo.addon.web.mvc.views.components.FieldItem;
+import org.springframework.roo.classpath.scanner.MemberDetails;
+
+/**
+ * Unit test of {@link AbstractViewGenerationService}'s rendering and writing
+ * of an entity's views, through a generator whose documents are strings
+ *
+ * @since 2.0
+ */
+public class AbstractViewGenerationServiceTest {
+
+  /**
+   * Renders each view as its template name and the names of the "fields" and
+   * "details" in its context, gathering a new list of each every time.
+   * Rendering can be delayed or made to fail per template.
+   */
+  private static class StubViewGenerationService extends AbstractViewGenerationService<String> {
+
+    private int detailsGathered;
+    private int fieldsGathered;
+    private final Map<String, Long> delays = new HashMap<String, Long>();
+    private final Map<String, Exception> failures = new HashMap<String, Exception>();
+    private final List<String> written = Collections.synchronizedList(new ArrayList<String>());
+    private final List<Thread> writingThreads = Collections
+        .synchronizedList(new ArrayList<Thread>());
+
+    private static String getNames(final Object fieldItems) {
+      final List<String> names = new ArrayList<String>();
+      if (fieldItems != null) {
+        for (final Object fieldItem : (List<?>) fieldItems) {
+          names.add(((FieldItem) fieldItem).getFieldName());
+        }
+      }
+      return names.toString();
+    }
+
+    @Override
+    protected List<FieldItem> getDetailsFieldViewItems(final MemberDetails entityDetails,
+        final String entityName, final ViewContext ctx) {
+      return Arrays.asList(new FieldItem("details" + ++detailsGathered, entityName));
+    }
+
+    @Override
+    protected List<FieldItem> getFieldViewItems(final MemberDetails entityDetails,
+        final String entityName, final boolean checkMaxFields, final ViewContext ctx) {
+      return Arrays.asList(new FieldItem("field" + ++fieldsGathered, entityName));
+    }
+
+    @Override
+    protected Callable<String> getProcessTask(final String templateName, final ViewContext ctx) {
+      final Callable<String> processTask = super.getProcessTask(templateName, ctx);
+      return new Callable<String>() {
+        public String call() throws Exception {
+          if (delays.containsKey(templateName)) {
+            Thread.sleep(delays.get(templateName));
+          }
+          if (failures.containsKey(templateName)) {
+            throw failures.get(templateName);
+          }
+          return processTask.call();
+        }
+      };
+    }
+
+    @Override
+    protected String process(final String templateName, final ViewContext ctx) {
+      return templateName + " fields=" + getNames(ctx.getExtraInformation().get("fields"))
+          + " details=" + getNames(ctx.getExtraInformation().get("details"));
+    }
+
+    @Override
+    protected boolean existsFile(final String viewPath) {
+      return false;
+    }
+
+    @Override
+    protected String parse(final String content) {
+      return content;
+    }
+
+    @Override
+    protected String merge(final String existingDoc, final String newDoc,
+        final List<String> requiredIds) {
+      return newDoc;
+    }
+
+    @Override
+    protected void writeDoc(final String document, final String viewPath) {
+      written.add(document);
+      writingThreads.add(Thread.currentThread());
+    }
+
+    @Override
+    protected String getTemplatesLocation() {
+      return "templates";
+    }
+
+    public String getName() {
+      return "STUB";
+    }
+
+    public String getViewsFolder(final String moduleName) {
+      return "views";
+    }
+
+    public String getViewsExtension() {
+      return ".html";
+    }
+
+    public String getLayoutsFolder(final String moduleName) {
+      return "views/layouts";
+    }
+
+    public String getFragmentsFolder(final String moduleName) {
+      return "views/fragments";
+    }
+
+    public void installTemplates() {}
+  }
+
+  private static final List<String> ENTITY_VIEWS = Arrays.asList(
+      "list fields=[field1] details=[details1]", "show fields=[field2] details=[details2]",
+      "create fields=[field3] details=[details2]", "edit fields=[field4] details=[details2]");
+
+  // Fixture
+  private ViewContext ctx;
+  private StubViewGenerationService service;
+
+  private void addEntityViews() {
+    service.addEntityViews("", mock(MemberDetails.class), ctx, false);
+  }
+
+  @Before
+  public void setUp() {
+    ctx = new ViewContext();
+    ctx.setControllerPath("/owners");
+    ctx.setEntityName("owner");
+    service = new StubViewGenerationService();
+    service.activate(mock(ComponentContext.class));
+  }
+
+  @After
+  public void tearDown() {
+    service.deactivate(null);
+  }
+
+  @Test
+  public void testEachViewIsRenderedWithItsOwnFieldsAndDetails() {
+    // Invoke
+    addEntityViews();
+
+    // Check
+    assertEquals(ENTITY_VIEWS, service.written);
+  }
+
+  @Test
+  public void testEachViewIsRenderedWithItsOwnFieldsAndDetailsWithoutAPool() {
+    // Set up
+    service.deactivate(null);
+
+    // Invoke
+    addEntityViews();
+
+    // Check
+    assertEquals(ENTITY_VIEWS, service.written);
+  }
+
+  @Test
+  public void testViewsAreWrittenInOrderFromTheCallingThread() {
+    // Set up: the earlier views take the longest to render
+    service.delays.put("list", 300L);
+    service.delays.put("show", 200L);
+    service.delays.put("create", 100L);
+
+    // Invoke
+    addEntityViews();
+
+    // Check
+    assertEquals(ENTITY_VIEWS, service.written);
+    for (final Thread thread : service.writingThreads) {
+      assertSame(Thread.currentThread(), thread);
+    }
+  }
+
+  @Test
+  public void testReadOnlyEntityOnlyHasListAndShowViews() {
+    // Invoke
+    service.addEntityViews("", mock(MemberDetails.class), ctx, true);
+
+    // Check
+    assertEquals(ENTITY_VIEWS.subList(0, 2), service.written);
+  }
+
+  @Test
+  public void testRuntimeExceptionIsPropagatedAndLaterViewsAreNotWritten() {
+    // Set up
+    final IllegalArgumentException failure = new IllegalArgumentException("Bad template");
+    service.failures.put("show", failure);
+
+    // Invoke
+    try {
+      addEntityViews();
+      fail("Expected " + failure);
+    } catch (final IllegalArgumentException e) {
+      // Check
+      assertSame(failure, e);
+    }
+    assertEquals(ENTITY_VIEWS.subList(0, 1), service.written);
+  }
+
+  @Test
+  public void testCheckedExceptionIsPropagatedAsItsCause() {
+    // Set up
+    final Exception failure = new Exception("Unreadable template");
+    service.failures.put("list", failure);
+
+    // Invoke
+    try {
+      addEntityViews();
+      fail("Expected " + failure);
+    } catch (final IllegalStateException e) {
+      // Check
+      assertSame(failure, e.getCause());
+    }
+    assertTrue(service.written.isEmpty());
+  }
+
+  @Test
+  public void testExceptionIsPropagatedWithoutAPool() {
+    // Set up
+    service.deactivate(null);
+    final IllegalArgumentException failure = new IllegalArgumentException("Bad template");
+    service.failures.put("create", failure);
+
+    // Invoke
+    try {
+      addEntityViews();
+      fail("Expected " + failure);
+    } catch (final IllegalArgumentException e) {
+      // Check
+      assertSame(failure, e);
+    }
+    assertEquals(ENTITY_VIEWS.subList(0, 2), service.written);
+  }
+}
@@ -0,0 +1,222 @@
+package org.springframework.roo.addon.web.mvc.views.template.engines;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.roo.addon.web.mvc.views.ViewContext;
+import org.springframework.roo.process.manager.FileManager;
+
+import freemarker.cache.TemplateLoader;
+import freemarker.template.Configuration;
+
+/**
+ * Unit test of {@link AbstractFreeMarkerViewGenerationService}'s loading of
+ * the bundle's and the project's templates
+ *
+ * @since 2.0
+ */
+public class AbstractFreeMarkerViewGenerationServiceTest {
+
+  /**
+   * Counts the times each template is read from its delegate
+   */
+  private static class CountingTemplateLoader implements TemplateLoader {
+
+    private final TemplateLoader delegate;
+    private final Map<String, Integer> loads;
+    private final Map<Object, String> names = new HashMap<Object, String>();
+
+    CountingTemplateLoader(final TemplateLoader delegate, final Map<String, Integer> loads) {
+      this.delegate = delegate;
+      this.loads = loads;
+    }
+
+    public Object findTemplateSource(final String name) throws IOException {
+      final Object templateSource = delegate.findTemplateSource(name);
+      if (templateSource != null) {
+        names.put(templateSource, name);
+      }
+      return templateSource;
+    }
+
+    public long getLastModified(final Object templateSource) {
+      return delegate.getLastModified(templateSource);
+    }
+
+    public Reader getReader(final Object templateSource, final String encoding)
+        throws IOException {
+      final String name = names.get(templateSource);
+      final Integer count = loads.get(name);
+      loads.put(name, count == null ? 1 : count + 1);
+      return delegate.getReader(templateSource, encoding);
+    }
+
+    public void closeTemplateSource(final Object templateSource) throws IOException {
+      delegate.closeTemplateSource(templateSource);
+    }
+  }
+
+  /**
+   * Renders views as strings, from the templates next to this test or in a
+   * temporary templates directory, counting the loads of each template
+   */
+  private static class StubFreeMarkerViewGenerationService extends
+      AbstractFreeMarkerViewGenerationService<String> {
+
+    private final Map<String, Integer> loads = new HashMap<String, Integer>();
+    private String templatesLocation;
+
+    @Override
+    protected Configuration createConfiguration(final TemplateLoader templateLoader) {
+      return super.createConfiguration(new CountingTemplateLoader(templateLoader, loads));
+    }
+
+    @Override
+    protected Class<?> getResourceLoaderClass() {
+      return AbstractFreeMarkerViewGenerationServiceTest.class;
+    }
+
+    @Override
+    protected String getTemplatesLocation() {
+      return templatesLocation;
+    }
+
+    @Override
+    protected String parse(final String content) {
+      return content.trim();
+    }
+
+    @Override
+    protected String merge(final String existingDoc, final String newDoc,
+        final List<String> requiredIds) {
+      return newDoc;
+    }
+
+    @Override
+    protected void writeDoc(final String document, final String viewPath) {}
+
+    public String getName() {
+      return "STUB";
+    }
+
+    public String getViewsFolder(final String moduleName) {
+      return "views";
+    }
+
+    public String getViewsExtension() {
+      return ".html";
+    }
+
+    public String getLayoutsFolder(final String moduleName) {
+      return "views/layouts";
+    }
+
+    public String getFragmentsFolder(final String moduleName) {
+      return "views/fragments";
+    }
+
+    public void installTemplates() {}
+  }
+
+  // Fixture
+  private ViewContext ctx;
+  private StubFreeMarkerViewGenerationService service;
+  private File templatesDirectory;
+
+  private File customizeTemplate(final String name, final String contents) throws IOException {
+    final File template = new File(templatesDirectory, name + ".ftl");
+    FileUtils.writeStringToFile(template, contents, "UTF-8");
+    when(service.fileManager.exists(service.templatesLocation + "/" + name + ".ftl")).thenReturn(
+        true);
+    return template;
+  }
+
+  private String render(final String templateName) {
+    return service.process(templateName, ctx);
+  }
+
+  @Before
+  public void setUp() throws IOException {
+    templatesDirectory = File.createTempFile("AbstractFreeMarkerViewGenerationServiceTest", "");
+    assertTrue(templatesDirectory.delete() && templatesDirectory.mkdir());
+    ctx = new ViewContext();
+    ctx.setEntityName("owner");
+    service = new StubFreeMarkerViewGenerationService();
+    service.fileManager = mock(FileManager.class);
+    service.templatesLocation = templatesDirectory.getAbsolutePath();
+  }
+
+  @After
+  public void tearDown() {
+    FileUtils.deleteQuietly(templatesDirectory);
+  }
+
+  @Test
+  public void testBundleTemplatesAreLoadedOnce() {
+    // Invoke
+    final String firstList = render("list");
+    final String firstShow = render("show");
+    final String secondList = render("list");
+    final String secondShow = render("show");
+
+    // Check
+    assertEquals("<h1>owner list</h1>", firstList);
+    assertEquals(firstList, secondList);
+    assertEquals("<h1>owner details</h1>", firstShow);
+    assertEquals(firstShow, secondShow);
+    assertEquals(Integer.valueOf(1), service.loads.get("list.ftl"));
+    assertEquals(Integer.valueOf(1), service.loads.get("show.ftl"));
+    assertEquals(2, service.loads.size());
+  }
+
+  @Test
+  public void testCustomizedTemplateIsLoadedOnceAlongsideTheBundleTemplates()
+      throws IOException {
+    // Set up
+    customizeTemplate("list", "<h2>${entityName} table</h2>");
+
+    // Invoke
+    render("list");
+    render("show");
+    final String list = render("list");
+    final String show = render("show");
+
+    // Check
+    assertEquals("<h2>owner table</h2>", list);
+    assertEquals("<h1>owner details</h1>", show);
+    assertEquals(Integer.valueOf(1), service.loads.get("list.ftl"));
+    assertEquals(Integer.valueOf(1), service.loads.get("show.ftl"));
+  }
+
+  @Test
+  public void testCustomizedTemplateIsLoadedAgainOnceChanged() throws IOException {
+    // Set up
+    final File template = customizeTemplate("list", "<h2>${entityName} table</h2>");
+    render("list");
+    final long lastModified = template.lastModified();
+    FileUtils.writeStringToFile(template, "<h2>${entityName} grid</h2>", "UTF-8");
+    assertTrue(template.setLastModified(lastModified + 2000));
+
+    // Invoke
+    final String first = render("list");
+    final String second = render("list");
+
+    // Check
+    assertEquals("<h2>owner grid</h2>", first);
+    assertEquals(first, second);
+    assertEquals(Integer.valueOf(2), service.loads.get("list.ftl"));
+  }
+}
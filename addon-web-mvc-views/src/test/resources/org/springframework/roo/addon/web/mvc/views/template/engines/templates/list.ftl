@@ -0,0 +1 @@
+<h1>${entityName} list</h1>
@@ -0,0 +1 @@
+<h1>${entityName} details</h1>
@@ -0,0 +1,149 @@
+package org.springframework.roo.classpath.antlrjavaparser;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.springframework.roo.classpath.details.ClassOrInterfaceTypeDetails;
+import org.springframework.roo.model.JavaType;
+
+import com.github.antlrjavaparser.api.CompilationUnit;
+
+/**
+ * Remembers the {@link CompilationUnit}s parsed from recently seen source
+ * code, along with the {@link ClassOrInterfaceTypeDetails} built from them, so
+ * that unchanged sources need not be parsed again.
+ * <p>
+ * Entries are keyed by the source code itself, so any change to a file's
+ * contents is a cache miss. The least recently used entries are evicted once
+ * the cached sources exceed a given number of characters, which keeps the
+ * (proportionally larger) parse trees within a predictable budget.
+ * <p>
+ * Cached compilation units must not be modified. All methods are thread safe.
+ *
+ * @since 2.0
+ */
+final class CompilationUnitCache {
+
+  private static class Entry {
+    final CompilationUnit compilationUnit;
+    // key: see getTypeKey
+    final Map<String, ClassOrInterfaceTypeDetails> types =
+        new HashMap<String, ClassOrInterfaceTypeDetails>();
+
+    Entry(final CompilationUnit compilationUnit) {
+      this.compilationUnit = compilationUnit;
+    }
+  }
+
+  private static String getTypeKey(final String declaredByMetadataId, final JavaType typeName) {
+    return declaredByMetadataId + " " + typeName.getFullyQualifiedTypeName() + " "
+        + typeName.getModule();
+  }
+
+  private long cachedCharacters;
+  // key: source code
+  private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<String, Entry>(16,
+      0.75f, true);
+  private final long maxCharacters;
+
+  /**
+   * Constructor
+   *
+   * @param maxCharacters the number of characters of source code whose parse
+   *            results to keep
+   */
+  CompilationUnitCache(final long maxCharacters) {
+    this.maxCharacters = maxCharacters;
+  }
+
+  /**
+   * Forgets all cached compilation units and types
+   */
+  synchronized void clear() {
+    entries.clear();
+    cachedCharacters = 0;
+  }
+
+  /**
+   * @return the number of characters of source code currently cached
+   */
+  synchronized long getCachedCharacters() {
+    return cachedCharacters;
+  }
+
+  /**
+   * Returns the compilation unit parsed from the given source code
+   *
+   * @param contents the source code (required)
+   * @return <code>null</code> if not cached
+   */
+  synchronized CompilationUnit getCompilationUnit(final String contents) {
+    final Entry entry = entries.get(contents);
+    return entry == null ? null : entry.compilationUnit;
+  }
+
+  /**
+   * Returns the type details built from the given source code
+   *
+   * @param contents the source code (required)
+   * @param declaredByMetadataId the ID the type was built for (required)
+   * @param typeName the type that was built (required)
+   * @return <code>null</code> if not cached
+   */
+  synchronized ClassOrInterfaceTypeDetails getType(final String contents,
+      final String declaredByMetadataId, final JavaType typeName) {
+    final Entry entry = entries.get(contents);
+    return entry == null ? null : entry.types.get(getTypeKey(declaredByMetadataId, typeName));
+  }
+
+  /**
+   * Indicates whether the parse results of the given source code can be
+   * cached without evicting any existing entries
+   *
+   * @param contents the source code (required)
+   * @return see above
+   */
+  synchronized boolean hasRoomFor(final String contents) {
+    return cachedCharacters + contents.length() <= maxCharacters;
+  }
+
+  /**
+   * Caches the compilation unit parsed from the given source code, evicting
+   * older entries if the cache is now over budget
+   *
+   * @param contents the source code (required)
+   * @param compilationUnit the compilation unit parsed from it (required)
+   */
+  synchronized void putCompilationUnit(final String contents,
+      final CompilationUnit compilationUnit) {
+    if (contents.length() > maxCharacters || entries.containsKey(contents)) {
+      return;
+    }
+    entries.put(contents, new Entry(compilationUnit));
+    cachedCharacters += contents.length();
+    final Iterator<String> eldest = entries.keySet().iterator();
+    while (cachedCharacters > maxCharacters) {
+      cachedCharacters -= eldest.next().length();
+      eldest.remove();
+    }
+  }
+
+  /**
+   * Caches the type details built from the given source code, provided its
+   * compilation unit is still cached
+   *
+   * @param contents the source code (required)
+   * @param declaredByMetadataId the ID the type was built for (required)
+   * @param typeName the type that was built (required)
+   * @param type the type details (required)
+   */
+  synchronized void putType(final String contents, final String declaredByMetadataId,
+      final JavaType typeName, final ClassOrInterfaceTypeDetails type) {
+    final Entry entry = entries.get(contents);
+    if (entry != null) {
+      entry.types.put(getTypeKey(declaredByMetadataId, typeName), type);
+    }
+  }
+}
@@ -6,10 +6,13 @@ import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashSet;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
 
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.lang3.StringUtils;
@@ -17,7 +20,9 @@ import org.apache.commons.lang3.Validate;
 import org.apache.felix.scr.annotations.Component;
 import org.apache.felix.scr.annotations.Reference;
 import org.apache.felix.scr.annotations.Service;
+import org.osgi.service.component.ComponentContext;
 import org.springframework.roo.classpath.PhysicalTypeCategory;
+import org.springframework.roo.classpath.PhysicalTypeMetadata;
 import org.springframework.roo.classpath.TypeLocationService;
 import org.springframework.roo.classpath.TypeParsingService;
 import org.springframework.roo.classpath.antlrjavaparser.details.JavaParserAnnotationMetadataBuilder;
@@ -58,11 +63,42 @@ import com.github.antlrjavaparser.api.type.ClassOrInterfaceType;
 @Service
 public class JavaParserTypeParsingService implements TypeParsingService {
 
+  // The amount of source code whose parse results are kept, in characters
+  private static final long MAX_CACHED_CHARACTERS = 8 * 1024 * 1024;
+
+  final CompilationUnitCache compilationUnitCache;
   @Reference
   MetadataService metadataService;
   @Reference
   TypeLocationService typeLocationService;
 
+  ForkJoinPool pool;
+
+  public JavaParserTypeParsingService() {
+    this(MAX_CACHED_CHARACTERS);
+  }
+
+  /**
+   * Constructor for test cases to set a smaller cache budget
+   * 
+   * @param maxCachedCharacters the amount of source code whose parse results
+   *            to keep, in characters
+   */
+  JavaParserTypeParsingService(final long maxCachedCharacters) {
+    compilationUnitCache = new CompilationUnitCache(maxCachedCharacters);
+  }
+
+  protected void activate(final ComponentContext context) {
+    pool = new ForkJoinPool();
+  }
+
+  protected void deactivate(final ComponentContext context) {
+    if (pool != null) {
+      pool.shutdown();
+      pool = null;
+    }
+  }
+
   private void addEnumConstant(final List<EnumConstantDeclaration> constants,
       final JavaSymbolName name) {
     // Determine location to insert
@@ -118,6 +154,53 @@ public class JavaParserTypeParsingService implements TypeParsingService {
     return getTypeFromString(typeContents, declaredByMetadataId, typeName);
   }
 
+  /**
+   * Parses the given file into the compilation unit cache, if it fits
+   * 
+   * @param fileIdentifier the canonical path of the file (required)
+   */
+  private void preloadCompilationUnit(final String fileIdentifier) {
+    final String contents;
+    try {
+      contents = FileUtils.readFileToString(new File(fileIdentifier));
+    } catch (final IOException e) {
+      return;
+    }
+    if (StringUtils.isBlank(contents) || !compilationUnitCache.hasRoomFor(contents)
+        || compilationUnitCache.getCompilationUnit(contents) != null) {
+      return;
+    }
+    try {
+      compilationUnitCache.putCompilationUnit(contents,
+          JavaParser.parse(new ByteArrayInputStream(contents.getBytes())));
+    } catch (final IOException e) {
+      // Reported when the type is requested
+    } catch (final ParseException e) {
+      // Reported when the type is requested
+    }
+  }
+
+  @Override
+  public void preloadCompilationUnits(final Collection<String> fileIdentifiers) {
+    Validate.notNull(fileIdentifiers, "File identifiers required");
+    final ForkJoinPool currentPool = pool;
+    if (currentPool == null || fileIdentifiers.size() < 2) {
+      // Nothing to gain over parsing each type when it's requested
+      return;
+    }
+    final List<Callable<Void>> tasks = new ArrayList<Callable<Void>>(fileIdentifiers.size());
+    for (final String fileIdentifier : fileIdentifiers) {
+      tasks.add(new Callable<Void>() {
+        @Override
+        public Void call() {
+          preloadCompilationUnit(fileIdentifier);
+          return null;
+        }
+      });
+    }
+    currentPool.invokeAll(tasks);
+  }
+
   @Override
   public ClassOrInterfaceTypeDetails getTypeFromString(final String fileContents,
       final String declaredByMetadataId, final JavaType typeName) {
@@ -127,17 +210,28 @@ public class JavaParserTypeParsingService implements TypeParsingService {
 
     Validate.notBlank(declaredByMetadataId, "Declaring metadata ID required");
     Validate.notNull(typeName, "Java type to locate required");
+    final ClassOrInterfaceTypeDetails cachedType =
+        compilationUnitCache.getType(fileContents, declaredByMetadataId, typeName);
+    if (cachedType != null && isSuperclassCurrent(cachedType)) {
+      return cachedType;
+    }
     try {
-      final CompilationUnit compilationUnit =
-          JavaParser.parse(new ByteArrayInputStream(fileContents.getBytes()));
+      CompilationUnit compilationUnit = compilationUnitCache.getCompilationUnit(fileContents);
+      if (compilationUnit == null) {
+        compilationUnit = JavaParser.parse(new ByteArrayInputStream(fileContents.getBytes()));
+        compilationUnitCache.putCompilationUnit(fileContents, compilationUnit);
+      }
       final TypeDeclaration typeDeclaration =
           JavaParserUtils.locateTypeDeclaration(compilationUnit, typeName);
       if (typeDeclaration == null) {
         return null;
       }
-      return JavaParserClassOrInterfaceTypeDetailsBuilder.getInstance(compilationUnit, null,
-          typeDeclaration, declaredByMetadataId, typeName, metadataService, typeLocationService)
-          .build();
+      final ClassOrInterfaceTypeDetails type =
+          JavaParserClassOrInterfaceTypeDetailsBuilder.getInstance(compilationUnit, null,
+              typeDeclaration, declaredByMetadataId, typeName, metadataService,
+              typeLocationService).build();
+      compilationUnitCache.putType(fileContents, declaredByMetadataId, typeName, type);
+      return type;
     } catch (final IOException e) {
       throw new IllegalStateException(e);
     } catch (final ParseException e) {
@@ -145,6 +239,39 @@ public class JavaParserTypeParsingService implements TypeParsingService {
     }
   }
 
+  /**
+   * Indicates whether the superclass details embedded in the given type (and
+   * its inner types) are those currently known to the metadata service, i.e.
+   * whether the type would be built the same way from the same source code.
+   * 
+   * @param cid the type to check (required)
+   * @return see above
+   */
+  private boolean isSuperclassCurrent(final ClassOrInterfaceTypeDetails cid) {
+    if (cid.getPhysicalTypeCategory() == PhysicalTypeCategory.CLASS
+        && cid.getExtendsTypes().size() == 1) {
+      final String superclassId =
+          typeLocationService.getPhysicalTypeIdentifier(cid.getExtendsTypes().get(0));
+      ClassOrInterfaceTypeDetails superclass = null;
+      if (superclassId != null) {
+        final PhysicalTypeMetadata superPtm =
+            (PhysicalTypeMetadata) metadataService.get(superclassId);
+        if (superPtm != null) {
+          superclass = superPtm.getMemberHoldingTypeDetails();
+        }
+      }
+      if (superclass != cid.getSuperclass()) {
+        return false;
+      }
+    }
+    for (final ClassOrInterfaceTypeDetails innerType : cid.getDeclaredInnerTypes()) {
+      if (!isSuperclassCurrent(innerType)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
   /**
    * Appends the presented class to the end of the presented body
    * declarations. The body declarations appear within the presented
@@ -0,0 +1,86 @@
+package org.springframework.roo.classpath.antlrjavaparser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.roo.classpath.details.ClassOrInterfaceTypeDetails;
+import org.springframework.roo.model.JavaType;
+
+import com.github.antlrjavaparser.api.CompilationUnit;
+
+/**
+ * Unit test of {@link CompilationUnitCache}
+ *
+ * @since 2.0
+ */
+public class CompilationUnitCacheTest {
+
+  private static final String DECLARED_BY_MID = "MID:foo#bar";
+  private static final JavaType TYPE = new JavaType("com.example.Foo");
+
+  // Fixture
+  private CompilationUnitCache cache;
+
+  @Before
+  public void setUp() {
+    cache = new CompilationUnitCache(10);
+  }
+
+  @Test
+  public void testLookupIsByContents() {
+    // Set up
+    final CompilationUnit compilationUnit = mock(CompilationUnit.class);
+    final ClassOrInterfaceTypeDetails type = mock(ClassOrInterfaceTypeDetails.class);
+    cache.putCompilationUnit("abc", compilationUnit);
+    cache.putType("abc", DECLARED_BY_MID, TYPE, type);
+
+    // Invoke and check
+    assertSame(compilationUnit, cache.getCompilationUnit(new String("abc")));
+    assertSame(type, cache.getType(new String("abc"), DECLARED_BY_MID, TYPE));
+    assertNull(cache.getType("abc", "MID:other#bar", TYPE));
+    assertNull(cache.getCompilationUnit("abd"));
+  }
+
+  @Test
+  public void testLeastRecentlyUsedEntriesAreEvicted() {
+    // Set up
+    cache.putCompilationUnit("aaaa", mock(CompilationUnit.class));
+    cache.putCompilationUnit("bbbb", mock(CompilationUnit.class));
+    cache.getCompilationUnit("aaaa");
+
+    // Invoke
+    cache.putCompilationUnit("cccc", mock(CompilationUnit.class));
+
+    // Check
+    assertNull(cache.getCompilationUnit("bbbb"));
+    assertEquals(8, cache.getCachedCharacters());
+  }
+
+  @Test
+  public void testOversizedSourceIsNotCached() {
+    // Invoke
+    cache.putCompilationUnit("abcdefghijk", mock(CompilationUnit.class));
+    cache.putType("abcdefghijk", DECLARED_BY_MID, TYPE, mock(ClassOrInterfaceTypeDetails.class));
+
+    // Check
+    assertNull(cache.getCompilationUnit("abcdefghijk"));
+    assertNull(cache.getType("abcdefghijk", DECLARED_BY_MID, TYPE));
+    assertEquals(0, cache.getCachedCharacters());
+  }
+
+  @Test
+  public void testHasRoomForSourceWithinBudget() {
+    // Set up
+    cache.putCompilationUnit("aaaa", mock(CompilationUnit.class));
+
+    // Invoke and check
+    assertTrue(cache.hasRoomFor("bbbbbb"));
+    assertFalse(cache.hasRoomFor("bbbbbbb"));
+  }
+}
@@ -3,6 +3,9 @@ package org.springframework.roo.classpath.antlrjavaparser;
 import com.github.antlrjavaparser.JavaParser;
 import com.github.antlrjavaparser.api.CompilationUnit;
 import com.github.antlrjavaparser.api.body.TypeDeclaration;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -16,8 +19,18 @@ import org.springframework.roo.classpath.antlrjavaparser.details.JavaParserClass
 import org.springframework.roo.metadata.MetadataService;
 import org.springframework.roo.model.JavaType;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.eq;
 import static org.powermock.api.mockito.PowerMockito.mock;
@@ -40,20 +53,120 @@ public class JavaParserTypeParsingServiceTest {
 
   private static final String SOURCE_FILE = "package com.example;" + "" + "public class MyClass {}"
       + "" + "class TargetClass {}" + "" + "class OtherClass {}";
+  // The same length for each of the four-letter class names below
+  private static final int SOURCE_LENGTH = getSource("Abcd").length();
   @Mock
   private MetadataService mockMetadataService;
   @Mock
   private TypeLocationService mockTypeLocationService;
 
   // Fixture
+  private File sourceDirectory;
   private JavaParserTypeParsingService typeParsingService;
 
+  private static String getSource(final String className) {
+    return "package com.example;\n\npublic class " + className + " {}\n";
+  }
+
+  private List<String> writeSources(final String... classNames) throws IOException {
+    final List<String> fileIdentifiers = new ArrayList<String>();
+    for (final String className : classNames) {
+      final File source = new File(sourceDirectory, className + ".java");
+      FileUtils.writeStringToFile(source, getSource(className));
+      fileIdentifiers.add(source.getCanonicalPath());
+    }
+    return fileIdentifiers;
+  }
+
+  private JavaParserTypeParsingService activate(final long maxCachedCharacters) {
+    final JavaParserTypeParsingService activated =
+        new JavaParserTypeParsingService(maxCachedCharacters);
+    activated.metadataService = mockMetadataService;
+    activated.typeLocationService = mockTypeLocationService;
+    activated.activate(null);
+    return activated;
+  }
+
   @Before
   public void setUp() throws Exception {
     MockitoAnnotations.initMocks(this);
     typeParsingService = new JavaParserTypeParsingService();
     typeParsingService.metadataService = mockMetadataService;
     typeParsingService.typeLocationService = mockTypeLocationService;
+    sourceDirectory = File.createTempFile("JavaParserTypeParsingServiceTest", "");
+    assertTrue(sourceDirectory.delete() && sourceDirectory.mkdir());
+  }
+
+  @After
+  public void tearDown() {
+    typeParsingService.deactivate(null);
+    FileUtils.deleteQuietly(sourceDirectory);
+  }
+
+  @Test
+  public void testPreloadParsesEachSourceIntoTheCache() throws IOException {
+    // Set up
+    typeParsingService = activate(4 * SOURCE_LENGTH);
+    final List<String> sources = writeSources("Abcd", "Bcde", "Cdef");
+
+    // Invoke
+    typeParsingService.preloadCompilationUnits(sources);
+
+    // Check
+    for (final String className : Arrays.asList("Abcd", "Bcde", "Cdef")) {
+      assertNotNull(typeParsingService.compilationUnitCache
+          .getCompilationUnit(getSource(className)));
+    }
+    assertEquals(3 * SOURCE_LENGTH, typeParsingService.compilationUnitCache.getCachedCharacters());
+  }
+
+  @Test
+  public void testPreloadSkipsASourceLargerThanTheCache() throws IOException {
+    // Set up
+    typeParsingService = activate(2 * SOURCE_LENGTH);
+    final List<String> sources = writeSources("Abcd", "Bcde");
+    final File largeSource = new File(sourceDirectory, "Large.java");
+    final String largeContents = getSource("Large") + StringUtils.repeat(' ', 2 * SOURCE_LENGTH);
+    FileUtils.writeStringToFile(largeSource, largeContents);
+    sources.add(largeSource.getCanonicalPath());
+
+    // Invoke
+    typeParsingService.preloadCompilationUnits(sources);
+
+    // Check
+    assertNull(typeParsingService.compilationUnitCache.getCompilationUnit(largeContents));
+    assertEquals(2 * SOURCE_LENGTH, typeParsingService.compilationUnitCache.getCachedCharacters());
+  }
+
+  @Test
+  public void testPreloadStopsOnceTheCacheIsFull() throws IOException {
+    // Set up
+    typeParsingService = activate(2 * SOURCE_LENGTH);
+    typeParsingService.preloadCompilationUnits(writeSources("Abcd", "Bcde"));
+
+    // Invoke
+    typeParsingService.preloadCompilationUnits(writeSources("Cdef", "Defg"));
+
+    // Check: the sources preloaded first weren't evicted by later ones
+    assertNotNull(typeParsingService.compilationUnitCache.getCompilationUnit(getSource("Abcd")));
+    assertNotNull(typeParsingService.compilationUnitCache.getCompilationUnit(getSource("Bcde")));
+    assertNull(typeParsingService.compilationUnitCache.getCompilationUnit(getSource("Cdef")));
+    assertNull(typeParsingService.compilationUnitCache.getCompilationUnit(getSource("Defg")));
+  }
+
+  @Test
+  public void testDeactivateShutsDownThePool() throws IOException {
+    // Set up
+    typeParsingService = activate(4 * SOURCE_LENGTH);
+    final ForkJoinPool pool = typeParsingService.pool;
+
+    // Invoke
+    typeParsingService.deactivate(null);
+    typeParsingService.preloadCompilationUnits(writeSources("Abcd", "Bcde"));
+
+    // Check
+    assertTrue(pool.isShutdown());
+    assertEquals(0, typeParsingService.compilationUnitCache.getCachedCharacters());
   }
 
   @Test
@@ -12,6 +12,7 @@ import org.apache.felix.scr.annotations.Service;
 import org.springframework.roo.classpath.details.ClassOrInterfaceTypeDetails;
 import org.springframework.roo.classpath.details.MemberHoldingTypeDetails;
 import org.springframework.roo.classpath.scanner.MemberDetailsScanner;
+import org.springframework.roo.metadata.MetadataCacheStatistic;
 import org.springframework.roo.metadata.MetadataDependencyRegistry;
 import org.springframework.roo.metadata.MetadataIdentificationUtils;
 import org.springframework.roo.metadata.MetadataLogger;
@@ -37,6 +38,7 @@ public class MetadataCommands implements CommandMarker {
   private static final String METADATA_FOR_TYPE_COMMAND = "metadata for type";
   private static final String METADATA_STATUS_COMMAND = "metadata status";
   private static final String METADATA_TRACE_COMMAND = "metadata trace";
+  private static final long BYTES_IN_MEGABYTE = 1024L * 1024L;
 
   @Reference
   private MemberDetailsScanner memberDetailsScanner;
@@ -59,13 +61,27 @@ public class MetadataCommands implements CommandMarker {
   }
 
   @CliCommand(value = METADATA_CACHE_COMMAND,
-      help = "Shows detailed metadata for the indicated type")
-  public String metadataCacheMaximum(@CliOption(key = {"maximumCapacity"}, mandatory = true,
-      help = "The maximum number of metadata items to cache") final int maxCapacity) {
-    Validate.isTrue(maxCapacity >= 100, "Maximum capacity must be 100 or greater");
-    metadataService.setMaxCapacity(maxCapacity);
-    // Show them that the change has taken place
-    return metadataTimings();
+      help = "Shows and optionally limits the metadata cache, with the hit ratio of each provider")
+  public String metadataCacheMaximum(
+      @CliOption(key = {"maximumCapacity"}, mandatory = false,
+          help = "The maximum number of metadata items to cache") final Integer maxCapacity,
+      @CliOption(key = {"maximumSize"}, mandatory = false,
+          help = "The estimated memory the cached metadata may use, in megabytes") final Integer maxSize) {
+    if (maxCapacity != null) {
+      Validate.isTrue(maxCapacity >= 100, "Maximum capacity must be 100 or greater");
+      metadataService.setMaxCapacity(maxCapacity);
+    }
+    if (maxSize != null) {
+      Validate.isTrue(maxSize >= 1, "Maximum size must be 1 or greater");
+      metadataService.setMaxWeight(maxSize * BYTES_IN_MEGABYTE);
+    }
+    // Show them that any change has taken place
+    final StringBuilder sb = new StringBuilder();
+    for (final MetadataCacheStatistic stat : metadataService.getCacheStatistics()) {
+      sb.append(stat.toString()).append(LINE_SEPARATOR);
+    }
+    sb.append(metadataTimings());
+    return sb.toString();
   }
 
   @CliCommand(value = METADATA_FOR_ID_COMMAND,
@@ -158,7 +174,8 @@ public class MetadataCommands implements CommandMarker {
     for (final MetadataTimingStatistic stat : metadataLogger.getTimings()) {
       sb.append(stat.toString()).append(LINE_SEPARATOR);
     }
-    sb.append(metadataService.toString());
+    sb.append(metadataService.toString()).append(LINE_SEPARATOR);
+    sb.append(metadataDependencyRegistry.toString());
     return sb.toString();
   }
 
@@ -0,0 +1,130 @@
+package org.springframework.roo.classpath;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.lang3.Validate;
+import org.springframework.roo.classpath.details.MemberHoldingTypeDetails;
+import org.springframework.roo.classpath.details.annotations.AnnotationMetadata;
+import org.springframework.roo.model.JavaType;
+
+/**
+ * Inverted index from the annotations and custom data tags of the project's
+ * types to the physical type identifiers (MIDs) of the types carrying them,
+ * for {@link TypeLocationServiceImpl}.
+ * <p>
+ * The index is maintained incrementally, one type at a time, so a lookup costs
+ * time proportional to the number of types found rather than the number of
+ * types in the project. Not thread safe.
+ *
+ * @since 2.0
+ */
+final class TypeAttributeIndex {
+
+  private static <K> void add(final Map<K, Set<String>> index, final K key, final String mid) {
+    Set<String> mids = index.get(key);
+    if (mids == null) {
+      mids = new LinkedHashSet<String>();
+      index.put(key, mids);
+    }
+    mids.add(mid);
+  }
+
+  private static <K> Set<String> get(final Map<K, Set<String>> index, final K key) {
+    final Set<String> mids = index.get(key);
+    if (mids == null) {
+      return Collections.emptySet();
+    }
+    return Collections.unmodifiableSet(mids);
+  }
+
+  private static <K> void remove(final Map<K, Set<String>> index, final Set<K> keys,
+      final String mid) {
+    for (final K key : keys) {
+      final Set<String> mids = index.get(key);
+      if (mids != null) {
+        mids.remove(mid);
+        if (mids.isEmpty()) {
+          index.remove(key);
+        }
+      }
+    }
+  }
+
+  // key: annotation type, value: MIDs of the types annotated with it
+  private final Map<JavaType, Set<String>> annotationToMids = new HashMap<JavaType, Set<String>>();
+  // key: MID, value: the annotation types indexed for it
+  private final Map<String, Set<JavaType>> midToAnnotations = new HashMap<String, Set<JavaType>>();
+  // key: MID, value: the tags indexed for it
+  private final Map<String, Set<Object>> midToTags = new HashMap<String, Set<Object>>();
+  // key: custom data tag, value: MIDs of the types carrying it
+  private final Map<Object, Set<String>> tagToMids = new HashMap<Object, Set<String>>();
+
+  /**
+   * Returns the types annotated with the given annotation
+   *
+   * @param annotationType the annotation to look for (required)
+   * @return an unmodifiable view of the types' MIDs, which reflects later
+   *         changes to the index
+   */
+  Set<String> getTypesWithAnnotation(final JavaType annotationType) {
+    return get(annotationToMids, annotationType);
+  }
+
+  /**
+   * Returns the types carrying the given custom data tag
+   *
+   * @param tag the tag to look for (required)
+   * @return an unmodifiable view of the types' MIDs, which reflects later
+   *         changes to the index
+   */
+  Set<String> getTypesWithTag(final Object tag) {
+    return get(tagToMids, tag);
+  }
+
+  /**
+   * Removes the given type from the index, e.g. because it was deleted
+   *
+   * @param mid the type's physical type identifier (required)
+   */
+  void remove(final String mid) {
+    Validate.notBlank(mid, "Physical type identifier required");
+    final Set<JavaType> annotations = midToAnnotations.remove(mid);
+    if (annotations != null) {
+      remove(annotationToMids, annotations, mid);
+    }
+    final Set<Object> tags = midToTags.remove(mid);
+    if (tags != null) {
+      remove(tagToMids, tags, mid);
+    }
+  }
+
+  /**
+   * Indexes the given type by its current annotations and custom data,
+   * replacing any entries for its earlier version
+   *
+   * @param cid the type to index (required)
+   */
+  void update(final MemberHoldingTypeDetails cid) {
+    Validate.notNull(cid, "Member holding type details required");
+    final String mid = cid.getDeclaredByMetadataId();
+    remove(mid);
+
+    final Set<JavaType> annotations = new HashSet<JavaType>();
+    for (final AnnotationMetadata annotation : cid.getAnnotations()) {
+      annotations.add(annotation.getAnnotationType());
+      add(annotationToMids, annotation.getAnnotationType(), mid);
+    }
+    midToAnnotations.put(mid, annotations);
+
+    final Set<Object> tags = new HashSet<Object>(cid.getCustomData().keySet());
+    for (final Object tag : tags) {
+      add(tagToMids, tag, mid);
+    }
+    midToTags.put(mid, tags);
+  }
+}
@@ -22,6 +22,15 @@ public interface TypeCache {
 
   String getTypeIdFromTypeFilePath(String typeFilePath);
 
+  /**
+   * Indicates whether no types have been cached, more cheaply than checking
+   * {@link #getAllTypeIdentifiers()}
+   * 
+   * @return see above
+   * @since 2.0
+   */
+  boolean isEmpty();
+
   Set<String> getTypeNamesForModuleFilePath(String moduleFilePath);
 
   void removeType(String typeIdentifier);
@@ -9,21 +9,30 @@ import org.apache.commons.lang3.Validate;
 import org.apache.felix.scr.annotations.Component;
 import org.apache.felix.scr.annotations.Service;
 import org.springframework.roo.classpath.details.ClassOrInterfaceTypeDetails;
+import org.springframework.roo.metadata.MetadataIdentifierTable;
+import org.springframework.roo.metadata.internal.HandleMap;
 import org.springframework.roo.model.JavaType;
 import org.springframework.roo.project.maven.Pom;
 
+/**
+ * Default implementation of {@link TypeCache}.
+ * <p>
+ * Maps keyed by physical type identifier are keyed by the identifier's
+ * {@link MetadataIdentifierTable} handle, which is held for as long as the
+ * type's details are cached.
+ */
 @Component
 @Service
 public class TypeCacheImpl implements TypeCache {
 
-  private final Map<String, ClassOrInterfaceTypeDetails> midToTypeDetailsMap =
-      new HashMap<String, ClassOrInterfaceTypeDetails>();
+  private final HandleMap<ClassOrInterfaceTypeDetails> midToTypeDetailsMap =
+      new HandleMap<ClassOrInterfaceTypeDetails>();
   private final Map<String, Set<String>> moduleFilePathToTypeNamesMap =
       new HashMap<String, Set<String>>();
   private final Map<String, Set<String>> simpleTypeNameTypesMap =
       new HashMap<String, Set<String>>();
   private final Map<String, String> typeFilePathToMidMap = new HashMap<String, String>();
-  private final Map<String, String> typeIdentifierToFilePathMap = new HashMap<String, String>();
+  private final HandleMap<String> typeIdentifierToFilePathMap = new HandleMap<String>();
   private final Map<String, String> typeNameToMidMap = new HashMap<String, String>();
   private final Map<String, String> typeNameToModuleFilePathMap = new HashMap<String, String>();
   private final Map<String, String> typeNameToModuleNameMap = new HashMap<String, String>();
@@ -38,9 +47,13 @@ public class TypeCacheImpl implements TypeCache {
     Validate.notBlank(typeFilePath, "Module name required");
     Validate.notNull(cid, "Type details required");
 
-    midToTypeDetailsMap.put(cid.getDeclaredByMetadataId(), cid);
+    final int handle = MetadataIdentifierTable.intern(cid.getDeclaredByMetadataId());
+    if (midToTypeDetailsMap.put(handle, cid) != null) {
+      // Already holding the handle from when the type was first cached
+      MetadataIdentifierTable.release(handle);
+    }
     typeFilePathToMidMap.put(typeFilePath, cid.getDeclaredByMetadataId());
-    typeIdentifierToFilePathMap.put(cid.getDeclaredByMetadataId(), typeFilePath);
+    typeIdentifierToFilePathMap.put(handle, typeFilePath);
     types.add(cid.getName());
 
     final String fullyQualifiedTypeName = cid.getName().getFullyQualifiedTypeName();
@@ -65,7 +78,11 @@ public class TypeCacheImpl implements TypeCache {
   }
 
   public Set<String> getAllTypeIdentifiers() {
-    return new HashSet<String>(midToTypeDetailsMap.keySet());
+    final Set<String> typeIdentifiers = new HashSet<String>();
+    for (final int handle : midToTypeDetailsMap.handles()) {
+      typeIdentifiers.add(MetadataIdentifierTable.getIdentifier(handle));
+    }
+    return typeIdentifiers;
   }
 
   public Set<JavaType> getAllTypes() {
@@ -79,7 +96,7 @@ public class TypeCacheImpl implements TypeCache {
 
   public ClassOrInterfaceTypeDetails getTypeDetails(final String mid) {
     Validate.notBlank(mid, "Physical type identifier required");
-    return midToTypeDetailsMap.get(mid);
+    return midToTypeDetailsMap.get(MetadataIdentifierTable.lookup(mid));
   }
 
   public String getTypeIdFromTypeFilePath(final String typeFilePath) {
@@ -102,18 +119,23 @@ public class TypeCacheImpl implements TypeCache {
     return simpleTypeNameTypesMap.get(simpleTypeName);
   }
 
+  public boolean isEmpty() {
+    return midToTypeDetailsMap.isEmpty();
+  }
+
   public void removeType(final String typeIdentifier) {
     Validate.notBlank(typeIdentifier, "Physical type identifier required");
-    final ClassOrInterfaceTypeDetails cid = midToTypeDetailsMap.get(typeIdentifier);
+    final int handle = MetadataIdentifierTable.lookup(typeIdentifier);
+    final ClassOrInterfaceTypeDetails cid = midToTypeDetailsMap.get(handle);
     if (cid != null) {
       typeNameToMidMap.remove(cid.getName().getFullyQualifiedTypeName());
       typeNameToModuleFilePathMap.remove(cid.getName().getFullyQualifiedTypeName());
       typeNameToModuleNameMap.remove(cid.getName().getFullyQualifiedTypeName());
     }
-    final String filePath = typeIdentifierToFilePathMap.get(typeIdentifier);
+    final String filePath = typeIdentifierToFilePathMap.get(handle);
     if (filePath != null) {
       typeFilePathToMidMap.remove(filePath);
-      typeIdentifierToFilePathMap.remove(typeIdentifier);
+      typeIdentifierToFilePathMap.remove(handle);
     }
 
   }
@@ -22,11 +22,10 @@ import org.apache.felix.scr.annotations.Component;
 import org.apache.felix.scr.annotations.Reference;
 import org.apache.felix.scr.annotations.Service;
 import org.springframework.roo.classpath.details.ClassOrInterfaceTypeDetails;
-import org.springframework.roo.classpath.details.MemberHoldingTypeDetails;
-import org.springframework.roo.classpath.details.annotations.AnnotationMetadata;
 import org.springframework.roo.file.monitor.FileMonitorService;
 import org.springframework.roo.file.monitor.event.FileDetails;
 import org.springframework.roo.metadata.MetadataIdentificationUtils;
+import org.springframework.roo.metadata.MetadataItem;
 import org.springframework.roo.metadata.MetadataService;
 import org.springframework.roo.model.JavaPackage;
 import org.springframework.roo.model.JavaSymbolName;
@@ -155,40 +154,88 @@ public class TypeLocationServiceImpl implements TypeLocationService {
   private MetadataService metadataService;
   private ProjectOperations projectOperations;
   private TypeCache typeCache;
+  private TypeParsingService typeParsingService;
   private TypeResolutionService typeResolutionService;
 
-  private final Map<JavaType, Set<String>> annotationToMidMap =
-      new HashMap<JavaType, Set<String>>();
+  private final TypeAttributeIndex attributeIndex = new TypeAttributeIndex();
   private final Map<String, Set<String>> changeMap = new HashMap<String, Set<String>>();
   private final Set<String> dirtyFiles = new HashSet<String>();
   private final Set<String> discoveredTypes = new HashSet<String>();
-  private final Map<String, Set<Object>> typeCustomDataMap = new HashMap<String, Set<Object>>();
-  private final Map<Object, Set<String>> tagToMidMap = new HashMap<Object, Set<String>>();
-  private final Map<String, Set<JavaType>> typeAnnotationMap = new HashMap<String, Set<JavaType>>();
+  // Whether a batch of types is being built on the metadata service's threads
+  private volatile boolean cachingTypes;
 
-  private void cacheType(final String fileCanonicalPath) {
-    Validate.notBlank(fileCanonicalPath, "File canonical path required");
-    if (doesPathIndicateJavaType(fileCanonicalPath)) {
-      final String id = getPhysicalTypeIdentifier(fileCanonicalPath);
-      if (id != null && PhysicalTypeIdentifier.isValid(id)) {
-        // Change to Java, so drop the cache
-        final ClassOrInterfaceTypeDetails cid = lookupClassOrInterfaceTypeDetails(id);
-        if (cid == null) {
-          if (!getFileManager().exists(fileCanonicalPath)) {
-            getTypeCache().removeType(id);
-            final JavaType type = getTypeCache().getTypeDetails(id).getName();
-            updateChanges(type.getFullyQualifiedTypeName(), true);
-          }
-          return;
+  private void cacheType(final String fileCanonicalPath, final String id,
+      final PhysicalTypeMetadata physicalTypeMetadata) {
+    final ClassOrInterfaceTypeDetails cid =
+        physicalTypeMetadata == null ? null : physicalTypeMetadata.getMemberHoldingTypeDetails();
+    if (cid == null) {
+      if (!getFileManager().exists(fileCanonicalPath)) {
+        getTypeCache().removeType(id);
+        attributeIndex.remove(id);
+        final JavaType type = getTypeCache().getTypeDetails(id).getName();
+        updateChanges(type.getFullyQualifiedTypeName(), true);
+      }
+      return;
+    }
+    getTypeCache().cacheType(fileCanonicalPath, cid);
+    attributeIndex.update(cid);
+    updateChanges(cid.getName().getFullyQualifiedTypeName(), false);
+  }
+
+  /**
+   * Caches the types in the given files, obtaining fresh copies of their
+   * {@link PhysicalTypeMetadata}. If the {@link MetadataService} resolves
+   * concurrently, it builds them all in parallel and they are cached once
+   * built; otherwise each type is built and cached in turn.
+   * 
+   * @param fileCanonicalPaths the files that have changed (required)
+   */
+  private void cacheTypes(final Collection<String> fileCanonicalPaths) {
+    // key: physical type identifier, value: file canonical path
+    final Map<String, String> typeFiles = new LinkedHashMap<String, String>();
+    for (final String fileCanonicalPath : fileCanonicalPaths) {
+      Validate.notBlank(fileCanonicalPath, "File canonical path required");
+      if (doesPathIndicateJavaType(fileCanonicalPath)) {
+        final String id = getPhysicalTypeIdentifier(fileCanonicalPath);
+        if (id != null && PhysicalTypeIdentifier.isValid(id)) {
+          typeFiles.put(id, fileCanonicalPath);
         }
-        getTypeCache().cacheType(fileCanonicalPath, cid);
-        updateAttributeCache(cid);
-        updateChanges(cid.getName().getFullyQualifiedTypeName(), false);
       }
     }
+    if (typeFiles.isEmpty()) {
+      return;
+    }
+    // Change to Java, so drop the cache
+    if (!getMetadataService().isConcurrent()) {
+      for (final Entry<String, String> typeFile : typeFiles.entrySet()) {
+        final PhysicalTypeMetadata physicalType =
+            (PhysicalTypeMetadata) getMetadataService().evictAndGet(typeFile.getKey());
+        cacheType(typeFile.getValue(), typeFile.getKey(), physicalType);
+      }
+      return;
+    }
+    // The providers query this service while the batch is built, possibly
+    // before any of its types is cached; those queries must neither start
+    // the type map again nor evict the types being built, and must only
+    // read the types discovered so far
+    discoverTypes();
+    final Map<String, MetadataItem> physicalTypes;
+    cachingTypes = true;
+    try {
+      physicalTypes = getMetadataService().evictAndGetAll(typeFiles.keySet());
+    } finally {
+      cachingTypes = false;
+    }
+    for (final Entry<String, String> typeFile : typeFiles.entrySet()) {
+      cacheType(typeFile.getValue(), typeFile.getKey(),
+          (PhysicalTypeMetadata) physicalTypes.get(typeFile.getKey()));
+    }
   }
 
   private Set<String> discoverTypes() {
+    if (cachingTypes) {
+      return discoveredTypes;
+    }
     // Retrieve a list of paths that have been discovered or modified since
     // the last invocation by this class
     for (final String change : getFileMonitorService().getDirtyFiles(
@@ -545,121 +592,73 @@ public class TypeLocationServiceImpl implements TypeLocationService {
   }
 
   private void initTypeMap() {
+    final List<String> typeFiles = new ArrayList<String>();
     for (final Pom pom : getProjectOperations().getPoms()) {
       for (final PhysicalPath path : pom.getPhysicalPaths()) {
         if (path.isSource()) {
           final String allJavaFiles =
               FileUtils.ensureTrailingSeparator(path.getLocationPath()) + JAVA_FILES_ANT_PATH;
           for (final FileDetails file : getFileManager().findMatchingAntPath(allJavaFiles)) {
-            cacheType(file.getCanonicalPath());
+            final String fileCanonicalPath = file.getCanonicalPath();
+            if (doesPathIndicateJavaType(fileCanonicalPath)) {
+              typeFiles.add(fileCanonicalPath);
+            }
           }
         }
       }
     }
+    // Parse the sources in bulk, then build the metadata of all the types
+    final TypeParsingService typeParsingService = getTypeParsingService();
+    if (typeParsingService != null) {
+      typeParsingService.preloadCompilationUnits(typeFiles);
+    }
+    cacheTypes(typeFiles);
   }
 
   public boolean isInProject(final JavaType javaType) {
     return javaType != null && !javaType.isCoreType() && getPhysicalPath(javaType) != null;
   }
 
-  /**
-   * Obtains the a fresh copy of the {@link ClassOrInterfaceTypeDetails} for
-   * the given physical type.
-   * 
-   * @param physicalTypeIdentifier to lookup (required)
-   * @return the requested details (or <code>null</code> if unavailable)
-   */
-  private ClassOrInterfaceTypeDetails lookupClassOrInterfaceTypeDetails(
-      final String physicalTypeIdentifier) {
-    final PhysicalTypeMetadata physicalTypeMetadata =
-        (PhysicalTypeMetadata) getMetadataService().evictAndGet(physicalTypeIdentifier);
-    if (physicalTypeMetadata == null) {
-      return null;
-    }
-    return physicalTypeMetadata.getMemberHoldingTypeDetails();
-  }
-
   public void processTypesWithAnnotation(final List<JavaType> annotationsToDetect,
       final LocatedTypeCallback callback) {
     Validate.notNull(annotationsToDetect, "Annotations to detect required");
     Validate.notNull(callback, "Callback required");
-    // If the cache doesn't yet contain the annotation to be found it should
-    // be added
-    for (final JavaType annotationType : annotationsToDetect) {
-      if (!annotationToMidMap.containsKey(annotationType)) {
-        annotationToMidMap.put(annotationType, new HashSet<String>());
-      }
-    }
 
     // Before processing the call any changes to the project should be
     // processed and the cache updated accordingly
     updateTypeCache();
 
+    final Set<String> locatedMids = new LinkedHashSet<String>();
     for (final JavaType annotationType : annotationsToDetect) {
-      for (final String locatedMid : annotationToMidMap.get(annotationType)) {
-        final ClassOrInterfaceTypeDetails located = getTypeCache().getTypeDetails(locatedMid);
-        callback.process(located);
-      }
+      locatedMids.addAll(attributeIndex.getTypesWithAnnotation(annotationType));
+    }
+    processTypes(locatedMids, callback);
+  }
+
+  /**
+   * Passes the cached details of each of the given types to the given
+   * callback
+   * 
+   * @param locatedMids the physical type identifiers of the types (required)
+   * @param callback the callback to invoke (required)
+   */
+  private void processTypes(final Collection<String> locatedMids,
+      final LocatedTypeCallback callback) {
+    for (final String locatedMid : locatedMids) {
+      final ClassOrInterfaceTypeDetails located = getTypeCache().getTypeDetails(locatedMid);
+      callback.process(located);
     }
   }
 
   private void processTypesWithTag(final Object tag, final LocatedTypeCallback callback) {
     Validate.notNull(tag, "Tag required");
     Validate.notNull(callback, "Callback required");
-    // If the cache doesn't yet contain the tag it should be added
-    if (!tagToMidMap.containsKey(tag)) {
-      tagToMidMap.put(tag, new HashSet<String>());
-    }
 
     // Before processing the call any changes to the project should be
     // processed and the cache updated accordingly
     updateTypeCache();
 
-    for (final String locatedMid : tagToMidMap.get(tag)) {
-      final ClassOrInterfaceTypeDetails located = getTypeCache().getTypeDetails(locatedMid);
-      callback.process(located);
-    }
-  }
-
-  private void updateAttributeCache(final MemberHoldingTypeDetails cid) {
-    Validate.notNull(cid, "Member holding type details required");
-    if (!typeAnnotationMap.containsKey(cid.getDeclaredByMetadataId())) {
-      typeAnnotationMap.put(cid.getDeclaredByMetadataId(), new HashSet<JavaType>());
-    }
-    if (!typeCustomDataMap.containsKey(cid.getDeclaredByMetadataId())) {
-      typeCustomDataMap.put(cid.getDeclaredByMetadataId(), new HashSet<Object>());
-    }
-    final Set<JavaType> previousAnnotations = typeAnnotationMap.get(cid.getDeclaredByMetadataId());
-    for (final JavaType previousAnnotation : previousAnnotations) {
-      final Set<String> midSet = annotationToMidMap.get(previousAnnotation);
-      if (midSet != null) {
-        midSet.remove(cid.getDeclaredByMetadataId());
-      }
-    }
-    previousAnnotations.clear();
-    for (final AnnotationMetadata annotationMetadata : cid.getAnnotations()) {
-      if (!annotationToMidMap.containsKey(annotationMetadata.getAnnotationType())) {
-        annotationToMidMap.put(annotationMetadata.getAnnotationType(), new HashSet<String>());
-      }
-      previousAnnotations.add(annotationMetadata.getAnnotationType());
-      annotationToMidMap.get(annotationMetadata.getAnnotationType()).add(
-          cid.getDeclaredByMetadataId());
-    }
-    final Set<Object> previousCustomDataSet = typeCustomDataMap.get(cid.getDeclaredByMetadataId());
-    for (final Object previousCustomData : previousCustomDataSet) {
-      final Set<String> midSet = tagToMidMap.get(previousCustomData);
-      if (midSet != null) {
-        midSet.remove(cid.getDeclaredByMetadataId());
-      }
-    }
-    previousCustomDataSet.clear();
-    for (final Object customData : cid.getCustomData().keySet()) {
-      if (!tagToMidMap.containsKey(customData)) {
-        tagToMidMap.put(customData, new HashSet<String>());
-      }
-      previousCustomDataSet.add(customData);
-      tagToMidMap.get(customData).add(cid.getDeclaredByMetadataId());
-    }
+    processTypes(new ArrayList<String>(attributeIndex.getTypesWithTag(tag)), callback);
   }
 
   private void updateChanges(final String typeName, final boolean remove) {
@@ -674,15 +673,18 @@ public class TypeLocationServiceImpl implements TypeLocationService {
   }
 
   private void updateTypeCache() {
-    if (getTypeCache().getAllTypeIdentifiers().isEmpty()) {
+    if (cachingTypes) {
+      // The types being built are cached once they're all built
+      return;
+    }
+    if (getTypeCache().isEmpty()) {
       initTypeMap();
     }
     discoverTypes();
     // Update the type cache
-    for (final String change : dirtyFiles) {
-      cacheType(change);
-    }
+    final Set<String> changes = new HashSet<String>(dirtyFiles);
     dirtyFiles.clear();
+    cacheTypes(changes);
   }
 
   public void addDependencies(ModuleFeatureName moduleFeatureName,
@@ -854,6 +856,28 @@ public class TypeLocationServiceImpl implements TypeLocationService {
     }
   }
 
+  public TypeParsingService getTypeParsingService() {
+    if (typeParsingService == null) {
+      // Get all Services implement TypeParsingService interface
+      try {
+        ServiceReference<?>[] references =
+            context.getAllServiceReferences(TypeParsingService.class.getName(), null);
+
+        for (ServiceReference<?> ref : references) {
+          return (TypeParsingService) context.getService(ref);
+        }
+
+        return null;
+
+      } catch (InvalidSyntaxException e) {
+        LOGGER.warning("Cannot load TypeParsingService on TypeLocationServiceImpl.");
+        return null;
+      }
+    } else {
+      return typeParsingService;
+    }
+  }
+
   public TypeResolutionService getTypeResolutionService() {
     if (typeResolutionService == null) {
       // Get all Services implement TypeResolutionService interface
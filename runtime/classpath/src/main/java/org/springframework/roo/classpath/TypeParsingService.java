@@ -1,5 +1,7 @@
 package org.springframework.roo.classpath;
 
+import java.util.Collection;
+
 import org.springframework.roo.classpath.details.ClassOrInterfaceTypeDetails;
 import org.springframework.roo.model.JavaType;
 
@@ -58,6 +60,20 @@ public interface TypeParsingService {
   ClassOrInterfaceTypeDetails getTypeFromString(String typeContents, String declaredByMetadataId,
       JavaType javaType);
 
+  /**
+   * Parses the given source files ahead of their types being requested via
+   * {@link #getTypeAtLocation(String, String, JavaType)}, so that the parsing
+   * can happen in bulk (e.g. in parallel) instead of one type at a time.
+   * Implementations that cannot benefit may do nothing. Files that can't be
+   * read or parsed are skipped; any error is reported when their types are
+   * requested.
+   * 
+   * @param fileIdentifiers the canonical paths of the files to parse
+   *            (required)
+   * @since 2.0
+   */
+  void preloadCompilationUnits(Collection<String> fileIdentifiers);
+
   /**
    * Returns the compilation unit contents that represents the java file
    * updated with the passed class or interface details. The difference with
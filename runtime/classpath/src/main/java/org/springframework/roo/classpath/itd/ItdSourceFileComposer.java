@@ -1,11 +1,14 @@
 package org.springframework.roo.classpath.itd;
 
+import java.lang.ref.WeakReference;
 import java.lang.reflect.Modifier;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.SortedSet;
 import java.util.TreeSet;
+import java.util.WeakHashMap;
 
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.Validate;
@@ -25,11 +28,19 @@ import org.springframework.roo.classpath.details.comments.AbstractComment;
 import org.springframework.roo.classpath.details.comments.CommentStructure;
 import org.springframework.roo.model.ImportRegistrationResolver;
 import org.springframework.roo.model.ImportRegistrationResolverImpl;
+import org.springframework.roo.model.JavaPackage;
 import org.springframework.roo.model.JavaSymbolName;
 import org.springframework.roo.model.JavaType;
 
 /**
  * A simple way of producing an inter-type declaration source file.
+ * <p>
+ * The text rendered for each field and method is remembered for as long as
+ * that {@link FieldMetadata} or {@link MethodMetadata} instance is in use, so
+ * that composing another ITD from the same members (as happens when an ITD is
+ * both written and hashed) splices in that text instead of rendering it
+ * again. Rendering a member consults the import resolver, so the text is only
+ * reused if the resolver gives the same answers it gave the first time.
  * 
  * @author Ben Alex
  * @author Stefan Schmidt
@@ -39,13 +50,123 @@ import org.springframework.roo.model.JavaType;
  */
 public class ItdSourceFileComposer {
 
+  /**
+   * The text rendered for one field or method.
+   */
+  private static class Fragment {
+    private final String context;
+    private final boolean content;
+    private final boolean[] fullyQualified;
+    private final WeakReference<Object> member;
+    private final JavaType[] resolvedTypes;
+    private final String text;
+
+    Fragment(final Object member, final String context, final String text,
+        final boolean content, final List<JavaType> resolvedTypes,
+        final List<Boolean> fullyQualified) {
+      this.context = context;
+      this.content = content;
+      this.member = new WeakReference<Object>(member);
+      this.text = text;
+      this.resolvedTypes = resolvedTypes.toArray(new JavaType[resolvedTypes.size()]);
+      this.fullyQualified = new boolean[fullyQualified.size()];
+      for (int i = 0; i < this.fullyQualified.length; i++) {
+        this.fullyQualified[i] = fullyQualified.get(i);
+      }
+    }
+  }
+
+  /**
+   * An {@link ImportRegistrationResolver} that can record the types it is
+   * asked to resolve, and whether each needed its fully-qualified form.
+   */
+  private static class RecordingImportResolver implements ImportRegistrationResolver {
+
+    private final ImportRegistrationResolver delegate;
+    private List<Boolean> fullyQualified;
+    private boolean recordable;
+    private List<JavaType> resolvedTypes;
+
+    RecordingImportResolver(final JavaPackage compilationUnitPackage) {
+      delegate = new ImportRegistrationResolverImpl(compilationUnitPackage);
+    }
+
+    public void addImport(final JavaType typeToImport) {
+      recordable = false;
+      delegate.addImport(typeToImport);
+    }
+
+    public void addImports(final JavaType... typesToImport) {
+      recordable = false;
+      delegate.addImports(typesToImport);
+    }
+
+    public void addImports(final List<JavaType> typesToImport) {
+      recordable = false;
+      delegate.addImports(typesToImport);
+    }
+
+    public JavaPackage getCompilationUnitPackage() {
+      return delegate.getCompilationUnitPackage();
+    }
+
+    public Set<JavaType> getRegisteredImports() {
+      return delegate.getRegisteredImports();
+    }
+
+    public boolean isAdditionLegal(final JavaType javaType) {
+      recordable = false;
+      return delegate.isAdditionLegal(javaType);
+    }
+
+    public boolean isFullyQualifiedFormRequired(final JavaType javaType) {
+      recordable = false;
+      return delegate.isFullyQualifiedFormRequired(javaType);
+    }
+
+    public boolean isFullyQualifiedFormRequiredAfterAutoImport(final JavaType javaType) {
+      final boolean result = delegate.isFullyQualifiedFormRequiredAfterAutoImport(javaType);
+      if (resolvedTypes != null) {
+        resolvedTypes.add(javaType);
+        fullyQualified.add(result);
+      }
+      return result;
+    }
+
+    /**
+     * Starts recording the types resolved by
+     * {@link #isFullyQualifiedFormRequiredAfterAutoImport(JavaType)}
+     */
+    void startRecording() {
+      resolvedTypes = new ArrayList<JavaType>();
+      fullyQualified = new ArrayList<Boolean>();
+      recordable = true;
+    }
+
+    /**
+     * Stops recording
+     * 
+     * @return whether only the recorded method was called since recording
+     *         started, i.e. whether the recording fully describes the
+     *         resolver's effect on the rendered text
+     */
+    boolean stopRecording() {
+      resolvedTypes = null;
+      fullyQualified = null;
+      return recordable;
+    }
+  }
+
+  // key: a FieldMetadata or MethodMetadata
+  private static final Map<Object, Fragment> FRAGMENTS = new WeakHashMap<Object, Fragment>();
+
   private final JavaType aspect;
   private boolean content;
   private int indentLevel = 0;
   private final JavaType introductionTo;
   private final ItdTypeDetails itdTypeDetails;
   private StringBuilder pw = new StringBuilder();
-  private final ImportRegistrationResolver resolver;
+  private final RecordingImportResolver resolver;
 
   /**
    * Constructs an {@link ItdSourceFileComposer} containing the members that
@@ -62,7 +183,7 @@ public class ItdSourceFileComposer {
     aspect = itdTypeDetails.getAspect();
 
     // Create my own resolver, so we can add items to it as we process
-    resolver = new ImportRegistrationResolverImpl(itdTypeDetails.getAspect().getPackage());
+    resolver = new RecordingImportResolver(itdTypeDetails.getAspect().getPackage());
     resolver.addImport(introductionTo); // ROO-2932
 
     for (final JavaType registeredImport : itdTypeDetails.getRegisteredImports()) {
@@ -104,6 +225,37 @@ public class ItdSourceFileComposer {
     return this;
   }
 
+  /**
+   * Appends the text previously rendered for the given member, provided it
+   * would be rendered the same way now.
+   * 
+   * @param member the field or method to append (required)
+   * @param context describes everything besides the member and the import
+   *            resolver that affects the rendered text (required)
+   * @return whether the text was appended; if not, the member needs to be
+   *         rendered
+   */
+  private boolean appendFragment(final Object member, final String context) {
+    final Fragment fragment;
+    synchronized (FRAGMENTS) {
+      fragment = FRAGMENTS.get(member);
+    }
+    if (fragment == null || fragment.member.get() != member || !fragment.context.equals(context)) {
+      return false;
+    }
+    // Asking again has the same side-effects as rendering would have; any
+    // partial replay is harmless, as the resolver gives the same answer when
+    // asked about the same type twice
+    for (int i = 0; i < fragment.resolvedTypes.length; i++) {
+      if (resolver.isFullyQualifiedFormRequiredAfterAutoImport(fragment.resolvedTypes[i]) != fragment.fullyQualified[i]) {
+        return false;
+      }
+    }
+    pw.append(fragment.text);
+    content |= fragment.content;
+    return true;
+  }
+
   private void appendConstructors() {
     final List<? extends ConstructorMetadata> constructors =
         itdTypeDetails.getDeclaredConstructors();
@@ -247,7 +399,13 @@ public class ItdSourceFileComposer {
     }
 
     content = true;
+    final String context = "field " + indentLevel + " " + introductionTo.getSimpleTypeName();
     for (final FieldMetadata field : fields) {
+      if (appendFragment(field, context)) {
+        continue;
+      }
+      final int start = startFragment();
+
       // Append annotations
       for (final AnnotationMetadata annotation : field.getAnnotations()) {
         appendIndent();
@@ -277,6 +435,7 @@ public class ItdSourceFileComposer {
       append(";");
       this.newLine(false);
       this.newLine();
+      endFragment(field, context, start, true);
     }
   }
 
@@ -521,6 +680,31 @@ public class ItdSourceFileComposer {
     content = false;
   }
 
+  /**
+   * Finishes rendering the given member, remembering the rendered text for
+   * reuse if it can be reproduced
+   * 
+   * @param member the field or method rendered (required)
+   * @param context see {@link #appendFragment(Object, String)}
+   * @param start the value returned by {@link #startFragment()}
+   * @param contentBefore the value of {@link #content} before the member was
+   *            rendered
+   */
+  private void endFragment(final Object member, final String context, final int start,
+      final boolean contentBefore) {
+    final List<JavaType> resolvedTypes = resolver.resolvedTypes;
+    final List<Boolean> fullyQualified = resolver.fullyQualified;
+    if (resolver.stopRecording()) {
+      final Fragment fragment =
+          new Fragment(member, context, pw.substring(start), content, resolvedTypes,
+              fullyQualified);
+      synchronized (FRAGMENTS) {
+        FRAGMENTS.put(member, fragment);
+      }
+    }
+    content |= contentBefore;
+  }
+
   private String getNewLine() {
     // We use \n for consistency with JavaParser's DumpVisitor, which always
     // uses \n
@@ -624,8 +808,22 @@ public class ItdSourceFileComposer {
     pw = topOfFile;
   }
 
+  /**
+   * Starts rendering a member whose text can be reused
+   * 
+   * @return the position in the output at which the member starts
+   */
+  private int startFragment() {
+    resolver.startRecording();
+    content = false;
+    return pw.length();
+  }
+
   private void writeMethods(final List<? extends MethodMetadata> methods,
       final boolean defineTarget, final boolean isInterfaceMethod) {
+    final String context =
+        "method " + indentLevel + " " + defineTarget + " " + isInterfaceMethod + " "
+            + introductionTo.getSimpleTypeName();
     for (final MethodMetadata method : methods) {
       Validate.isTrue(method.getParameterTypes().size() == method.getParameterNames().size(),
           "Method %s has mismatched parameter names against parameter types", method
@@ -648,6 +846,14 @@ public class ItdSourceFileComposer {
         appendFormalLine(" */");
       }
 
+      // The comments above can change between renderings, so are not
+      // part of the reusable text
+      if (appendFragment(method, context)) {
+        continue;
+      }
+      final boolean contentBefore = content;
+      final int start = startFragment();
+
       // Append annotations
       for (final AnnotationMetadata annotation : method.getAnnotations()) {
         appendIndent();
@@ -726,6 +932,7 @@ public class ItdSourceFileComposer {
         appendFormalLine("}");
       }
       this.newLine();
+      endFragment(method, context, start, contentBefore);
     }
   }
 
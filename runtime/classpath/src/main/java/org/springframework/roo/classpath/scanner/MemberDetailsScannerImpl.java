@@ -1,8 +1,14 @@
 package org.springframework.roo.classpath.scanner;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.SortedSet;
 import java.util.TreeSet;
 import java.util.logging.Logger;
@@ -20,8 +26,10 @@ import org.springframework.roo.classpath.details.ClassOrInterfaceTypeDetails;
 import org.springframework.roo.classpath.details.MemberHoldingTypeDetails;
 import org.springframework.roo.classpath.itd.ItdMetadataProvider;
 import org.springframework.roo.classpath.itd.ItdTypeDetailsProvidingMetadataItem;
+import org.springframework.roo.metadata.MetadataDependencyRegistry;
 import org.springframework.roo.metadata.MetadataIdentificationUtils;
 import org.springframework.roo.metadata.MetadataItem;
+import org.springframework.roo.metadata.MetadataNotificationListener;
 import org.springframework.roo.metadata.MetadataProvider;
 import org.springframework.roo.metadata.MetadataService;
 import org.osgi.framework.BundleContext;
@@ -42,6 +50,15 @@ import org.springframework.roo.support.logging.HandlerUtils;
  * the metadata infrastructure does not require special type naming approaches
  * to be employed. The ordering behaviour exists solely to simplify debugging
  * for add-on developers and log comparison between invocations.
+ * <p>
+ * The decorated {@link MemberDetails} are cached per requesting class and
+ * governor, for the most recently used governors. An entry is reused for as
+ * long as the governor and its superclasses, and the ITD metadata items
+ * consulted for them, are the same instances as before, so the
+ * {@link MemberDetailsDecorator}s are not consulted again for members that
+ * cannot have changed. The ITD items are checked on each use rather than
+ * relying on notifications, as an ITD can be regenerated and its downstream
+ * dependencies notified before any notification listener is called.
  * 
  * @author Ben Alex
  * @since 1.1
@@ -56,11 +73,90 @@ public class MemberDetailsScannerImpl implements MemberDetailsScanner {
   private BundleContext context;
 
   protected MetadataService metadataService;
+  private MetadataDependencyRegistry metadataDependencyRegistry;
 
   protected void activate(final ComponentContext context) {
     this.context = context.getBundleContext();
   }
 
+  /**
+   * The decorated member details for one governor and requesting class.
+   */
+  private static class CachedMemberDetails {
+    // The governor first, then its superclasses
+    private final List<ClassOrInterfaceTypeDetails> hierarchy;
+    // key: ITD metadata ID, value: the item it had (can be null)
+    private final Map<String, MetadataItem> itdItems;
+    private final MemberDetails memberDetails;
+    private final Set<String> upstreams;
+
+    CachedMemberDetails(final List<ClassOrInterfaceTypeDetails> hierarchy,
+        final Map<String, MetadataItem> itdItems, final MemberDetails memberDetails,
+        final Set<String> upstreams) {
+      this.hierarchy = hierarchy;
+      this.itdItems = itdItems;
+      this.memberDetails = memberDetails;
+      this.upstreams = upstreams;
+    }
+
+    boolean isCurrent(ClassOrInterfaceTypeDetails cid) {
+      for (final ClassOrInterfaceTypeDetails cachedCid : hierarchy) {
+        if (cid != cachedCid) {
+          return false;
+        }
+        cid = cid.getSuperclass();
+      }
+      return cid == null;
+    }
+
+    boolean hasCurrentItds(final MetadataService metadataService) {
+      for (final Map.Entry<String, MetadataItem> itdItem : itdItems.entrySet()) {
+        if (metadataService.get(itdItem.getKey()) != itdItem.getValue()) {
+          return false;
+        }
+      }
+      return true;
+    }
+  }
+
+  // The number of governors and requesting classes to cache the member
+  // details of
+  private static final int MAX_CACHED_MEMBER_DETAILS = 2000;
+
+  // Guards the cache; never held while calling other services, as
+  // notifications can arrive from any thread
+  private final Object cacheLock = new Object();
+  // key: see getCacheKey; in order of use
+  private final Map<String, CachedMemberDetails> cache =
+      new LinkedHashMap<String, CachedMemberDetails>(16, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(final Map.Entry<String, CachedMemberDetails> eldest) {
+          if (size() <= MAX_CACHED_MEMBER_DETAILS) {
+            return false;
+          }
+          removeUpstreams(eldest.getKey(), eldest.getValue());
+          return true;
+        }
+      };
+  // key: a physical type or ITD metadata ID, value: the cache keys of the
+  // entries built from it
+  private final Map<String, Set<String>> cacheKeysByUpstream = new HashMap<String, Set<String>>();
+  // Incremented by each invalidation, so that results computed concurrently
+  // with one are not cached
+  private long invalidations;
+
+  private final MetadataNotificationListener invalidator = new MetadataNotificationListener() {
+    public void notify(final String upstreamDependency, final String downstreamDependency) {
+      synchronized (cacheLock) {
+        invalidations++;
+        invalidate(upstreamDependency);
+        invalidate(downstreamDependency);
+      }
+    }
+  };
+
   private final SortedSet<MemberDetailsDecorator> decorators = new TreeSet<MemberDetailsDecorator>(
       new Comparator<MemberDetailsDecorator>() {
         public int compare(final MemberDetailsDecorator o1, final MemberDetailsDecorator o2) {
@@ -117,7 +213,56 @@ public class MemberDetailsScannerImpl implements MemberDetailsScanner {
   }
 
   protected void deactivate(final ComponentContext componentContext) {
-    // Empty
+    if (metadataDependencyRegistry != null) {
+      metadataDependencyRegistry.removeNotificationListener(invalidator);
+      metadataDependencyRegistry = null;
+    }
+    synchronized (cacheLock) {
+      cache.clear();
+      cacheKeysByUpstream.clear();
+    }
+  }
+
+  private String getCacheKey(final String requestingClass, final ClassOrInterfaceTypeDetails cid) {
+    return requestingClass + " " + cid.getDeclaredByMetadataId();
+  }
+
+  /**
+   * Removes the cache entries built from the given metadata; the caller must
+   * hold the {@link #cacheLock}
+   * 
+   * @param upstream the ID of the metadata that may have changed (can be
+   *            <code>null</code>)
+   */
+  private void invalidate(final String upstream) {
+    if (upstream == null) {
+      return;
+    }
+    final Set<String> cacheKeys = cacheKeysByUpstream.remove(upstream);
+    if (cacheKeys != null) {
+      for (final String cacheKey : cacheKeys) {
+        final CachedMemberDetails removed = cache.remove(cacheKey);
+        if (removed != null) {
+          removeUpstreams(cacheKey, removed);
+        }
+      }
+    }
+  }
+
+  /**
+   * Removes the given cache entry from the index of entries by upstream
+   * metadata; the caller must hold the {@link #cacheLock}
+   */
+  private void removeUpstreams(final String cacheKey, final CachedMemberDetails cached) {
+    for (final String upstream : cached.upstreams) {
+      final Set<String> cacheKeys = cacheKeysByUpstream.get(upstream);
+      if (cacheKeys != null) {
+        cacheKeys.remove(cacheKey);
+        if (cacheKeys.isEmpty()) {
+          cacheKeysByUpstream.remove(upstream);
+        }
+      }
+    }
   }
 
   public final MemberDetails getMemberDetails(final String requestingClass,
@@ -127,6 +272,13 @@ public class MemberDetailsScannerImpl implements MemberDetailsScanner {
       metadataService = getMetadataService();
     }
 
+    if (metadataDependencyRegistry == null) {
+      metadataDependencyRegistry = getMetadataDependencyRegistry();
+      if (metadataDependencyRegistry != null) {
+        metadataDependencyRegistry.addNotificationListener(invalidator);
+      }
+    }
+
     if (providers.isEmpty()) {
       bindProviders();
     }
@@ -138,11 +290,28 @@ public class MemberDetailsScannerImpl implements MemberDetailsScanner {
     if (cid == null) {
       return null;
     }
+
+    final String cacheKey = getCacheKey(requestingClass, cid);
+    final long invalidationsBefore;
+    final CachedMemberDetails cached;
+    synchronized (cacheLock) {
+      cached = cache.get(cacheKey);
+      invalidationsBefore = invalidations;
+    }
+    // Checking the ITDs may regenerate them, so is done without the lock
+    if (cached != null && cached.isCurrent(cid) && cached.hasCurrentItds(metadataService)) {
+      return cached.memberDetails;
+    }
+
     synchronized (lock) {
       // Create a list of discovered members
       final List<MemberHoldingTypeDetails> memberHoldingTypeDetails =
           new ArrayList<MemberHoldingTypeDetails>();
 
+      // The metadata the result is built from, for invalidating it
+      final Set<String> upstreams = new HashSet<String>();
+      final Map<String, MetadataItem> itdItems = new HashMap<String, MetadataItem>();
+
       // Build a List representing the class hierarchy, where the first
       // element is the absolute superclass
       final List<ClassOrInterfaceTypeDetails> cidHierarchy =
@@ -155,6 +324,7 @@ public class MemberDetailsScannerImpl implements MemberDetailsScanner {
       // Now we add this governor, plus all of its superclasses
       for (final ClassOrInterfaceTypeDetails currentClass : cidHierarchy) {
         memberHoldingTypeDetails.add(currentClass);
+        upstreams.add(currentClass.getDeclaredByMetadataId());
 
         // Locate all MetadataProvider instances that provide ITDs and
         // thus MemberHoldingTypeDetails information
@@ -176,10 +346,12 @@ public class MemberDetailsScannerImpl implements MemberDetailsScanner {
                   .getDeclaredByMetadataId());
           Validate.isTrue(MetadataIdentificationUtils.isIdentifyingInstance(key),
               "ITD metadata provider '%s' returned an illegal key ('%s')", mp, key);
+          upstreams.add(key);
 
           // Get the metadata and ensure we have ITD type details
           // available
           final MetadataItem metadataItem = metadataService.get(key);
+          itdItems.put(key, metadataItem);
           if (metadataItem == null || !metadataItem.isValid()) {
             continue;
           }
@@ -215,10 +387,50 @@ public class MemberDetailsScannerImpl implements MemberDetailsScanner {
         }
       }
 
+      // Cache the result unless it may already be out of date
+      final List<ClassOrInterfaceTypeDetails> hierarchy =
+          new ArrayList<ClassOrInterfaceTypeDetails>(cidHierarchy);
+      Collections.reverse(hierarchy);
+      synchronized (cacheLock) {
+        if (metadataDependencyRegistry != null && invalidations == invalidationsBefore) {
+          final CachedMemberDetails replaced =
+              cache.put(cacheKey, new CachedMemberDetails(hierarchy, itdItems, result, upstreams));
+          if (replaced != null) {
+            removeUpstreams(cacheKey, replaced);
+          }
+          for (final String upstream : upstreams) {
+            Set<String> cacheKeys = cacheKeysByUpstream.get(upstream);
+            if (cacheKeys == null) {
+              cacheKeys = new HashSet<String>();
+              cacheKeysByUpstream.put(upstream, cacheKeys);
+            }
+            cacheKeys.add(cacheKey);
+          }
+        }
+      }
+
       return result;
     }
   }
 
+  public MetadataDependencyRegistry getMetadataDependencyRegistry() {
+    // Get all Services implement MetadataDependencyRegistry interface
+    try {
+      ServiceReference<?>[] references =
+          this.context.getAllServiceReferences(MetadataDependencyRegistry.class.getName(), null);
+
+      for (ServiceReference<?> ref : references) {
+        return (MetadataDependencyRegistry) this.context.getService(ref);
+      }
+
+      return null;
+
+    } catch (InvalidSyntaxException e) {
+      LOGGER.warning("Cannot load MetadataDependencyRegistry on MemberDetailsScannerImpl.");
+      return null;
+    }
+  }
+
   public MetadataService getMetadataService() {
     // Get all Services implement MetadataService interface
     try {
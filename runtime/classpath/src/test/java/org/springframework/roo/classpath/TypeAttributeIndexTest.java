@@ -0,0 +1,99 @@
+package org.springframework.roo.classpath;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.roo.classpath.details.MemberHoldingTypeDetails;
+import org.springframework.roo.classpath.details.annotations.AnnotationMetadata;
+import org.springframework.roo.model.CustomData;
+import org.springframework.roo.model.JavaType;
+
+/**
+ * Unit test of {@link TypeAttributeIndex}
+ *
+ * @since 2.0
+ */
+public class TypeAttributeIndexTest {
+
+  private static final JavaType ENTITY = new JavaType("com.example.Entity");
+  private static final String MID_1 = "MID:foo#Bar1";
+  private static final String MID_2 = "MID:foo#Bar2";
+  private static final JavaType SERVICE = new JavaType("com.example.Service");
+  private static final String TAG = "tag";
+
+  // Fixture
+  private TypeAttributeIndex index;
+
+  private MemberHoldingTypeDetails getType(final String mid, final Object tag,
+      final JavaType... annotationTypes) {
+    final List<AnnotationMetadata> annotations = new ArrayList<AnnotationMetadata>();
+    for (final JavaType annotationType : annotationTypes) {
+      final AnnotationMetadata annotation = mock(AnnotationMetadata.class);
+      when(annotation.getAnnotationType()).thenReturn(annotationType);
+      annotations.add(annotation);
+    }
+    final CustomData customData = mock(CustomData.class);
+    when(customData.keySet()).thenReturn(
+        tag == null ? new HashSet<Object>() : new HashSet<Object>(Arrays.asList(tag)));
+    final MemberHoldingTypeDetails type = mock(MemberHoldingTypeDetails.class);
+    when(type.getDeclaredByMetadataId()).thenReturn(mid);
+    when(type.getAnnotations()).thenReturn(annotations);
+    when(type.getCustomData()).thenReturn(customData);
+    return type;
+  }
+
+  @Before
+  public void setUp() {
+    index = new TypeAttributeIndex();
+  }
+
+  @Test
+  public void testTypesAreFoundByAnnotationAndTag() {
+    // Invoke
+    index.update(getType(MID_1, TAG, ENTITY));
+    index.update(getType(MID_2, null, ENTITY, SERVICE));
+
+    // Check
+    assertEquals(new HashSet<String>(Arrays.asList(MID_1, MID_2)),
+        index.getTypesWithAnnotation(ENTITY));
+    assertEquals(new HashSet<String>(Arrays.asList(MID_2)), index.getTypesWithAnnotation(SERVICE));
+    assertEquals(new HashSet<String>(Arrays.asList(MID_1)), index.getTypesWithTag(TAG));
+  }
+
+  @Test
+  public void testUpdateReplacesEarlierVersion() {
+    // Set up
+    index.update(getType(MID_1, TAG, ENTITY));
+
+    // Invoke
+    index.update(getType(MID_1, null, SERVICE));
+
+    // Check
+    assertTrue(index.getTypesWithAnnotation(ENTITY).isEmpty());
+    assertTrue(index.getTypesWithTag(TAG).isEmpty());
+    assertEquals(new HashSet<String>(Arrays.asList(MID_1)), index.getTypesWithAnnotation(SERVICE));
+  }
+
+  @Test
+  public void testRemovedTypeIsNotFound() {
+    // Set up
+    index.update(getType(MID_1, TAG, ENTITY));
+    index.update(getType(MID_2, TAG, ENTITY));
+
+    // Invoke
+    index.remove(MID_1);
+
+    // Check
+    assertEquals(new HashSet<String>(Arrays.asList(MID_2)), index.getTypesWithAnnotation(ENTITY));
+    assertEquals(new HashSet<String>(Arrays.asList(MID_2)), index.getTypesWithTag(TAG));
+  }
+}
@@ -1,13 +1,45 @@
 package org.springframework.roo.classpath;
 
+import static org.mockito.Matchers.anyCollectionOf;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.File;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.TreeSet;
 
 import junit.framework.TestCase;
 
+import org.apache.commons.io.FileUtils;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.springframework.roo.classpath.details.ClassOrInterfaceTypeDetailsBuilder;
+import org.springframework.roo.classpath.details.DefaultPhysicalTypeMetadata;
+import org.springframework.roo.classpath.details.annotations.AnnotationMetadataBuilder;
+import org.springframework.roo.file.monitor.FileMonitorService;
+import org.springframework.roo.file.monitor.event.FileDetails;
+import org.springframework.roo.metadata.MetadataItem;
+import org.springframework.roo.metadata.MetadataService;
+import org.springframework.roo.model.JavaType;
+import org.springframework.roo.process.manager.FileManager;
+import org.springframework.roo.project.LogicalPath;
+import org.springframework.roo.project.Path;
+import org.springframework.roo.project.ProjectOperations;
+import org.springframework.roo.project.maven.Pom;
+
 /**
  * Unit test of {@link TypeLocationServiceImpl}.
  * 
@@ -16,6 +48,133 @@ import junit.framework.TestCase;
  */
 public class TypeLocationServiceImplTest extends TestCase {
 
+  private static final JavaType ENTITY = new JavaType("com.example.Entity");
+  private static final LogicalPath SOURCE_PATH = LogicalPath.getInstance(Path.SRC_MAIN_JAVA, "");
+  private static final JavaType OWNER = new JavaType("com.example.Owner");
+  private static final JavaType PET = new JavaType("com.example.Pet");
+  private static final String OWNER_MID = PhysicalTypeIdentifier.createIdentifier(OWNER,
+      SOURCE_PATH);
+  private static final String PET_MID = PhysicalTypeIdentifier.createIdentifier(PET, SOURCE_PATH);
+
+  // Fixture
+  private MetadataService mockMetadataService;
+  private File projectDirectory;
+  private TypeLocationServiceImpl service;
+  private TypeCache typeCache;
+  private final Map<String, String> typeFiles = new LinkedHashMap<String, String>();
+
+  private static void setField(final Object target, final String name, final Object value)
+      throws Exception {
+    final Field field = TypeLocationServiceImpl.class.getDeclaredField(name);
+    field.setAccessible(true);
+    field.set(target, value);
+  }
+
+  private PhysicalTypeMetadata build(final String mid) {
+    final JavaType type = PhysicalTypeIdentifier.getJavaType(mid);
+    final ClassOrInterfaceTypeDetailsBuilder builder =
+        new ClassOrInterfaceTypeDetailsBuilder(mid, Modifier.PUBLIC, type,
+            PhysicalTypeCategory.CLASS);
+    builder.addAnnotation(new AnnotationMetadataBuilder(ENTITY));
+    return new DefaultPhysicalTypeMetadata(mid, typeFiles.get(mid), builder.build());
+  }
+
+  @Override
+  protected void setUp() throws Exception {
+    projectDirectory = File.createTempFile("TypeLocationServiceImplTest", "");
+    assertTrue(projectDirectory.delete() && projectDirectory.mkdir());
+    final Pom pom =
+        new Pom("com.example", "petclinic", "1.0", "jar", null, null, null, null, null, null,
+            null, null, null, null, null, null,
+            new File(projectDirectory, "pom.xml").getCanonicalPath(), "",
+            Collections.singleton(Path.SRC_MAIN_JAVA));
+    final File sourceDirectory = pom.getPhysicalPath(Path.SRC_MAIN_JAVA).getLocation();
+
+    typeCache = new TypeCacheImpl();
+    final FileManager mockFileManager = mock(FileManager.class);
+    final ProjectOperations mockProjectOperations = mock(ProjectOperations.class);
+    final Collection<FileDetails> sources = new ArrayList<FileDetails>();
+    for (final String mid : Arrays.asList(OWNER_MID, PET_MID)) {
+      final File source =
+          new File(sourceDirectory, PhysicalTypeIdentifier.getJavaType(mid).getRelativeFileName());
+      final String sourcePathName = source.getCanonicalPath();
+      typeFiles.put(mid, sourcePathName);
+      typeCache.cacheFilePathAgainstTypeIdentifier(sourcePathName, mid);
+      sources.add(new FileDetails(source, 0L));
+      when(mockFileManager.exists(sourcePathName)).thenReturn(true);
+      when(mockProjectOperations.getModuleForFileIdentifier(sourcePathName)).thenReturn(pom);
+    }
+    when(mockFileManager.findMatchingAntPath(anyString())).thenReturn(
+        new TreeSet<FileDetails>(sources));
+    when(mockProjectOperations.getPoms()).thenReturn(Collections.singleton(pom));
+    final FileMonitorService mockFileMonitorService = mock(FileMonitorService.class);
+    when(mockFileMonitorService.getDirtyFiles(anyString())).thenReturn(
+        Collections.<String>emptyList());
+    mockMetadataService = mock(MetadataService.class);
+
+    service = new TypeLocationServiceImpl();
+    setField(service, "fileManager", mockFileManager);
+    setField(service, "fileMonitorService", mockFileMonitorService);
+    setField(service, "metadataService", mockMetadataService);
+    setField(service, "projectOperations", mockProjectOperations);
+    setField(service, "typeCache", typeCache);
+    setField(service, "typeParsingService", mock(TypeParsingService.class));
+  }
+
+  @Override
+  protected void tearDown() {
+    FileUtils.deleteQuietly(projectDirectory);
+  }
+
+  public void testTypesAreBuiltAndCachedInTurnWhenNotConcurrent() {
+    // Set up
+    final List<Integer> typesCachedBeforeEachBuild = new ArrayList<Integer>();
+    final Answer<MetadataItem> builder = new Answer<MetadataItem>() {
+      public MetadataItem answer(final InvocationOnMock invocation) {
+        typesCachedBeforeEachBuild.add(typeCache.getAllTypeIdentifiers().size());
+        return build((String) invocation.getArguments()[0]);
+      }
+    };
+    when(mockMetadataService.evictAndGet(OWNER_MID)).thenAnswer(builder);
+    when(mockMetadataService.evictAndGet(PET_MID)).thenAnswer(builder);
+
+    // Invoke
+    final Set<JavaType> entities = service.findTypesWithAnnotation(ENTITY);
+
+    // Check
+    assertEquals(2, entities.size());
+    assertTrue(entities.containsAll(Arrays.asList(OWNER, PET)));
+    assertEquals(Arrays.asList(0, 1), typesCachedBeforeEachBuild);
+    verify(mockMetadataService, times(1)).evictAndGet(OWNER_MID);
+    verify(mockMetadataService, times(1)).evictAndGet(PET_MID);
+    verify(mockMetadataService, never()).evictAndGetAll(anyCollectionOf(String.class));
+  }
+
+  public void testQueriesWhileTypesAreBuiltConcurrentlyDoNotRestartTheBuild() {
+    // Set up
+    when(mockMetadataService.isConcurrent()).thenReturn(true);
+    when(mockMetadataService.evictAndGetAll(anyCollectionOf(String.class))).thenAnswer(
+        new Answer<Map<String, MetadataItem>>() {
+          public Map<String, MetadataItem> answer(final InvocationOnMock invocation) {
+            // None of the types is cached until they're all built
+            assertTrue(service.findTypesWithAnnotation(ENTITY).isEmpty());
+            final Map<String, MetadataItem> items = new LinkedHashMap<String, MetadataItem>();
+            items.put(OWNER_MID, build(OWNER_MID));
+            items.put(PET_MID, build(PET_MID));
+            return items;
+          }
+        });
+
+    // Invoke
+    final Set<JavaType> entities = service.findTypesWithAnnotation(ENTITY);
+
+    // Check
+    assertEquals(2, entities.size());
+    assertTrue(entities.containsAll(Arrays.asList(OWNER, PET)));
+    verify(mockMetadataService, times(1)).evictAndGetAll(anyCollectionOf(String.class));
+    verify(mockMetadataService, never()).evictAndGet(anyString());
+  }
+
   public void testGetAllPackages() {
     // Set up
     final String leafPackage = "com.foo.bar";
@@ -0,0 +1,89 @@
+package org.springframework.roo.classpath.itd;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Test;
+import org.springframework.roo.classpath.PhysicalTypeCategory;
+import org.springframework.roo.classpath.details.ClassOrInterfaceTypeDetails;
+import org.springframework.roo.classpath.details.FieldMetadata;
+import org.springframework.roo.classpath.details.ItdTypeDetails;
+import org.springframework.roo.model.JavaSymbolName;
+import org.springframework.roo.model.JavaType;
+
+/**
+ * Unit test of {@link ItdSourceFileComposer}
+ *
+ * @since 2.0
+ */
+public class ItdSourceFileComposerTest {
+
+  private static final JavaType ASPECT = new JavaType("com.example.Person_Roo_Extra");
+  private static final JavaType GOVERNOR = new JavaType("com.example.Person");
+  private static final JavaType OTHER_THING = new JavaType("com.other.Thing");
+  private static final JavaType THING = new JavaType("com.example.domain.Thing");
+
+  private FieldMetadata getField(final String name, final JavaType type) {
+    final FieldMetadata field = mock(FieldMetadata.class);
+    when(field.getFieldName()).thenReturn(new JavaSymbolName(name));
+    when(field.getFieldType()).thenReturn(type);
+    return field;
+  }
+
+  @SuppressWarnings("unchecked")
+  private ItdTypeDetails getItd(final Set<JavaType> registeredImports,
+      final FieldMetadata... fields) {
+    final ClassOrInterfaceTypeDetails governor = mock(ClassOrInterfaceTypeDetails.class);
+    when(governor.getPhysicalTypeCategory()).thenReturn(PhysicalTypeCategory.CLASS);
+    final ItdTypeDetails itd = mock(ItdTypeDetails.class);
+    when(itd.getName()).thenReturn(GOVERNOR);
+    when(itd.getAspect()).thenReturn(ASPECT);
+    when(itd.getGovernor()).thenReturn(governor);
+    when(itd.getRegisteredImports()).thenReturn(registeredImports);
+    when((List<FieldMetadata>) itd.getDeclaredFields()).thenReturn(Arrays.asList(fields));
+    return itd;
+  }
+
+  @Test
+  public void testUnchangedFieldIsRenderedOnce() {
+    // Set up
+    final FieldMetadata field = getField("thing", THING);
+    final String expectedOutput =
+        new ItdSourceFileComposer(getItd(new HashSet<JavaType>(), field)).getOutput();
+
+    // Invoke
+    final String actualOutput =
+        new ItdSourceFileComposer(getItd(new HashSet<JavaType>(), field)).getOutput();
+
+    // Check
+    assertEquals(expectedOutput, actualOutput);
+    assertTrue(actualOutput.contains("Thing Person.thing;"));
+    assertTrue(actualOutput.contains("import com.example.domain.Thing;"));
+    verify(field, times(1)).getFieldType();
+  }
+
+  @Test
+  public void testFieldIsRenderedAgainWhenImportsDiffer() {
+    // Set up
+    final FieldMetadata field = getField("thing", THING);
+    new ItdSourceFileComposer(getItd(new HashSet<JavaType>(), field)).getOutput();
+
+    // Invoke
+    final String output =
+        new ItdSourceFileComposer(getItd(Collections.singleton(OTHER_THING), field)).getOutput();
+
+    // Check
+    assertTrue(output.contains("com.example.domain.Thing Person.thing;"));
+    assertTrue(output.contains("import com.other.Thing;"));
+  }
+}
@@ -0,0 +1,147 @@
+package org.springframework.roo.classpath.scanner;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.ServiceReference;
+import org.osgi.service.component.ComponentContext;
+import org.springframework.roo.classpath.PhysicalTypeIdentifier;
+import org.springframework.roo.classpath.details.ClassOrInterfaceTypeDetails;
+import org.springframework.roo.classpath.details.ItdTypeDetails;
+import org.springframework.roo.classpath.itd.ItdMetadataProvider;
+import org.springframework.roo.classpath.itd.ItdTypeDetailsProvidingMetadataItem;
+import org.springframework.roo.metadata.MetadataDependencyRegistry;
+import org.springframework.roo.metadata.MetadataNotificationListener;
+import org.springframework.roo.metadata.MetadataProvider;
+import org.springframework.roo.metadata.MetadataService;
+import org.springframework.roo.model.JavaType;
+import org.springframework.roo.project.LogicalPath;
+import org.springframework.roo.project.Path;
+
+/**
+ * Unit test of {@link MemberDetailsScannerImpl}
+ *
+ * @since 2.0
+ */
+public class MemberDetailsScannerImplTest {
+
+  private static final String GOVERNOR_MID = PhysicalTypeIdentifier.createIdentifier(
+      new JavaType("com.example.Foo"), LogicalPath.getInstance(Path.SRC_MAIN_JAVA, ""));
+  private static final String ITD_MID = "MID:com.example.ItdProvider#SRC_MAIN_JAVA?com.example.Foo";
+  private static final String REQUESTING_CLASS = "com.example.Requester";
+
+  @Mock
+  private BundleContext mockBundleContext;
+  @Mock
+  private ClassOrInterfaceTypeDetails mockGovernor;
+  @Mock
+  private ItdMetadataProvider mockItdMetadataProvider;
+  @Mock
+  private MetadataDependencyRegistry mockMetadataDependencyRegistry;
+  @Mock
+  private MetadataService mockMetadataService;
+
+  // Fixture
+  private MemberDetailsScannerImpl scanner;
+
+  private ItdTypeDetails mockItd(final ItdTypeDetailsProvidingMetadataItem mockItdMetadata) {
+    final ItdTypeDetails mockItdTypeDetails = mock(ItdTypeDetails.class);
+    when(mockItdMetadata.isValid()).thenReturn(true);
+    when(mockItdMetadata.getMemberHoldingTypeDetails()).thenReturn(mockItdTypeDetails);
+    when(mockMetadataService.get(ITD_MID)).thenReturn(mockItdMetadata);
+    return mockItdTypeDetails;
+  }
+
+  @SuppressWarnings("unchecked")
+  private void registerService(final Class<?> serviceType, final Object... services)
+      throws Exception {
+    final ServiceReference<?>[] references = new ServiceReference<?>[services.length];
+    for (int i = 0; i < services.length; i++) {
+      final ServiceReference<Object> mockReference = mock(ServiceReference.class);
+      when(mockBundleContext.getService(mockReference)).thenReturn(services[i]);
+      references[i] = mockReference;
+    }
+    when(mockBundleContext.getAllServiceReferences(serviceType.getName(), null)).thenReturn(
+        references);
+  }
+
+  @Before
+  public void setUp() throws Exception {
+    MockitoAnnotations.initMocks(this);
+    when(mockGovernor.getDeclaredByMetadataId()).thenReturn(GOVERNOR_MID);
+    when(mockItdMetadataProvider.getProvidesType()).thenReturn("MID:com.example.ItdProvider");
+    when(mockItdMetadataProvider.getIdForPhysicalJavaType(GOVERNOR_MID)).thenReturn(ITD_MID);
+    registerService(MetadataService.class, mockMetadataService);
+    registerService(MetadataDependencyRegistry.class, mockMetadataDependencyRegistry);
+    registerService(MetadataProvider.class, mockItdMetadataProvider);
+    registerService(MemberDetailsDecorator.class);
+
+    final ComponentContext mockComponentContext = mock(ComponentContext.class);
+    when(mockComponentContext.getBundleContext()).thenReturn(mockBundleContext);
+    scanner = new MemberDetailsScannerImpl();
+    scanner.activate(mockComponentContext);
+  }
+
+  @Test
+  public void testUnchangedMemberDetailsAreReused() {
+    // Set up
+    final ItdTypeDetails mockItdTypeDetails =
+        mockItd(mock(ItdTypeDetailsProvidingMetadataItem.class));
+    final MemberDetails firstResult = scanner.getMemberDetails(REQUESTING_CLASS, mockGovernor);
+
+    // Invoke
+    final MemberDetails secondResult = scanner.getMemberDetails(REQUESTING_CLASS, mockGovernor);
+
+    // Check
+    assertSame(firstResult, secondResult);
+    assertEquals(Arrays.asList(mockGovernor, mockItdTypeDetails), secondResult.getDetails());
+  }
+
+  @Test
+  public void testNotifiedItdIsConsultedAgain() {
+    // Set up
+    mockItd(mock(ItdTypeDetailsProvidingMetadataItem.class));
+    final MemberDetails firstResult = scanner.getMemberDetails(REQUESTING_CLASS, mockGovernor);
+    final ArgumentCaptor<MetadataNotificationListener> listenerCaptor =
+        ArgumentCaptor.forClass(MetadataNotificationListener.class);
+    verify(mockMetadataDependencyRegistry).addNotificationListener(listenerCaptor.capture());
+
+    // Invoke
+    listenerCaptor.getValue().notify(ITD_MID, null);
+    final MemberDetails secondResult = scanner.getMemberDetails(REQUESTING_CLASS, mockGovernor);
+
+    // Check
+    assertNotSame(firstResult, secondResult);
+    assertEquals(firstResult.getDetails(), secondResult.getDetails());
+  }
+
+  @Test
+  public void testItdRegeneratedBeforeAnyNotificationIsNotServedStale() {
+    // Set up
+    mockItd(mock(ItdTypeDetailsProvidingMetadataItem.class));
+    scanner.getMemberDetails(REQUESTING_CLASS, mockGovernor);
+    // The ITD is regenerated, e.g. as a downstream of another type, and its
+    // own downstream dependencies scan the governor before any notification
+    // listener is called
+    final ItdTypeDetails mockRegeneratedItdTypeDetails =
+        mockItd(mock(ItdTypeDetailsProvidingMetadataItem.class));
+
+    // Invoke
+    final MemberDetails result = scanner.getMemberDetails(REQUESTING_CLASS, mockGovernor);
+
+    // Check
+    assertEquals(Arrays.asList(mockGovernor, mockRegeneratedItdTypeDetails), result.getDetails());
+  }
+}
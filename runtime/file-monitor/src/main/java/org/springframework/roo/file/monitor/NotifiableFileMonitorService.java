@@ -1,5 +1,7 @@
 package org.springframework.roo.file.monitor;
 
+import java.util.Collection;
+
 import org.springframework.roo.file.monitor.event.FileEventListener;
 
 /**
@@ -42,6 +44,14 @@ public interface NotifiableFileMonitorService extends FileMonitorService {
    */
   void notifyChanged(String fileCanonicalPath);
 
+  /**
+   * Equivalent to calling {@link #notifyChanged(String)} for each of the
+   * given canonical paths, but cheaper when many files have changed at once.
+   * 
+   * @param fileCanonicalPaths required (not null, but can be empty)
+   */
+  void notifyChanged(Collection<String> fileCanonicalPaths);
+
   void notifyCreated(String fileCanonicalPath);
 
   /**
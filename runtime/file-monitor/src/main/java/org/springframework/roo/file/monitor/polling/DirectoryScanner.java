@@ -0,0 +1,180 @@
+package org.springframework.roo.file.monitor.polling;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileVisitOption;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Reads the contents of directory trees for a
+ * {@link PollingFileMonitorService}.
+ * <p>
+ * Each directory is listed by its own task in a work-stealing pool, so large
+ * trees (and several trees at once) are read in parallel. Listing a directory
+ * with {@link Files#walkFileTree} yields the attributes of each entry along
+ * with its name, so telling files from directories and reading their last
+ * modified times costs one file system call per entry rather than several.
+ * <p>
+ * Instances are thread safe.
+ *
+ * @since 2.0
+ */
+final class DirectoryScanner {
+
+  /**
+   * The contents of one tree, available once {@link #join()} returns.
+   */
+  final class Scan extends RecursiveAction {
+
+    private static final long serialVersionUID = 1L;
+
+    // The canonical paths of the entries found by this task
+    private final List<String> canonicalPaths = new ArrayList<String>();
+    private final String canonicalPath;
+    private final File directory;
+    private final FileTimestampTable entries = new FileTimestampTable();
+    private final boolean includeSubtree;
+    private final List<Scan> subdirectories = new ArrayList<Scan>();
+
+    Scan(final File directory, final String canonicalPath, final boolean includeSubtree) {
+      this.canonicalPath = canonicalPath;
+      this.directory = directory;
+      this.includeSubtree = includeSubtree;
+    }
+
+    /**
+     * Adds what this scan found to the given table and collection, parents
+     * before their contents.
+     *
+     * @param table the table to add each entry to (required)
+     * @param allCanonicalPaths the collection to add each entry's canonical
+     *            path to (required)
+     */
+    void addTo(final FileTimestampTable table, final Collection<String> allCanonicalPaths) {
+      table.putAll(entries);
+      allCanonicalPaths.addAll(canonicalPaths);
+      for (final Scan subdirectory : subdirectories) {
+        subdirectory.addTo(table, allCanonicalPaths);
+      }
+    }
+
+    @Override
+    protected void compute() {
+      try {
+        // Listing the canonical path means a linked directory is opened
+        // rather than reported as a link
+        final String prefix =
+            canonicalPath.endsWith(File.separator) ? canonicalPath : canonicalPath + File.separator;
+        Files.walkFileTree(new File(canonicalPath).toPath(), EnumSet.noneOf(FileVisitOption.class),
+            1, new SimpleFileVisitor<Path>() {
+              @Override
+              public FileVisitResult visitFile(final Path path, BasicFileAttributes attrs) {
+                final String name = path.getFileName().toString();
+                final File file = new File(directory, name);
+                final String canonicalFile;
+                if (attrs.isSymbolicLink()) {
+                  // Follow the link, as java.io.File does
+                  try {
+                    attrs = Files.readAttributes(path, BasicFileAttributes.class);
+                    canonicalFile = file.getCanonicalPath();
+                  } catch (final IOException brokenLink) {
+                    return FileVisitResult.CONTINUE;
+                  }
+                } else {
+                  // Saves resolving each path afresh
+                  canonicalFile = prefix + name;
+                }
+                if (!attrs.isRegularFile() && !includeSubtree
+                    || service.isIgnored(file, attrs.isDirectory())) {
+                  return FileVisitResult.CONTINUE;
+                }
+                add(file, canonicalFile, attrs.lastModifiedTime().toMillis());
+                if (attrs.isDirectory()) {
+                  subdirectories.add(new Scan(file, canonicalFile, true));
+                }
+                return FileVisitResult.CONTINUE;
+              }
+
+              @Override
+              public FileVisitResult visitFileFailed(final Path path, final IOException e) {
+                // e.g. a file deleted during the scan
+                return FileVisitResult.CONTINUE;
+              }
+            });
+      } catch (final IOException ignored) {
+        // The directory has become unreadable or disappeared
+      }
+      invokeAll(subdirectories);
+    }
+
+    private void add(final File file, final String canonicalFile, final long lastModified) {
+      entries.put(file, lastModified);
+      canonicalPaths.add(canonicalFile);
+    }
+  }
+
+  private ForkJoinPool pool;
+  private final PollingFileMonitorService service;
+
+  /**
+   * Constructor
+   *
+   * @param service the service to consult as to which files to ignore
+   *            (required)
+   */
+  DirectoryScanner(final PollingFileMonitorService service) {
+    this.service = service;
+  }
+
+  /**
+   * Starts reading the given file or directory and (if a directory) its
+   * contents, unless it is ignored by the service.
+   *
+   * @param file the file or directory to read (required)
+   * @param includeSubtree whether to read subdirectories of a directory
+   * @return the scan, whose {@link Scan#join()} waits for the result, or
+   *         <code>null</code> if there is nothing to read
+   */
+  Scan start(final File file, final boolean includeSubtree) {
+    final BasicFileAttributes attrs;
+    final String canonicalPath;
+    try {
+      attrs = Files.readAttributes(file.toPath(), BasicFileAttributes.class);
+      canonicalPath = file.getCanonicalPath();
+    } catch (final IOException e) {
+      return null; // Doesn't exist
+    }
+    if (service.isIgnored(file, attrs.isDirectory())) {
+      return null;
+    }
+
+    final Scan scan = new Scan(file, canonicalPath, includeSubtree);
+    scan.add(file, canonicalPath, attrs.lastModifiedTime().toMillis());
+    if (!attrs.isDirectory()) {
+      scan.complete(null);
+    } else if (ForkJoinTask.inForkJoinPool()) {
+      scan.fork();
+    } else {
+      getPool().execute(scan);
+    }
+    return scan;
+  }
+
+  private synchronized ForkJoinPool getPool() {
+    if (pool == null) {
+      pool = new ForkJoinPool();
+    }
+    return pool;
+  }
+}
@@ -0,0 +1,263 @@
+package org.springframework.roo.file.monitor.polling;
+
+import java.io.File;
+import java.util.Arrays;
+
+/**
+ * The contents of a monitored location: the last modified time of each file,
+ * keyed by its path.
+ * <p>
+ * A location can hold tens of thousands of files, so rather than a
+ * <code>Map&lt;File, Long&gt;</code> (an entry, a {@link File} and a
+ * {@link Long} per file) this table keeps the paths and times in parallel
+ * arrays, indexed by an open addressing table of <code>int</code>s. Paths are
+ * compared as given, i.e. exactly as {@link File#getPath()} returns them.
+ * <p>
+ * Each entry can also carry a fingerprint of the file's contents; the array
+ * holding them is only allocated once the first fingerprint is recorded.
+ * <p>
+ * Entries are visited in the order they were added:
+ *
+ * <pre>
+ * for (int i = 0; i &lt; table.limit(); i++) {
+ *   final String path = table.getPath(i);
+ *   if (path != null) {
+ *     // use path and table.getTimestamp(i)
+ *   }
+ * }
+ * </pre>
+ *
+ * This class is not thread safe.
+ *
+ * @since 2.0
+ */
+final class FileTimestampTable {
+
+  /** Returned by {@link #get(File)} and {@link #remove(File)} for unknown files */
+  static final long ABSENT = Long.MIN_VALUE;
+
+  /** The fingerprint of an entry whose contents have not been fingerprinted */
+  static final long NO_FINGERPRINT = -1;
+
+  private static final int DELETED = -1;
+  private static final int INITIAL_CAPACITY = 16;
+
+  private long[] fingerprints;
+  private String[] paths;
+  private int size;
+  // Open addressing table; each slot holds an index + 1 (0 = empty slot)
+  private int[] slots;
+  private long[] timestamps;
+  private int used; // entries in the arrays, including removed ones
+
+  FileTimestampTable() {
+    allocate(INITIAL_CAPACITY);
+  }
+
+  boolean containsKey(final File file) {
+    return find(file.getPath()) >= 0;
+  }
+
+  /**
+   * @param file the file to look up (required)
+   * @return the file's last modified time, or {@link #ABSENT}
+   */
+  long get(final File file) {
+    final int index = find(file.getPath());
+    return index < 0 ? ABSENT : timestamps[index];
+  }
+
+  /**
+   * @param index a position from zero (inclusive) to {@link #limit()}
+   *            (exclusive) holding an entry
+   * @return the fingerprint of that entry's contents, or
+   *         {@link #NO_FINGERPRINT}
+   */
+  long getFingerprint(final int index) {
+    return fingerprints == null ? NO_FINGERPRINT : fingerprints[index];
+  }
+
+  /**
+   * Returns the path of the entry at the given position.
+   *
+   * @param index a position from zero (inclusive) to {@link #limit()}
+   *            (exclusive)
+   * @return the path, or <code>null</code> if that entry has been removed
+   */
+  String getPath(final int index) {
+    return paths[index];
+  }
+
+  /**
+   * @param index a position from zero (inclusive) to {@link #limit()}
+   *            (exclusive) holding an entry
+   * @return the last modified time of that entry
+   */
+  long getTimestamp(final int index) {
+    return timestamps[index];
+  }
+
+  /**
+   * @return one more than the last position that can hold an entry
+   */
+  int limit() {
+    return used;
+  }
+
+  /**
+   * @param file the file to look up (required)
+   * @return the position of the file's entry, or -1 if there is none
+   */
+  int indexOf(final File file) {
+    return find(file.getPath());
+  }
+
+  /**
+   * Records the last modified time of the given file, replacing any existing
+   * entry (and its fingerprint).
+   *
+   * @param file the file (required)
+   * @param timestamp its last modified time
+   */
+  void put(final File file, final long timestamp) {
+    put(file.getPath(), timestamp);
+  }
+
+  /**
+   * Records the last modified time of the file with the given path, replacing
+   * any existing entry (and its fingerprint).
+   *
+   * @param path the path of the file, as returned by {@link File#getPath()}
+   *            (required)
+   * @param timestamp its last modified time
+   */
+  void put(final String path, final long timestamp) {
+    final int existing = find(path);
+    if (existing >= 0) {
+      timestamps[existing] = timestamp;
+      setFingerprint(existing, NO_FINGERPRINT);
+      return;
+    }
+    if (used == paths.length) {
+      // Drop removed entries, growing only if the table is still full
+      final int capacity = size * 2 >= paths.length ? paths.length * 2 : paths.length;
+      final long[] oldFingerprints = fingerprints;
+      final String[] oldPaths = paths;
+      final long[] oldTimestamps = timestamps;
+      final int oldUsed = used;
+      allocate(capacity);
+      if (oldFingerprints != null) {
+        fingerprints = new long[capacity];
+      }
+      used = 0;
+      for (int i = 0; i < oldUsed; i++) {
+        if (oldPaths[i] != null) {
+          paths[used] = oldPaths[i];
+          timestamps[used] = oldTimestamps[i];
+          if (fingerprints != null) {
+            fingerprints[used] = oldFingerprints[i];
+          }
+          insert(oldPaths[i], used++);
+        }
+      }
+    }
+    paths[used] = path;
+    timestamps[used] = timestamp;
+    if (fingerprints != null) {
+      fingerprints[used] = NO_FINGERPRINT;
+    }
+    insert(path, used++);
+    size++;
+  }
+
+  /**
+   * Adds every entry of the given table to this one, without their
+   * fingerprints.
+   *
+   * @param other the table to copy from (required)
+   */
+  void putAll(final FileTimestampTable other) {
+    for (int i = 0; i < other.used; i++) {
+      if (other.paths[i] != null) {
+        put(other.paths[i], other.timestamps[i]);
+      }
+    }
+  }
+
+  /**
+   * @param file the file to remove (required)
+   * @return the file's last modified time, or {@link #ABSENT} if it was not
+   *         in the table
+   */
+  long remove(final File file) {
+    final String path = file.getPath();
+    final int mask = slots.length - 1;
+    int slot = spread(path.hashCode()) & mask;
+    while (slots[slot] != 0) {
+      final int index = slots[slot] - 1;
+      if (slots[slot] != DELETED && paths[index].equals(path)) {
+        slots[slot] = DELETED;
+        paths[index] = null;
+        size--;
+        return timestamps[index];
+      }
+      slot = slot + 1 & mask;
+    }
+    return ABSENT;
+  }
+
+  /**
+   * Records the fingerprint of the contents of the entry at the given
+   * position.
+   *
+   * @param index a position from zero (inclusive) to {@link #limit()}
+   *            (exclusive) holding an entry
+   * @param fingerprint the fingerprint, or {@link #NO_FINGERPRINT} to forget
+   *            it
+   */
+  void setFingerprint(final int index, final long fingerprint) {
+    if (fingerprints == null) {
+      if (fingerprint == NO_FINGERPRINT) {
+        return;
+      }
+      fingerprints = new long[paths.length];
+      Arrays.fill(fingerprints, NO_FINGERPRINT);
+    }
+    fingerprints[index] = fingerprint;
+  }
+
+  int size() {
+    return size;
+  }
+
+  private void allocate(final int capacity) {
+    paths = new String[capacity];
+    timestamps = new long[capacity];
+    slots = new int[capacity * 2];
+  }
+
+  private int find(final String path) {
+    final int mask = slots.length - 1;
+    int slot = spread(path.hashCode()) & mask;
+    while (slots[slot] != 0) {
+      if (slots[slot] != DELETED && paths[slots[slot] - 1].equals(path)) {
+        return slots[slot] - 1;
+      }
+      slot = slot + 1 & mask;
+    }
+    return -1;
+  }
+
+  private void insert(final String path, final int index) {
+    final int mask = slots.length - 1;
+    int slot = spread(path.hashCode()) & mask;
+    while (slots[slot] > 0) {
+      slot = slot + 1 & mask;
+    }
+    slots[slot] = index + 1;
+  }
+
+  private static int spread(final int hash) {
+    return hash ^ hash >>> 16;
+  }
+}
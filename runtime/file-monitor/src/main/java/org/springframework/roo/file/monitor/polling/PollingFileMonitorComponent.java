@@ -6,6 +6,7 @@ import org.apache.felix.scr.annotations.ReferenceCardinality;
 import org.apache.felix.scr.annotations.ReferencePolicy;
 import org.apache.felix.scr.annotations.ReferenceStrategy;
 import org.apache.felix.scr.annotations.Service;
+import org.osgi.service.component.ComponentContext;
 import org.springframework.roo.file.monitor.event.FileEventListener;
 import org.springframework.roo.file.monitor.polling.PollingFileMonitorService;
 
@@ -13,17 +14,25 @@ import org.springframework.roo.file.monitor.polling.PollingFileMonitorService;
  * Extends {@link PollingFileMonitorService} by making it available as an OSGi
  * component that automatically monitors the environment's
  * {@link FileEventListener} components.
+ * <p>
+ * Disabled by default in favour of
+ * {@link org.springframework.roo.file.monitor.watch.WatchingFileMonitorComponent}
+ * as that component polls by itself wherever the file system cannot be watched.
  * 
  * @author Ben Alex
  * @since 1.1
  */
-@Component
+@Component(enabled = false)
 @Service
 @Reference(name = "fileEventListener", strategy = ReferenceStrategy.EVENT,
     policy = ReferencePolicy.DYNAMIC, referenceInterface = FileEventListener.class,
     cardinality = ReferenceCardinality.OPTIONAL_MULTIPLE)
 public class PollingFileMonitorComponent extends PollingFileMonitorService {
 
+  protected void activate(final ComponentContext context) {
+    setContentFingerprinting(System.getProperty(FINGERPRINT_PROPERTY) != null);
+  }
+
   protected void bindFileEventListener(final FileEventListener listener) {
     add(listener);
   }
@@ -7,15 +7,16 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.net.URISyntaxException;
 import java.net.URL;
+import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
 import java.util.Set;
 import java.util.SortedSet;
 import java.util.TreeSet;
@@ -23,8 +24,10 @@ import java.util.WeakHashMap;
 import java.util.jar.JarFile;
 import java.util.jar.Manifest;
 import java.util.logging.Logger;
+import java.util.zip.CRC32;
 import java.util.zip.ZipEntry;
 
+import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.Validate;
 import org.springframework.roo.file.monitor.DirectoryMonitoringRequest;
 import org.springframework.roo.file.monitor.FileMonitorService;
@@ -59,6 +62,13 @@ import org.w3c.dom.Element;
  * present in the {@link FileEvent} times equal to the last time a deleted file
  * was modified. The time does NOT represent the deletion time nor the time the
  * deletion was first detected.
+ * <p>
+ * Optionally, a fingerprint of each file's contents can be kept alongside its
+ * modification time, so that a file whose time changes but whose contents do
+ * not (e.g. after a version control checkout or a "save all") is not reported
+ * as {@link FileOperation#UPDATED}. Fingerprinting reads every monitored file
+ * when monitoring starts, so it is off by default; see
+ * {@link #setContentFingerprinting(boolean)}.
  * 
  * @author Ben Alex
  * @author Juan Carlos García
@@ -66,18 +76,30 @@ import org.w3c.dom.Element;
  */
 public class PollingFileMonitorService implements NotifiableFileMonitorService {
 
+  /**
+   * The system property that, if set, turns on content fingerprinting in the
+   * file monitor components
+   */
+  protected static final String FINGERPRINT_PROPERTY = "roo.file.monitor.fingerprint";
+
   protected final static Logger LOGGER = HandlerUtils.getLogger(PollingFileMonitorService.class);
 
+  // Larger files are assumed to have changed whenever their time does
+  private static final long MAX_FINGERPRINTED_LENGTH = 8 * 1024 * 1024;
+
   private final Set<String> allFiles = new HashSet<String>();
   private final Map<String, Set<String>> changeMap = new HashMap<String, Set<String>>();
   private final Set<FileEventListener> fileEventListeners = new HashSet<FileEventListener>();
+  private boolean fingerprinting;
   private final Object lock = new Object();
   private final Set<String> notifyChanged = new HashSet<String>();
   private final Set<String> notifyCreated = new HashSet<String>();
   private final Set<String> notifyDeleted = new HashSet<String>();
-  private final Map<MonitoringRequest, Map<File, Long>> priorExecution =
-      new WeakHashMap<MonitoringRequest, Map<File, Long>>();
+  private final Map<MonitoringRequest, FileTimestampTable> priorExecution =
+      new WeakHashMap<MonitoringRequest, FileTimestampTable>();
   private final Set<MonitoringRequest> requests = new LinkedHashSet<MonitoringRequest>();
+  private final DirectoryScanner scanner = new DirectoryScanner(this);
+  private long suppressedUpdates;
   private final List<FileEvent> eventsPendingToPublish = new ArrayList<FileEvent>();
 
   public final void add(final FileEventListener e) {
@@ -135,8 +157,8 @@ public class PollingFileMonitorService implements NotifiableFileMonitorService {
   }
 
   /**
-   * Adds one or more entries into the Map. The key of the Map is the File
-   * object, and the value is the {@link File#lastModified()} time.
+   * Adds one or more entries into the table, giving the last modified time of
+   * each file.
    * <p>
    * Specifically:
    * <ul>
@@ -148,35 +170,92 @@ public class PollingFileMonitorService implements NotifiableFileMonitorService {
    * will be added only if "includeSubtree" is true.</li>
    * </ul>
    */
-  private void computeEntries(final Map<File, Long> map, final File currentFile,
+  private void computeEntries(final FileTimestampTable table, final File currentFile,
       final boolean includeSubtree) {
-    Validate.notNull(map, "Map required");
+    Validate.notNull(table, "Table required");
     Validate.notNull(currentFile, "Current file is required");
+    addScanned(table, scanner.start(currentFile, includeSubtree));
+  }
 
-    if (!currentFile.exists() || currentFile.getName().length() > 1
-        && currentFile.getName().startsWith(".") || currentFile.getName().equals("log.roo")
-        || currentFile.isDirectory() && isExcludedDirectory(currentFile.getPath())) {
-      return;
+  /**
+   * Waits for the given scan to finish and adds what it found to the given
+   * table.
+   * 
+   * @param table the table to add to (required)
+   * @param scan the scan (can be <code>null</code> if nothing was scanned)
+   */
+  private void addScanned(final FileTimestampTable table, final DirectoryScanner.Scan scan) {
+    if (scan != null) {
+      scan.join();
+      scan.addTo(table, allFiles);
     }
+  }
 
-    map.put(currentFile, currentFile.lastModified());
-
-    try {
-      allFiles.add(currentFile.getCanonicalPath());
-    } catch (final IOException ignored) {
+  /**
+   * Builds the contents of a monitored location from those found by the
+   * previous execution, re-reading only the given directories. Files in
+   * those directories are re-read, directories new to them are read in full
+   * (if "includeSubtree" is true), and anything below a directory that has
+   * since disappeared is dropped.
+   * 
+   * @param priorFiles the contents found by the previous execution
+   * @param changedDirectories the directories to re-read
+   * @param includeSubtree whether the location includes subdirectories
+   * @return a new table of the location's current contents
+   */
+  private FileTimestampTable computeChangedEntries(final FileTimestampTable priorFiles,
+      final Collection<File> changedDirectories, final boolean includeSubtree) {
+    final Set<String> changedPaths = new HashSet<String>();
+    for (final File directory : changedDirectories) {
+      changedPaths.add(directory.getPath());
+    }
+    final FileTimestampTable currentExecution = new FileTimestampTable();
+    for (int i = 0; i < priorFiles.limit(); i++) {
+      final String path = priorFiles.getPath(i);
+      if (path != null && !changedPaths.contains(new File(path).getParent())) {
+        currentExecution.put(path, priorFiles.getTimestamp(i));
+      }
     }
 
-    if (currentFile.isDirectory()) {
-      final File[] files = currentFile.listFiles();
-      if (files == null || files.length == 0) {
-        return;
+    for (final File directory : changedDirectories) {
+      if (!directory.isDirectory() || isIgnored(directory, true)) {
+        // Its parent will have changed too, if it's gone
+        continue;
+      }
+      currentExecution.put(directory, getLastModified(directory));
+      final File[] files = directory.listFiles();
+      if (files == null) {
+        continue;
       }
       for (final File file : files) {
-        if (file.isFile() || includeSubtree) {
-          computeEntries(map, file, includeSubtree);
+        if (file.isFile()) {
+          computeEntries(currentExecution, file, false);
+        } else if (includeSubtree && file.isDirectory()) {
+          if (!priorFiles.containsKey(file)) {
+            computeEntries(currentExecution, file, true);
+          } else if (!isIgnored(file, true)) {
+            currentExecution.put(file, getLastModified(file));
+          }
+        }
+      }
+    }
+
+    // Drop the contents of any subdirectories that have disappeared
+    for (int i = 0; i < priorFiles.limit(); i++) {
+      final String prior = priorFiles.getPath(i);
+      if (prior == null || !changedPaths.contains(new File(prior).getParent())
+          || currentExecution.containsKey(new File(prior))) {
+        continue;
+      }
+      final String prefix = prior + File.separator;
+      for (int j = 0; j < currentExecution.limit(); j++) {
+        final String path = currentExecution.getPath(j);
+        if (path != null && path.startsWith(prefix)) {
+          currentExecution.remove(new File(path));
         }
       }
     }
+    return currentExecution;
   }
 
   public SortedSet<FileDetails> findMatchingAntPath(final String antPath) {
@@ -209,6 +288,24 @@ public class PollingFileMonitorService implements NotifiableFileMonitorService {
     return result;
   }
 
+  /**
+   * Returns the directories within the given location that are known to have
+   * changed since it was last scanned, allowing {@link #scanAll()} to re-read
+   * just those directories rather than the whole location. Only called for
+   * locations that have been scanned before.
+   * <p>
+   * This implementation returns <code>null</code>, as polling has no way of
+   * knowing what has changed without looking.
+   * 
+   * @param request the monitored location (never <code>null</code>)
+   * @return the changed directories, expressed relative to the request's
+   *         file in the same way as the files it contains (empty if nothing
+   *         has changed), or <code>null</code> to scan the whole location
+   */
+  protected Collection<File> getChangedDirectories(final MonitoringRequest request) {
+    return null;
+  }
+
   public Collection<String> getDirtyFiles(final String requestingClass) {
     synchronized (lock) {
       final Collection<String> changesSinceLastRequest = changeMap.get(requestingClass);
@@ -224,7 +321,7 @@ public class PollingFileMonitorService implements NotifiableFileMonitorService {
   }
 
   private List<FileEvent> getFileCreationEvents(final MonitoringRequest request,
-      final Map<File, Long> priorFiles) {
+      final FileTimestampTable priorFiles) {
     final List<FileEvent> createEvents = new ArrayList<FileEvent>();
     for (final Iterator<String> iter = notifyCreated.iterator(); iter.hasNext();) {
       final String filePath = iter.next();
@@ -234,11 +331,13 @@ public class PollingFileMonitorService implements NotifiableFileMonitorService {
         final File thisFile = new File(filePath);
         if (thisFile.exists()) {
           // Record the notification
-          createEvents.add(new FileEvent(new FileDetails(thisFile, thisFile.lastModified()),
+          final long lastModified = getLastModified(thisFile);
+          createEvents.add(new FileEvent(new FileDetails(thisFile, lastModified),
               FileOperation.CREATED, null));
-          // Update the prior execution map so it isn't notified again
+          // Update the prior execution table so it isn't notified again
           // next round
-          priorFiles.put(thisFile, thisFile.lastModified());
+          priorFiles.put(thisFile, lastModified);
+          updateFingerprint(priorFiles, priorFiles.indexOf(thisFile));
         }
       }
     }
@@ -246,7 +345,7 @@ public class PollingFileMonitorService implements NotifiableFileMonitorService {
   }
 
   private List<FileEvent> getFileDeletionEvents(final MonitoringRequest request,
-      final Map<File, Long> priorFiles) {
+      final FileTimestampTable priorFiles) {
     final List<FileEvent> deleteEvents = new ArrayList<FileEvent>();
     for (final Iterator<String> iter = notifyDeleted.iterator(); iter.hasNext();) {
       final String filePath = iter.next();
@@ -259,7 +358,7 @@ public class PollingFileMonitorService implements NotifiableFileMonitorService {
           // Record the notification
           deleteEvents.add(new FileEvent(new FileDetails(thisFile, null), FileOperation.DELETED,
               null));
-          // Update the prior execution map so it isn't notified again
+          // Update the prior execution table so it isn't notified again
           // next round
           priorFiles.remove(thisFile);
         }
@@ -269,7 +368,7 @@ public class PollingFileMonitorService implements NotifiableFileMonitorService {
   }
 
   private List<FileEvent> getFileUpdateEvents(final MonitoringRequest request,
-      final Map<File, Long> priorFiles) {
+      final FileTimestampTable priorFiles) {
     final List<FileEvent> updateEvents = new ArrayList<FileEvent>();
     for (final Iterator<String> iter = notifyChanged.iterator(); iter.hasNext();) {
       final String filePath = iter.next();
@@ -279,11 +378,13 @@ public class PollingFileMonitorService implements NotifiableFileMonitorService {
         final File thisFile = new File(filePath);
         if (thisFile.exists()) {
           // Record the notification
-          updateEvents.add(new FileEvent(new FileDetails(thisFile, thisFile.lastModified()),
+          final long lastModified = getLastModified(thisFile);
+          updateEvents.add(new FileEvent(new FileDetails(thisFile, lastModified),
               FileOperation.UPDATED, null));
-          // Update the prior execution map so it isn't notified again
+          // Update the prior execution table so it isn't notified again
           // next round
-          priorFiles.put(thisFile, thisFile.lastModified());
+          priorFiles.put(thisFile, lastModified);
+          updateFingerprint(priorFiles, priorFiles.indexOf(thisFile));
           // Also remove it from the created list, if it's in there
           if (notifyCreated.contains(filePath)) {
             notifyCreated.remove(filePath);
@@ -303,9 +404,12 @@ public class PollingFileMonitorService implements NotifiableFileMonitorService {
 
       for (final MonitoringRequest request : requests) {
         if (priorExecution.containsKey(request)) {
-          final Map<File, Long> priorFiles = priorExecution.get(request);
-          for (final Entry<File, Long> entry : priorFiles.entrySet()) {
-            monitored.add(new FileDetails(entry.getKey(), entry.getValue()));
+          final FileTimestampTable priorFiles = priorExecution.get(request);
+          for (int i = 0; i < priorFiles.limit(); i++) {
+            final String path = priorFiles.getPath(i);
+            if (path != null) {
+              monitored.add(new FileDetails(new File(path), priorFiles.getTimestamp(i)));
+            }
           }
         }
       }
@@ -314,12 +418,79 @@ public class PollingFileMonitorService implements NotifiableFileMonitorService {
     }
   }
 
+  /**
+   * Returns the number of {@link FileOperation#UPDATED} events that were not
+   * published because the file's contents had not changed.
+   * 
+   * @return zero if content fingerprinting has never been enabled
+   */
+  public long getSuppressedUpdateCount() {
+    synchronized (lock) {
+      return suppressedUpdates;
+    }
+  }
+
+  /**
+   * Indicates whether files whose contents are unchanged are reported as
+   * updated when their modification time changes.
+   * 
+   * @return <code>false</code> if they are
+   * @see #setContentFingerprinting(boolean)
+   */
+  public boolean isContentFingerprinting() {
+    synchronized (lock) {
+      return fingerprinting;
+    }
+  }
+
   public boolean isDirty() {
     synchronized (lock) {
       return !notifyChanged.isEmpty() || !notifyCreated.isEmpty() || !notifyDeleted.isEmpty();
     }
   }
 
+  /**
+   * Returns the last modified time of the given file, as read by the
+   * directory scans, so that times recorded from notifications compare
+   * equal with them.
+   * 
+   * @param file the file (required)
+   * @return the time in milliseconds, or 0 if the file can't be read
+   */
+  private static long getLastModified(final File file) {
+    try {
+      return Files.getLastModifiedTime(file.toPath()).toMillis();
+    } catch (final IOException e) {
+      return 0;
+    }
+  }
+
+  /**
+   * Indicates whether the given file or directory is never monitored (along
+   * with, for a directory, everything in it).
+   * 
+   * @param file the file or directory to check (required)
+   * @return see above
+   */
+  protected final boolean isIgnored(final File file) {
+    return isIgnored(file, file.isDirectory());
+  }
+
+  /**
+   * Indicates whether the given file or directory is never monitored (along
+   * with, for a directory, everything in it). Called concurrently by
+   * {@link #scanAll()}.
+   * 
+   * @param file the file or directory to check (required)
+   * @param directory whether the file is a directory
+   * @return see above
+   */
+  protected boolean isIgnored(final File file, final boolean directory) {
+    final String name = file.getName();
+    return name.length() > 1 && name.startsWith(".") || name.equals("log.roo")
+        || directory && isExcludedDirectory(file.getPath());
+  }
+
   private boolean isExcludedDirectory(final String path) {
     final boolean hasSrc = path.contains(File.separator + "src");
     return !hasSrc
@@ -353,6 +524,11 @@ public class PollingFileMonitorService implements NotifiableFileMonitorService {
     } catch (final IOException e) {
       return false;
     }
+    return isWithin(request, requestCanonicalPath, filePath);
+  }
+
+  private boolean isWithin(final MonitoringRequest request, final String requestCanonicalPath,
+      final String filePath) {
     if (request instanceof DirectoryMonitoringRequest) {
       final DirectoryMonitoringRequest dmr = (DirectoryMonitoringRequest) request;
       if (dmr.isWatchSubtree()) {
@@ -386,6 +562,29 @@ public class PollingFileMonitorService implements NotifiableFileMonitorService {
     }
   }
 
+  public void notifyChanged(final Collection<String> fileCanonicalPaths) {
+    synchronized (lock) {
+      // Resolve each request's location once, rather than once per file
+      final Map<MonitoringRequest, String> requestPaths =
+          new LinkedHashMap<MonitoringRequest, String>();
+      for (final MonitoringRequest request : requests) {
+        try {
+          requestPaths.put(request, request.getFile().getCanonicalPath());
+        } catch (final IOException ignored) {
+        }
+      }
+      for (final String fileCanonicalPath : fileCanonicalPaths) {
+        updateChanges(fileCanonicalPath, false);
+        for (final Map.Entry<MonitoringRequest, String> requestPath : requestPaths.entrySet()) {
+          if (isWithin(requestPath.getKey(), requestPath.getValue(), fileCanonicalPath)) {
+            notifyChanged.add(fileCanonicalPath);
+            break;
+          }
+        }
+      }
+    }
+  }
+
   public void notifyCreated(final String fileCanonicalPath) {
     synchronized (lock) {
       updateChanges(fileCanonicalPath, false);
@@ -434,9 +633,9 @@ public class PollingFileMonitorService implements NotifiableFileMonitorService {
       final List<FileEvent> eventsToPublish = new ArrayList<FileEvent>();
 
       // See when each file was last checked
-      Map<File, Long> priorFiles = priorExecution.get(request);
+      FileTimestampTable priorFiles = priorExecution.get(request);
       if (priorFiles == null) {
-        priorFiles = new HashMap<File, Long>();
+        priorFiles = new FileTimestampTable();
         priorExecution.put(request, priorFiles);
       }
 
@@ -500,12 +699,13 @@ public class PollingFileMonitorService implements NotifiableFileMonitorService {
       if (priorExecution.containsKey(request)) {
         final List<FileEvent> eventsToPublish = new ArrayList<FileEvent>();
 
-        final Map<File, Long> priorFiles = priorExecution.get(request);
-        for (final Entry<File, Long> entry : priorFiles.entrySet()) {
-          final File thisFile = entry.getKey();
-          final Long lastModified = entry.getValue();
-          eventsToPublish.add(new FileEvent(new FileDetails(thisFile, lastModified),
-              FileOperation.MONITORING_FINISH, null));
+        final FileTimestampTable priorFiles = priorExecution.get(request);
+        for (int i = 0; i < priorFiles.limit(); i++) {
+          final String path = priorFiles.getPath(i);
+          if (path != null) {
+            eventsToPublish.add(new FileEvent(new FileDetails(new File(path), priorFiles
+                .getTimestamp(i)), FileOperation.MONITORING_FINISH, null));
+          }
         }
         publish(eventsToPublish);
       }
@@ -524,99 +724,71 @@ public class PollingFileMonitorService implements NotifiableFileMonitorService {
 
       int changes = 0;
 
+      // Start reading every location that needs a full scan, so that they
+      // are all read in parallel
+      final Map<MonitoringRequest, Collection<File>> changedDirectoriesByRequest =
+          new HashMap<MonitoringRequest, Collection<File>>();
+      final Map<MonitoringRequest, DirectoryScanner.Scan> scans =
+          new HashMap<MonitoringRequest, DirectoryScanner.Scan>();
       for (final MonitoringRequest request : requests) {
-        boolean includeSubtree = false;
-        if (request instanceof DirectoryMonitoringRequest) {
-          includeSubtree = ((DirectoryMonitoringRequest) request).isWatchSubtree();
-        }
-
         if (!request.getFile().exists()) {
           continue;
         }
+        final Collection<File> changedDirectories =
+            priorExecution.containsKey(request) ? getChangedDirectories(request) : null;
+        if (changedDirectories == null) {
+          scans.put(request, scanner.start(request.getFile(), isWatchSubtree(request)));
+        } else {
+          changedDirectoriesByRequest.put(request, changedDirectories);
+        }
+      }
 
-        // Build contents of the monitored location
-        final Map<File, Long> currentExecution = new HashMap<File, Long>();
-        computeEntries(currentExecution, request.getFile(), includeSubtree);
+      for (final MonitoringRequest request : requests) {
+        if (!scans.containsKey(request) && !changedDirectoriesByRequest.containsKey(request)) {
+          continue;
+        }
 
+        final FileTimestampTable priorFiles = priorExecution.get(request);
+        final Collection<File> changedDirectories = changedDirectoriesByRequest.get(request);
         final List<FileEvent> eventsToPublish = new ArrayList<FileEvent>();
 
-        if (priorExecution.containsKey(request)) {
-          // Need to perform a comparison, as we have data from a
-          // previous execution
-          final Map<File, Long> priorFiles = priorExecution.get(request);
-
-          // Locate created and modified files
-          for (final Entry<File, Long> entry : currentExecution.entrySet()) {
-            final File thisFile = entry.getKey();
-            final Long currentTimestamp = entry.getValue();
-            if (!priorFiles.containsKey(thisFile)) {
-              // This file did not exist last execution, so it
-              // must be new
-              eventsToPublish.add(new FileEvent(new FileDetails(thisFile, currentTimestamp),
-                  FileOperation.CREATED, null));
-              try {
-                // If this file was already going to be
-                // notified, there is no need to do it twice
-                notifyCreated.remove(thisFile.getCanonicalPath());
-              } catch (final IOException ignored) {
-              }
-              continue;
-            }
-
-            final Long previousTimestamp = priorFiles.get(thisFile);
-            if (!currentTimestamp.equals(previousTimestamp)) {
-              // Modified
-              eventsToPublish.add(new FileEvent(new FileDetails(thisFile, currentTimestamp),
-                  FileOperation.UPDATED, null));
-              try {
-                // If this file was already going to be
-                // notified, there is no need to do it twice
-                notifyChanged.remove(thisFile.getCanonicalPath());
-              } catch (final IOException ignored) {
-              }
-            }
-          }
-
-          // Now locate deleted files
-          priorFiles.keySet().removeAll(currentExecution.keySet());
-          for (final Entry<File, Long> entry : priorFiles.entrySet()) {
-            final File deletedFile = entry.getKey();
-            eventsToPublish.add(new FileEvent(new FileDetails(deletedFile, entry.getValue()),
-                FileOperation.DELETED, null));
-            try {
-              // If this file was already going to be notified,
-              // there is no need to do it twice
-              notifyDeleted.remove(deletedFile.getCanonicalPath());
-            } catch (final IOException ignored) {
-            }
+        if (changedDirectories == null) {
+          // Build contents of the monitored location
+          final FileTimestampTable currentExecution = new FileTimestampTable();
+          addScanned(currentExecution, scans.get(request));
+          eventsToPublish.addAll(getScanEvents(priorFiles, currentExecution));
+
+          // Record the monitored location's contents, ready for next
+          // execution
+          priorExecution.put(request, currentExecution);
+
+          // We can discard the created and deleted notifications, as they
+          // would have been correctly discovered in the above loop
+          removeWithin(request, notifyCreated);
+          removeWithin(request, notifyDeleted);
+
+          // Explicitly handle any undiscovered update notifications, as
+          // this indicates an identical millisecond update occurred
+          for (final String canonicalPath : removeWithin(request, notifyChanged)) {
+            final File file = new File(canonicalPath);
+            eventsToPublish.add(new FileEvent(new FileDetails(file, getLastModified(file)),
+                FileOperation.UPDATED, null));
           }
         } else {
-          // No data from previous execution, so it's a
-          // newly-monitored location
-          for (final Entry<File, Long> entry : currentExecution.entrySet()) {
-            eventsToPublish.add(new FileEvent(new FileDetails(entry.getKey(), entry.getValue()),
-                FileOperation.MONITORING_START, null));
+          // Only part of the location may have changed; handle the
+          // notifications first, so that the files they concern are not
+          // reported twice
+          eventsToPublish.addAll(getFileUpdateEvents(request, priorFiles));
+          eventsToPublish.addAll(getFileCreationEvents(request, priorFiles));
+          eventsToPublish.addAll(getFileDeletionEvents(request, priorFiles));
+          if (!changedDirectories.isEmpty()) {
+            final FileTimestampTable currentExecution =
+                computeChangedEntries(priorFiles, changedDirectories, isWatchSubtree(request));
+            eventsToPublish.addAll(getScanEvents(priorFiles, currentExecution));
+            priorExecution.put(request, currentExecution);
           }
         }
 
-        // Record the monitored location's contents, ready for next
-        // execution
-        priorExecution.put(request, currentExecution);
-
-        // We can discard the created and deleted notifications, as they
-        // would have been correctly discovered in the above loop
-        notifyCreated.clear();
-        notifyDeleted.clear();
-
-        // Explicitly handle any undiscovered update notifications, as
-        // this indicates an identical millisecond update occurred
-        for (final String canonicalPath : notifyChanged) {
-          final File file = new File(canonicalPath);
-          eventsToPublish.add(new FileEvent(new FileDetails(file, file.lastModified()),
-              FileOperation.UPDATED, null));
-        }
-        notifyChanged.clear();
-
         // ROO-3622: Validate if version change
         if (!isDifferentVersion()) {
           // Publishing pending events if needed
@@ -644,6 +816,156 @@ public class PollingFileMonitorService implements NotifiableFileMonitorService {
     }
   }
 
+  /**
+   * Compares the contents of a monitored location with those found by the
+   * previous execution.
+   * 
+   * @param priorFiles the contents found by the previous execution
+   *            (<code>null</code> if the location is newly monitored)
+   * @param currentExecution the current contents (required)
+   * @return the events describing the differences (never <code>null</code>)
+   */
+  private List<FileEvent> getScanEvents(final FileTimestampTable priorFiles,
+      final FileTimestampTable currentExecution) {
+    final List<FileEvent> eventsToPublish = new ArrayList<FileEvent>();
+
+    if (priorFiles != null) {
+      // Need to perform a comparison, as we have data from a
+      // previous execution
+
+      // Locate created and modified files
+      for (int i = 0; i < currentExecution.limit(); i++) {
+        final String path = currentExecution.getPath(i);
+        if (path == null) {
+          continue;
+        }
+        final File thisFile = new File(path);
+        final long currentTimestamp = currentExecution.getTimestamp(i);
+        final int priorIndex = priorFiles.indexOf(thisFile);
+        if (priorIndex < 0) {
+          // This file did not exist last execution, so it
+          // must be new
+          eventsToPublish.add(new FileEvent(new FileDetails(thisFile, currentTimestamp),
+              FileOperation.CREATED, null));
+          updateFingerprint(currentExecution, i);
+          try {
+            // If this file was already going to be
+            // notified, there is no need to do it twice
+            notifyCreated.remove(thisFile.getCanonicalPath());
+          } catch (final IOException ignored) {
+          }
+          continue;
+        }
+
+        final long previousFingerprint = priorFiles.getFingerprint(priorIndex);
+        if (currentTimestamp == priorFiles.getTimestamp(priorIndex)) {
+          currentExecution.setFingerprint(i, previousFingerprint);
+          continue;
+        }
+        updateFingerprint(currentExecution, i);
+        if (previousFingerprint != FileTimestampTable.NO_FINGERPRINT
+            && previousFingerprint == currentExecution.getFingerprint(i)) {
+          // Only the time has changed
+          suppressedUpdates++;
+          continue;
+        }
+
+        // Modified
+        eventsToPublish.add(new FileEvent(new FileDetails(thisFile, currentTimestamp),
+            FileOperation.UPDATED, null));
+        try {
+          // If this file was already going to be
+          // notified, there is no need to do it twice
+          notifyChanged.remove(thisFile.getCanonicalPath());
+        } catch (final IOException ignored) {
+        }
+      }
+
+      // Now locate deleted files
+      for (int i = 0; i < priorFiles.limit(); i++) {
+        final String path = priorFiles.getPath(i);
+        if (path == null) {
+          continue;
+        }
+        final File deletedFile = new File(path);
+        if (currentExecution.containsKey(deletedFile)) {
+          continue;
+        }
+        eventsToPublish.add(new FileEvent(new FileDetails(deletedFile, priorFiles
+            .getTimestamp(i)), FileOperation.DELETED, null));
+        try {
+          // If this file was already going to be notified,
+          // there is no need to do it twice
+          notifyDeleted.remove(deletedFile.getCanonicalPath());
+        } catch (final IOException ignored) {
+        }
+      }
+    } else {
+      // No data from previous execution, so it's a
+      // newly-monitored location
+      for (int i = 0; i < currentExecution.limit(); i++) {
+        final String path = currentExecution.getPath(i);
+        if (path != null) {
+          eventsToPublish.add(new FileEvent(new FileDetails(new File(path), currentExecution
+              .getTimestamp(i)), FileOperation.MONITORING_START, null));
+          updateFingerprint(currentExecution, i);
+        }
+      }
+    }
+    return eventsToPublish;
+  }
+
+  /**
+   * Fingerprints the contents of the given file.
+   * 
+   * @param file the file (required)
+   * @return the fingerprint, or {@link FileTimestampTable#NO_FINGERPRINT} if
+   *         the file is not a regular file, is too large, or can't be read
+   */
+  private static long getFingerprint(final File file) {
+    if (!file.isFile()) {
+      return FileTimestampTable.NO_FINGERPRINT;
+    }
+    final long length = file.length();
+    if (length > MAX_FINGERPRINTED_LENGTH) {
+      return FileTimestampTable.NO_FINGERPRINT;
+    }
+    final CRC32 checksum = new CRC32();
+    final byte[] buffer = new byte[8192];
+    InputStream in = null;
+    try {
+      in = new FileInputStream(file);
+      int read;
+      while ((read = in.read(buffer)) != -1) {
+        checksum.update(buffer, 0, read);
+      }
+    } catch (final IOException e) {
+      return FileTimestampTable.NO_FINGERPRINT;
+    } finally {
+      IOUtils.closeQuietly(in);
+    }
+    // Including the length makes a collision much less likely
+    return length << 32 | checksum.getValue();
+  }
+
+  /**
+   * Records the fingerprint of the contents of the given table entry, if
+   * fingerprinting is enabled.
+   * 
+   * @param table the table (required)
+   * @param index the position of the entry
+   */
+  private void updateFingerprint(final FileTimestampTable table, final int index) {
+    if (fingerprinting) {
+      table.setFingerprint(index, getFingerprint(new File(table.getPath(index))));
+    }
+  }
+
+  private static boolean isWatchSubtree(final MonitoringRequest request) {
+    return request instanceof DirectoryMonitoringRequest
+        && ((DirectoryMonitoringRequest) request).isWatchSubtree();
+  }
+
   private String getRooProjectVersion() {
     String homePath = new File(".").getPath();
     String pomPath = homePath + "/pom.xml";
@@ -651,12 +973,16 @@ public class PollingFileMonitorService implements NotifiableFileMonitorService {
     try {
       if (pom.exists()) {
         InputStream is = new FileInputStream(pom);
-        Document docXml = XmlUtils.readXml(is);
-        Element document = docXml.getDocumentElement();
-        Element rooVersionElement = XmlUtils.findFirstElement("properties/roo.version", document);
-        String rooVersion = rooVersionElement.getTextContent();
-
-        return rooVersion;
+        try {
+          Document docXml = XmlUtils.readXml(is);
+          Element document = docXml.getDocumentElement();
+          Element rooVersionElement = XmlUtils.findFirstElement("properties/roo.version", document);
+          if (rooVersionElement != null) {
+            return rooVersionElement.getTextContent();
+          }
+        } finally {
+          IOUtils.closeQuietly(is);
+        }
       }
 
       return "UNKNOWN";
@@ -718,6 +1044,25 @@ public class PollingFileMonitorService implements NotifiableFileMonitorService {
     return sb.toString();
   }
 
+  /**
+   * Removes the paths within the given monitored location from the given set
+   * of notifications.
+   * 
+   * @return the removed paths
+   */
+  private List<String> removeWithin(final MonitoringRequest request,
+      final Set<String> notifications) {
+    final List<String> removed = new ArrayList<String>();
+    for (final Iterator<String> iter = notifications.iterator(); iter.hasNext();) {
+      final String filePath = iter.next();
+      if (isWithin(request, filePath)) {
+        iter.remove();
+        removed.add(filePath);
+      }
+    }
+    return removed;
+  }
+
   public int scanNotified() {
     synchronized (lock) {
       if (noRequestsOrChanges()) {
@@ -727,6 +1072,21 @@ public class PollingFileMonitorService implements NotifiableFileMonitorService {
     }
   }
 
+  /**
+   * Sets whether to fingerprint the contents of monitored files, so that a
+   * file whose modification time changes without its contents changing is not
+   * reported as {@link FileOperation#UPDATED}. Files are fingerprinted as they
+   * are first seen, so enabling this before monitoring begins means even the
+   * first such change is recognised.
+   * 
+   * @param fingerprinting whether to fingerprint file contents
+   */
+  public void setContentFingerprinting(final boolean fingerprinting) {
+    synchronized (lock) {
+      this.fingerprinting = fingerprinting;
+    }
+  }
+
   private void updateChanges(final String fileCanonicalPath, final boolean remove) {
     for (final String requestingClass : changeMap.keySet()) {
       if (remove) {
@@ -0,0 +1,41 @@
+package org.springframework.roo.file.monitor.watch;
+
+import org.apache.felix.scr.annotations.Component;
+import org.apache.felix.scr.annotations.Reference;
+import org.apache.felix.scr.annotations.ReferenceCardinality;
+import org.apache.felix.scr.annotations.ReferencePolicy;
+import org.apache.felix.scr.annotations.ReferenceStrategy;
+import org.apache.felix.scr.annotations.Service;
+import org.osgi.service.component.ComponentContext;
+import org.springframework.roo.file.monitor.event.FileEventListener;
+
+/**
+ * Extends {@link WatchingFileMonitorService} by making it available as an OSGi
+ * component that automatically monitors the environment's
+ * {@link FileEventListener} components.
+ * 
+ * @since 2.0
+ */
+@Component
+@Service
+@Reference(name = "fileEventListener", strategy = ReferenceStrategy.EVENT,
+    policy = ReferencePolicy.DYNAMIC, referenceInterface = FileEventListener.class,
+    cardinality = ReferenceCardinality.OPTIONAL_MULTIPLE)
+public class WatchingFileMonitorComponent extends WatchingFileMonitorService {
+
+  protected void activate(final ComponentContext context) {
+    setContentFingerprinting(System.getProperty(FINGERPRINT_PROPERTY) != null);
+  }
+
+  protected void bindFileEventListener(final FileEventListener listener) {
+    add(listener);
+  }
+
+  protected void deactivate(final ComponentContext context) {
+    close();
+  }
+
+  protected void unbindFileEventListener(final FileEventListener listener) {
+    remove(listener);
+  }
+}
@@ -0,0 +1,400 @@
+package org.springframework.roo.file.monitor.watch;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+
+import org.apache.commons.io.IOUtils;
+import org.springframework.roo.file.monitor.DirectoryMonitoringRequest;
+import org.springframework.roo.file.monitor.FileMonitorService;
+import org.springframework.roo.file.monitor.MonitoringRequest;
+import org.springframework.roo.file.monitor.polling.PollingFileMonitorService;
+
+/**
+ * A {@link FileMonitorService} that learns of changes from the operating
+ * system via a {@link WatchService}, rather than by polling.
+ * <p>
+ * Every directory of each monitored tree is registered with the watch
+ * service, including directories created later. Each {@link #scanAll()} then
+ * re-reads only the directories the watch service has reported as changed,
+ * so an idle project costs next to nothing to monitor. Callers can also block
+ * in {@link #awaitChanges(long)} to learn of changes as soon as they happen.
+ * <p>
+ * A tree that cannot be watched (for example because the operating system's
+ * limit on watches has been reached) is polled as by the superclass, as is
+ * any tree for which the watch service has lost events. If the platform's
+ * watch service itself works by polling, it is not used at all.
+ * 
+ * @since 2.0
+ */
+public class WatchingFileMonitorService extends PollingFileMonitorService {
+
+  // Lets a burst of changes (e.g. a file being saved) arrive before scanning
+  private static final long SETTLE_MILLIS = 50;
+
+  // Snapshots taken by the current scanAll()
+  private Set<File> changedDirectoriesToScan = new HashSet<File>();
+  private Set<MonitoringRequest> requestsToPoll = new HashSet<MonitoringRequest>();
+
+  // Guarded by watchLock
+  private final Set<File> changedDirectories = new HashSet<File>();
+  private final Set<MonitoringRequest> lostRequests = new HashSet<MonitoringRequest>();
+  // key: registered watch key, value: the canonical directory it watches
+  private final Map<WatchKey, File> watchedDirectories = new HashMap<WatchKey, File>();
+  private final Map<File, WatchKey> watchKeys = new HashMap<File, WatchKey>();
+  private final Set<DirectoryMonitoringRequest> watchedRequests =
+      new HashSet<DirectoryMonitoringRequest>();
+  private final Object watchLock = new Object();
+
+  // Keys signalled while awaiting changes, not yet processed
+  private final Queue<WatchKey> signalledKeys = new ConcurrentLinkedQueue<WatchKey>();
+  private volatile WatchService watchService;
+
+  public WatchingFileMonitorService() {
+    try {
+      watchService = FileSystems.getDefault().newWatchService();
+      if (watchService.getClass().getName().endsWith("PollingWatchService")) {
+        // Slower to notice changes than our own polling
+        IOUtils.closeQuietly(watchService);
+        watchService = null;
+      }
+    } catch (final IOException e) {
+      LOGGER.log(Level.FINE, "File system watching unavailable; polling instead", e);
+    } catch (final UnsupportedOperationException e) {
+      LOGGER.log(Level.FINE, "File system watching unavailable; polling instead", e);
+    }
+  }
+
+  @Override
+  public boolean add(final MonitoringRequest request) {
+    final boolean added = super.add(request);
+    if (added && request instanceof DirectoryMonitoringRequest) {
+      register((DirectoryMonitoringRequest) request);
+    }
+    return added;
+  }
+
+  /**
+   * Waits until the watch service reports a change or the given time has
+   * passed, whichever is sooner, so that the caller can scan promptly.
+   * 
+   * @param timeoutMillis the maximum time to wait
+   */
+  public void awaitChanges(final long timeoutMillis) {
+    try {
+      final WatchService service = watchService;
+      if (service == null) {
+        Thread.sleep(timeoutMillis);
+        return;
+      }
+      final WatchKey key = service.poll(timeoutMillis, TimeUnit.MILLISECONDS);
+      if (key != null) {
+        signalledKeys.add(key);
+        Thread.sleep(SETTLE_MILLIS);
+      }
+    } catch (final InterruptedException ignoreAndContinue) {
+    } catch (final ClosedWatchServiceException ignoreAndContinue) {
+    }
+  }
+
+  /**
+   * Stops watching the file system; subsequent scans poll every location.
+   */
+  public void close() {
+    final WatchService service = watchService;
+    watchService = null;
+    synchronized (watchLock) {
+      watchedRequests.clear();
+      watchedDirectories.clear();
+      watchKeys.clear();
+    }
+    IOUtils.closeQuietly(service);
+  }
+
+  @Override
+  protected Collection<File> getChangedDirectories(final MonitoringRequest request) {
+    final DirectoryMonitoringRequest dmr;
+    synchronized (watchLock) {
+      if (!watchedRequests.contains(request) || requestsToPoll.contains(request)) {
+        return null;
+      }
+      dmr = (DirectoryMonitoringRequest) request;
+    }
+
+    // Express the changed directories in the request's own terms
+    final File root = dmr.getFile();
+    final String canonicalRoot;
+    try {
+      canonicalRoot = root.getCanonicalPath();
+    } catch (final IOException e) {
+      return null;
+    }
+    final List<File> result = new ArrayList<File>();
+    for (final File directory : changedDirectoriesToScan) {
+      final String path = directory.getPath();
+      if (path.equals(canonicalRoot)) {
+        result.add(root);
+      } else if (dmr.isWatchSubtree() && path.startsWith(canonicalRoot + File.separator)) {
+        result.add(new File(root, path.substring(canonicalRoot.length() + 1)));
+      }
+    }
+    return result;
+  }
+
+  @Override
+  public boolean remove(final MonitoringRequest request) {
+    synchronized (watchLock) {
+      if (watchedRequests.remove(request)) {
+        final File root = getCanonicalFile(request.getFile());
+        for (final Iterator<Entry<File, WatchKey>> iter = watchKeys.entrySet().iterator(); iter
+            .hasNext();) {
+          final Entry<File, WatchKey> entry = iter.next();
+          final File directory = entry.getKey();
+          if (root != null && isWithin(root, directory)
+              && getWatchingRequests(directory).isEmpty()) {
+            entry.getValue().cancel();
+            watchedDirectories.remove(entry.getValue());
+            iter.remove();
+          }
+        }
+      }
+    }
+    return super.remove(request);
+  }
+
+  @Override
+  public int scanAll() {
+    processWatchEvents();
+    synchronized (watchLock) {
+      changedDirectoriesToScan = new HashSet<File>(changedDirectories);
+      changedDirectories.clear();
+      requestsToPoll = new HashSet<MonitoringRequest>(lostRequests);
+      lostRequests.clear();
+    }
+    return super.scanAll();
+  }
+
+  private File getCanonicalFile(final File file) {
+    try {
+      return file.getCanonicalFile();
+    } catch (final IOException e) {
+      return null;
+    }
+  }
+
+  /**
+   * Returns the watched requests that include the given directory. The caller
+   * must hold {@link #watchLock}.
+   */
+  private List<DirectoryMonitoringRequest> getWatchingRequests(final File directory) {
+    final List<DirectoryMonitoringRequest> result = new ArrayList<DirectoryMonitoringRequest>();
+    for (final DirectoryMonitoringRequest request : watchedRequests) {
+      final File root = getCanonicalFile(request.getFile());
+      if (root != null
+          && (root.equals(directory) || request.isWatchSubtree() && isWithin(root, directory))) {
+        result.add(request);
+      }
+    }
+    return result;
+  }
+
+  private boolean isWithin(final File root, final File file) {
+    return file.getPath().startsWith(root.getPath() + File.separator) || root.equals(file);
+  }
+
+  /**
+   * Records the changes reported by the watch service since the last scan.
+   */
+  private void processWatchEvents() {
+    final WatchService service = watchService;
+    if (service == null) {
+      return;
+    }
+    try {
+      WatchKey key;
+      while ((key = signalledKeys.poll()) != null || (key = service.poll()) != null) {
+        processWatchKey(key);
+      }
+    } catch (final ClosedWatchServiceException ignored) {
+    }
+  }
+
+  private void processWatchKey(final WatchKey key) {
+    final File directory;
+    synchronized (watchLock) {
+      directory = watchedDirectories.get(key);
+    }
+    if (directory == null) {
+      key.cancel();
+      return;
+    }
+
+    for (final WatchEvent<?> event : key.pollEvents()) {
+      if (event.kind() == OVERFLOW) {
+        // Events were lost, so the whole tree has to be polled
+        synchronized (watchLock) {
+          lostRequests.addAll(getWatchingRequests(directory));
+        }
+        continue;
+      }
+      final File file = new File(directory, event.context().toString());
+      if (isIgnored(file)) {
+        continue;
+      }
+      synchronized (watchLock) {
+        changedDirectories.add(directory);
+      }
+      if (event.kind() == ENTRY_CREATE && file.isDirectory()) {
+        registerSubdirectory(directory, file);
+      }
+    }
+
+    if (!key.reset()) {
+      // The directory is no longer accessible; its parent will report why
+      synchronized (watchLock) {
+        watchedDirectories.remove(key);
+        watchKeys.remove(directory);
+      }
+    }
+  }
+
+  private void register(final DirectoryMonitoringRequest request) {
+    if (watchService == null) {
+      return;
+    }
+    final File root = getCanonicalFile(request.getFile());
+    if (root == null || !root.isDirectory()) {
+      return;
+    }
+    try {
+      if (request.isWatchSubtree()) {
+        registerTree(root);
+      } else {
+        registerDirectory(root);
+      }
+      synchronized (watchLock) {
+        watchedRequests.add(request);
+      }
+    } catch (final IOException e) {
+      // Typically the limit on watches has been reached
+      LOGGER.log(Level.FINE, "Unable to watch " + root + "; polling instead", e);
+    }
+  }
+
+  /**
+   * Watches the given directory.
+   * 
+   * @return whether the directory wasn't already watched
+   */
+  private boolean registerDirectory(final File directory) throws IOException {
+    final WatchService service = watchService;
+    if (service == null) {
+      throw new IOException("File system watching has stopped");
+    }
+    final WatchKey key =
+        directory.toPath().register(service, ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY);
+    synchronized (watchLock) {
+      watchedDirectories.put(key, directory);
+      return watchKeys.put(directory, key) == null;
+    }
+  }
+
+  /**
+   * Watches a directory created within a watched tree.
+   */
+  private void registerSubdirectory(final File parent, final File directory) {
+    final boolean inSubtree;
+    synchronized (watchLock) {
+      inSubtree = !getWatchingRequests(directory).isEmpty();
+    }
+    if (!inSubtree) {
+      return;
+    }
+    try {
+      registerTree(directory);
+    } catch (final IOException e) {
+      LOGGER.log(Level.FINE, "Unable to watch " + directory + "; polling instead", e);
+      synchronized (watchLock) {
+        lostRequests.addAll(getWatchingRequests(parent));
+        watchedRequests.removeAll(getWatchingRequests(parent));
+      }
+    }
+  }
+
+  /**
+   * Watches every directory of the given tree. If that fails part way, stops
+   * watching the directories this call had started watching, so that none of
+   * the tree is left half watched while it's polled instead.
+   */
+  private void registerTree(final File root) throws IOException {
+    final List<File> registered = new ArrayList<File>();
+    try {
+      walkTree(root, registered);
+    } catch (final IOException e) {
+      synchronized (watchLock) {
+        for (final File directory : registered) {
+          final WatchKey key = watchKeys.remove(directory);
+          if (key != null) {
+            key.cancel();
+            watchedDirectories.remove(key);
+          }
+        }
+      }
+      throw e;
+    }
+  }
+
+  private void walkTree(final File root, final List<File> registered) throws IOException {
+    Files.walkFileTree(root.toPath(), new SimpleFileVisitor<Path>() {
+      @Override
+      public FileVisitResult preVisitDirectory(final Path dir, final BasicFileAttributes attrs)
+          throws IOException {
+        final File directory = dir.toFile();
+        if (isIgnored(directory, true)) {
+          return FileVisitResult.SKIP_SUBTREE;
+        }
+        if (registerDirectory(directory)) {
+          registered.add(directory);
+        }
+        return FileVisitResult.CONTINUE;
+      }
+
+      @Override
+      public FileVisitResult visitFile(final Path file, final BasicFileAttributes attrs) {
+        return FileVisitResult.CONTINUE;
+      }
+
+      @Override
+      public FileVisitResult visitFileFailed(final Path file, final IOException e) {
+        return FileVisitResult.CONTINUE;
+      }
+    });
+  }
+}
@@ -0,0 +1,94 @@
+package org.springframework.roo.file.monitor.polling;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit test of {@link FileTimestampTable}
+ *
+ * @since 2.0
+ */
+public class FileTimestampTableTest {
+
+  private static final int FILE_COUNT = 1000;
+
+  private FileTimestampTable table;
+
+  private static File getFile(final int index) {
+    return new File("src" + File.separator + "File" + index + ".java");
+  }
+
+  @Before
+  public void setUp() {
+    table = new FileTimestampTable();
+  }
+
+  @Test
+  public void testAbsentFile() {
+    assertFalse(table.containsKey(getFile(0)));
+    assertEquals(FileTimestampTable.ABSENT, table.get(getFile(0)));
+    assertEquals(FileTimestampTable.ABSENT, table.remove(getFile(0)));
+  }
+
+  @Test
+  public void testPutReplacesExistingEntry() {
+    table.put(getFile(0), 1);
+    table.put(getFile(0), 2);
+
+    assertEquals(1, table.size());
+    assertEquals(2, table.get(getFile(0)));
+  }
+
+  @Test
+  public void testEntriesSurviveGrowthAndRemoval() {
+    for (int i = 0; i < FILE_COUNT; i++) {
+      table.put(getFile(i), i);
+    }
+    for (int i = 0; i < FILE_COUNT; i += 2) {
+      assertEquals(i, table.remove(getFile(i)));
+    }
+    // Reuses the space of the removed entries
+    for (int i = FILE_COUNT; i < FILE_COUNT * 3 / 2; i++) {
+      table.put(getFile(i), i);
+    }
+
+    assertEquals(FILE_COUNT, table.size());
+    for (int i = 0; i < FILE_COUNT * 3 / 2; i++) {
+      final boolean removed = i < FILE_COUNT && i % 2 == 0;
+      assertEquals(!removed, table.containsKey(getFile(i)));
+      assertEquals(removed ? FileTimestampTable.ABSENT : i, table.get(getFile(i)));
+    }
+  }
+
+  @Test
+  public void testIterationFollowsInsertionOrder() {
+    table.put(getFile(2), 2);
+    table.put(getFile(0), 0);
+    table.put(getFile(1), 1);
+    table.remove(getFile(0));
+
+    final List<String> paths = new ArrayList<String>();
+    for (int i = 0; i < table.limit(); i++) {
+      final String path = table.getPath(i);
+      if (path == null) {
+        continue;
+      }
+      assertTrue(table.getTimestamp(i) != FileTimestampTable.ABSENT);
+      paths.add(path);
+    }
+
+    assertEquals(2, paths.size());
+    assertEquals(getFile(2).getPath(), paths.get(0));
+    assertEquals(getFile(1).getPath(), paths.get(1));
+    assertNull(table.getPath(1));
+  }
+}
@@ -0,0 +1,119 @@
+package org.springframework.roo.file.monitor.polling;
+
+import static org.junit.Assert.assertEquals;
+import static org.springframework.roo.file.monitor.event.FileOperation.CREATED;
+import static org.springframework.roo.file.monitor.event.FileOperation.DELETED;
+import static org.springframework.roo.file.monitor.event.FileOperation.UPDATED;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.roo.file.monitor.DirectoryMonitoringRequest;
+import org.springframework.roo.file.monitor.event.FileEvent;
+import org.springframework.roo.file.monitor.event.FileEventListener;
+
+/**
+ * Unit test of {@link PollingFileMonitorService}
+ *
+ * @since 2.0
+ */
+public class PollingFileMonitorServiceTest {
+
+  private static final File TEMP_DIR = new File(System.getProperty("java.io.tmpdir"));
+
+  // Fixture
+  private final List<File> updated = new ArrayList<File>();
+  private File file;
+  private PollingFileMonitorService service;
+  private File testDirectory;
+
+  /**
+   * Starts monitoring the test directory, which holds one file
+   *
+   * @param fingerprinting whether to fingerprint file contents
+   */
+  private void startMonitoring(final boolean fingerprinting) {
+    service.setContentFingerprinting(fingerprinting);
+    service.add(new DirectoryMonitoringRequest(testDirectory, true, CREATED, UPDATED, DELETED));
+    service.scanAll();
+    updated.clear();
+  }
+
+  private void touch() {
+    file.setLastModified(file.lastModified() + 2000);
+  }
+
+  @Before
+  public void setUp() throws Exception {
+    testDirectory =
+        new File(TEMP_DIR, getClass().getSimpleName() + System.nanoTime()).getCanonicalFile();
+    file = new File(testDirectory, "Foo.java");
+    FileUtils.write(file, "class Foo {}");
+    service = new PollingFileMonitorService();
+    service.add(new FileEventListener() {
+      public void onFileEvent(final FileEvent fileEvent) {
+        if (fileEvent.getOperation() == UPDATED) {
+          updated.add(fileEvent.getFileDetails().getFile());
+        }
+      }
+    });
+  }
+
+  @After
+  public void tearDown() {
+    FileUtils.deleteQuietly(testDirectory);
+  }
+
+  @Test
+  public void testTouchedFileIsUpdatedWithoutFingerprinting() {
+    startMonitoring(false);
+    touch();
+
+    service.scanAll();
+
+    assertEquals(Arrays.asList(file), updated);
+    assertEquals(0, service.getSuppressedUpdateCount());
+  }
+
+  @Test
+  public void testTouchedFileIsNotUpdatedWithFingerprinting() {
+    startMonitoring(true);
+    touch();
+
+    service.scanAll();
+
+    assertEquals(Collections.emptyList(), updated);
+    assertEquals(1, service.getSuppressedUpdateCount());
+  }
+
+  @Test
+  public void testChangedFileIsUpdatedWithFingerprinting() throws Exception {
+    startMonitoring(true);
+    FileUtils.write(file, "class Foo { int bar; }");
+    touch();
+
+    service.scanAll();
+
+    assertEquals(Arrays.asList(file), updated);
+    assertEquals(0, service.getSuppressedUpdateCount());
+  }
+
+  @Test
+  public void testNotifiedChangeIsAlwaysUpdated() throws Exception {
+    startMonitoring(true);
+    touch();
+    service.notifyChanged(file.getCanonicalPath());
+
+    service.scanNotified();
+    service.scanAll();
+
+    assertEquals(Arrays.asList(file), updated);
+  }
+}
@@ -0,0 +1,149 @@
+package org.springframework.roo.file.monitor.watch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.springframework.roo.file.monitor.event.FileOperation.CREATED;
+import static org.springframework.roo.file.monitor.event.FileOperation.DELETED;
+import static org.springframework.roo.file.monitor.event.FileOperation.UPDATED;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.roo.file.monitor.DirectoryMonitoringRequest;
+import org.springframework.roo.file.monitor.event.FileEvent;
+import org.springframework.roo.file.monitor.event.FileEventListener;
+import org.springframework.roo.file.monitor.event.FileOperation;
+
+/**
+ * Unit test of {@link WatchingFileMonitorService}
+ *
+ * @since 2.0
+ */
+public class WatchingFileMonitorServiceTest {
+
+  private static final File TEMP_DIR = new File(System.getProperty("java.io.tmpdir"));
+
+  // Fixture
+  private final List<FileEvent> events = new ArrayList<FileEvent>();
+  private WatchingFileMonitorService service;
+  private File testDirectory;
+  private File unwatchableDirectory;
+  // Deleted when the service first checks whether it's ignored
+  private File vanishingDirectory;
+
+  private List<File> getFiles(final FileOperation operation) {
+    final List<File> files = new ArrayList<File>();
+    for (final FileEvent event : events) {
+      if (event.getOperation() == operation) {
+        files.add(event.getFileDetails().getFile());
+      }
+    }
+    Collections.sort(files);
+    return files;
+  }
+
+  @Before
+  public void setUp() throws Exception {
+    testDirectory =
+        new File(TEMP_DIR, getClass().getSimpleName() + System.nanoTime()).getCanonicalFile();
+    FileUtils.forceMkdir(testDirectory);
+    service = new WatchingFileMonitorService() {
+      @Override
+      protected boolean isIgnored(final File file, final boolean directory) {
+        if (file.equals(vanishingDirectory)) {
+          FileUtils.deleteQuietly(file);
+        }
+        return super.isIgnored(file, directory);
+      }
+    };
+    service.add(new FileEventListener() {
+      public void onFileEvent(final FileEvent fileEvent) {
+        events.add(fileEvent);
+      }
+    });
+    service.add(new DirectoryMonitoringRequest(testDirectory, true, CREATED, UPDATED, DELETED));
+    service.scanAll();
+    events.clear();
+  }
+
+  @After
+  public void tearDown() {
+    service.close();
+    FileUtils.deleteQuietly(testDirectory);
+    FileUtils.deleteQuietly(unwatchableDirectory);
+  }
+
+  @Test
+  public void testIdleScanPublishesNothing() {
+    assertEquals(0, service.scanAll());
+    assertTrue(events.isEmpty());
+  }
+
+  @Test
+  public void testFileCreatedInNewSubdirectoryIsReported() throws Exception {
+    // Set up
+    final File subdirectory = new File(testDirectory, "sub");
+    final File file = new File(subdirectory, "Foo.java");
+    FileUtils.write(file, "class Foo {}");
+
+    // Invoke
+    service.awaitChanges(10000);
+    service.scanAll();
+
+    // Check
+    assertEquals(Arrays.asList(subdirectory, file), getFiles(CREATED));
+    assertEquals(Arrays.asList(testDirectory), getFiles(UPDATED));
+  }
+
+  @Test
+  public void testDeletedFileIsReported() throws Exception {
+    // Set up
+    final File file = new File(testDirectory, "Foo.java");
+    FileUtils.write(file, "class Foo {}");
+    service.awaitChanges(10000);
+    service.scanAll();
+    events.clear();
+
+    // Invoke
+    FileUtils.forceDelete(file);
+    service.awaitChanges(10000);
+    service.scanAll();
+
+    // Check
+    assertEquals(Arrays.asList(file), getFiles(DELETED));
+    assertEquals(Arrays.asList(testDirectory), getFiles(UPDATED));
+  }
+
+  @Test
+  public void testTreeThatFailsToRegisterIsPolledWithoutWatchingAnyOfIt() throws Exception {
+    // Set up: the tree's root is watched before a nested directory vanishes,
+    // which the watch service only reports to the directory's parent
+    unwatchableDirectory =
+        new File(TEMP_DIR, getClass().getSimpleName() + "Unwatchable" + System.nanoTime())
+            .getCanonicalFile();
+    vanishingDirectory = new File(unwatchableDirectory, "sub" + File.separator + "gone");
+    FileUtils.forceMkdir(vanishingDirectory);
+    service.add(new DirectoryMonitoringRequest(unwatchableDirectory, true, CREATED));
+    service.scanAll();
+    events.clear();
+    final File file = new File(unwatchableDirectory, "Foo.java");
+    FileUtils.write(file, "class Foo {}");
+
+    // Invoke
+    final long start = System.currentTimeMillis();
+    service.awaitChanges(1000);
+    final long waited = System.currentTimeMillis() - start;
+    service.scanAll();
+
+    // Check
+    assertTrue("Watch service reported a change after " + waited + "ms", waited >= 900);
+    assertEquals(Arrays.asList(file), getFiles(CREATED));
+  }
+}
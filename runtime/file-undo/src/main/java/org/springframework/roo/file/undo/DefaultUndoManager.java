@@ -20,6 +20,7 @@ import org.springframework.roo.file.undo.UndoEvent.UndoOperation;
 @Service
 public class DefaultUndoManager implements UndoManager {
 
+  private final UndoJournal journal = new UndoJournal();
   private final Set<UndoListener> listeners = new HashSet<UndoListener>();
   private final Stack<UndoableOperation> stack = new Stack<UndoableOperation>();
   private boolean undoEnabled = true;
@@ -39,6 +40,10 @@ public class DefaultUndoManager implements UndoManager {
     notifyListeners(UndoOperation.FLUSH);
   }
 
+  public UndoJournal getJournal() {
+    return journal;
+  }
+
   private void notifyListeners(final UndoOperation operation) {
     for (final UndoListener listener : listeners) {
       listener.onUndoEvent(new UndoEvent(operation));
@@ -59,6 +64,7 @@ public class DefaultUndoManager implements UndoManager {
             + "' threw an exception, in violation of the interface contract");
       }
     }
+    journal.clear();
     notifyListeners(UndoOperation.RESET);
   }
 
@@ -89,6 +95,7 @@ public class DefaultUndoManager implements UndoManager {
             + "' threw an exception, in violation of the interface contract");
       }
     }
+    journal.clear();
     notifyListeners(UndoOperation.UNDO);
     return undoMode;
   }
@@ -3,6 +3,9 @@ package org.springframework.roo.file.undo;
 import java.io.File;
 import java.io.IOException;
 import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
 import java.util.logging.Logger;
 
 import org.apache.commons.lang3.StringUtils;
@@ -22,8 +25,11 @@ public class DeleteDirectory implements UndoableOperation {
   private static final File TEMP_DIRECTORY = new File(System.getProperty("java.io.tmpdir"));
 
   private final File actual;
-  private final File backup;
+  private final File backup; // null if journalled
+  // Each journalled file and directory (with a null entry), parents first
+  private final Map<File, UndoJournal.Entry> contents;
   private final FilenameResolver filenameResolver;
+  private final UndoJournal journal;
 
   /**
    * Constructor that doesn't allow a reason to be given
@@ -61,11 +67,24 @@ public class DeleteDirectory implements UndoableOperation {
     Validate.isTrue(TEMP_DIRECTORY.isDirectory(), "Temporary directory '%s' is not a directory",
         TEMP_DIRECTORY);
     actual = directory;
-    backup = new File(TEMP_DIRECTORY, "tmp_" + new Date().getTime() + "_dir");
     this.filenameResolver = filenameResolver;
-    if (!FileUtils.copyRecursively(directory, backup, true)) {
-      throw new IllegalStateException("Unable to create a complete backup of directory '"
-          + directory + "'");
+    journal = undoManager.getJournal();
+    if (journal == null) {
+      backup = new File(TEMP_DIRECTORY, "tmp_" + new Date().getTime() + "_dir");
+      contents = null;
+      if (!FileUtils.copyRecursively(directory, backup, true)) {
+        throw new IllegalStateException("Unable to create a complete backup of directory '"
+            + directory + "'");
+      }
+    } else {
+      backup = null;
+      contents = new LinkedHashMap<File, UndoJournal.Entry>();
+      try {
+        record(directory);
+      } catch (final IOException ioe) {
+        throw new IllegalStateException("Unable to create a complete backup of directory '"
+            + directory + "'", ioe);
+      }
     }
     try {
       org.apache.commons.io.FileUtils.deleteDirectory(directory);
@@ -80,7 +99,26 @@ public class DeleteDirectory implements UndoableOperation {
     LOGGER.fine(deletionMessage);
   }
 
+  private void record(final File directory) throws IOException {
+    contents.put(directory, null);
+    final File[] children = directory.listFiles();
+    if (children == null) {
+      throw new IOException("Unable to list directory '" + directory + "'");
+    }
+    for (final File child : children) {
+      if (child.isFile()) {
+        contents.put(child, journal.record(child));
+      } else {
+        record(child);
+      }
+    }
+  }
+
   public void reset() {
+    if (backup == null) {
+      // The undo manager clears the journal
+      return;
+    }
     // Fix for ROO-1555
     boolean success = true;
     try {
@@ -103,9 +141,28 @@ public class DeleteDirectory implements UndoableOperation {
   }
 
   public boolean undo() {
-    final boolean success = FileUtils.copyRecursively(backup, actual, false);
+    final boolean success;
+    if (backup == null) {
+      success = restore();
+    } else {
+      success = FileUtils.copyRecursively(backup, actual, false);
+    }
     LOGGER.fine((success ? "Undo delete " : "Undo failed ")
         + filenameResolver.getMeaningfulName(actual));
     return success;
   }
+
+  private boolean restore() {
+    for (final Entry<File, UndoJournal.Entry> entry : contents.entrySet()) {
+      if (entry.getValue() == null) {
+        entry.getKey().mkdirs();
+        if (!entry.getKey().isDirectory()) {
+          return false;
+        }
+      } else if (!journal.restore(entry.getValue(), entry.getKey())) {
+        return false;
+      }
+    }
+    return true;
+  }
 }
@@ -20,8 +20,10 @@ public class DeleteFile implements UndoableOperation {
   private static final Logger LOGGER = HandlerUtils.getLogger(DeleteFile.class);
 
   private final File actual;
-  private final File backup;
+  private final File backup; // null if journalled
+  private final UndoJournal.Entry entry;
   private final FilenameResolver filenameResolver;
+  private final UndoJournal journal;
 
   /**
    * Constructor that doesn't allow a reason to be given
@@ -56,9 +58,16 @@ public class DeleteFile implements UndoableOperation {
     Validate.isTrue(actual.exists(), "File '%s' must exist", actual);
     Validate.isTrue(actual.isFile(), "Path '%s' must be a file (not a directory)", actual);
 
+    journal = undoManager.getJournal();
     try {
-      backup = File.createTempFile("DeleteFile", "tmp");
-      FileUtils.copyFile(actual, backup);
+      if (journal == null) {
+        backup = File.createTempFile("DeleteFile", "tmp");
+        FileUtils.copyFile(actual, backup);
+        entry = null;
+      } else {
+        backup = null;
+        entry = journal.record(actual);
+      }
     } catch (final IOException ioe) {
       throw new IllegalStateException("Unable to make a backup of file '" + actual + "'", ioe);
     }
@@ -74,6 +83,10 @@ public class DeleteFile implements UndoableOperation {
   }
 
   public void reset() {
+    if (backup == null) {
+      // The undo manager clears the journal
+      return;
+    }
     // Fix for ROO-1555
     try {
       if (backup.delete()) {
@@ -89,6 +102,12 @@ public class DeleteFile implements UndoableOperation {
   }
 
   public boolean undo() {
+    if (backup == null) {
+      final boolean success = journal.restore(entry, actual);
+      LOGGER.fine((success ? "Undo delete " : "Undo failed ")
+          + filenameResolver.getMeaningfulName(actual));
+      return success;
+    }
     try {
       FileUtils.copyFile(backup, actual);
       LOGGER.fine("Undo delete " + filenameResolver.getMeaningfulName(actual));
@@ -0,0 +1,172 @@
+package org.springframework.roo.file.undo;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.Validate;
+import org.springframework.roo.support.logging.HandlerUtils;
+
+/**
+ * Holds the original contents of the files changed by the
+ * {@link UndoableOperation}s on an {@link UndoManager}'s stack, so that they
+ * can be restored without each operation copying its file to a temporary file
+ * first.
+ * <p>
+ * Contents are kept in memory until the journal holds a given number of
+ * bytes; beyond that, they are appended to a single journal file, which is
+ * deleted when the journal is {@link #clear()}ed. Either way, an
+ * {@link Entry} returned by {@link #record(File)} can be
+ * {@link #restore(Entry, File) restored} until then.
+ * <p>
+ * All methods are thread safe.
+ *
+ * @since 2.0
+ */
+public class UndoJournal {
+
+  /**
+   * The recorded contents of one file.
+   */
+  public static final class Entry {
+    private final byte[] contents; // null if in the journal file
+    private final long generation;
+    private final long lastModified;
+    private final int length;
+    private final long offset;
+
+    Entry(final long generation, final byte[] contents, final long offset, final int length,
+        final long lastModified) {
+      this.generation = generation;
+      this.contents = contents;
+      this.offset = offset;
+      this.length = length;
+      this.lastModified = lastModified;
+    }
+  }
+
+  /** The default number of bytes of contents held in memory */
+  public static final long DEFAULT_MEMORY_LIMIT = 32 * 1024 * 1024;
+
+  private static final Logger LOGGER = HandlerUtils.getLogger(UndoJournal.class);
+
+  // Incremented by clear(), invalidating all existing entries
+  private long generation;
+  private FileChannel journal;
+  private File journalFile;
+  private final long memoryLimit;
+  private long memoryUsed;
+
+  /**
+   * Constructor for a journal that holds up to
+   * {@link #DEFAULT_MEMORY_LIMIT} bytes in memory
+   */
+  public UndoJournal() {
+    this(DEFAULT_MEMORY_LIMIT);
+  }
+
+  /**
+   * Constructor
+   *
+   * @param memoryLimit the number of bytes of contents to hold in memory
+   *            before using a journal file (zero or more)
+   */
+  public UndoJournal(final long memoryLimit) {
+    Validate.isTrue(memoryLimit >= 0, "Memory limit must be zero or more");
+    this.memoryLimit = memoryLimit;
+  }
+
+  /**
+   * Forgets all recorded contents, invalidating every {@link Entry} returned
+   * so far, and deletes the journal file if there is one.
+   */
+  public synchronized void clear() {
+    generation++;
+    memoryUsed = 0;
+    IOUtils.closeQuietly(journal);
+    journal = null;
+    if (journalFile != null) {
+      FileUtils.deleteQuietly(journalFile);
+      journalFile = null;
+    }
+  }
+
+  /**
+   * @return the number of bytes of contents currently held in memory
+   */
+  public synchronized long getMemoryUsed() {
+    return memoryUsed;
+  }
+
+  /**
+   * Records the current contents of the given file.
+   *
+   * @param file an existing file (required)
+   * @return an entry from which the contents can be restored
+   * @throws IOException if the file can't be read or the journal file can't
+   *             be written
+   */
+  public synchronized Entry record(final File file) throws IOException {
+    Validate.notNull(file, "File required");
+    final byte[] contents = Files.readAllBytes(file.toPath());
+    final long lastModified = file.lastModified();
+    if (memoryUsed + contents.length <= memoryLimit) {
+      memoryUsed += contents.length;
+      return new Entry(generation, contents, -1, contents.length, lastModified);
+    }
+
+    if (journal == null) {
+      journalFile = File.createTempFile("UndoJournal", "tmp");
+      journalFile.deleteOnExit();
+      journal = new RandomAccessFile(journalFile, "rw").getChannel();
+    }
+    final long offset = journal.size();
+    final ByteBuffer buffer = ByteBuffer.wrap(contents);
+    while (buffer.hasRemaining()) {
+      journal.write(buffer, offset + buffer.position());
+    }
+    return new Entry(generation, null, offset, contents.length, lastModified);
+  }
+
+  /**
+   * Gives the given file the contents recorded in the given entry, creating
+   * the file and its parent directories if necessary.
+   *
+   * @param entry an entry returned by {@link #record(File)} since the journal
+   *            was last cleared (required)
+   * @param file the file to restore (required)
+   * @return whether the contents were restored
+   */
+  public synchronized boolean restore(final Entry entry, final File file) {
+    Validate.notNull(entry, "Entry required");
+    Validate.notNull(file, "File required");
+    if (entry.generation != generation) {
+      return false;
+    }
+    try {
+      byte[] contents = entry.contents;
+      if (contents == null) {
+        contents = new byte[entry.length];
+        final ByteBuffer buffer = ByteBuffer.wrap(contents);
+        while (buffer.hasRemaining()) {
+          if (journal.read(buffer, entry.offset + buffer.position()) < 0) {
+            throw new IOException("Journal file '" + journalFile + "' is truncated");
+          }
+        }
+      }
+      FileUtils.writeByteArrayToFile(file, contents);
+      file.setLastModified(entry.lastModified);
+      return true;
+    } catch (final IOException e) {
+      LOGGER.log(Level.FINE, "Unable to restore '" + file + "'", e);
+      return false;
+    }
+  }
+}
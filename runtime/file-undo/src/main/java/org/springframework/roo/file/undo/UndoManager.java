@@ -36,6 +36,16 @@ public interface UndoManager {
    */
   void flush();
 
+  /**
+   * Returns the journal in which {@link UndoableOperation}s on this manager's
+   * {@link Stack} can record the original contents of the files they change.
+   * The journal is cleared whenever the {@link Stack} is emptied.
+   * 
+   * @return <code>null</code> if operations should make their own backups
+   * @since 2.0
+   */
+  UndoJournal getJournal();
+
   /**
    * @param undoListener removes a previously-registered undo listener
    *            (required)
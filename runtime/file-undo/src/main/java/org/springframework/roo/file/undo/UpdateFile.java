@@ -19,8 +19,10 @@ public class UpdateFile implements UndoableOperation {
   private static final Logger LOGGER = HandlerUtils.getLogger(UpdateFile.class);
 
   private final File actual;
-  private final File backup;
+  private final File backup; // null if journalled
+  private final UndoJournal.Entry entry;
   private final FilenameResolver filenameResolver;
+  private final UndoJournal journal;
 
   /**
    * Constructor
@@ -38,9 +40,16 @@ public class UpdateFile implements UndoableOperation {
     Validate.isTrue(actual.isFile(), "Path '%s' must be a file (not a directory)", actual);
     Validate.notNull(filenameResolver, "Filename resolver required");
     this.filenameResolver = filenameResolver;
+    journal = undoManager.getJournal();
     try {
-      backup = File.createTempFile("UpdateFile", "tmp");
-      FileUtils.copyFile(actual, backup);
+      if (journal == null) {
+        backup = File.createTempFile("UpdateFile", "tmp");
+        FileUtils.copyFile(actual, backup);
+        entry = null;
+      } else {
+        backup = null;
+        entry = journal.record(actual);
+      }
     } catch (final IOException ioe) {
       throw new IllegalStateException("Unable to make a backup of file '" + actual + "'", ioe);
     }
@@ -49,6 +58,10 @@ public class UpdateFile implements UndoableOperation {
   }
 
   public void reset() {
+    if (backup == null) {
+      // The undo manager clears the journal
+      return;
+    }
     // Fix for ROO-1555
     try {
       if (backup.delete()) {
@@ -64,6 +77,12 @@ public class UpdateFile implements UndoableOperation {
   }
 
   public boolean undo() {
+    if (backup == null) {
+      final boolean success = journal.restore(entry, actual);
+      LOGGER.fine((success ? "Undo manage " : "Undo failed ")
+          + filenameResolver.getMeaningfulName(actual));
+      return success;
+    }
     try {
       FileUtils.copyFile(backup, actual);
       LOGGER.fine("Undo manage " + filenameResolver.getMeaningfulName(actual));
@@ -0,0 +1,169 @@
+package org.springframework.roo.file.undo;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit test of {@link DefaultUndoManager} undoing the journalled file
+ * operations
+ *
+ * @since 2.0
+ */
+public class DefaultUndoManagerTest {
+
+  private static final FilenameResolver FILENAME_RESOLVER = new FilenameResolver() {
+    public String getMeaningfulName(final File file) {
+      return file.getName();
+    }
+  };
+
+  // Fixture
+  private File directory;
+  private DefaultUndoManager undoManager;
+
+  private File createFile(final String name, final String contents) throws IOException {
+    final File file = new File(directory, name);
+    FileUtils.writeStringToFile(file, contents, "UTF-8");
+    return file;
+  }
+
+  private static String read(final File file) throws IOException {
+    return FileUtils.readFileToString(file, "UTF-8");
+  }
+
+  @Before
+  public void setUp() throws IOException {
+    directory = File.createTempFile("DefaultUndoManagerTest", "");
+    assertTrue(directory.delete() && directory.mkdir());
+    undoManager = new DefaultUndoManager();
+  }
+
+  @After
+  public void tearDown() {
+    FileUtils.deleteQuietly(directory);
+  }
+
+  @Test
+  public void testUndoRestoresAnUpdatedFile() throws IOException {
+    // Set up
+    final File file = createFile("pom.xml", "<project/>");
+    new UpdateFile(undoManager, FILENAME_RESOLVER, file);
+    FileUtils.writeStringToFile(file, "<project>changed</project>", "UTF-8");
+
+    // Invoke
+    final boolean undone = undoManager.undo();
+
+    // Check
+    assertTrue(undone);
+    assertEquals("<project/>", read(file));
+  }
+
+  @Test
+  public void testUndoRestoresADeletedFile() throws IOException {
+    // Set up
+    final File file = createFile("pom.xml", "<project/>");
+    new DeleteFile(undoManager, FILENAME_RESOLVER, file, null);
+    assertFalse(file.exists());
+
+    // Invoke
+    final boolean undone = undoManager.undo();
+
+    // Check
+    assertTrue(undone);
+    assertEquals("<project/>", read(file));
+  }
+
+  @Test
+  public void testUndoRestoresADeletedDirectory() throws IOException {
+    // Set up
+    final File tree = new File(directory, "src");
+    final File java = createFile("src/main/java/Owner.java", "class Owner {}");
+    final File properties = createFile("src/main/resources/app.properties", "name=petclinic");
+    final File empty = new File(tree, "test");
+    assertTrue(empty.mkdir());
+    new DeleteDirectory(undoManager, FILENAME_RESOLVER, tree, null);
+    assertFalse(tree.exists());
+
+    // Invoke
+    final boolean undone = undoManager.undo();
+
+    // Check
+    assertTrue(undone);
+    assertEquals("class Owner {}", read(java));
+    assertEquals("name=petclinic", read(properties));
+    assertTrue(empty.isDirectory());
+  }
+
+  @Test
+  public void testUndoRestoresOperationsOnTheSameFileInReverse() throws IOException {
+    // Set up
+    final File file = createFile("pom.xml", "original");
+    new UpdateFile(undoManager, FILENAME_RESOLVER, file);
+    FileUtils.writeStringToFile(file, "updated", "UTF-8");
+    new DeleteFile(undoManager, FILENAME_RESOLVER, file, null);
+
+    // Invoke
+    final boolean undone = undoManager.undo();
+
+    // Check
+    assertTrue(undone);
+    assertEquals("original", read(file));
+  }
+
+  @Test
+  public void testResetClearsTheJournal() throws IOException {
+    // Set up
+    final File file = createFile("pom.xml", "<project/>");
+    final UndoJournal.Entry entry = undoManager.getJournal().record(file);
+    new UpdateFile(undoManager, FILENAME_RESOLVER, file);
+
+    // Invoke
+    undoManager.reset();
+
+    // Check
+    assertEquals(0, undoManager.getJournal().getMemoryUsed());
+    assertFalse(undoManager.getJournal().restore(entry, file));
+  }
+
+  @Test
+  public void testUndoClearsTheJournal() throws IOException {
+    // Set up
+    final File file = createFile("pom.xml", "<project/>");
+    final UndoJournal.Entry entry = undoManager.getJournal().record(file);
+    new UpdateFile(undoManager, FILENAME_RESOLVER, file);
+
+    // Invoke
+    undoManager.undo();
+
+    // Check
+    assertEquals(0, undoManager.getJournal().getMemoryUsed());
+    assertFalse(undoManager.getJournal().restore(entry, file));
+  }
+
+  @Test
+  public void testFailedUndoResetsTheRemainingOperations() throws IOException {
+    // Set up: the journal is cleared behind the stack's back
+    final File first = createFile("first.txt", "first");
+    final File second = createFile("second.txt", "second");
+    new DeleteFile(undoManager, FILENAME_RESOLVER, first, null);
+    undoManager.getJournal().clear();
+    new DeleteFile(undoManager, FILENAME_RESOLVER, second, null);
+
+    // Invoke
+    final boolean undone = undoManager.undo();
+
+    // Check
+    assertFalse(undone);
+    assertEquals("second", read(second));
+    assertFalse(first.exists());
+  }
+}
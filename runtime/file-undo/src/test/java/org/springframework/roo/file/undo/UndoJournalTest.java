@@ -0,0 +1,153 @@
+package org.springframework.roo.file.undo;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit test of {@link UndoJournal}
+ *
+ * @since 2.0
+ */
+public class UndoJournalTest {
+
+  // Even seconds, as some file systems can't record odd ones
+  private static final long TIME = 1434363630000L;
+
+  // Fixture
+  private File directory;
+
+  private File createFile(final String name, final String contents) throws IOException {
+    final File file = new File(directory, name);
+    FileUtils.writeStringToFile(file, contents, "UTF-8");
+    assertTrue(file.setLastModified(TIME));
+    return file;
+  }
+
+  private static String read(final File file) throws IOException {
+    return FileUtils.readFileToString(file, "UTF-8");
+  }
+
+  @Before
+  public void setUp() throws IOException {
+    directory = File.createTempFile("UndoJournalTest", "");
+    assertTrue(directory.delete() && directory.mkdir());
+  }
+
+  @After
+  public void tearDown() {
+    FileUtils.deleteQuietly(directory);
+  }
+
+  @Test
+  public void testEntryHeldInMemoryIsRestored() throws IOException {
+    // Set up
+    final UndoJournal journal = new UndoJournal();
+    final File file = createFile("pom.xml", "<project/>");
+    final UndoJournal.Entry entry = journal.record(file);
+    FileUtils.writeStringToFile(file, "<project>changed</project>", "UTF-8");
+
+    // Invoke
+    final boolean restored = journal.restore(entry, file);
+
+    // Check
+    assertTrue(restored);
+    assertEquals("<project/>", read(file));
+    assertEquals(TIME, file.lastModified());
+    assertEquals(10, journal.getMemoryUsed());
+  }
+
+  @Test
+  public void testContentsBeyondTheMemoryLimitAreSpilledAndRestored() throws IOException {
+    // Set up
+    final UndoJournal journal = new UndoJournal(12);
+    final File first = createFile("first.txt", "0123456789");
+    final File second = createFile("second.txt", "abcdefghij");
+    final File third = createFile("third.txt", "ab");
+
+    // Invoke
+    final UndoJournal.Entry firstEntry = journal.record(first);
+    final UndoJournal.Entry secondEntry = journal.record(second);
+    final UndoJournal.Entry thirdEntry = journal.record(third);
+    assertTrue(first.delete() && second.delete() && third.delete());
+
+    // Check: the second file didn't fit, but the third still did
+    assertEquals(12, journal.getMemoryUsed());
+    assertTrue(journal.restore(firstEntry, first));
+    assertTrue(journal.restore(secondEntry, second));
+    assertTrue(journal.restore(thirdEntry, third));
+    assertEquals("0123456789", read(first));
+    assertEquals("abcdefghij", read(second));
+    assertEquals("ab", read(third));
+    assertEquals(TIME, second.lastModified());
+  }
+
+  @Test
+  public void testEveryEntryIsSpilledWithoutMemory() throws IOException {
+    // Set up
+    final UndoJournal journal = new UndoJournal(0);
+    final File first = createFile("first.txt", "first");
+    final File second = createFile("nested/second.txt", "second");
+
+    // Invoke
+    final UndoJournal.Entry firstEntry = journal.record(first);
+    final UndoJournal.Entry secondEntry = journal.record(second);
+    FileUtils.deleteDirectory(directory);
+
+    // Check
+    assertEquals(0, journal.getMemoryUsed());
+    assertTrue(journal.restore(secondEntry, second));
+    assertTrue(journal.restore(firstEntry, first));
+    assertEquals("first", read(first));
+    assertEquals("second", read(second));
+  }
+
+  @Test
+  public void testClearedEntriesAreNotRestored() throws IOException {
+    // Set up
+    final UndoJournal journal = new UndoJournal(4);
+    final File small = createFile("small.txt", "abc");
+    final File large = createFile("large.txt", "abcdefghij");
+    final UndoJournal.Entry smallEntry = journal.record(small);
+    final UndoJournal.Entry largeEntry = journal.record(large);
+    FileUtils.writeStringToFile(small, "changed", "UTF-8");
+    FileUtils.writeStringToFile(large, "changed", "UTF-8");
+
+    // Invoke
+    journal.clear();
+
+    // Check
+    assertEquals(0, journal.getMemoryUsed());
+    assertFalse(journal.restore(smallEntry, small));
+    assertFalse(journal.restore(largeEntry, large));
+    assertEquals("changed", read(small));
+    assertEquals("changed", read(large));
+  }
+
+  @Test
+  public void testJournalIsReusableAfterBeingCleared() throws IOException {
+    // Set up
+    final UndoJournal journal = new UndoJournal(0);
+    final File file = createFile("file.txt", "before");
+    journal.record(file);
+    journal.clear();
+    FileUtils.writeStringToFile(file, "after", "UTF-8");
+    final UndoJournal.Entry entry = journal.record(file);
+    FileUtils.writeStringToFile(file, "changed", "UTF-8");
+
+    // Invoke
+    final boolean restored = journal.restore(entry, file);
+
+    // Check
+    assertTrue(restored);
+    assertEquals("after", read(file));
+  }
+}
@@ -7,6 +7,7 @@ import java.util.Map;
 import java.util.SortedSet;
 import java.util.Stack;
 import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.commons.lang3.Validate;
 import org.apache.felix.scr.annotations.Component;
@@ -15,6 +16,9 @@ import org.springframework.roo.metadata.internal.StandardMetadataTimingStatistic
 
 /**
  * Default implementation of {@link MetadataLogger}.
+ * <p>
+ * Event and timer stacks are kept per thread, so metadata can be resolved
+ * concurrently without one thread's timings being charged to another's.
  * 
  * @author Ben Alex
  * @since 1.1.2
@@ -29,8 +33,13 @@ public class DefaultMetadataLogger implements MetadataLogger {
     String responsibleClass;
   }
 
-  private long eventNumber = 0;
-  private final Stack<Long> eventStack = new Stack<Long>();
+  private final AtomicLong eventNumber = new AtomicLong();
+  private final ThreadLocal<Stack<Long>> eventStacks = new ThreadLocal<Stack<Long>>() {
+    @Override
+    protected Stack<Long> initialValue() {
+      return new Stack<Long>();
+    }
+  };
   private FileWriter fileLog;
   /**
    * key: responsible class, value: number of times a timing record was
@@ -38,7 +47,13 @@ public class DefaultMetadataLogger implements MetadataLogger {
    */
   private final Map<String, Long> invocations = new HashMap<String, Long>();
   private final Class<DefaultMetadataLogger> mutex = DefaultMetadataLogger.class;
-  private final Stack<TimerEntry> timerStack = new Stack<TimerEntry>();
+  private final ThreadLocal<Stack<TimerEntry>> timerStacks =
+      new ThreadLocal<Stack<TimerEntry>>() {
+        @Override
+        protected Stack<TimerEntry> initialValue() {
+          return new Stack<TimerEntry>();
+        }
+      };
   /** key: responsible class, value: nanos occupied */
   private final Map<String, Long> timings = new HashMap<String, Long>();
 
@@ -67,6 +82,7 @@ public class DefaultMetadataLogger implements MetadataLogger {
 
   public void log(final String message) {
     Validate.notBlank(message, "Message to log required");
+    final Stack<Long> eventStack = eventStacks.get();
     Validate.isTrue(eventStack.size() > 0,
         "Event stack is empty, so no logging should have been requested at this time");
     final StringBuilder sb = new StringBuilder("00000000");
@@ -83,7 +99,7 @@ public class DefaultMetadataLogger implements MetadataLogger {
     logToFile(sb.toString());
   }
 
-  private void logToFile(final String line) {
+  private synchronized void logToFile(final String line) {
     if (fileLog == null) {
       try {
         // Overwrite existing (don't append)
@@ -107,13 +123,13 @@ public class DefaultMetadataLogger implements MetadataLogger {
   }
 
   public void startEvent() {
-    eventNumber++;
-    eventStack.push(eventNumber);
+    eventStacks.get().push(eventNumber.incrementAndGet());
   }
 
   public void startTimer(final String responsibleClass) {
     Validate.notBlank(responsibleClass, "Responsible class required");
     final long now = System.nanoTime();
+    final Stack<TimerEntry> timerStack = timerStacks.get();
     if (timerStack.size() > 0) {
       // There is an existing timer on the stack, so we need to stop the
       // clock for it
@@ -130,12 +146,14 @@ public class DefaultMetadataLogger implements MetadataLogger {
   }
 
   public void stopEvent() {
+    final Stack<Long> eventStack = eventStacks.get();
     Validate.isTrue(eventStack.size() > 0,
         "Event stack is empty, indicating a mismatched number of timer start/stop calls");
     eventStack.pop();
   }
 
   public void stopTimer() {
+    final Stack<TimerEntry> timerStack = timerStacks.get();
     Validate.isTrue(timerStack.size() > 0,
         "Timer stack is empty, indicating a mismatched number of timer start/stop calls");
     final long now = System.nanoTime();
@@ -1,11 +1,22 @@
 package org.springframework.roo.metadata;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.SortedSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.commons.lang3.ObjectUtils;
 import org.apache.commons.lang3.Validate;
@@ -18,14 +29,23 @@ import org.apache.felix.scr.annotations.ReferenceStrategy;
 import org.apache.felix.scr.annotations.Service;
 import org.osgi.service.component.ComponentContext;
 import org.springframework.roo.metadata.internal.AbstractMetadataCache;
+import org.springframework.roo.metadata.internal.HandleSet;
 import org.springframework.roo.metadata.internal.MetadataDependencyRegistryTracker;
 
 /**
  * Default implementation of {@link MetadataService}.
  * <p>
- * This implementation is not thread safe. It should only be accessed by a
- * single thread at a time. This is enforced by the process manager semantics,
- * so we avoid the cost of re-synchronization here.
+ * By default this implementation resolves metadata on a single thread at a
+ * time, as enforced by the process manager semantics. If the
+ * <code>roo.metadata.concurrent</code> system property is set, a concurrent
+ * resolution mode is enabled instead: the cache is only locked while it is
+ * read or written, each metadata identifier being built is tracked by its own
+ * in-flight request, and {@link #getAll(Collection)} and
+ * {@link #evictAndGetAll(Collection)} resolve independent identifiers in
+ * parallel on a fork-join pool, as does {@link #evictAll()} when rebuilding
+ * the items it evicted. Recursive requests are detected per thread (and across
+ * threads waiting on each other) and retried exactly as in the single threaded
+ * mode.
  * 
  * @author Ben Alex
  * @author Enrique Ruiz at DISID Corporation S.L.
@@ -38,16 +58,62 @@ import org.springframework.roo.metadata.internal.MetadataDependencyRegistryTrack
     cardinality = ReferenceCardinality.OPTIONAL_MULTIPLE)
 public class DefaultMetadataService extends AbstractMetadataCache implements MetadataService {
 
+  /**
+   * A metadata instance currently being built by some thread. Other threads
+   * asking for the same identifier wait for its outcome instead of building
+   * it a second time.
+   */
+  private static class InFlightRequest {
+    private final String metadataIdentificationString;
+    private final Thread owner;
+    private final CountDownLatch done = new CountDownLatch(1);
+    private volatile MetadataItem result;
+    private volatile RuntimeException failure;
+
+    InFlightRequest(final String metadataIdentificationString, final Thread owner) {
+      this.metadataIdentificationString = metadataIdentificationString;
+      this.owner = owner;
+    }
+
+    MetadataItem await() {
+      try {
+        done.await();
+      } catch (final InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IllegalStateException("Interrupted while waiting for "
+            + metadataIdentificationString, e);
+      }
+      if (failure != null) {
+        throw failure;
+      }
+      return result;
+    }
+
+    void complete(final MetadataItem result) {
+      this.result = result;
+      done.countDown();
+    }
+
+    void fail(final RuntimeException failure) {
+      this.failure = failure;
+      done.countDown();
+    }
+  }
+
+  static final String CONCURRENT_PROPERTY = "roo.metadata.concurrent";
+  // Number of rebuild cost lookups between refreshes of the average costs
+  private static final int COST_REFRESH_INTERVAL = 256;
+
   @Reference
   private MetadataLogger metadataLogger;
 
   // Request control
-  // List to assist output "stacks"which show the order of requests
-  private final List<String> activeRequests = new ArrayList<String>();
-  private int cacheEvictions = 0;
-  private int cacheHits = 0;
-  private int cacheMisses = 0;
-  private int cachePuts = 0;
+  // Handles of the MIDs currently being built
+  private final HandleSet activeRequests = new HandleSet();
+  private final AtomicInteger cacheEvictions = new AtomicInteger();
+  private final AtomicInteger cacheHits = new AtomicInteger();
+  private final AtomicInteger cacheMisses = new AtomicInteger();
+  private final AtomicInteger cachePuts = new AtomicInteger();
   // List to help us verify correct operation through logs (predictable
   // ordering)
   private final List<String> keysToRetry = new ArrayList<String>();
@@ -55,11 +121,28 @@ public class DefaultMetadataService extends AbstractMetadataCache implements Met
   private final Object lock = new Object();
   private final Map<String, MetadataProvider> providerMap = new HashMap<String, MetadataProvider>();
   private final Set<MetadataProvider> providers = new HashSet<MetadataProvider>();
-  private int recursiveGets = 0;
-  private int validGets = 0;
+  private final AtomicInteger recursiveGets = new AtomicInteger();
+  private final AtomicInteger validGets = new AtomicInteger();
+  // key: provider class name, value: average nanoseconds per invocation
+  private final Map<String, Long> averageCosts = new HashMap<String, Long>();
+  private int costLookups;
+
+  // Concurrent resolution control
+  private final boolean concurrent;
+  /** key: MID being built, value: the request building it */
+  private final ConcurrentMap<String, InFlightRequest> inFlight =
+      new ConcurrentHashMap<String, InFlightRequest>();
+  /** key: thread waiting on another thread's request, value: the awaited MID */
+  private final Map<Thread, String> awaiting = new HashMap<Thread, String>();
+  private final AtomicInteger activeCount = new AtomicInteger();
+  private ForkJoinPool pool;
 
   protected MetadataDependencyRegistryTracker registryTracker = null;
 
+  public DefaultMetadataService() {
+    concurrent = System.getProperty(CONCURRENT_PROPERTY) != null;
+  }
+
   /**
    * This service is being activated so setup it:
    * <ul>
@@ -69,6 +152,9 @@ public class DefaultMetadataService extends AbstractMetadataCache implements Met
   protected void activate(final ComponentContext context) {
     this.registryTracker = new MetadataDependencyRegistryTracker(context.getBundleContext(), this);
     this.registryTracker.open();
+    if (concurrent) {
+      pool = new ForkJoinPool();
+    }
   }
 
   /**
@@ -81,6 +167,10 @@ public class DefaultMetadataService extends AbstractMetadataCache implements Met
     MetadataDependencyRegistry registry = this.registryTracker.getService();
     registry.removeNotificationListener(this);
     this.registryTracker.close();
+    if (pool != null) {
+      pool.shutdown();
+      pool = null;
+    }
   }
 
   protected void bindMetadataProvider(final MetadataProvider mp) {
@@ -119,8 +209,10 @@ public class DefaultMetadataService extends AbstractMetadataCache implements Met
 
   @Override
   public void evictAll() {
+    final List<String> evicted;
     synchronized (lock) {
       // Clear my own cache
+      evicted = getCachedIdentifiers();
       super.evictAll();
 
       // Clear the caches of any metadata providers which support the
@@ -131,6 +223,48 @@ public class DefaultMetadataService extends AbstractMetadataCache implements Met
         }
       }
     }
+
+    // When resolving concurrently, rebuild the evicted items straight away,
+    // in parallel, rather than one at a time as they are next asked for
+    if (pool != null) {
+      getAll(evicted);
+    }
+  }
+
+  @Override
+  public SortedSet<MetadataCacheStatistic> getCacheStatistics() {
+    synchronized (lock) {
+      return super.getCacheStatistics();
+    }
+  }
+
+  /**
+   * Returns the average time the provider of the given metadata has spent
+   * building each item, as measured by the {@link MetadataLogger}'s timers.
+   * The averages are refreshed periodically, as gathering them is not free.
+   * The caller must hold {@link #lock}.
+   */
+  @Override
+  protected long getRebuildCost(final String metadataIdentificationString) {
+    if (costLookups++ % COST_REFRESH_INTERVAL == 0) {
+      averageCosts.clear();
+      for (final MetadataTimingStatistic stat : metadataLogger.getTimings()) {
+        if (stat.getInvocations() > 0) {
+          averageCosts.put(stat.getName(), stat.getTime() / stat.getInvocations());
+        }
+      }
+    }
+    final String mdClassId =
+        MetadataIdentificationUtils.getMetadataClassId(metadataIdentificationString);
+    final MetadataProvider p = providerMap.get(mdClassId);
+    final Long cost = p == null ? null : averageCosts.get(p.getClass().getName());
+    return cost == null ? 0 : cost;
+  }
+
+  @Override
+  protected String getStatisticName(final String metadataClassId) {
+    final MetadataProvider p = providerMap.get(metadataClassId);
+    return p == null ? metadataClassId : p.getClass().getName();
   }
 
   public MetadataItem evictAndGet(final String metadataIdentificationString) {
@@ -145,6 +279,47 @@ public class DefaultMetadataService extends AbstractMetadataCache implements Met
     return getInternal(metadataIdentificationString, evictCache, true);
   }
 
+  public Map<String, MetadataItem> evictAndGetAll(
+      final Collection<String> metadataIdentificationStrings) {
+    return getAll(metadataIdentificationStrings, true);
+  }
+
+  public Map<String, MetadataItem> getAll(final Collection<String> metadataIdentificationStrings) {
+    return getAll(metadataIdentificationStrings, false);
+  }
+
+  private Map<String, MetadataItem> getAll(final Collection<String> metadataIdentificationStrings,
+      final boolean evictCache) {
+    Validate.notNull(metadataIdentificationStrings, "Metadata identification strings required");
+    final Set<String> mids = new LinkedHashSet<String>(metadataIdentificationStrings);
+    final Map<String, MetadataItem> results = new LinkedHashMap<String, MetadataItem>();
+
+    // Resolve serially unless concurrency is enabled and worthwhile; a
+    // worker thread never forks again, as it could then steal unrelated
+    // requests onto its own request stack
+    final ForkJoinPool currentPool = pool;
+    if (currentPool == null || mids.size() < 2 || ForkJoinTask.inForkJoinPool()) {
+      for (final String mid : mids) {
+        results.put(mid, getInternal(mid, evictCache, !evictCache));
+      }
+      return results;
+    }
+
+    final Map<String, ForkJoinTask<MetadataItem>> tasks =
+        new LinkedHashMap<String, ForkJoinTask<MetadataItem>>();
+    for (final String mid : mids) {
+      tasks.put(mid, currentPool.submit(new Callable<MetadataItem>() {
+        public MetadataItem call() {
+          return getInternal(mid, evictCache, !evictCache);
+        }
+      }));
+    }
+    for (final Map.Entry<String, ForkJoinTask<MetadataItem>> task : tasks.entrySet()) {
+      results.put(task.getKey(), task.getValue().join());
+    }
+    return results;
+  }
+
   private MetadataItem getInternal(final String metadataIdentificationString,
       final boolean evictCache, final boolean cacheRetrievalAllowed) {
     Validate.isTrue(
@@ -152,8 +327,13 @@ public class DefaultMetadataService extends AbstractMetadataCache implements Met
         "Metadata identification string '%s' does not identify a metadata instance",
         metadataIdentificationString);
 
+    if (concurrent) {
+      return getConcurrently(metadataIdentificationString, evictCache, cacheRetrievalAllowed);
+    }
+
     synchronized (lock) {
-      validGets++;
+      validGets.incrementAndGet();
+      final int handle = MetadataIdentifierTable.intern(metadataIdentificationString);
 
       try {
         metadataLogger.startEvent();
@@ -164,16 +344,16 @@ public class DefaultMetadataService extends AbstractMetadataCache implements Met
           if (metadataLogger.getTraceLevel() > 0) {
             metadataLogger.log("Evicting " + metadataIdentificationString);
           }
-          cacheEvictions++;
+          cacheEvictions.incrementAndGet();
         }
 
         // We can use the cache even for a recursive get (unless of
         // course the caller has prevented it)
         if (cacheRetrievalAllowed) {
           // Try the cache first
-          final MetadataItem result = getFromCache(metadataIdentificationString);
+          final MetadataItem result = getFromCache(handle);
           if (result != null) {
-            cacheHits++;
+            cacheHits.incrementAndGet();
             if (metadataLogger.getTraceLevel() > 0) {
               metadataLogger.log("Cache hit " + metadataIdentificationString);
             }
@@ -184,12 +364,12 @@ public class DefaultMetadataService extends AbstractMetadataCache implements Met
         if (metadataLogger.getTraceLevel() > 0) {
           metadataLogger.log("Cache miss " + metadataIdentificationString);
         }
-        cacheMisses++;
+        cacheMisses.incrementAndGet();
 
         // Determine if this MID was already requested earlier. We need
         // to stop these infinite requests from occurring.
-        if (activeRequests.contains(metadataIdentificationString)) {
-          recursiveGets++;
+        if (activeRequests.contains(handle)) {
+          recursiveGets.incrementAndGet();
           if (!keysToRetry.contains(metadataIdentificationString)) {
             if (metadataLogger.getTraceLevel() > 0) {
               metadataLogger.log("Blocked recursive request for " + metadataIdentificationString);
@@ -210,7 +390,7 @@ public class DefaultMetadataService extends AbstractMetadataCache implements Met
                 metadataIdentificationString, mdClassId);
 
         // Infinite loop management
-        activeRequests.add(metadataIdentificationString);
+        activeRequests.add(handle);
 
         // Obtain the item
         if (metadataLogger.getTraceLevel() > 0) {
@@ -232,7 +412,7 @@ public class DefaultMetadataService extends AbstractMetadataCache implements Met
             metadataLogger.log("Evicting unavailable item " + metadataIdentificationString);
           }
           evict(metadataIdentificationString);
-          cacheEvictions++;
+          cacheEvictions.incrementAndGet();
         }
 
         // Put into the cache, provided it isn't null
@@ -241,10 +421,10 @@ public class DefaultMetadataService extends AbstractMetadataCache implements Met
             metadataLogger.log("Caching " + metadataIdentificationString);
           }
           super.put(result);
-          cachePuts++;
+          cachePuts.incrementAndGet();
         }
 
-        activeRequests.remove(metadataIdentificationString);
+        activeRequests.remove(handle);
 
         if (metadataLogger.getTraceLevel() > 0) {
           metadataLogger.log("Returning " + metadataIdentificationString);
@@ -252,7 +432,7 @@ public class DefaultMetadataService extends AbstractMetadataCache implements Met
 
         return result;
       } catch (final Exception e) {
-        activeRequests.remove(metadataIdentificationString);
+        activeRequests.remove(handle);
         throw new IllegalStateException(e);
       } finally {
         // We use another try..finally block as we want to ensure
@@ -261,39 +441,232 @@ public class DefaultMetadataService extends AbstractMetadataCache implements Met
           // Have we processed all requests? If so, handle any retries
           // we recorded
           if (activeRequests.isEmpty()) {
-            final List<String> thisRetry = new ArrayList<String>();
-            thisRetry.addAll(keysToRetry);
-            keysToRetry.clear();
-            if (metadataLogger.getTraceLevel() > 0 && thisRetry.size() > 0) {
-              metadataLogger.log(thisRetry.size() + " keys to retry: " + thisRetry);
-            }
-            for (final String retryMid : thisRetry) {
-              // Important: we should not evict any prior version
-              // from the cache (an interim version is
-              // acceptable).
-              // We discard the result of the get; this is purely
-              // to facilitate updating metadata stored in memory
-              // and on-disk
+            retryBlockedRequests(metadataIdentificationString);
+          }
+        } finally {
+          MetadataIdentifierTable.release(handle);
+          metadataLogger.stopEvent();
+        }
+      }
+    }
+  }
+
+  /**
+   * Concurrent counterpart of {@link #getInternal(String, boolean, boolean)}.
+   * The cache is only locked while it is read or written; the provider is
+   * invoked without holding any lock, with concurrent requests for the same
+   * MID waiting on the in-flight request instead of building it twice.
+   */
+  private MetadataItem getConcurrently(final String metadataIdentificationString,
+      final boolean evictCache, final boolean cacheRetrievalAllowed) {
+    validGets.incrementAndGet();
+    activeCount.incrementAndGet();
+
+    try {
+      metadataLogger.startEvent();
+
+      // Do some cache eviction if the caller requested it
+      if (evictCache) {
+        evict(metadataIdentificationString);
+        if (metadataLogger.getTraceLevel() > 0) {
+          metadataLogger.log("Evicting " + metadataIdentificationString);
+        }
+        cacheEvictions.incrementAndGet();
+      }
+
+      if (cacheRetrievalAllowed) {
+        final MetadataItem result;
+        synchronized (lock) {
+          result = getFromCache(metadataIdentificationString);
+        }
+        if (result != null) {
+          cacheHits.incrementAndGet();
+          if (metadataLogger.getTraceLevel() > 0) {
+            metadataLogger.log("Cache hit " + metadataIdentificationString);
+          }
+          return result;
+        }
+      }
+
+      if (metadataLogger.getTraceLevel() > 0) {
+        metadataLogger.log("Cache miss " + metadataIdentificationString);
+      }
+      cacheMisses.incrementAndGet();
+
+      final InFlightRequest request =
+          new InFlightRequest(metadataIdentificationString, Thread.currentThread());
+      final InFlightRequest existing =
+          inFlight.putIfAbsent(metadataIdentificationString, request);
+      if (existing != null) {
+        // Someone is already building this MID. If it is this thread (a
+        // recursive request) or a thread that is itself waiting on this
+        // one, waiting would never end, so block it as a recursive get
+        if (!startAwaiting(existing)) {
+          recursiveGets.incrementAndGet();
+          synchronized (keysToRetry) {
+            if (!keysToRetry.contains(metadataIdentificationString)) {
               if (metadataLogger.getTraceLevel() > 0) {
-                metadataLogger.log("Retrying " + retryMid);
+                metadataLogger
+                    .log("Blocked recursive request for " + metadataIdentificationString);
               }
-              if (ObjectUtils.equals(retryMid, metadataIdentificationString)) {
-                // Avoid infinite recursion loop
-                continue;
-              }
-              getInternal(retryMid, false, false);
-            }
-            if (metadataLogger.getTraceLevel() > 0 && thisRetry.size() > 0) {
-              metadataLogger.log("Retry group completed " + metadataIdentificationString);
+              keysToRetry.add(metadataIdentificationString);
             }
           }
+          return null;
+        }
+        try {
+          if (metadataLogger.getTraceLevel() > 0) {
+            metadataLogger.log("Awaiting " + metadataIdentificationString);
+          }
+          return existing.await();
         } finally {
-          metadataLogger.stopEvent();
+          stopAwaiting();
+        }
+      }
+
+      try {
+        final MetadataItem result = build(metadataIdentificationString, evictCache);
+        request.complete(result);
+        return result;
+      } catch (final Exception e) {
+        final IllegalStateException failure = new IllegalStateException(e);
+        request.fail(failure);
+        throw failure;
+      } finally {
+        inFlight.remove(metadataIdentificationString, request);
+      }
+    } finally {
+      try {
+        // Have we processed all requests (on every thread)? If so, handle
+        // any retries we recorded
+        if (activeCount.decrementAndGet() == 0) {
+          retryBlockedRequests(metadataIdentificationString);
+        }
+      } finally {
+        metadataLogger.stopEvent();
+      }
+    }
+  }
+
+  /**
+   * Obtains the given metadata instance from its provider and caches it.
+   * Used by the concurrent mode, so no lock is held while the provider runs.
+   */
+  private MetadataItem build(final String metadataIdentificationString, final boolean evictCache) {
+    final String mdClassId =
+        MetadataIdentificationUtils.getMetadataClassId(metadataIdentificationString);
+    final MetadataProvider p;
+    synchronized (lock) {
+      p = providerMap.get(mdClassId);
+    }
+    Validate
+        .notNull(
+            p,
+            "No metadata provider is currently registered to provide metadata for identifier '%s' (class '%s')",
+            metadataIdentificationString, mdClassId);
+
+    if (metadataLogger.getTraceLevel() > 0) {
+      metadataLogger.log("Get " + metadataIdentificationString + " from " + p.getClass().getName());
+    }
+    MetadataItem result = null;
+    try {
+      metadataLogger.startTimer(p.getClass().getName());
+      result = p.get(metadataIdentificationString);
+    } finally {
+      metadataLogger.stopTimer();
+    }
+
+    if (result == null && !evictCache) {
+      if (metadataLogger.getTraceLevel() > 0) {
+        metadataLogger.log("Evicting unavailable item " + metadataIdentificationString);
+      }
+      evict(metadataIdentificationString);
+      cacheEvictions.incrementAndGet();
+    }
+
+    if (result != null) {
+      if (metadataLogger.getTraceLevel() > 0) {
+        metadataLogger.log("Caching " + metadataIdentificationString);
+      }
+      put(result);
+    }
+
+    if (metadataLogger.getTraceLevel() > 0) {
+      metadataLogger.log("Returning " + metadataIdentificationString);
+    }
+    return result;
+  }
+
+  /**
+   * Records that the current thread is about to wait for the given request,
+   * unless doing so would deadlock: either the current thread owns the
+   * request itself, or the owner is (transitively) waiting on the current
+   * thread.
+   * 
+   * @return <code>false</code> if the wait would never end
+   */
+  private boolean startAwaiting(final InFlightRequest target) {
+    final Thread current = Thread.currentThread();
+    synchronized (awaiting) {
+      InFlightRequest next = target;
+      while (next != null) {
+        if (next.owner == current) {
+          return false;
         }
+        final String awaitedByOwner = awaiting.get(next.owner);
+        next = awaitedByOwner == null ? null : inFlight.get(awaitedByOwner);
+      }
+      awaiting.put(current, target.metadataIdentificationString);
+      return true;
+    }
+  }
+
+  private void stopAwaiting() {
+    synchronized (awaiting) {
+      awaiting.remove(Thread.currentThread());
+    }
+  }
+
+  /**
+   * Retries the requests that were blocked as recursive while the request
+   * group that just completed was active.
+   * 
+   * @param completedMid the MID whose completion ended the request group
+   */
+  private void retryBlockedRequests(final String completedMid) {
+    final List<String> thisRetry = new ArrayList<String>();
+    synchronized (keysToRetry) {
+      thisRetry.addAll(keysToRetry);
+      keysToRetry.clear();
+    }
+    if (metadataLogger.getTraceLevel() > 0 && thisRetry.size() > 0) {
+      metadataLogger.log(thisRetry.size() + " keys to retry: " + thisRetry);
+    }
+    for (final String retryMid : thisRetry) {
+      // Important: we should not evict any prior version
+      // from the cache (an interim version is
+      // acceptable).
+      // We discard the result of the get; this is purely
+      // to facilitate updating metadata stored in memory
+      // and on-disk
+      if (metadataLogger.getTraceLevel() > 0) {
+        metadataLogger.log("Retrying " + retryMid);
       }
+      if (ObjectUtils.equals(retryMid, completedMid)) {
+        // Avoid infinite recursion loop
+        continue;
+      }
+      getInternal(retryMid, false, false);
+    }
+    if (metadataLogger.getTraceLevel() > 0 && thisRetry.size() > 0) {
+      metadataLogger.log("Retry group completed " + completedMid);
     }
   }
 
+  public boolean isConcurrent() {
+    return concurrent;
+  }
+
   public void notify(final String upstreamDependency, final String downstreamDependency) {
     Validate.isTrue(MetadataIdentificationUtils.isValid(upstreamDependency),
         "Upstream dependency is an invalid metadata identification string ('%s')",
@@ -304,58 +677,92 @@ public class DefaultMetadataService extends AbstractMetadataCache implements Met
 
     MetadataDependencyRegistry registry = this.registryTracker.getService();
 
-    synchronized (lock) {
-      // Get the destination
-      final String mdClassId = MetadataIdentificationUtils.getMetadataClassId(downstreamDependency);
-      final MetadataProvider p = providerMap.get(mdClassId);
-
-      if (p == null) {
-        // No known provider that can consume this notification, so just
-        // return as per the interface contract
-        return;
+    // Get the destination
+    final String mdClassId = MetadataIdentificationUtils.getMetadataClassId(downstreamDependency);
+
+    if (concurrent) {
+      // Never hold the lock while a provider runs, as it may wait on a
+      // request being built by another thread which needs the lock
+      final MetadataProvider p;
+      synchronized (lock) {
+        p = providerMap.get(mdClassId);
       }
+      notifyProvider(p, upstreamDependency, downstreamDependency, registry);
+      return;
+    }
 
-      if (p instanceof MetadataNotificationListener) {
-        // The provider can directly handle this notification, so we
-        // just need to delegate directly to it.
-        // We rely on the provider to evict items from the cache if
-        // applicable.
-        ((MetadataNotificationListener) p).notify(upstreamDependency, downstreamDependency);
-      } else {
-        // As per interface contract, we just ensure we evict the item
-        // and recreate it
-        // However, we only do this if the destination is an instance -
-        // if it's a class, "get" is not a meaningful operation.
-        if (MetadataIdentificationUtils.isIdentifyingInstance(downstreamDependency)) {
-          get(downstreamDependency, true);
-        }
-        // As per interface contract, we now notify any listeners this
-        // downstream instance has probably now changed
-        registry.notifyDownstream(downstreamDependency);
+    synchronized (lock) {
+      notifyProvider(providerMap.get(mdClassId), upstreamDependency, downstreamDependency,
+          registry);
+    }
+  }
+
+  private void notifyProvider(final MetadataProvider p, final String upstreamDependency,
+      final String downstreamDependency, final MetadataDependencyRegistry registry) {
+    if (p == null) {
+      // No known provider that can consume this notification, so just
+      // return as per the interface contract
+      return;
+    }
+
+    if (p instanceof MetadataNotificationListener) {
+      // The provider can directly handle this notification, so we
+      // just need to delegate directly to it.
+      // We rely on the provider to evict items from the cache if
+      // applicable.
+      ((MetadataNotificationListener) p).notify(upstreamDependency, downstreamDependency);
+    } else {
+      // As per interface contract, we just ensure we evict the item
+      // and recreate it
+      // However, we only do this if the destination is an instance -
+      // if it's a class, "get" is not a meaningful operation.
+      if (MetadataIdentificationUtils.isIdentifyingInstance(downstreamDependency)) {
+        get(downstreamDependency, true);
       }
+      // As per interface contract, we now notify any listeners this
+      // downstream instance has probably now changed
+      registry.notifyDownstream(downstreamDependency);
     }
   }
 
   @Override
   public void put(final MetadataItem metadataItem) {
-    super.put(metadataItem);
-    cachePuts++;
+    synchronized (lock) {
+      super.put(metadataItem);
+    }
+    cachePuts.incrementAndGet();
   }
 
   @Override
   public final String toString() {
     final ToStringBuilder builder = new ToStringBuilder(this);
-    builder.append("validGets", validGets);
-    builder.append("recursiveGets", recursiveGets);
-    builder.append("cachePuts", cachePuts);
-    builder.append("cacheHits", cacheHits);
-    builder.append("cacheMisses", cacheMisses);
-    builder.append("cacheEvictions", cacheEvictions);
+    builder.append("validGets", validGets.get());
+    builder.append("recursiveGets", recursiveGets.get());
+    builder.append("cachePuts", cachePuts.get());
+    builder.append("cacheHits", cacheHits.get());
+    builder.append("cacheMisses", cacheMisses.get());
+    builder.append("cacheEvictions", cacheEvictions.get());
     builder.append("cacheCurrentSize", getCacheSize());
     builder.append("cacheMaximumSize", getMaxCapacity());
+    builder.append("cacheCurrentWeight", getCacheWeight());
+    builder.append("cacheMaximumWeight", getMaxWeight());
     return builder.toString().replaceFirst("@[0-9a-f]+", ":");
   }
 
+  @Override
+  public void setMaxCapacity(final int maxCapacity) {
+    synchronized (lock) {
+      super.setMaxCapacity(maxCapacity);
+    }
+  }
+
+  @Override
+  public void setMaxWeight(final long maxWeight) {
+    synchronized (lock) {
+      super.setMaxWeight(maxWeight);
+    }
+  }
+
   protected void unbindMetadataProvider(final MetadataProvider mp) {
     synchronized (lock) {
       final String mid = mp.getProvidesType();
@@ -0,0 +1,42 @@
+package org.springframework.roo.metadata;
+
+/**
+ * Represents an immutable representation of the cache statistics of a single
+ * type of metadata, as gathered by {@link MetadataService}.
+ * 
+ * @since 2.0
+ */
+public interface MetadataCacheStatistic extends Comparable<MetadataCacheStatistic> {
+
+  /**
+   * @return the number of cache lookups that found the metadata
+   */
+  long getHits();
+
+  /**
+   * @return the proportion of cache lookups that found the metadata, between
+   *         zero and one (zero if there were no lookups)
+   */
+  double getHitRatio();
+
+  /**
+   * @return the number of metadata instances currently cached
+   */
+  int getItems();
+
+  /**
+   * @return the number of cache lookups that did not find the metadata
+   */
+  long getMisses();
+
+  /**
+   * @return an identifier to differentiate this statistic from another, such
+   *         as the name of the metadata provider (never null or empty)
+   */
+  String getName();
+
+  /**
+   * @return the estimated number of bytes retained by the cached instances
+   */
+  long getWeight();
+}
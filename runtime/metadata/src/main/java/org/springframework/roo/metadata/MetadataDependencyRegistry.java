@@ -155,6 +155,35 @@ public interface MetadataDependencyRegistry {
    */
   void notifyDownstream(String upstreamDependency);
 
+  /**
+   * Starts collecting notifications instead of delivering them as soon as
+   * {@link #notifyDownstream(String)} is invoked. This is intended for a
+   * single wave of changes, such as one file system scan, where a downstream
+   * dependency would otherwise be notified before all of its upstream
+   * dependencies had been rebuilt, and again by every repeated notification.
+   * <p>
+   * Batches may be nested; the collected notifications are only delivered
+   * when the outermost batch is completed via
+   * {@link #completeNotificationBatch()}.
+   * 
+   * @since 2.0
+   */
+  void startNotificationBatch();
+
+  /**
+   * Completes a batch started via {@link #startNotificationBatch()}. If this
+   * completes the outermost batch, the downstream dependencies of every
+   * upstream dependency notified during the batch are notified in dependency
+   * order. Each downstream dependency is notified once by each of its upstream
+   * dependencies that changed, however many times that upstream dependency
+   * was notified, and only after all of them have been processed.
+   * 
+   * @return the number of repeated downstream notifications that were
+   *         avoided by this batch (zero if an outer batch is still active)
+   * @since 2.0
+   */
+  int completeNotificationBatch();
+
   /**
    * Registers a dependency between two items of metadata.
    * <p>
@@ -0,0 +1,257 @@
+package org.springframework.roo.metadata;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.apache.commons.lang3.Validate;
+
+/**
+ * Interns metadata identification strings, giving each distinct MID a compact
+ * <code>int</code> handle.
+ * <p>
+ * Handles are allocated densely from zero, so they can index plain arrays.
+ * Registries and caches that see the same MIDs over and over can therefore key
+ * their data by handle, hashing each MID string once (on the way in) rather
+ * than in every map they keep. The handle of each MID's metadata class is
+ * recorded when the MID is interned, which saves splitting the string again
+ * via {@link MetadataIdentificationUtils#getMetadataClassId(String)}.
+ * <p>
+ * Instance-level handles are reference counted: each {@link #intern(String)}
+ * must be matched by a {@link #release(int)} once the caller no longer keys
+ * anything by the handle, after which the handle may be given to another MID.
+ * Class-level handles, of which there is one per type of metadata, are never
+ * reclaimed.
+ * <p>
+ * All methods are thread safe. Looking up an interned MID, interning it again
+ * and resolving a handle do not lock; only allocating and reclaiming handles
+ * do.
+ *
+ * @since 2.0
+ */
+public final class MetadataIdentifierTable {
+
+  private static class Entry {
+    final int classHandle;
+    final int handle;
+    final String identifier;
+    // Zero once the entry has been released for the last time
+    private final AtomicInteger references;
+
+    Entry(final String identifier, final int handle, final int classHandle) {
+      this.identifier = identifier;
+      this.handle = handle;
+      this.classHandle = classHandle;
+      references = handle == classHandle ? null : new AtomicInteger(1);
+    }
+
+    /**
+     * @return <code>false</code> if this entry has already been released
+     */
+    boolean acquire() {
+      if (references == null) {
+        return true;
+      }
+      while (true) {
+        final int count = references.get();
+        if (count == 0) {
+          return false;
+        }
+        if (references.compareAndSet(count, count + 1)) {
+          return true;
+        }
+      }
+    }
+
+    boolean isLive() {
+      return references == null || references.get() > 0;
+    }
+
+    /**
+     * @return <code>true</code> if that was the last reference
+     */
+    boolean release() {
+      if (references == null) {
+        return false;
+      }
+      final int count = references.decrementAndGet();
+      Validate.validState(count >= 0, "Metadata handle %d released too often", handle);
+      return count == 0;
+    }
+  }
+
+  /** Returned by {@link #lookup(String)} for MIDs that are not interned */
+  public static final int NO_HANDLE = -1;
+
+  private static final int INITIAL_CAPACITY = 1024;
+
+  // key: handle, value: its entry (null if free); replaced when it grows
+  private static volatile AtomicReferenceArray<Entry> entries =
+      new AtomicReferenceArray<Entry>(INITIAL_CAPACITY);
+  // key: MID
+  private static final ConcurrentMap<String, Entry> entriesById =
+      new ConcurrentHashMap<String, Entry>(INITIAL_CAPACITY);
+
+  // Guards the allocation and reclamation of handles
+  private static final Object lock = new Object();
+  private static int freeCount = 0;
+  private static int[] freeHandles = new int[16];
+  private static volatile int size = 0;
+
+  private static int allocate() {
+    if (freeCount > 0) {
+      return freeHandles[--freeCount];
+    }
+    if (size == entries.length()) {
+      final AtomicReferenceArray<Entry> grown = new AtomicReferenceArray<Entry>(size * 2);
+      for (int handle = 0; handle < size; handle++) {
+        grown.set(handle, entries.get(handle));
+      }
+      entries = grown;
+    }
+    return size++;
+  }
+
+  /**
+   * Returns the handle of the metadata class of the given handle's MID; for a
+   * class-level MID this is the handle itself.
+   *
+   * @param handle a handle returned by {@link #intern(String)}
+   * @return the class-level handle
+   */
+  public static int getClassHandle(final int handle) {
+    return getEntry(handle).classHandle;
+  }
+
+  private static Entry getEntry(final int handle) {
+    final AtomicReferenceArray<Entry> current = entries;
+    final Entry entry = handle >= 0 && handle < current.length() ? current.get(handle) : null;
+    Validate.isTrue(entry != null, "Unknown metadata handle %d", handle);
+    return entry;
+  }
+
+  /**
+   * Returns the MID for the given handle.
+   *
+   * @param handle a handle returned by {@link #intern(String)}
+   * @return the MID (never <code>null</code>)
+   */
+  public static String getIdentifier(final int handle) {
+    return getEntry(handle).identifier;
+  }
+
+  /**
+   * @return one more than the highest handle allocated so far, i.e. the
+   *         length of an array that can be indexed by any current handle
+   */
+  public static int getSize() {
+    return size;
+  }
+
+  /**
+   * Returns the handle of the given MID, allocating one if the MID is not
+   * currently interned. For an instance-level MID, this adds a reference to
+   * the handle, which the caller must {@link #release(int)}.
+   *
+   * @param metadataIdentificationString a valid MID (required)
+   * @return the handle (zero or greater)
+   */
+  public static int intern(final String metadataIdentificationString) {
+    Validate.isTrue(MetadataIdentificationUtils.isValid(metadataIdentificationString),
+        "Invalid metadata identification string '%s'", metadataIdentificationString);
+    final Entry existing = entriesById.get(metadataIdentificationString);
+    if (existing != null && existing.acquire()) {
+      return existing.handle;
+    }
+
+    synchronized (lock) {
+      // A released entry may not have been removed yet, in which case it
+      // is replaced here and its handle reclaimed by its releaser
+      final Entry entry = entriesById.get(metadataIdentificationString);
+      if (entry != null && entry.acquire()) {
+        return entry.handle;
+      }
+
+      // Intern the class-level MID first, so it is known by the time the
+      // instance is recorded
+      int classHandle = NO_HANDLE;
+      if (!MetadataIdentificationUtils.isIdentifyingClass(metadataIdentificationString)) {
+        classHandle =
+            intern(MetadataIdentificationUtils.getMetadataClassId(metadataIdentificationString));
+      }
+
+      final int handle = allocate();
+      final Entry created =
+          new Entry(metadataIdentificationString, handle, classHandle == NO_HANDLE ? handle
+              : classHandle);
+      entries.set(handle, created);
+      entriesById.put(metadataIdentificationString, created);
+      return handle;
+    }
+  }
+
+  /**
+   * Returns the handle of the given MID without allocating one or adding a
+   * reference to it.
+   *
+   * @param metadataIdentificationString the MID to look up (can be
+   *            <code>null</code>)
+   * @return the handle, or {@link #NO_HANDLE} if the MID is not interned
+   */
+  public static int lookup(final String metadataIdentificationString) {
+    if (metadataIdentificationString == null) {
+      return NO_HANDLE;
+    }
+    final Entry entry = entriesById.get(metadataIdentificationString);
+    return entry != null && entry.isLive() ? entry.handle : NO_HANDLE;
+  }
+
+  /**
+   * Returns the handle of the metadata class of the given MID without
+   * allocating one or adding a reference to it. Unlike passing the result of
+   * {@link #lookup(String)} to {@link #getClassHandle(int)}, this cannot fail
+   * if another thread releases the MID in between.
+   *
+   * @param metadataIdentificationString the MID to look up (can be
+   *            <code>null</code>)
+   * @return the class-level handle, or {@link #NO_HANDLE} if the MID is not
+   *         interned
+   */
+  public static int lookupClassHandle(final String metadataIdentificationString) {
+    if (metadataIdentificationString == null) {
+      return NO_HANDLE;
+    }
+    final Entry entry = entriesById.get(metadataIdentificationString);
+    return entry != null && entry.isLive() ? entry.classHandle : NO_HANDLE;
+  }
+
+  /**
+   * Removes a reference to the given handle, as added by
+   * {@link #intern(String)}. Once the last reference to an instance-level
+   * handle is removed, its MID is no longer interned and the handle may be
+   * reused. Does nothing for class-level handles.
+   *
+   * @param handle a handle returned by {@link #intern(String)}
+   */
+  public static void release(final int handle) {
+    final Entry entry = getEntry(handle);
+    if (!entry.release()) {
+      return;
+    }
+    synchronized (lock) {
+      entriesById.remove(entry.identifier, entry);
+      entries.compareAndSet(handle, entry, null);
+      if (freeCount == freeHandles.length) {
+        freeHandles = Arrays.copyOf(freeHandles, freeCount * 2);
+      }
+      freeHandles[freeCount++] = handle;
+    }
+  }
+
+  /**
+   * Constructor is private to prevent instantiation
+   */
+  private MetadataIdentifierTable() {}
+}
@@ -1,5 +1,9 @@
 package org.springframework.roo.metadata;
 
+import java.util.Collection;
+import java.util.Map;
+import java.util.SortedSet;
+
 /**
  * Indicates a service which is aware of all {@link MetadataProvider}s in the
  * system and can provide access to their respective capabilities.
@@ -53,6 +57,21 @@ public interface MetadataService extends MetadataNotificationListener, MetadataC
    */
   MetadataItem evictAndGet(String metadataIdentificationString);
 
+  /**
+   * Returns the {@link MetadataItem}s with the given IDs, generating each from
+   * scratch and caching the result. Implementations may resolve independent
+   * IDs in parallel; otherwise this is equivalent to calling
+   * {@link #evictAndGet(String)} for each ID in turn.
+   * 
+   * @param metadataIdentificationStrings the IDs of the {@link MetadataItem}s
+   *            to acquire (required; each must identify a metadata instance)
+   * @return a map of each distinct ID to its metadata, in the iteration order
+   *         of the given IDs; a value is <code>null</code> if the metadata is
+   *         not currently available
+   * @since 2.0
+   */
+  Map<String, MetadataItem> evictAndGetAll(Collection<String> metadataIdentificationStrings);
+
   /**
    * Returns the {@link MetadataItem} with the given ID, from the cache if
    * possible.
@@ -67,6 +86,40 @@ public interface MetadataService extends MetadataNotificationListener, MetadataC
    */
   MetadataItem get(String metadataIdentificationString);
 
+  /**
+   * Returns the {@link MetadataItem}s with the given IDs, from the cache if
+   * possible. Implementations may resolve independent IDs in parallel;
+   * otherwise this is equivalent to calling {@link #get(String)} for each ID
+   * in turn.
+   * 
+   * @param metadataIdentificationStrings the IDs of the {@link MetadataItem}s
+   *            to acquire (required; each must identify a metadata instance)
+   * @return a map of each distinct ID to its metadata, in the iteration order
+   *         of the given IDs; a value is <code>null</code> if the metadata is
+   *         not currently available
+   * @since 2.0
+   */
+  Map<String, MetadataItem> getAll(Collection<String> metadataIdentificationStrings);
+
+  /**
+   * Indicates whether {@link #getAll(Collection)} and
+   * {@link #evictAndGetAll(Collection)} resolve independent IDs in parallel,
+   * i.e. whether providers can be invoked on threads other than the caller's.
+   * 
+   * @return <code>false</code> if the IDs are always resolved in turn on the
+   *         calling thread
+   * @since 2.0
+   */
+  boolean isConcurrent();
+
+  /**
+   * Returns the cache statistics of each type of metadata looked up so far.
+   * 
+   * @return a non-<code>null</code> set (may be empty)
+   * @since 2.0
+   */
+  SortedSet<MetadataCacheStatistic> getCacheStatistics();
+
   /**
    * Creates the requested {@link MetadataItem} if possible, returning null if
    * the item cannot be created or found. Implementations will delegate
@@ -95,4 +148,12 @@ public interface MetadataService extends MetadataNotificationListener, MetadataC
    */
   @Deprecated
   MetadataItem get(String metadataIdentificationString, boolean evictCache);
+
+  /**
+   * Modifies the estimated number of bytes the cached metadata may retain.
+   * 
+   * @param maxWeight the new maximum weight in bytes
+   * @since 2.0
+   */
+  void setMaxWeight(long maxWeight);
 }
@@ -1,26 +1,67 @@
 package org.springframework.roo.metadata.internal;
 
-import java.util.LinkedHashMap;
-import java.util.Map;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SortedSet;
+import java.util.TreeSet;
 
 import org.apache.commons.lang3.Validate;
 import org.springframework.roo.metadata.MetadataCache;
+import org.springframework.roo.metadata.MetadataCacheStatistic;
 import org.springframework.roo.metadata.MetadataIdentificationUtils;
+import org.springframework.roo.metadata.MetadataIdentifierTable;
 import org.springframework.roo.metadata.MetadataItem;
 
 /**
- * Basic {@link MetadataCache} that stores elements on a least recently used
- * (LRU) basis.
+ * Basic {@link MetadataCache} bounded by both a number of items and an
+ * estimated number of bytes retained.
+ * <p>
+ * Entries are keyed by their {@link MetadataIdentifierTable} handle, which the
+ * cache holds a reference to while the item is cached. The items and their
+ * weights are held in arrays indexed by handle, so a lookup only hashes the
+ * MID once (to find its handle). Which items to evict is decided by
+ * an {@link EvictionPolicy}; by default a {@link TinyLfuEvictionPolicy}, which
+ * favours items that are small, frequently used and expensive to rebuild (as
+ * reported by {@link #getRebuildCost(String)}). Hits and misses are counted
+ * per type of metadata, see {@link #getCacheStatistics()}.
+ * <p>
+ * Measuring an item's weight walks its object graph, so only a sample of the
+ * items of each type is measured: the first {@value #MIN_SAMPLES}, then one
+ * in {@value #SAMPLE_INTERVAL}. Every item is charged the running average of
+ * its type's samples.
  * 
  * @author Ben Alex
  * @since 1.0
  */
 public abstract class AbstractMetadataCache implements MetadataCache {
 
-  private static final float hashTableLoadFactor = 0.75f;
+  // Leaves room for everything else the shell holds on to
+  private static final int MAX_MEMORY_FRACTION = 4;
+  // The number of samples over which a type's average weight is smoothed
+  private static final int MAX_SAMPLES = 32;
+  static final int MIN_SAMPLES = 8;
+  private static final long MIN_WEIGHT = 1024L * 1024L;
+  static final int SAMPLE_INTERVAL = 64;
 
-  private LinkedHashMap<String, MetadataItem> map;
+  // key: class-level handle, value: lookups of instances of that class
+  private long[] classHits = new long[16];
+  private long[] classMisses = new long[16];
+  // key: class-level handle, value: instances of that class put
+  private long[] classPuts = new long[16];
+  // key: class-level handle, value: instances of that class weighed
+  private int[] classSamples = new int[16];
+  // key: class-level handle, value: average weight of those instances
+  private long[] classWeights = new long[16];
+  private EvictionPolicy evictionPolicy = new TinyLfuEvictionPolicy();
+  // key: handle, value: cached item (null if not cached)
+  private MetadataItem[] items;
   private int maxCapacity = 100000;
+  private long maxWeight = Runtime.getRuntime().maxMemory() / MAX_MEMORY_FRACTION;
+  private int size;
+  private long totalWeight;
+  // key: handle, value: estimated bytes retained by the cached item
+  private long[] weights;
 
   protected AbstractMetadataCache() {
     init();
@@ -30,43 +71,233 @@ public abstract class AbstractMetadataCache implements MetadataCache {
     Validate.isTrue(
         MetadataIdentificationUtils.isIdentifyingInstance(metadataIdentificationString),
         "Only metadata instances can be cached (not '%s')", metadataIdentificationString);
-    map.remove(metadataIdentificationString);
+    evict(MetadataIdentifierTable.lookup(metadataIdentificationString));
+  }
+
+  /**
+   * Evicts the metadata instance with the given handle, if cached.
+   * 
+   * @param handle the {@link MetadataIdentifierTable} handle of the MID
+   */
+  protected void evict(final int handle) {
+    if (handle < 0 || handle >= items.length || items[handle] == null) {
+      return;
+    }
+    evictionPolicy.onRemove(handle);
+    items[handle] = null;
+    totalWeight -= weights[handle];
+    size--;
+    MetadataIdentifierTable.release(handle);
   }
 
   public void evictAll() {
     init();
   }
 
+  private void ensureClassCapacity(final int classHandle) {
+    if (classHandle >= classHits.length) {
+      final int capacity = Math.max(classHandle + 1, classHits.length * 2);
+      classHits = Arrays.copyOf(classHits, capacity);
+      classMisses = Arrays.copyOf(classMisses, capacity);
+      classPuts = Arrays.copyOf(classPuts, capacity);
+      classSamples = Arrays.copyOf(classSamples, capacity);
+      classWeights = Arrays.copyOf(classWeights, capacity);
+    }
+  }
+
+  /**
+   * Returns the weight to charge the given item, measuring it via
+   * {@link #getWeight(MetadataItem)} if it is one of its type's samples.
+   * 
+   * @param handle the item's {@link MetadataIdentifierTable} handle
+   * @param metadataItem the item (never <code>null</code>)
+   * @return the weight (one or more)
+   */
+  private long estimateWeight(final int handle, final MetadataItem metadataItem) {
+    final int classHandle = MetadataIdentifierTable.getClassHandle(handle);
+    ensureClassCapacity(classHandle);
+    final long puts = classPuts[classHandle]++;
+    final int samples = classSamples[classHandle];
+    if (samples < MIN_SAMPLES || puts % SAMPLE_INTERVAL == 0) {
+      final long weight = getWeight(metadataItem);
+      // Average the first samples, then let the average follow later ones
+      classWeights[classHandle] +=
+          (weight - classWeights[classHandle]) / (Math.min(samples, MAX_SAMPLES - 1) + 1);
+      classSamples[classHandle] = samples + 1;
+    }
+    return Math.max(1, classWeights[classHandle]);
+  }
+
+  /**
+   * Returns the hits, misses and current contents of the cache for each type
+   * of metadata that has been looked up.
+   * 
+   * @return a non-<code>null</code> set, ordered by weight
+   */
+  public SortedSet<MetadataCacheStatistic> getCacheStatistics() {
+    final int classes = classHits.length;
+    final int[] classItems = new int[classes];
+    final long[] classWeights = new long[classes];
+    for (int handle = 0; handle < items.length; handle++) {
+      if (items[handle] != null) {
+        final int classHandle = MetadataIdentifierTable.getClassHandle(handle);
+        if (classHandle < classes) {
+          classItems[classHandle]++;
+          classWeights[classHandle] += weights[handle];
+        }
+      }
+    }
+    final SortedSet<MetadataCacheStatistic> result = new TreeSet<MetadataCacheStatistic>();
+    for (int classHandle = 0; classHandle < classes; classHandle++) {
+      if (classHits[classHandle] + classMisses[classHandle] > 0) {
+        result.add(new StandardMetadataCacheStatistic(getStatisticName(MetadataIdentifierTable
+            .getIdentifier(classHandle)), classHits[classHandle], classMisses[classHandle],
+            classItems[classHandle], classWeights[classHandle]));
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Returns the MIDs of the items currently cached.
+   * 
+   * @return a non-<code>null</code> list, in no particular order
+   */
+  protected List<String> getCachedIdentifiers() {
+    final List<String> cachedIdentifiers = new ArrayList<String>(size);
+    for (int handle = 0; handle < items.length; handle++) {
+      if (items[handle] != null) {
+        cachedIdentifiers.add(items[handle].getId());
+      }
+    }
+    return cachedIdentifiers;
+  }
+
   protected int getCacheSize() {
-    return map.size();
+    return size;
+  }
+
+  /**
+   * @return the estimated number of bytes retained by the cached items
+   */
+  protected long getCacheWeight() {
+    return totalWeight;
   }
 
   protected MetadataItem getFromCache(final String metadataIdentificationString) {
     Validate.isTrue(
         MetadataIdentificationUtils.isIdentifyingInstance(metadataIdentificationString),
         "Only metadata instances can be cached (not '%s')", metadataIdentificationString);
-    return map.get(metadataIdentificationString);
+    // Hold the handle so that it is not reused while its lookup is recorded
+    final int handle = MetadataIdentifierTable.intern(metadataIdentificationString);
+    try {
+      return getFromCache(handle);
+    } finally {
+      MetadataIdentifierTable.release(handle);
+    }
+  }
+
+  /**
+   * Returns the cached metadata instance with the given handle, recording the
+   * lookup with the {@link EvictionPolicy}.
+   * 
+   * @param handle the {@link MetadataIdentifierTable} handle of the MID, which
+   *            the caller holds a reference to
+   * @return the item, or <code>null</code> if it is not cached
+   */
+  protected MetadataItem getFromCache(final int handle) {
+    if (handle < 0) {
+      return null;
+    }
+    final boolean cached = handle < items.length && items[handle] != null;
+    evictionPolicy.onLookup(handle, cached);
+    final MetadataItem item = cached ? items[handle] : null;
+
+    final int classHandle = MetadataIdentifierTable.getClassHandle(handle);
+    ensureClassCapacity(classHandle);
+    if (item == null) {
+      classMisses[classHandle]++;
+    } else {
+      classHits[classHandle]++;
+    }
+    return item;
+  }
+
+  public long getMaxWeight() {
+    return maxWeight;
   }
 
   public int getMaxCapacity() {
     return maxCapacity;
   }
 
-  private void init() {
-    final int hashTableCapacity = (int) Math.ceil(maxCapacity / hashTableLoadFactor) + 1;
-    map = new LinkedHashMap<String, MetadataItem>(hashTableCapacity, hashTableLoadFactor, true) {
-      private static final long serialVersionUID = 1;
+  /**
+   * Returns the estimated time it takes to rebuild the given metadata
+   * instance, which is weighed against its size when choosing what to evict.
+   * This implementation returns zero, i.e. items are only weighed by size.
+   * 
+   * @param metadataIdentificationString the MID (never <code>null</code>)
+   * @return the cost in nanoseconds (zero or more)
+   */
+  protected long getRebuildCost(final String metadataIdentificationString) {
+    return 0;
+  }
+
+  /**
+   * Returns the name under which to report the cache statistics of the given
+   * type of metadata. This implementation returns the metadata class MID.
+   * 
+   * @param metadataClassId the class-level MID (never <code>null</code>)
+   * @return a non-blank name
+   */
+  protected String getStatisticName(final String metadataClassId) {
+    return metadataClassId;
+  }
 
-      @Override
-      protected boolean removeEldestEntry(final Map.Entry<String, MetadataItem> eldest) {
-        return size() > maxCapacity;
+  /**
+   * Returns the estimated number of bytes retained by the given item. This is
+   * only called for a sample of the items put into the cache, see above. This
+   * implementation walks the item's object graph.
+   * 
+   * @param metadataItem the item to weigh (never <code>null</code>)
+   * @return the weight (one or more)
+   */
+  protected long getWeight(final MetadataItem metadataItem) {
+    return RetainedSizeEstimator.estimate(metadataItem);
+  }
+
+  private void init() {
+    if (items != null) {
+      for (int handle = 0; handle < items.length; handle++) {
+        if (items[handle] != null) {
+          MetadataIdentifierTable.release(handle);
+        }
       }
-    };
+    }
+    final int capacity = Math.max(16, MetadataIdentifierTable.getSize());
+    items = new MetadataItem[capacity];
+    weights = new long[capacity];
+    evictionPolicy.clear();
+    size = 0;
+    totalWeight = 0;
   }
 
   public void put(final MetadataItem metadataItem) {
     Validate.notNull(metadataItem, "A metadata item is required");
-    map.put(metadataItem.getId(), metadataItem);
+    final int handle = MetadataIdentifierTable.intern(metadataItem.getId());
+    if (handle >= items.length) {
+      final int capacity = Math.max(handle + 1, items.length * 2);
+      items = Arrays.copyOf(items, capacity);
+      weights = Arrays.copyOf(weights, capacity);
+    }
+    evict(handle);
+    final long weight = estimateWeight(handle, metadataItem);
+    items[handle] = metadataItem;
+    weights[handle] = weight;
+    totalWeight += weight;
+    size++;
+    evictionPolicy.onInsert(handle, weight, getRebuildCost(metadataItem.getId()));
+    trim();
   }
 
   public void setMaxCapacity(int maxCapacity) {
@@ -76,4 +307,37 @@ public abstract class AbstractMetadataCache implements MetadataCache {
     this.maxCapacity = maxCapacity;
     init();
   }
+
+  /**
+   * Sets the policy that decides which items to evict, evicting every item
+   * currently cached.
+   * 
+   * @param evictionPolicy the policy to use (required)
+   */
+  protected void setEvictionPolicy(final EvictionPolicy evictionPolicy) {
+    Validate.notNull(evictionPolicy, "Eviction policy required");
+    this.evictionPolicy = evictionPolicy;
+    init();
+  }
+
+  /**
+   * Modifies the estimated number of bytes the cached items may retain,
+   * evicting items as necessary.
+   * 
+   * @param maxWeight the new maximum weight in bytes
+   */
+  public void setMaxWeight(final long maxWeight) {
+    this.maxWeight = Math.max(MIN_WEIGHT, maxWeight);
+    trim();
+  }
+
+  private void trim() {
+    while (size > maxCapacity || totalWeight > maxWeight) {
+      final int victim = evictionPolicy.selectVictim();
+      if (victim == HandleQueue.NONE) {
+        return;
+      }
+      evict(victim);
+    }
+  }
 }
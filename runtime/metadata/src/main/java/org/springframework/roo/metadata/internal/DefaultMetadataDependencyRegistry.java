@@ -1,19 +1,27 @@
 package org.springframework.roo.metadata.internal;
 
-import java.util.Collections;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.CopyOnWriteArraySet;
 
 import org.apache.commons.lang3.Validate;
+import org.apache.commons.lang3.builder.ToStringBuilder;
 import org.apache.felix.scr.annotations.Component;
 import org.apache.felix.scr.annotations.Reference;
 import org.apache.felix.scr.annotations.ReferencePolicy;
 import org.apache.felix.scr.annotations.Service;
 import org.springframework.roo.metadata.MetadataDependencyRegistry;
 import org.springframework.roo.metadata.MetadataIdentificationUtils;
+import org.springframework.roo.metadata.MetadataIdentifierTable;
 import org.springframework.roo.metadata.MetadataLogger;
 import org.springframework.roo.metadata.MetadataNotificationListener;
 import org.springframework.roo.metadata.MetadataService;
@@ -21,9 +29,21 @@ import org.springframework.roo.metadata.MetadataService;
 /**
  * Default implementation of {@link MetadataDependencyRegistry}.
  * <p>
- * This implementation is not thread safe. It should only be accessed by a
- * single thread at a time. This is enforced by the process manager semantics,
- * so we avoid the cost of re-synchronization here.
+ * The dependency maps are guarded by this instance's monitor, so that
+ * providers can register dependencies while metadata is being resolved
+ * concurrently. Notifications are delivered without holding the monitor.
+ * <p>
+ * The maps are keyed by {@link MetadataIdentifierTable} handle, and each
+ * registered dependency holds a reference to the handles of its two MIDs. The
+ * values are immutable {@link IdentifierSet}s, which are replaced when a
+ * dependency is added or removed, so {@link #getDownstream(String)} and
+ * {@link #getUpstream(String)} return them without copying.
+ * <p>
+ * While a notification batch is active, {@link #notifyDownstream(String)} only
+ * records which downstream dependencies are due a notification. Completing the
+ * batch sorts the affected part of the dependency graph topologically and
+ * notifies each downstream once by each of its changed upstreams, after all of
+ * those upstreams have been processed.
  * 
  * @author Ben Alex
  * @since 1.0
@@ -32,19 +52,33 @@ import org.springframework.roo.metadata.MetadataService;
 @Service
 public class DefaultMetadataDependencyRegistry implements MetadataDependencyRegistry {
 
-  /** key: downstream dependency; value: list<upstream dependencies> */
-  private final Map<String, Set<String>> downstreamKeyed = new HashMap<String, Set<String>>();
+  /** key: downstream dependency handle; value: upstream dependencies */
+  private final HandleMap<IdentifierSet> downstreamKeyed = new HandleMap<IdentifierSet>();
 
-  /** key: upstream dependency; value: list<downstream dependencies> */
-  private final Map<String, Set<String>> upstreamKeyed = new HashMap<String, Set<String>>();
+  /** key: upstream dependency handle; value: downstream dependencies */
+  private final HandleMap<IdentifierSet> upstreamKeyed = new HandleMap<IdentifierSet>();
 
   private final Set<MetadataNotificationListener> listeners =
-      new HashSet<MetadataNotificationListener>();
+      new CopyOnWriteArraySet<MetadataNotificationListener>();
 
   @Reference(policy = ReferencePolicy.DYNAMIC)
   protected volatile MetadataLogger metadataLogger;
   protected MetadataService metadataService;
 
+  // Notification batch control
+  private int batchDepth = 0;
+  private boolean dispatchingBatch = false;
+  /** key: downstream due a notification; value: upstreams that notified it */
+  private final Map<String, Set<String>> pendingNotifications =
+      new LinkedHashMap<String, Set<String>>();
+  /** upstreams due to be presented to the general-purpose listeners */
+  private final Set<String> pendingListenerNotifications = new LinkedHashSet<String>();
+  private int batches = 0;
+  private int batchedNotifications = 0;
+  /** repeated notifications collected by the batch being completed */
+  private int pendingRedundantNotifications = 0;
+  private int redundantNotificationsAvoided = 0;
+
   public void addNotificationListener(final MetadataNotificationListener listener) {
     Validate.notNull(listener, "Metadata notification listener required");
 
@@ -57,39 +91,34 @@ public class DefaultMetadataDependencyRegistry implements MetadataDependencyRegi
     listeners.add(listener);
   }
 
-  private void buildSetOfAllUpstreamDependencies(final Set<String> results,
-      final String downstreamDependency) {
-    final Set<String> upstreams = downstreamKeyed.get(downstreamDependency);
-    if (upstreams == null) {
-      return;
-    }
-
-    for (final String upstream : upstreams) {
-      results.add(upstream);
-      buildSetOfAllUpstreamDependencies(results, upstream);
+  private void buildSetOfAllUpstreamDependencies(final HandleSet results,
+      final int downstreamDependency) {
+    final IdentifierSet upstreams = getDependencies(downstreamKeyed, downstreamDependency);
+    for (int i = 0; i < upstreams.size(); i++) {
+      // Only walk each upstream once, however many paths lead to it
+      final int upstream = upstreams.getHandle(i);
+      if (results.add(upstream)) {
+        buildSetOfAllUpstreamDependencies(results, upstream);
+      }
     }
   }
 
-  public void deregisterDependencies(final String downstreamDependency) {
+  public synchronized void deregisterDependencies(final String downstreamDependency) {
     Validate.isTrue(MetadataIdentificationUtils.isValid(downstreamDependency),
         "Downstream dependency is an invalid metadata identification string ('%s')",
         downstreamDependency);
 
     // Acquire the keys to delete
-    final Set<String> upstream = downstreamKeyed.get(downstreamDependency);
-    if (upstream == null) {
-      return;
-    }
+    final int downstreamHandle = MetadataIdentifierTable.lookup(downstreamDependency);
+    final IdentifierSet upstream = getDependencies(downstreamKeyed, downstreamHandle);
 
-    final Set<String> upstreamToDelete = new HashSet<String>(upstream);
-
-    // Delete them normally
-    for (final String deleteUpstream : upstreamToDelete) {
-      deregisterDependency(deleteUpstream, downstreamDependency);
+    // Delete them normally (the set is not changed by doing so)
+    for (int i = 0; i < upstream.size(); i++) {
+      deregisterDependency(upstream.getHandle(i), downstreamHandle);
     }
   }
 
-  public void deregisterDependency(final String upstreamDependency,
+  public synchronized void deregisterDependency(final String upstreamDependency,
       final String downstreamDependency) {
     Validate.isTrue(MetadataIdentificationUtils.isValid(upstreamDependency),
         "Upstream dependency is an invalid metadata identification string ('%s')",
@@ -98,46 +127,51 @@ public class DefaultMetadataDependencyRegistry implements MetadataDependencyRegi
         "Downstream dependency is an invalid metadata identification string ('%s')",
         downstreamDependency);
 
-    // Maintain the upstream-keyed map, if it even exists
-    final Set<String> downstream = upstreamKeyed.get(upstreamDependency);
-    if (downstream != null) {
-      downstream.remove(downstreamDependency);
-    }
+    deregisterDependency(MetadataIdentifierTable.lookup(upstreamDependency),
+        MetadataIdentifierTable.lookup(downstreamDependency));
+  }
 
-    // Maintain the downstream-keyed map, if it even exists
-    final Set<String> upstream = downstreamKeyed.get(downstreamDependency);
-    if (upstream != null) {
-      upstream.remove(upstreamDependency);
+  private void deregisterDependency(final int upstreamDependency, final int downstreamDependency) {
+    final IdentifierSet downstream = getDependencies(upstreamKeyed, upstreamDependency);
+    if (!downstream.containsHandle(downstreamDependency)) {
+      return;
     }
+
+    // Maintain both maps
+    setDependencies(upstreamKeyed, upstreamDependency, downstream.without(downstreamDependency));
+    setDependencies(downstreamKeyed, downstreamDependency,
+        getDependencies(downstreamKeyed, downstreamDependency).without(upstreamDependency));
+
+    // The dependency no longer needs the handles
+    MetadataIdentifierTable.release(upstreamDependency);
+    MetadataIdentifierTable.release(downstreamDependency);
   }
 
-  public Set<String> getDownstream(final String upstreamDependency) {
+  /**
+   * Returns the dependencies with the given handle as their key
+   */
+  private IdentifierSet getDependencies(final HandleMap<IdentifierSet> map, final int handle) {
+    final IdentifierSet dependencies = map.get(handle);
+    return dependencies == null ? IdentifierSet.EMPTY : dependencies;
+  }
+
+  public synchronized Set<String> getDownstream(final String upstreamDependency) {
     Validate.isTrue(MetadataIdentificationUtils.isValid(upstreamDependency),
         "Upstream dependency is an invalid metadata identification string ('%s')",
         upstreamDependency);
 
-    final Set<String> downstream = upstreamKeyed.get(upstreamDependency);
-    if (downstream == null) {
-      return new HashSet<String>();
-    }
-
-    return Collections.unmodifiableSet(new CopyOnWriteArraySet<String>(downstream));
+    return getDependencies(upstreamKeyed, MetadataIdentifierTable.lookup(upstreamDependency));
   }
 
-  public Set<String> getUpstream(final String downstreamDependency) {
+  public synchronized Set<String> getUpstream(final String downstreamDependency) {
     Validate.isTrue(MetadataIdentificationUtils.isValid(downstreamDependency),
         "Downstream dependency is an invalid metadata identification string ('%s')",
         downstreamDependency);
 
-    final Set<String> upstream = downstreamKeyed.get(downstreamDependency);
-    if (upstream == null) {
-      return new HashSet<String>();
-    }
-
-    return Collections.unmodifiableSet(upstream);
+    return getDependencies(downstreamKeyed, MetadataIdentifierTable.lookup(downstreamDependency));
   }
 
-  public boolean isValidDependency(final String upstreamDependency,
+  public synchronized boolean isValidDependency(final String upstreamDependency,
       final String downstreamDependency) {
     Validate.isTrue(MetadataIdentificationUtils.isValid(upstreamDependency),
         "Upstream dependency is an invalid metadata identification string ('%s')",
@@ -149,30 +183,248 @@ public class DefaultMetadataDependencyRegistry implements MetadataDependencyRegi
         "Upstream dependency cannot be the same as the downstream dependency ('%s')",
         downstreamDependency);
 
+    final int upstreamHandle = MetadataIdentifierTable.lookup(upstreamDependency);
+    final int downstreamHandle = MetadataIdentifierTable.lookup(downstreamDependency);
+    if (upstreamHandle == MetadataIdentifierTable.NO_HANDLE
+        || downstreamHandle == MetadataIdentifierTable.NO_HANDLE) {
+      // One of them has never been registered, so they can't be related
+      return true;
+    }
+
     // The simplest possible outcome is the relationship already exists, so
     // quickly return in that case
-    Set<String> downstream = upstreamKeyed.get(upstreamDependency);
-    if (downstream != null && downstream.contains(downstreamDependency)) {
+    if (getDependencies(upstreamKeyed, upstreamHandle).containsHandle(downstreamHandle)) {
       return true;
     }
-    // Don't need the variable anymore, as we don't care about the other
-    // downstream dependencies
-    downstream = null;
 
     // Need to walk the upstream dependency's parent dependency graph,
     // verifying no presence of the proposed downstream dependency
 
     // Need to build a set representing every eventual upstream dependency
     // of the indicated upstream dependency
-    final Set<String> allUpstreams = new HashSet<String>();
-    buildSetOfAllUpstreamDependencies(allUpstreams, upstreamDependency);
+    final HandleSet allUpstreams = new HandleSet();
+    buildSetOfAllUpstreamDependencies(allUpstreams, upstreamHandle);
 
     // The dependency is valid if none of the upstreams depend on the
     // proposed downstream
-    return !allUpstreams.contains(downstreamDependency);
+    return !allUpstreams.contains(downstreamHandle);
+  }
+
+  /**
+   * Records a notification from the given upstream for delivery when the
+   * current batch completes. Must be called while holding this monitor.
+   */
+  private void collectNotification(final String upstreamDependency) {
+    batchedNotifications++;
+    if (metadataService != null) {
+      for (final String downstream : getNotifiedDownstream(upstreamDependency)) {
+        Set<String> upstreams = pendingNotifications.get(downstream);
+        if (upstreams == null) {
+          upstreams = new LinkedHashSet<String>();
+          pendingNotifications.put(downstream, upstreams);
+        }
+        if (!upstreams.add(upstreamDependency)) {
+          pendingRedundantNotifications++;
+        }
+      }
+    }
+    pendingListenerNotifications.add(upstreamDependency);
+  }
+
+  public int completeNotificationBatch() {
+    synchronized (this) {
+      Validate.isTrue(batchDepth > 0, "No notification batch has been started");
+      batchDepth--;
+      if (batchDepth > 0 || dispatchingBatch) {
+        return 0;
+      }
+      dispatchingBatch = true;
+      batches++;
+    }
+
+    int avoided = 0;
+    try {
+      metadataLogger.startEvent();
+      dispatchPendingNotifications();
+    } finally {
+      synchronized (this) {
+        dispatchingBatch = false;
+        pendingNotifications.clear();
+        pendingListenerNotifications.clear();
+        avoided = pendingRedundantNotifications;
+        pendingRedundantNotifications = 0;
+        redundantNotificationsAvoided += avoided;
+      }
+      metadataLogger.stopEvent();
+    }
+    return avoided;
+  }
+
+  /**
+   * Delivers one pending notification to the metadata service, once for each
+   * distinct upstream that notified the given downstream, as a provider may
+   * act on the upstream (for example to work out which instance a class-level
+   * downstream should rebuild).
+   */
+  private void deliverPendingNotification(final String downstream, final Set<String> upstreams) {
+    final MetadataService service = metadataService;
+    if (service == null) {
+      return;
+    }
+
+    for (final String upstream : upstreams) {
+      if (metadataLogger.getTraceLevel() > 0) {
+        metadataLogger.log(upstream + " -> " + downstream + " [batched]");
+      }
+      try {
+        metadataLogger.startTimer(MetadataIdentificationUtils.getMetadataClass(downstream));
+        service.notify(upstream, downstream);
+      } finally {
+        metadataLogger.stopTimer();
+      }
+    }
+  }
+
+  /**
+   * Delivers the notifications collected during a batch, including those
+   * raised while delivering them, until none remain.
+   */
+  private void dispatchPendingNotifications() {
+    while (true) {
+      final List<String> order;
+      synchronized (this) {
+        if (pendingNotifications.isEmpty() && pendingListenerNotifications.isEmpty()) {
+          return;
+        }
+        order = getTopologicalOrder(pendingNotifications.keySet());
+      }
+
+      // Downstreams notified again after their turn in this pass (because
+      // the order could not foresee an instance-level dependency) simply
+      // remain pending for the next pass
+      for (final String downstream : order) {
+        final Set<String> upstreams;
+        synchronized (this) {
+          upstreams = pendingNotifications.remove(downstream);
+        }
+        if (upstreams != null) {
+          deliverPendingNotification(downstream, upstreams);
+        }
+      }
+
+      final List<String> listenerUpstreams;
+      synchronized (this) {
+        listenerUpstreams = new ArrayList<String>(pendingListenerNotifications);
+        pendingListenerNotifications.clear();
+      }
+      for (final String upstream : listenerUpstreams) {
+        notifyListeners(upstream);
+      }
+    }
+  }
+
+  /**
+   * Returns the downstreams a notification from the given upstream is
+   * delivered to, i.e. its own downstreams followed by those of its metadata
+   * class (excluding the upstream itself).
+   */
+  private Set<String> getNotifiedDownstream(final String upstreamDependency) {
+    final Set<String> result = new LinkedHashSet<String>();
+    final int upstreamHandle = MetadataIdentifierTable.lookup(upstreamDependency);
+    if (upstreamHandle == MetadataIdentifierTable.NO_HANDLE) {
+      return result;
+    }
+    result.addAll(getDependencies(upstreamKeyed, upstreamHandle));
+    final int classHandle = MetadataIdentifierTable.lookupClassHandle(upstreamDependency);
+    if (classHandle != upstreamHandle && classHandle != MetadataIdentifierTable.NO_HANDLE) {
+      result.addAll(getDependencies(upstreamKeyed, classHandle));
+      result.remove(upstreamDependency);
+    }
+    return result;
+  }
+
+  /**
+   * Returns the given MIDs and everything downstream of them, ordered so that
+   * every MID appears after all of its upstreams. MIDs that are part of a
+   * cycle (only possible via class-level notifications) keep the order in
+   * which they were discovered. Must be called while holding this monitor.
+   */
+  private List<String> getTopologicalOrder(final Collection<String> roots) {
+    // Discover the affected subgraph
+    final Map<String, Set<String>> subgraph = new LinkedHashMap<String, Set<String>>();
+    final Deque<String> toVisit = new ArrayDeque<String>(roots);
+    while (!toVisit.isEmpty()) {
+      final String mid = toVisit.removeFirst();
+      if (!subgraph.containsKey(mid)) {
+        final Set<String> downstream = getNotifiedDownstream(mid);
+        subgraph.put(mid, downstream);
+        toVisit.addAll(downstream);
+      }
+    }
+
+    final Map<String, Integer> inDegrees = new HashMap<String, Integer>();
+    for (final String mid : subgraph.keySet()) {
+      inDegrees.put(mid, 0);
+    }
+    for (final Set<String> downstream : subgraph.values()) {
+      for (final String mid : downstream) {
+        inDegrees.put(mid, inDegrees.get(mid) + 1);
+      }
+    }
+
+    final Deque<String> ready = new ArrayDeque<String>();
+    for (final String mid : subgraph.keySet()) {
+      if (inDegrees.get(mid) == 0) {
+        ready.add(mid);
+      }
+    }
+    final List<String> order = new ArrayList<String>(subgraph.size());
+    while (!ready.isEmpty()) {
+      final String mid = ready.removeFirst();
+      order.add(mid);
+      for (final String downstream : subgraph.get(mid)) {
+        final int inDegree = inDegrees.get(downstream) - 1;
+        inDegrees.put(downstream, inDegree);
+        if (inDegree == 0) {
+          ready.add(downstream);
+        }
+      }
+    }
+
+    if (order.size() < subgraph.size()) {
+      for (final String mid : subgraph.keySet()) {
+        if (inDegrees.get(mid) > 0) {
+          order.add(mid);
+        }
+      }
+    }
+    return order;
+  }
+
+  private void notifyListeners(final String upstreamDependency) {
+    for (final MetadataNotificationListener listener : listeners) {
+      if (metadataLogger.getTraceLevel() > 1) {
+        metadataLogger.log(upstreamDependency + " -> " + upstreamDependency + " ["
+            + listener.getClass().getSimpleName() + "]");
+      }
+      try {
+        final String responsibleClass = listener.getClass().getName();
+        metadataLogger.startTimer(responsibleClass);
+        listener.notify(upstreamDependency, null);
+      } finally {
+        metadataLogger.stopTimer();
+      }
+    }
   }
 
   public void notifyDownstream(final String upstreamDependency) {
+    synchronized (this) {
+      if (batchDepth > 0 || dispatchingBatch) {
+        collectNotification(upstreamDependency);
+        return;
+      }
+    }
+
     try {
       metadataLogger.startEvent();
 
@@ -238,44 +490,33 @@ public class DefaultMetadataDependencyRegistry implements MetadataDependencyRegi
       }
 
       // Finally dispatch the general-purpose additional listeners
-      for (final MetadataNotificationListener listener : listeners) {
-        if (metadataLogger.getTraceLevel() > 1) {
-          metadataLogger.log(upstreamDependency + " -> " + upstreamDependency + " ["
-              + listener.getClass().getSimpleName() + "]");
-        }
-        try {
-          final String responsibleClass = listener.getClass().getName();
-          metadataLogger.startTimer(responsibleClass);
-          listener.notify(upstreamDependency, null);
-        } finally {
-          metadataLogger.stopTimer();
-        }
-      }
+      notifyListeners(upstreamDependency);
     } finally {
       metadataLogger.stopEvent();
     }
   }
 
-  public void registerDependency(final String upstreamDependency, final String downstreamDependency) {
+  public synchronized void registerDependency(final String upstreamDependency,
+      final String downstreamDependency) {
     Validate.isTrue(isValidDependency(upstreamDependency, downstreamDependency),
         "Invalid dependency between upstream '%s' and downstream '%s'", upstreamDependency,
         downstreamDependency);
 
-    // Maintain the upstream-keyed map
-    Set<String> downstream = upstreamKeyed.get(upstreamDependency);
-    if (downstream == null) {
-      downstream = new HashSet<String>();
-      upstreamKeyed.put(upstreamDependency, downstream);
-    }
-    downstream.add(downstreamDependency);
+    final int upstreamHandle = MetadataIdentifierTable.intern(upstreamDependency);
+    final int downstreamHandle = MetadataIdentifierTable.intern(downstreamDependency);
 
-    // Maintain the downstream-keyed map
-    Set<String> upstream = downstreamKeyed.get(downstreamDependency);
-    if (upstream == null) {
-      upstream = new HashSet<String>();
-      downstreamKeyed.put(downstreamDependency, upstream);
+    final IdentifierSet downstream = getDependencies(upstreamKeyed, upstreamHandle);
+    if (downstream.containsHandle(downstreamHandle)) {
+      // Already registered, and already holding the handles
+      MetadataIdentifierTable.release(upstreamHandle);
+      MetadataIdentifierTable.release(downstreamHandle);
+      return;
     }
-    upstream.add(upstreamDependency);
+
+    // Maintain both maps
+    upstreamKeyed.put(upstreamHandle, downstream.with(downstreamHandle));
+    downstreamKeyed.put(downstreamHandle,
+        getDependencies(downstreamKeyed, downstreamHandle).with(upstreamHandle));
   }
 
   public void removeNotificationListener(final MetadataNotificationListener listener) {
@@ -288,4 +529,29 @@ public class DefaultMetadataDependencyRegistry implements MetadataDependencyRegi
 
     listeners.remove(listener);
   }
+
+  /**
+   * Replaces the dependencies with the given handle as their key
+   */
+  private void setDependencies(final HandleMap<IdentifierSet> map, final int handle,
+      final IdentifierSet dependencies) {
+    if (dependencies.isEmpty()) {
+      map.remove(handle);
+    } else {
+      map.put(handle, dependencies);
+    }
+  }
+
+  public synchronized void startNotificationBatch() {
+    batchDepth++;
+  }
+
+  @Override
+  public final synchronized String toString() {
+    final ToStringBuilder builder = new ToStringBuilder(this);
+    builder.append("batches", batches);
+    builder.append("batchedNotifications", batchedNotifications);
+    builder.append("redundantNotificationsAvoided", redundantNotificationsAvoided);
+    return builder.toString().replaceFirst("@[0-9a-f]+", ":");
+  }
 }
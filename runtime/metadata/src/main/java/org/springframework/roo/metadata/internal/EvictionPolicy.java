@@ -0,0 +1,57 @@
+package org.springframework.roo.metadata.internal;
+
+import org.springframework.roo.metadata.MetadataIdentifierTable;
+
+/**
+ * Decides which items {@link AbstractMetadataCache} evicts when it exceeds its
+ * entry or weight budget.
+ * <p>
+ * Items are identified by their {@link MetadataIdentifierTable} handle. The
+ * cache reports every lookup, insertion and removal, and asks for a victim
+ * whenever it is over budget. Implementations need not be thread safe, as the
+ * cache is only ever used under its owner's lock.
+ * 
+ * @since 2.0
+ */
+public interface EvictionPolicy {
+
+  /**
+   * Forgets every item.
+   */
+  void clear();
+
+  /**
+   * Records that the given item has been inserted into the cache.
+   * 
+   * @param handle the item's handle
+   * @param weight the estimated retained size of the item, in bytes (one or
+   *            more)
+   * @param cost the estimated time to rebuild the item, in nanoseconds (zero
+   *            or more)
+   */
+  void onInsert(int handle, long weight, long cost);
+
+  /**
+   * Records a lookup of the given handle.
+   * 
+   * @param handle the handle looked up
+   * @param cached whether the item was found in the cache
+   */
+  void onLookup(int handle, boolean cached);
+
+  /**
+   * Records that the given item has left the cache.
+   * 
+   * @param handle the item's handle
+   */
+  void onRemove(int handle);
+
+  /**
+   * Returns the item to evict next. The policy should not forget the item
+   * yet, as the cache calls {@link #onRemove(int)} when evicting it.
+   * 
+   * @return the handle of an inserted item, or {@link HandleQueue#NONE} if
+   *         there are none
+   */
+  int selectVictim();
+}
@@ -0,0 +1,86 @@
+package org.springframework.roo.metadata.internal;
+
+/**
+ * Approximate, ageing count of how often each {@link HandleQueue handle} has
+ * been accessed, for use by {@link TinyLfuEvictionPolicy}.
+ * <p>
+ * This is a count-min sketch of 4-bit counters, sixteen to a
+ * <code>long</code>. Once the number of increments reaches ten times the
+ * number of handles it was sized for, every counter is halved, so that old
+ * popularity fades.
+ * This class is not thread safe.
+ * 
+ * @since 2.0
+ */
+class FrequencySketch {
+
+  private static final int DEPTH = 4;
+  // Growing loses the counts, so start big enough for a typical project
+  private static final int INITIAL_CAPACITY = 1024;
+  private static final long RESET_MASK = 0x7777777777777777L;
+  private static final int[] SEEDS = {0x97cb3127, 0xb3c2fe51, 0x8f1bbcdc, 0xe6546b64};
+
+  private int additions;
+  private int sampleSize;
+  private long[] table;
+
+  FrequencySketch() {
+    ensureCapacity(INITIAL_CAPACITY);
+  }
+
+  /**
+   * Grows the sketch to accurately count about the given number of distinct
+   * handles. Growing discards the counts gathered so far.
+   */
+  void ensureCapacity(final int expectedHandles) {
+    final int length = Integer.highestOneBit(Math.max(16, expectedHandles - 1) << 1) / 4;
+    if (table == null || length > table.length) {
+      table = new long[length];
+      sampleSize = length * 4 * 10;
+      additions = 0;
+    }
+  }
+
+  int frequency(final int handle) {
+    int frequency = Integer.MAX_VALUE;
+    for (int depth = 0; depth < DEPTH; depth++) {
+      final int hash = hash(handle, depth);
+      final long count = table[index(hash)] >>> offset(hash) & 0xfL;
+      frequency = Math.min(frequency, (int) count);
+    }
+    return frequency;
+  }
+
+  void increment(final int handle) {
+    boolean added = false;
+    for (int depth = 0; depth < DEPTH; depth++) {
+      final int hash = hash(handle, depth);
+      final int index = index(hash);
+      final int offset = offset(hash);
+      if ((table[index] >>> offset & 0xfL) != 0xfL) {
+        table[index] += 1L << offset;
+        added = true;
+      }
+    }
+    if (added && ++additions == sampleSize) {
+      for (int i = 0; i < table.length; i++) {
+        table[i] = table[i] >>> 1 & RESET_MASK;
+      }
+      additions /= 2;
+    }
+  }
+
+  private int hash(final int handle, final int depth) {
+    int hash = (handle + 1) * SEEDS[depth];
+    hash ^= hash >>> 16;
+    return hash;
+  }
+
+  private int index(final int hash) {
+    return (hash >>> 4) & (table.length - 1);
+  }
+
+  private int offset(final int hash) {
+    return (hash & 0xf) << 2;
+  }
+}
@@ -0,0 +1,93 @@
+package org.springframework.roo.metadata.internal;
+
+import java.util.Arrays;
+
+import org.springframework.roo.metadata.MetadataIdentifierTable;
+
+/**
+ * A map keyed by {@link MetadataIdentifierTable} handles.
+ * <p>
+ * As handles are allocated densely, values are stored in an array indexed by
+ * handle, so lookups neither box the key nor hash anything. The array grows to
+ * the highest handle put into the map.
+ * <p>
+ * This class is not thread safe.
+ * 
+ * @param <V> the type of value
+ * @since 2.0
+ */
+public class HandleMap<V> {
+
+  private Object[] values = new Object[16];
+  private int size = 0;
+
+  public void clear() {
+    Arrays.fill(values, null);
+    size = 0;
+  }
+
+  public boolean containsKey(final int handle) {
+    return get(handle) != null;
+  }
+
+  @SuppressWarnings("unchecked")
+  public V get(final int handle) {
+    if (handle < 0 || handle >= values.length) {
+      return null;
+    }
+    return (V) values[handle];
+  }
+
+  /**
+   * @return the handles present in this map, in ascending order
+   */
+  public int[] handles() {
+    final int[] result = new int[size];
+    int index = 0;
+    for (int handle = 0; handle < values.length && index < size; handle++) {
+      if (values[handle] != null) {
+        result[index++] = handle;
+      }
+    }
+    return result;
+  }
+
+  public boolean isEmpty() {
+    return size == 0;
+  }
+
+  /**
+   * Associates the given value with the given handle.
+   * 
+   * @param handle the key (zero or greater)
+   * @param value the value (required; use {@link #remove(int)} to clear)
+   * @return the previous value, if any
+   */
+  public V put(final int handle, final V value) {
+    if (value == null) {
+      throw new IllegalArgumentException("Value required");
+    }
+    if (handle >= values.length) {
+      values = Arrays.copyOf(values, Math.max(handle + 1, values.length * 2));
+    }
+    final V previous = get(handle);
+    values[handle] = value;
+    if (previous == null) {
+      size++;
+    }
+    return previous;
+  }
+
+  public V remove(final int handle) {
+    final V previous = get(handle);
+    if (previous != null) {
+      values[handle] = null;
+      size--;
+    }
+    return previous;
+  }
+
+  public int size() {
+    return size;
+  }
+}
@@ -0,0 +1,120 @@
+package org.springframework.roo.metadata.internal;
+
+import java.util.Arrays;
+
+import org.springframework.roo.metadata.MetadataIdentifierTable;
+
+/**
+ * An ordered queue of {@link MetadataIdentifierTable} handles, oldest first,
+ * in which any handle can be removed or moved to the back in constant time.
+ * <p>
+ * The links are held in arrays indexed by handle, so no per-entry objects are
+ * allocated. This class is not thread safe.
+ * 
+ * @since 2.0
+ */
+public class HandleQueue {
+
+  public static final int NONE = -1;
+
+  private boolean[] members = new boolean[16];
+  // key: handle, value: next newer/older handle in the queue
+  private int[] newer = new int[16];
+  private int[] older = new int[16];
+  private int newest = NONE;
+  private int oldest = NONE;
+  private int size = 0;
+
+  /**
+   * Adds the given handle as the newest, moving it there if already present.
+   * 
+   * @param handle the handle to add (zero or greater)
+   */
+  public void addNewest(final int handle) {
+    if (handle >= members.length) {
+      final int capacity = Math.max(handle + 1, members.length * 2);
+      members = Arrays.copyOf(members, capacity);
+      newer = Arrays.copyOf(newer, capacity);
+      older = Arrays.copyOf(older, capacity);
+    }
+    if (members[handle]) {
+      if (handle == newest) {
+        return;
+      }
+      unlink(handle);
+    } else {
+      members[handle] = true;
+      size++;
+    }
+    older[handle] = newest;
+    newer[handle] = NONE;
+    if (newest != NONE) {
+      newer[newest] = handle;
+    }
+    newest = handle;
+    if (oldest == NONE) {
+      oldest = handle;
+    }
+  }
+
+  public void clear() {
+    Arrays.fill(members, false);
+    newest = NONE;
+    oldest = NONE;
+    size = 0;
+  }
+
+  public boolean contains(final int handle) {
+    return handle >= 0 && handle < members.length && members[handle];
+  }
+
+  /**
+   * @return the newest handle, or {@link #NONE} if the queue is empty
+   */
+  public int getNewest() {
+    return newest;
+  }
+
+  /**
+   * @return the oldest handle, or {@link #NONE} if the queue is empty
+   */
+  public int getOldest() {
+    return oldest;
+  }
+
+  public boolean isEmpty() {
+    return size == 0;
+  }
+
+  /**
+   * @return <code>true</code> if the handle was present
+   */
+  public boolean remove(final int handle) {
+    if (!contains(handle)) {
+      return false;
+    }
+    unlink(handle);
+    members[handle] = false;
+    size--;
+    return true;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  private void unlink(final int handle) {
+    final int newerHandle = newer[handle];
+    final int olderHandle = older[handle];
+    if (newerHandle == NONE) {
+      newest = olderHandle;
+    } else {
+      older[newerHandle] = olderHandle;
+    }
+    if (olderHandle == NONE) {
+      oldest = newerHandle;
+    } else {
+      newer[olderHandle] = newerHandle;
+    }
+  }
+}
@@ -0,0 +1,74 @@
+package org.springframework.roo.metadata.internal;
+
+import java.util.Arrays;
+
+import org.springframework.roo.metadata.MetadataIdentifierTable;
+
+/**
+ * A set of {@link MetadataIdentifierTable} handles, stored as a sorted
+ * <code>int</code> array.
+ * <p>
+ * Dependency sets are typically small, so a sorted array is both more compact
+ * and faster to search than a hashed set of boxed integers.
+ * <p>
+ * This class is not thread safe.
+ * 
+ * @since 2.0
+ */
+public class HandleSet {
+
+  private static final int[] EMPTY = new int[0];
+
+  private int[] handles = EMPTY;
+  private int size = 0;
+
+  /**
+   * @return <code>true</code> if the handle was not already present
+   */
+  public boolean add(final int handle) {
+    final int index = Arrays.binarySearch(handles, 0, size, handle);
+    if (index >= 0) {
+      return false;
+    }
+    final int insertAt = -index - 1;
+    if (size == handles.length) {
+      handles = Arrays.copyOf(handles, Math.max(4, size * 2));
+    }
+    System.arraycopy(handles, insertAt, handles, insertAt + 1, size - insertAt);
+    handles[insertAt] = handle;
+    size++;
+    return true;
+  }
+
+  public boolean contains(final int handle) {
+    return Arrays.binarySearch(handles, 0, size, handle) >= 0;
+  }
+
+  public boolean isEmpty() {
+    return size == 0;
+  }
+
+  /**
+   * @return <code>true</code> if the handle was present
+   */
+  public boolean remove(final int handle) {
+    final int index = Arrays.binarySearch(handles, 0, size, handle);
+    if (index < 0) {
+      return false;
+    }
+    System.arraycopy(handles, index + 1, handles, index, size - index - 1);
+    size--;
+    return true;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  /**
+   * @return a copy of the handles in this set, in ascending order
+   */
+  public int[] toArray() {
+    return Arrays.copyOf(handles, size);
+  }
+}
@@ -0,0 +1,129 @@
+package org.springframework.roo.metadata.internal;
+
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import org.springframework.roo.metadata.MetadataIdentifierTable;
+
+/**
+ * An immutable set of MIDs, stored as a sorted array of their
+ * {@link MetadataIdentifierTable} handles alongside the MIDs themselves.
+ * <p>
+ * Adding or removing a MID returns a new set, so a set can be handed out as
+ * it is, without copying it or resolving its handles back to MIDs. The set
+ * does not hold references to its handles; whoever creates it must, for as
+ * long as it is current.
+ *
+ * @since 2.0
+ */
+public final class IdentifierSet extends AbstractSet<String> {
+
+  public static final IdentifierSet EMPTY = new IdentifierSet(new int[0], new String[0]);
+
+  private final int[] handles;
+  private final String[] identifiers;
+
+  private IdentifierSet(final int[] handles, final String[] identifiers) {
+    this.handles = handles;
+    this.identifiers = identifiers;
+  }
+
+  @Override
+  public boolean contains(final Object o) {
+    if (!(o instanceof String)) {
+      return false;
+    }
+    final int index = Arrays.binarySearch(handles, MetadataIdentifierTable.lookup((String) o));
+    return index >= 0 && identifiers[index].equals(o);
+  }
+
+  public boolean containsHandle(final int handle) {
+    return Arrays.binarySearch(handles, handle) >= 0;
+  }
+
+  /**
+   * Returns the handle at the given position in this set
+   *
+   * @param index from zero to one less than {@link #size()}
+   * @return the handle
+   */
+  public int getHandle(final int index) {
+    return handles[index];
+  }
+
+  @Override
+  public Iterator<String> iterator() {
+    return new Iterator<String>() {
+      private int index = 0;
+
+      public boolean hasNext() {
+        return index < identifiers.length;
+      }
+
+      public String next() {
+        if (!hasNext()) {
+          throw new NoSuchElementException();
+        }
+        return identifiers[index++];
+      }
+
+      public void remove() {
+        throw new UnsupportedOperationException();
+      }
+    };
+  }
+
+  @Override
+  public int size() {
+    return handles.length;
+  }
+
+  /**
+   * Returns this set plus the MID with the given handle
+   *
+   * @param handle a current handle
+   * @return this set if it already contains the handle, otherwise a new set
+   */
+  public IdentifierSet with(final int handle) {
+    final int index = Arrays.binarySearch(handles, handle);
+    if (index >= 0) {
+      return this;
+    }
+    final int insertAt = -index - 1;
+    final int[] newHandles = new int[handles.length + 1];
+    final String[] newIdentifiers = new String[handles.length + 1];
+    System.arraycopy(handles, 0, newHandles, 0, insertAt);
+    System.arraycopy(identifiers, 0, newIdentifiers, 0, insertAt);
+    newHandles[insertAt] = handle;
+    newIdentifiers[insertAt] = MetadataIdentifierTable.getIdentifier(handle);
+    System.arraycopy(handles, insertAt, newHandles, insertAt + 1, handles.length - insertAt);
+    System.arraycopy(identifiers, insertAt, newIdentifiers, insertAt + 1, handles.length
+        - insertAt);
+    return new IdentifierSet(newHandles, newIdentifiers);
+  }
+
+  /**
+   * Returns this set minus the MID with the given handle
+   *
+   * @param handle the handle to remove
+   * @return this set if it does not contain the handle, otherwise a new set
+   */
+  public IdentifierSet without(final int handle) {
+    final int index = Arrays.binarySearch(handles, handle);
+    if (index < 0) {
+      return this;
+    }
+    if (handles.length == 1) {
+      return EMPTY;
+    }
+    final int[] newHandles = new int[handles.length - 1];
+    final String[] newIdentifiers = new String[handles.length - 1];
+    System.arraycopy(handles, 0, newHandles, 0, index);
+    System.arraycopy(identifiers, 0, newIdentifiers, 0, index);
+    System.arraycopy(handles, index + 1, newHandles, index, handles.length - index - 1);
+    System.arraycopy(identifiers, index + 1, newIdentifiers, index, handles.length - index - 1);
+    return new IdentifierSet(newHandles, newIdentifiers);
+  }
+}
@@ -0,0 +1,34 @@
+package org.springframework.roo.metadata.internal;
+
+/**
+ * {@link EvictionPolicy} that evicts the least recently used item, ignoring
+ * weights and costs.
+ * 
+ * @since 2.0
+ */
+public class LruEvictionPolicy implements EvictionPolicy {
+
+  private final HandleQueue queue = new HandleQueue();
+
+  public void clear() {
+    queue.clear();
+  }
+
+  public void onInsert(final int handle, final long weight, final long cost) {
+    queue.addNewest(handle);
+  }
+
+  public void onLookup(final int handle, final boolean cached) {
+    if (cached) {
+      queue.addNewest(handle);
+    }
+  }
+
+  public void onRemove(final int handle) {
+    queue.remove(handle);
+  }
+
+  public int selectVictim() {
+    return queue.getOldest();
+  }
+}
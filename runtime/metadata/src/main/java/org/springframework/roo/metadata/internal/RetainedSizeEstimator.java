@@ -0,0 +1,149 @@
+package org.springframework.roo.metadata.internal;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.springframework.roo.metadata.MetadataItem;
+
+/**
+ * Estimates the number of bytes retained by a metadata item by walking its
+ * object graph reflectively.
+ * <p>
+ * The estimate assumes a 64-bit JVM with compressed references. It does not
+ * descend into other {@link MetadataItem}s (which are cached in their own
+ * right), classes, class loaders or enum constants, and it stops after
+ * visiting {@value #MAXIMUM_OBJECTS} objects, so very large graphs are
+ * underestimated rather than walked in full. Objects shared with other items
+ * are counted in each of them.
+ * 
+ * @since 2.0
+ */
+final class RetainedSizeEstimator {
+
+  private static class Layout {
+    final long shallowSize;
+    final Field[] references;
+
+    Layout(final long shallowSize, final Field[] references) {
+      this.shallowSize = shallowSize;
+      this.references = references;
+    }
+  }
+
+  private static final int ARRAY_HEADER = 16;
+  private static final Map<Class<?>, Layout> LAYOUTS = new ConcurrentHashMap<Class<?>, Layout>();
+  static final int MAXIMUM_OBJECTS = 10000;
+  private static final int OBJECT_HEADER = 12;
+  private static final int REFERENCE = 4;
+
+  /**
+   * Returns the estimated retained size of the given item.
+   * 
+   * @param item the item to measure (required)
+   * @return the size in bytes (one or more)
+   */
+  static long estimate(final MetadataItem item) {
+    final Set<Object> visited = Collections.newSetFromMap(new IdentityHashMap<Object, Boolean>());
+    final Deque<Object> toVisit = new ArrayDeque<Object>();
+    toVisit.push(item);
+    long size = 0;
+    while (!toVisit.isEmpty() && visited.size() < MAXIMUM_OBJECTS) {
+      final Object object = toVisit.pop();
+      if (!visited.add(object)) {
+        continue;
+      }
+      final Class<?> type = object.getClass();
+      if (type.isArray()) {
+        final int length = Array.getLength(object);
+        final Class<?> componentType = type.getComponentType();
+        size += align(ARRAY_HEADER + (long) length * getSize(componentType));
+        if (!componentType.isPrimitive()) {
+          for (int i = 0; i < length; i++) {
+            push(toVisit, Array.get(object, i));
+          }
+        }
+        continue;
+      }
+      final Layout layout = getLayout(type);
+      size += layout.shallowSize;
+      for (final Field field : layout.references) {
+        try {
+          push(toVisit, field.get(object));
+        } catch (final IllegalAccessException ignored) {
+          // Leave this reference out of the estimate
+        }
+      }
+    }
+    return Math.max(1, size);
+  }
+
+  private static long align(final long size) {
+    return size + 7 & ~7L;
+  }
+
+  private static Layout getLayout(final Class<?> type) {
+    Layout layout = LAYOUTS.get(type);
+    if (layout == null) {
+      long size = OBJECT_HEADER;
+      final List<Field> references = new ArrayList<Field>();
+      for (Class<?> c = type; c != null; c = c.getSuperclass()) {
+        for (final Field field : c.getDeclaredFields()) {
+          if (Modifier.isStatic(field.getModifiers())) {
+            continue;
+          }
+          size += getSize(field.getType());
+          if (!field.getType().isPrimitive()) {
+            try {
+              field.setAccessible(true);
+              references.add(field);
+            } catch (final SecurityException ignored) {
+              // Count the reference but not what it refers to
+            }
+          }
+        }
+      }
+      layout = new Layout(align(size), references.toArray(new Field[references.size()]));
+      LAYOUTS.put(type, layout);
+    }
+    return layout;
+  }
+
+  private static int getSize(final Class<?> type) {
+    if (type == long.class || type == double.class) {
+      return 8;
+    }
+    if (type == int.class || type == float.class) {
+      return 4;
+    }
+    if (type == short.class || type == char.class) {
+      return 2;
+    }
+    if (type == byte.class || type == boolean.class) {
+      return 1;
+    }
+    return REFERENCE;
+  }
+
+  private static void push(final Deque<Object> toVisit, final Object object) {
+    if (object == null || object instanceof MetadataItem || object instanceof Class
+        || object instanceof ClassLoader || object instanceof Enum) {
+      return;
+    }
+    toVisit.push(object);
+  }
+
+  /**
+   * Constructor is private to prevent instantiation
+   */
+  private RetainedSizeEstimator() {}
+}
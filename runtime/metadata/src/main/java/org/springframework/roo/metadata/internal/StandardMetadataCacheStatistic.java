@@ -0,0 +1,100 @@
+package org.springframework.roo.metadata.internal;
+
+import org.apache.commons.lang3.Validate;
+import org.springframework.roo.metadata.MetadataCacheStatistic;
+
+/**
+ * Standard implementation of {@link MetadataCacheStatistic}.
+ * 
+ * @since 2.0
+ */
+public class StandardMetadataCacheStatistic implements MetadataCacheStatistic {
+
+  private static final long BYTES_IN_KILOBYTE = 1024L;
+
+  private final long hits;
+  private final int items;
+  private final long misses;
+  private final String name;
+  private final long weight;
+
+  /**
+   * Constructor
+   * 
+   * @param name (required)
+   * @param hits (zero or more)
+   * @param misses (zero or more)
+   * @param items (zero or more)
+   * @param weight in bytes (zero or more)
+   */
+  public StandardMetadataCacheStatistic(final String name, final long hits, final long misses,
+      final int items, final long weight) {
+    Validate.notBlank(name, "Name required");
+    Validate.isTrue(hits >= 0, "Hits must be zero or more");
+    Validate.isTrue(misses >= 0, "Misses must be zero or more");
+    Validate.isTrue(items >= 0, "Items must be zero or more");
+    Validate.isTrue(weight >= 0, "Weight must be zero or more");
+    this.hits = hits;
+    this.items = items;
+    this.misses = misses;
+    this.name = name;
+    this.weight = weight;
+  }
+
+  public int compareTo(final MetadataCacheStatistic o) {
+    int result = Long.valueOf(weight).compareTo(o.getWeight());
+    if (result == 0) {
+      result = Long.valueOf(hits + misses).compareTo(o.getHits() + o.getMisses());
+    }
+    if (result == 0) {
+      result = name.compareTo(o.getName());
+    }
+    return result;
+  }
+
+  @Override
+  public boolean equals(final Object obj) {
+    return obj instanceof MetadataCacheStatistic && compareTo((MetadataCacheStatistic) obj) == 0;
+  }
+
+  public long getHits() {
+    return hits;
+  }
+
+  public double getHitRatio() {
+    return hits + misses == 0 ? 0 : (double) hits / (hits + misses);
+  }
+
+  public int getItems() {
+    return items;
+  }
+
+  public long getMisses() {
+    return misses;
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public long getWeight() {
+    return weight;
+  }
+
+  @Override
+  public int hashCode() {
+    return Long.valueOf(weight).hashCode() * Long.valueOf(hits + misses).hashCode()
+        * name.hashCode();
+  }
+
+  @Override
+  public String toString() {
+    final StringBuilder sb = new StringBuilder();
+    sb.append(String.format("%5.1f", getHitRatio() * 100)).append("% hits; ");
+    sb.append(String.format("%7d", hits + misses)).append(" lookup(s); ");
+    sb.append(String.format("%6d", items)).append(" item(s); ");
+    sb.append(String.format("%7d", weight / BYTES_IN_KILOBYTE)).append(" KB: ");
+    sb.append(name);
+    return sb.toString();
+  }
+}
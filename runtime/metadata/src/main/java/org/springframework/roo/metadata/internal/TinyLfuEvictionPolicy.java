@@ -0,0 +1,106 @@
+package org.springframework.roo.metadata.internal;
+
+import java.util.Arrays;
+
+/**
+ * {@link EvictionPolicy} modelled on W-TinyLFU, weighted by the cost of each
+ * item.
+ * <p>
+ * New items enter a small LRU window, which lets bursts of new items settle.
+ * Items leaving the window join the probation segment of the main area; an
+ * item used again while on probation is promoted to the protected segment,
+ * which holds most of the main area. When the cache is over budget, the item
+ * most recently put on probation competes with the oldest one, and whichever
+ * has the lower value is evicted. An item's value is its access frequency, as
+ * estimated by a {@link FrequencySketch}, multiplied by its rebuild cost per
+ * byte retained, so a large item that is cheap to rebuild is evicted before a
+ * small one that is expensive to rebuild. One-off lookups, such as those made
+ * while scanning the whole project, therefore cannot flush out frequently
+ * used items.
+ * 
+ * @since 2.0
+ */
+public class TinyLfuEvictionPolicy implements EvictionPolicy {
+
+  private static final int PROTECTED_PERCENT = 80;
+  private static final int WINDOW_PERCENT = 1;
+
+  // key: handle, value: rebuild cost in nanoseconds per byte retained
+  private double[] density = new double[16];
+  private final HandleQueue probation = new HandleQueue();
+  private final HandleQueue protectedSegment = new HandleQueue();
+  private final FrequencySketch sketch = new FrequencySketch();
+  private final HandleQueue window = new HandleQueue();
+
+  public void clear() {
+    window.clear();
+    probation.clear();
+    protectedSegment.clear();
+  }
+
+  public void onInsert(final int handle, final long weight, final long cost) {
+    if (handle >= density.length) {
+      density = Arrays.copyOf(density, Math.max(handle + 1, density.length * 2));
+    }
+    // Add one so that items of unknown cost are still ranked by weight
+    density[handle] = (cost + 1d) / Math.max(1, weight);
+    probation.remove(handle);
+    protectedSegment.remove(handle);
+    window.addNewest(handle);
+
+    final int size = size();
+    sketch.ensureCapacity(size);
+    final int windowMaximum = Math.max(1, size * WINDOW_PERCENT / 100);
+    while (window.size() > windowMaximum) {
+      final int oldest = window.getOldest();
+      window.remove(oldest);
+      probation.addNewest(oldest);
+    }
+  }
+
+  public void onLookup(final int handle, final boolean cached) {
+    sketch.increment(handle);
+    if (!cached) {
+      return;
+    }
+    if (window.contains(handle)) {
+      window.addNewest(handle);
+    } else if (probation.remove(handle)) {
+      protectedSegment.addNewest(handle);
+      final int protectedMaximum = (size() - window.size()) * PROTECTED_PERCENT / 100;
+      while (protectedSegment.size() > protectedMaximum) {
+        final int oldest = protectedSegment.getOldest();
+        protectedSegment.remove(oldest);
+        probation.addNewest(oldest);
+      }
+    } else if (protectedSegment.contains(handle)) {
+      protectedSegment.addNewest(handle);
+    }
+  }
+
+  public void onRemove(final int handle) {
+    if (!window.remove(handle) && !probation.remove(handle)) {
+      protectedSegment.remove(handle);
+    }
+  }
+
+  public int selectVictim() {
+    if (probation.isEmpty()) {
+      return protectedSegment.isEmpty() ? window.getOldest() : protectedSegment.getOldest();
+    }
+    final int victim = probation.getOldest();
+    final int candidate = probation.getNewest();
+    if (candidate == victim) {
+      return victim;
+    }
+    return getValue(candidate) > getValue(victim) ? victim : candidate;
+  }
+
+  private double getValue(final int handle) {
+    return sketch.frequency(handle) * density[handle];
+  }
+
+  private int size() {
+    return window.size() + probation.size() + protectedSegment.size();
+  }
+}
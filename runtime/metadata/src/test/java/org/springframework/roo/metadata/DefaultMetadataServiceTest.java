@@ -1,18 +1,335 @@
 package org.springframework.roo.metadata;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
 
+import java.lang.reflect.Field;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.After;
+import org.junit.Before;
 import org.junit.Test;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.ServiceReference;
+import org.osgi.service.component.ComponentContext;
 
 public class DefaultMetadataServiceTest {
 
+  /**
+   * Builds each item by calling the {@link Callable} registered for its MID,
+   * recording the threads it was built on.
+   */
+  private static class StubMetadataProvider implements MetadataProvider {
+
+    private final ConcurrentMap<String, Callable<MetadataItem>> builders =
+        new ConcurrentHashMap<String, Callable<MetadataItem>>();
+    private final ConcurrentMap<String, AtomicInteger> invocations =
+        new ConcurrentHashMap<String, AtomicInteger>();
+    private final List<Thread> threads = new CopyOnWriteArrayList<Thread>();
+
+    public MetadataItem get(final String metadataIdentificationString) {
+      threads.add(Thread.currentThread());
+      invocations.putIfAbsent(metadataIdentificationString, new AtomicInteger());
+      invocations.get(metadataIdentificationString).incrementAndGet();
+      final Callable<MetadataItem> builder = builders.get(metadataIdentificationString);
+      try {
+        return builder == null ? new StubMetadataItem(metadataIdentificationString) : builder
+            .call();
+      } catch (final Exception e) {
+        throw new IllegalStateException(e);
+      }
+    }
+
+    int getInvocations(final String metadataIdentificationString) {
+      final AtomicInteger count = invocations.get(metadataIdentificationString);
+      return count == null ? 0 : count.get();
+    }
+
+    public String getProvidesType() {
+      return PROVIDES_TYPE;
+    }
+  }
+
+  private static class StubMetadataItem extends AbstractMetadataItem {
+
+    StubMetadataItem(final String id) {
+      super(id);
+    }
+  }
+
+  /**
+   * Lets a test wait until a thread is about to block on another thread's
+   * request, which the service logs when tracing.
+   */
+  private static class TracingMetadataLogger implements MetadataLogger {
+
+    private final ConcurrentMap<String, CountDownLatch> awaited =
+        new ConcurrentHashMap<String, CountDownLatch>();
+
+    CountDownLatch awaiting(final String metadataIdentificationString) {
+      awaited.putIfAbsent(metadataIdentificationString, new CountDownLatch(1));
+      return awaited.get(metadataIdentificationString);
+    }
+
+    public SortedSet<MetadataTimingStatistic> getTimings() {
+      return new TreeSet<MetadataTimingStatistic>();
+    }
+
+    public int getTraceLevel() {
+      return 1;
+    }
+
+    public void log(final String message) {
+      if (message.startsWith(AWAITING)) {
+        awaiting(message.substring(AWAITING.length())).countDown();
+      }
+    }
+
+    public void setTraceLevel(final int trace) {}
+
+    public void startEvent() {}
+
+    public void startTimer(final String responsibleClass) {}
+
+    public void stopEvent() {}
+
+    public void stopTimer() {}
+  }
+
+  private static final String AWAITING = "Awaiting ";
+  private static final String PROVIDES_TYPE = "MID:com.example.Stub";
+  private static final String MID_A = PROVIDES_TYPE + "#A";
+  private static final String MID_B = PROVIDES_TYPE + "#B";
+  private static final String MID_C = PROVIDES_TYPE + "#C";
+  private static final long TIMEOUT_SECONDS = 10;
   private static final String TO_STRING_FOR_NEW_INSTANCE =
       "org.springframework.roo.metadata.DefaultMetadataService:" + "[validGets=0,"
           + "recursiveGets=0," + "cachePuts=0," + "cacheHits=0," + "cacheMisses=0,"
-          + "cacheEvictions=0," + "cacheCurrentSize=0," + "cacheMaximumSize=100000]";
+          + "cacheEvictions=0," + "cacheCurrentSize=0," + "cacheMaximumSize=100000,"
+          + "cacheCurrentWeight=0," + "cacheMaximumWeight=";
+
+  private ComponentContext mockComponentContext;
+  private TracingMetadataLogger metadataLogger;
+  private StubMetadataProvider provider;
+  private DefaultMetadataService service;
+
+  private static Thread start(final Runnable runnable) {
+    final Thread thread = new Thread(runnable);
+    thread.start();
+    return thread;
+  }
+
+  private static void await(final CountDownLatch latch) throws InterruptedException {
+    assertTrue("Timed out", latch.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+  }
+
+  private static void join(final Thread thread) throws InterruptedException {
+    thread.join(TimeUnit.SECONDS.toMillis(TIMEOUT_SECONDS));
+    assertFalse("Deadlocked", thread.isAlive());
+  }
+
+  @SuppressWarnings("unchecked")
+  @Before
+  public void setUp() throws Exception {
+    System.setProperty(DefaultMetadataService.CONCURRENT_PROPERTY, "true");
+    service = new DefaultMetadataService();
+    metadataLogger = new TracingMetadataLogger();
+    final Field metadataLoggerField =
+        DefaultMetadataService.class.getDeclaredField("metadataLogger");
+    metadataLoggerField.setAccessible(true);
+    metadataLoggerField.set(service, metadataLogger);
+    provider = new StubMetadataProvider();
+    service.bindMetadataProvider(provider);
+
+    final BundleContext mockBundleContext = mock(BundleContext.class);
+    final ServiceReference<Object> mockReference = mock(ServiceReference.class);
+    when(
+        mockBundleContext.getAllServiceReferences(MetadataDependencyRegistry.class.getName(),
+            null)).thenReturn(new ServiceReference<?>[] {mockReference});
+    when(mockBundleContext.getService(mockReference)).thenReturn(
+        mock(MetadataDependencyRegistry.class));
+    mockComponentContext = mock(ComponentContext.class);
+    when(mockComponentContext.getBundleContext()).thenReturn(mockBundleContext);
+    service.activate(mockComponentContext);
+  }
+
+  @After
+  public void tearDown() {
+    service.deactivate(mockComponentContext);
+    System.clearProperty(DefaultMetadataService.CONCURRENT_PROPERTY);
+  }
 
   @Test
   public void testToStringOfNewInstance() {
-    assertEquals(TO_STRING_FOR_NEW_INSTANCE, new DefaultMetadataService().toString());
+    System.clearProperty(DefaultMetadataService.CONCURRENT_PROPERTY);
+    final DefaultMetadataService newService = new DefaultMetadataService();
+    // The default maximum weight depends on the heap size
+    assertEquals(TO_STRING_FOR_NEW_INSTANCE + newService.getMaxWeight() + "]",
+        newService.toString());
+  }
+
+  @Test
+  public void testIsConcurrentOnlyWithTheSystemProperty() {
+    // Set up
+    System.clearProperty(DefaultMetadataService.CONCURRENT_PROPERTY);
+
+    // Invoke
+    final DefaultMetadataService serialService = new DefaultMetadataService();
+
+    // Check
+    assertTrue(service.isConcurrent());
+    assertFalse(serialService.isConcurrent());
+  }
+
+  @Test
+  public void testGetAllResolvesOnThePoolInTheGivenOrder() {
+    // Invoke
+    final Map<String, MetadataItem> items =
+        service.getAll(Arrays.asList(MID_C, MID_A, MID_B, MID_A));
+
+    // Check
+    assertEquals(Arrays.asList(MID_C, MID_A, MID_B), Arrays.asList(items.keySet().toArray()));
+    for (final Map.Entry<String, MetadataItem> item : items.entrySet()) {
+      assertEquals(item.getKey(), item.getValue().getId());
+      assertEquals(1, provider.getInvocations(item.getKey()));
+    }
+    assertFalse(provider.threads.contains(Thread.currentThread()));
+  }
+
+  @Test
+  public void testEvictAndGetAllRebuildsCachedItems() {
+    // Set up
+    final MetadataItem cached = service.get(MID_A);
+
+    // Invoke
+    final Map<String, MetadataItem> items = service.evictAndGetAll(Collections.singleton(MID_A));
+
+    // Check
+    assertNotSame(cached, items.get(MID_A));
+    assertSame(items.get(MID_A), service.get(MID_A));
+    assertEquals(2, provider.getInvocations(MID_A));
+  }
+
+  @Test
+  public void testEvictAllRebuildsEvictedItems() {
+    // Set up
+    final MetadataItem cachedA = service.get(MID_A);
+    final MetadataItem cachedB = service.get(MID_B);
+
+    // Invoke
+    service.evictAll();
+
+    // Check
+    assertEquals(2, provider.getInvocations(MID_A));
+    assertEquals(2, provider.getInvocations(MID_B));
+    assertNotSame(cachedA, service.get(MID_A));
+    assertNotSame(cachedB, service.get(MID_B));
+    assertEquals(2, provider.getInvocations(MID_A));
+  }
+
+  @Test
+  public void testConcurrentRequestsForTheSameItemBuildItOnce() throws Exception {
+    // Set up
+    final CountDownLatch building = new CountDownLatch(1);
+    final CountDownLatch release = new CountDownLatch(1);
+    provider.builders.put(MID_A, new Callable<MetadataItem>() {
+      public MetadataItem call() throws Exception {
+        building.countDown();
+        await(release);
+        return new StubMetadataItem(MID_A);
+      }
+    });
+    final AtomicReference<MetadataItem> first = new AtomicReference<MetadataItem>();
+    final AtomicReference<MetadataItem> second = new AtomicReference<MetadataItem>();
+
+    // Invoke
+    final Thread builder = start(new Runnable() {
+      public void run() {
+        first.set(service.get(MID_A));
+      }
+    });
+    await(building);
+    final Thread waiter = start(new Runnable() {
+      public void run() {
+        second.set(service.get(MID_A));
+      }
+    });
+    await(metadataLogger.awaiting(MID_A));
+    release.countDown();
+    join(builder);
+    join(waiter);
+
+    // Check
+    assertEquals(1, provider.getInvocations(MID_A));
+    assertEquals(MID_A, first.get().getId());
+    assertSame(first.get(), second.get());
+  }
+
+  @Test
+  public void testCrossThreadWaitCycleIsBlockedAsRecursive() throws Exception {
+    // Set up: A needs B and B needs A, with each built on its own thread
+    final CountDownLatch buildingA = new CountDownLatch(1);
+    final CountDownLatch buildingB = new CountDownLatch(1);
+    final AtomicReference<MetadataItem> bSeenByA = new AtomicReference<MetadataItem>();
+    final AtomicReference<MetadataItem> aSeenByB = new AtomicReference<MetadataItem>();
+    provider.builders.put(MID_A, new Callable<MetadataItem>() {
+      public MetadataItem call() throws Exception {
+        if (provider.getInvocations(MID_A) == 1) {
+          buildingA.countDown();
+          await(buildingB);
+          bSeenByA.set(service.get(MID_B));
+        }
+        return new StubMetadataItem(MID_A);
+      }
+    });
+    provider.builders.put(MID_B, new Callable<MetadataItem>() {
+      public MetadataItem call() throws Exception {
+        buildingB.countDown();
+        // Only ask for A once its builder is waiting for this thread
+        await(metadataLogger.awaiting(MID_B));
+        aSeenByB.set(service.get(MID_A));
+        return new StubMetadataItem(MID_B);
+      }
+    });
+
+    // Invoke
+    final Thread threadA = start(new Runnable() {
+      public void run() {
+        service.get(MID_A);
+      }
+    });
+    await(buildingA);
+    final Thread threadB = start(new Runnable() {
+      public void run() {
+        service.get(MID_B);
+      }
+    });
+    join(threadA);
+    join(threadB);
+
+    // Check
+    assertNull(aSeenByB.get());
+    assertEquals(MID_B, bSeenByA.get().getId());
+    assertEquals(1, provider.getInvocations(MID_B));
+    assertTrue(service.toString().contains("recursiveGets=1"));
   }
 }
@@ -0,0 +1,147 @@
+package org.springframework.roo.metadata;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+/**
+ * Unit test of {@link MetadataIdentifierTable}
+ */
+public class MetadataIdentifierTableTest {
+
+  private static final String METADATA_CLASS = "com.example.TableTestMetadata";
+
+  @Test
+  public void testInternIsStable() {
+    final String mid = MetadataIdentificationUtils.create(METADATA_CLASS, "stable");
+    final int handle = MetadataIdentifierTable.intern(mid);
+    assertTrue(handle >= 0);
+    assertEquals(handle, MetadataIdentifierTable.intern(new String(mid)));
+    assertEquals(handle, MetadataIdentifierTable.lookup(mid));
+    assertEquals(mid, MetadataIdentifierTable.getIdentifier(handle));
+  }
+
+  @Test
+  public void testClassHandle() {
+    final String mid = MetadataIdentificationUtils.create(METADATA_CLASS, "instance");
+    final int handle = MetadataIdentifierTable.intern(mid);
+    final int classHandle = MetadataIdentifierTable.getClassHandle(handle);
+    assertEquals(MetadataIdentificationUtils.create(METADATA_CLASS),
+        MetadataIdentifierTable.getIdentifier(classHandle));
+    assertEquals(classHandle, MetadataIdentifierTable.getClassHandle(classHandle));
+  }
+
+  @Test
+  public void testLookupDoesNotIntern() {
+    final String mid = MetadataIdentificationUtils.create(METADATA_CLASS, "never interned");
+    final int size = MetadataIdentifierTable.getSize();
+    assertEquals(MetadataIdentifierTable.NO_HANDLE, MetadataIdentifierTable.lookup(mid));
+    assertEquals(size, MetadataIdentifierTable.getSize());
+  }
+
+  @Test
+  public void testReleasedHandleIsReclaimed() {
+    // Set up
+    final String mid = MetadataIdentificationUtils.create(METADATA_CLASS, "released");
+    final int handle = MetadataIdentifierTable.intern(mid);
+    assertEquals(handle, MetadataIdentifierTable.intern(mid));
+
+    // Invoke
+    MetadataIdentifierTable.release(handle);
+    final int stillHeld = MetadataIdentifierTable.lookup(mid);
+    MetadataIdentifierTable.release(handle);
+
+    // Check
+    assertEquals(handle, stillHeld);
+    assertEquals(MetadataIdentifierTable.NO_HANDLE, MetadataIdentifierTable.lookup(mid));
+    final String other = MetadataIdentificationUtils.create(METADATA_CLASS, "reuses handle");
+    assertEquals(handle, MetadataIdentifierTable.intern(other));
+    assertEquals(other, MetadataIdentifierTable.getIdentifier(handle));
+  }
+
+  @Test
+  public void testClassHandleIsNeverReclaimed() {
+    // Set up
+    final String classMid = MetadataIdentificationUtils.create(METADATA_CLASS);
+    final int instanceHandle =
+        MetadataIdentifierTable.intern(MetadataIdentificationUtils.create(METADATA_CLASS,
+            "only instance"));
+    final int classHandle = MetadataIdentifierTable.getClassHandle(instanceHandle);
+
+    // Invoke
+    MetadataIdentifierTable.release(instanceHandle);
+    MetadataIdentifierTable.release(classHandle);
+
+    // Check
+    assertEquals(classHandle, MetadataIdentifierTable.lookup(classMid));
+    assertEquals(classHandle, MetadataIdentifierTable.lookupClassHandle(classMid));
+  }
+
+  @Test
+  public void testConcurrentInternsOfTheSameIdentifiersAgree() throws Exception {
+    // Set up
+    final int threads = 4;
+    final int count = 2000;
+    final ExecutorService executor = Executors.newFixedThreadPool(threads);
+    final List<Callable<int[]>> tasks = new ArrayList<Callable<int[]>>();
+    for (int t = 0; t < threads; t++) {
+      tasks.add(new Callable<int[]>() {
+        public int[] call() {
+          final int[] handles = new int[count];
+          for (int i = 0; i < count; i++) {
+            handles[i] =
+                MetadataIdentifierTable.intern(MetadataIdentificationUtils.create(
+                    METADATA_CLASS, "concurrent" + i));
+          }
+          return handles;
+        }
+      });
+    }
+
+    // Invoke
+    final List<int[]> results = new ArrayList<int[]>();
+    try {
+      for (final Future<int[]> future : executor.invokeAll(tasks)) {
+        results.add(future.get());
+      }
+    } finally {
+      executor.shutdown();
+    }
+
+    // Check
+    for (int i = 0; i < count; i++) {
+      final String mid = MetadataIdentificationUtils.create(METADATA_CLASS, "concurrent" + i);
+      for (final int[] handles : results) {
+        assertEquals(handles[i], results.get(0)[i]);
+      }
+      assertEquals(mid, MetadataIdentifierTable.getIdentifier(results.get(0)[i]));
+      for (int t = 0; t < threads; t++) {
+        MetadataIdentifierTable.release(results.get(0)[i]);
+      }
+      assertEquals(MetadataIdentifierTable.NO_HANDLE, MetadataIdentifierTable.lookup(mid));
+    }
+  }
+
+  @Test
+  public void testManyIdentifiers() {
+    final int count = 5000;
+    final int[] handles = new int[count];
+    for (int i = 0; i < count; i++) {
+      handles[i] =
+          MetadataIdentifierTable.intern(MetadataIdentificationUtils.create(METADATA_CLASS,
+              "type" + i));
+    }
+    for (int i = 0; i < count; i++) {
+      assertEquals(handles[i], MetadataIdentifierTable.lookup(MetadataIdentificationUtils
+          .create(METADATA_CLASS, "type" + i)));
+    }
+  }
+}
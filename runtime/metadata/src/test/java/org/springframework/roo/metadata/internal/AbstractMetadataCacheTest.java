@@ -0,0 +1,98 @@
+package org.springframework.roo.metadata.internal;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.roo.metadata.AbstractMetadataItem;
+import org.springframework.roo.metadata.MetadataItem;
+
+/**
+ * Unit test of {@link AbstractMetadataCache}
+ *
+ * @since 2.0
+ */
+public class AbstractMetadataCacheTest {
+
+  /**
+   * Weighs each item by its type, recording the items it was asked to weigh.
+   */
+  private static class StubMetadataCache extends AbstractMetadataCache {
+
+    private final List<String> weighed = new ArrayList<String>();
+
+    @Override
+    protected long getWeight(final MetadataItem metadataItem) {
+      weighed.add(metadataItem.getId());
+      return metadataItem.getId().startsWith(LARGE_TYPE) ? LARGE_WEIGHT : SMALL_WEIGHT;
+    }
+  }
+
+  private static class StubMetadataItem extends AbstractMetadataItem {
+
+    StubMetadataItem(final String id) {
+      super(id);
+    }
+  }
+
+  private static final String LARGE_TYPE = "MID:com.example.Large";
+  private static final long LARGE_WEIGHT = 3000;
+  private static final String SMALL_TYPE = "MID:com.example.Small";
+  private static final long SMALL_WEIGHT = 100;
+
+  // Fixture
+  private StubMetadataCache cache;
+
+  @Before
+  public void setUp() {
+    cache = new StubMetadataCache();
+  }
+
+  private void put(final String type, final int count) {
+    for (int i = 0; i < count; i++) {
+      cache.put(new StubMetadataItem(type + "#" + i));
+    }
+  }
+
+  @Test
+  public void testOnlyASampleOfItemsIsWeighed() {
+    // Invoke
+    put(SMALL_TYPE, AbstractMetadataCache.MIN_SAMPLES + AbstractMetadataCache.SAMPLE_INTERVAL);
+
+    // Check: the first items, then one in each interval
+    assertEquals(AbstractMetadataCache.MIN_SAMPLES + 1, cache.weighed.size());
+    assertEquals(SMALL_TYPE + "#" + AbstractMetadataCache.SAMPLE_INTERVAL,
+        cache.weighed.get(AbstractMetadataCache.MIN_SAMPLES));
+  }
+
+  @Test
+  public void testEachItemIsChargedItsTypesAverageWeight() {
+    // Set up
+    final int smallItems = 200;
+    final int largeItems = 20;
+
+    // Invoke
+    put(SMALL_TYPE, smallItems);
+    put(LARGE_TYPE, largeItems);
+
+    // Check
+    assertEquals(smallItems + largeItems, cache.getCacheSize());
+    assertEquals(smallItems * SMALL_WEIGHT + largeItems * LARGE_WEIGHT, cache.getCacheWeight());
+  }
+
+  @Test
+  public void testReplacingAnItemReplacesItsWeight() {
+    // Set up
+    put(SMALL_TYPE, 3);
+
+    // Invoke
+    put(SMALL_TYPE, 1);
+
+    // Check
+    assertEquals(3, cache.getCacheSize());
+    assertEquals(3 * SMALL_WEIGHT, cache.getCacheWeight());
+  }
+}
@@ -1,9 +1,25 @@
 package org.springframework.roo.metadata.internal;
 
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
 import junit.framework.Assert;
 
 import org.junit.Test;
+import org.mockito.InOrder;
 import org.springframework.roo.metadata.MetadataIdentificationUtils;
+import org.springframework.roo.metadata.MetadataIdentifierTable;
+import org.springframework.roo.metadata.MetadataLogger;
+import org.springframework.roo.metadata.MetadataService;
 
 public class DefaultMetadataDependencyRegistryTest {
 
@@ -53,4 +69,69 @@ public class DefaultMetadataDependencyRegistryTest {
     Assert.assertEquals(0, reg.getDownstream(JAVA_TYPE_PERSON).size());
     Assert.assertEquals(2, reg.getDownstream(MVC_CONTROLLER).size());
   }
+
+  @Test
+  public void testDependenciesAreReturnedWithoutCopying() {
+    final DefaultMetadataDependencyRegistry reg = new DefaultMetadataDependencyRegistry();
+    reg.registerDependency(JAVA_TYPE_OBJECT, JSP_PAGE_1);
+    reg.registerDependency(JAVA_TYPE_OBJECT, JSP_PAGE_2);
+
+    final Set<String> downstream = reg.getDownstream(JAVA_TYPE_OBJECT);
+    Assert.assertSame(downstream, reg.getDownstream(JAVA_TYPE_OBJECT));
+    Assert.assertTrue(downstream.contains(JSP_PAGE_1));
+    Assert.assertTrue(downstream.contains(new String(JSP_PAGE_2)));
+    Assert.assertFalse(downstream.contains(MVC_CONTROLLER));
+
+    // Later changes don't show through a set already returned
+    reg.deregisterDependency(JAVA_TYPE_OBJECT, JSP_PAGE_1);
+    Assert.assertEquals(new HashSet<String>(Arrays.asList(JSP_PAGE_1, JSP_PAGE_2)), downstream);
+    Assert.assertEquals(Collections.singleton(JSP_PAGE_2), reg.getDownstream(JAVA_TYPE_OBJECT));
+  }
+
+  @Test
+  public void testDeregisteringReleasesHandles() {
+    final DefaultMetadataDependencyRegistry reg = new DefaultMetadataDependencyRegistry();
+    final String upstream = MetadataIdentificationUtils.create("com.Test", "released upstream");
+    final String downstream =
+        MetadataIdentificationUtils.create("com.Test", "released downstream");
+    reg.registerDependency(upstream, downstream);
+    reg.registerDependency(upstream, downstream);
+    Assert.assertTrue(MetadataIdentifierTable.lookup(upstream) >= 0);
+
+    reg.deregisterDependencies(downstream);
+
+    Assert.assertEquals(MetadataIdentifierTable.NO_HANDLE, MetadataIdentifierTable.lookup(upstream));
+    Assert.assertEquals(MetadataIdentifierTable.NO_HANDLE,
+        MetadataIdentifierTable.lookup(downstream));
+    Assert.assertTrue(reg.getDownstream(upstream).isEmpty());
+  }
+
+  @Test
+  public void testBatchNotifiesEachDownstreamOncePerUpstreamInDependencyOrder() {
+    final DefaultMetadataDependencyRegistry reg = new DefaultMetadataDependencyRegistry();
+    reg.metadataLogger = mock(MetadataLogger.class);
+    final MetadataService metadataService = mock(MetadataService.class);
+    reg.addNotificationListener(metadataService);
+
+    reg.registerDependency(JAVA_TYPE_OBJECT, MVC_CONTROLLER);
+    reg.registerDependency(JAVA_TYPE_PERSON, MVC_CONTROLLER);
+    reg.registerDependency(MVC_CONTROLLER, JSP_PAGE_1);
+    reg.registerDependency(JAVA_TYPE_PERSON, JSP_PAGE_1);
+
+    reg.startNotificationBatch();
+    reg.notifyDownstream(JAVA_TYPE_OBJECT);
+    reg.notifyDownstream(JAVA_TYPE_PERSON);
+    reg.notifyDownstream(JAVA_TYPE_PERSON);
+    verify(metadataService, never()).notify(anyString(), anyString());
+
+    // The controller is notified by each of its upstreams, the JSP page
+    // after the controller, even though it also depends on the person
+    // directly; the person's repeated notifications are dropped
+    Assert.assertEquals(2, reg.completeNotificationBatch());
+    final InOrder inOrder = inOrder(metadataService);
+    inOrder.verify(metadataService).notify(JAVA_TYPE_OBJECT, MVC_CONTROLLER);
+    inOrder.verify(metadataService).notify(JAVA_TYPE_PERSON, MVC_CONTROLLER);
+    inOrder.verify(metadataService).notify(JAVA_TYPE_PERSON, JSP_PAGE_1);
+    verify(metadataService, times(3)).notify(anyString(), anyString());
+  }
 }
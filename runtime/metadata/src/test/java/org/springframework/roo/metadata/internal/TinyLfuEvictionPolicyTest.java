@@ -0,0 +1,66 @@
+package org.springframework.roo.metadata.internal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Test;
+
+/**
+ * Unit test of {@link TinyLfuEvictionPolicy}
+ */
+public class TinyLfuEvictionPolicyTest {
+
+  private static final int CAPACITY = 100;
+
+  private final TinyLfuEvictionPolicy policy = new TinyLfuEvictionPolicy();
+  private final Set<Integer> cached = new HashSet<Integer>();
+
+  private void get(final int handle, final long weight, final long cost) {
+    final boolean hit = cached.contains(handle);
+    policy.onLookup(handle, hit);
+    if (!hit) {
+      cached.add(handle);
+      policy.onInsert(handle, weight, cost);
+      while (cached.size() > CAPACITY) {
+        final int victim = policy.selectVictim();
+        policy.onRemove(victim);
+        assertTrue(cached.remove(victim));
+      }
+    }
+  }
+
+  @Test
+  public void testFrequentItemsSurviveScan() {
+    for (int round = 0; round < 5; round++) {
+      for (int handle = 0; handle < CAPACITY / 2; handle++) {
+        get(handle, 100, 1000);
+      }
+    }
+    // Touch each of many other items once
+    for (int handle = CAPACITY; handle < CAPACITY * 10; handle++) {
+      get(handle, 100, 1000);
+    }
+    for (int handle = 0; handle < CAPACITY / 2; handle++) {
+      assertTrue("Frequent item " + handle + " was evicted", cached.contains(handle));
+    }
+  }
+
+  @Test
+  public void testCheapLargeItemIsEvictedBeforeExpensiveSmallItem() {
+    // Whichever arrives first, the large item that is cheap to rebuild loses
+    get(1, 100, 1000000);
+    get(2, 100000, 10);
+    get(3, 100, 10);
+    assertEquals(2, policy.selectVictim());
+
+    policy.clear();
+    cached.clear();
+    get(2, 100000, 10);
+    get(1, 100, 1000000);
+    get(3, 100, 10);
+    assertEquals(2, policy.selectVictim());
+  }
+}
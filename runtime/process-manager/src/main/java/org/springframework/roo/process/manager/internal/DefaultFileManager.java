@@ -6,14 +6,24 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.SortedSet;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 import java.util.logging.Logger;
 
-import org.apache.commons.io.FileUtils;
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.codec.digest.DigestUtils;
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.Validate;
@@ -41,6 +51,17 @@ import org.springframework.roo.support.logging.HandlerUtils;
 
 /**
  * Default implementation of {@link FileManager}.
+ * <p>
+ * Text files are written in batches: each file is compared with what is on
+ * disk, the changed ones are registered with the {@link UndoManager} in turn,
+ * and their contents are then written in parallel, after which the
+ * {@link NotifiableFileMonitorService} is told of all the updates at once. To
+ * save reading a file just to find that it has not changed, the digest of
+ * each file's contents is remembered as it is read or written, for as long as
+ * the file's length and modification time stay the same. A digest taken
+ * within the file system's time resolution of the file's modification time
+ * is not trusted, as the file could since have been changed again without
+ * its modification time changing.
  * 
  * @author Ben Alex
  * @since 1.0
@@ -49,8 +70,102 @@ import org.springframework.roo.support.logging.HandlerUtils;
 @Service
 public class DefaultFileManager implements FileManager, UndoListener {
 
+  /**
+   * The digest of a file's contents, along with the length and time of the
+   * file it was taken from, and when it was taken.
+   */
+  private static class ContentDigest {
+    final byte[] digest;
+    final long lastModified;
+    final long length;
+    final long taken;
+
+    ContentDigest(final byte[] digest, final long length, final long lastModified,
+        final long taken) {
+      this.digest = digest;
+      this.length = length;
+      this.lastModified = lastModified;
+      this.taken = taken;
+    }
+
+    /**
+     * Indicates whether this digest is still that of a file with the given
+     * length and modification time.
+     * 
+     * @param length the file's current length
+     * @param lastModified the file's current modification time
+     * @return <code>false</code> if the file may have changed since
+     */
+    boolean isCurrent(final long length, final long lastModified) {
+      return this.length == length && this.lastModified == lastModified
+          && taken - lastModified >= FILE_TIME_RESOLUTION;
+    }
+  }
+
+  /**
+   * The new contents of a text file, ready to be written.
+   */
+  private static class PendingWrite implements Runnable {
+    final byte[] contents;
+    final boolean created;
+    final byte[] digest;
+    final File file;
+    final String fileIdentifier;
+    // Set by run()
+    String canonicalPath;
+    IOException failure;
+    long started;
+
+    PendingWrite(final String fileIdentifier, final byte[] contents, final byte[] digest,
+        final boolean created) {
+      this.fileIdentifier = fileIdentifier;
+      this.file = new File(fileIdentifier);
+      this.contents = contents;
+      this.digest = digest;
+      this.created = created;
+    }
+
+    public void run() {
+      started = System.currentTimeMillis();
+      try {
+        final FileChannel channel =
+            FileChannel.open(file.toPath(), StandardOpenOption.WRITE, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        try {
+          final ByteBuffer buffer = ByteBuffer.wrap(contents);
+          while (buffer.hasRemaining()) {
+            channel.write(buffer);
+          }
+        } finally {
+          channel.close();
+        }
+        canonicalPath = file.getCanonicalPath();
+      } catch (final IOException e) {
+        failure = e;
+      }
+    }
+  }
+
   protected final static Logger LOGGER = HandlerUtils.getLogger(DefaultFileManager.class);
 
+  // The coarsest modification time resolution of the supported file systems
+  // (FAT's), in milliseconds
+  private static final long FILE_TIME_RESOLUTION = 2000;
+
+  // The number of files whose content digests are remembered
+  private static final int MAX_DIGESTS = 10000;
+
+  /** key: file identifier, value: digest of the contents last read or written */
+  private final Map<String, ContentDigest> contentDigests =
+      new LinkedHashMap<String, ContentDigest>(16, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(final Map.Entry<String, ContentDigest> eldest) {
+          return size() > MAX_DIGESTS;
+        }
+      };
+
   /** key: file identifier, value: new description of change */
   private final Map<String, String> deferredDescriptionOfChanges =
       new LinkedHashMap<String, String>();
@@ -60,10 +175,12 @@ public class DefaultFileManager implements FileManager, UndoListener {
   // ------------ OSGi component attributes ----------------
   private BundleContext context;
 
-  private NotifiableFileMonitorService fileMonitorService;
-  private FilenameResolver filenameResolver;
-  private ProcessManager processManager;
-  private UndoManager undoManager;
+  NotifiableFileMonitorService fileMonitorService;
+  FilenameResolver filenameResolver;
+  // Writes files in parallel; null while the component is inactive
+  private ForkJoinPool pool;
+  ProcessManager processManager;
+  UndoManager undoManager;
 
   protected void activate(final ComponentContext context) {
     this.context = context.getBundleContext();
@@ -71,25 +188,52 @@ public class DefaultFileManager implements FileManager, UndoListener {
       undoManager = getUndoManager();
     }
     undoManager.addUndoListener(this);
+    pool = new ForkJoinPool();
   }
 
   public void clear() {
     deferredFileWrites.clear();
     deferredDescriptionOfChanges.clear();
+    // The files may be about to be restored from their backups
+    contentDigests.clear();
   }
 
   public void commit() {
     final Map<String, String> toRemove = new LinkedHashMap<String, String>(deferredFileWrites);
+    final List<PendingWrite> writes = new ArrayList<PendingWrite>();
     try {
-      for (final Entry<String, String> entry : toRemove.entrySet()) {
-        final String fileIdentifier = entry.getKey();
-        final String newContents = entry.getValue();
-        if (StringUtils.isNotBlank(newContents)) {
-          createOrUpdateTextFileIfRequired(fileIdentifier, newContents,
-              StringUtils.stripToEmpty(deferredDescriptionOfChanges.get(fileIdentifier)));
-        } else if (exists(fileIdentifier)) {
-          delete(fileIdentifier, "empty");
+      RuntimeException failure = null;
+      try {
+        for (final Entry<String, String> entry : toRemove.entrySet()) {
+          final String fileIdentifier = entry.getKey();
+          final String newContents = entry.getValue();
+          if (StringUtils.isNotBlank(newContents)) {
+            final PendingWrite write =
+                prepareWrite(fileIdentifier, newContents,
+                    StringUtils.stripToEmpty(deferredDescriptionOfChanges.get(fileIdentifier)));
+            if (write != null) {
+              writes.add(write);
+            }
+          } else if (exists(fileIdentifier)) {
+            delete(fileIdentifier, "empty");
+          }
         }
+      } catch (final RuntimeException e) {
+        failure = e;
+      }
+
+      // Even if a later file could not be prepared, write the earlier ones,
+      // but report the first failure
+      try {
+        writeAll(writes);
+      } catch (final RuntimeException e) {
+        if (failure == null) {
+          throw e;
+        }
+        failure.addSuppressed(e);
+      }
+      if (failure != null) {
+        throw failure;
       }
     } finally {
       for (final String remove : toRemove.keySet()) {
@@ -124,6 +268,20 @@ public class DefaultFileManager implements FileManager, UndoListener {
   }
 
   public MutableFile createFile(final String fileIdentifier) {
+    final ManagedMessageRenderer renderer = registerCreate(fileIdentifier);
+    // The caller may write to the file without our knowledge
+    contentDigests.remove(fileIdentifier);
+    return new DefaultMutableFile(new File(fileIdentifier), null, renderer);
+  }
+
+  /**
+   * Creates the given file (empty), recording its creation with the
+   * {@link UndoManager}.
+   * 
+   * @param fileIdentifier the file to create (required)
+   * @return a renderer for the message describing the creation
+   */
+  private ManagedMessageRenderer registerCreate(final String fileIdentifier) {
     if (fileMonitorService == null) {
       fileMonitorService = getFileMonitorService();
     }
@@ -155,7 +313,7 @@ public class DefaultFileManager implements FileManager, UndoListener {
     final ManagedMessageRenderer renderer =
         new ManagedMessageRenderer(filenameResolver, actual, true);
     renderer.setIncludeHashCode(processManager.isDevelopmentMode());
-    return new DefaultMutableFile(actual, null, renderer);
+    return renderer;
   }
 
   public void createOrUpdateTextFileIfRequired(final String fileIdentifier,
@@ -163,47 +321,13 @@ public class DefaultFileManager implements FileManager, UndoListener {
     createOrUpdateTextFileIfRequired(fileIdentifier, newContents, "", writeImmediately);
   }
 
-  private void createOrUpdateTextFileIfRequired(final String fileIdentifier,
-      final String newContents, final String descriptionOfChange) {
-    MutableFile mutableFile = null;
-    if (exists(fileIdentifier)) {
-      // First verify if the file has even changed
-      final File file = new File(fileIdentifier);
-      String existing = null;
-      try {
-        existing = FileUtils.readFileToString(file);
-      } catch (final IOException ignored) {
-      }
-
-      if (!newContents.equals(existing)) {
-        mutableFile = updateFile(fileIdentifier);
-      }
-    } else {
-      mutableFile = createFile(fileIdentifier);
-      Validate.notNull(mutableFile, "Could not create file '%s'", fileIdentifier);
-    }
-
-    if (mutableFile != null) {
-      OutputStream outputStream = null;
-      try {
-        if (StringUtils.isNotBlank(descriptionOfChange)) {
-          mutableFile.setDescriptionOfChange(descriptionOfChange);
-        }
-        outputStream = mutableFile.getOutputStream();
-        IOUtils.write(newContents, outputStream);
-      } catch (final IOException e) {
-        throw new IllegalStateException(
-            "Could not output '" + mutableFile.getCanonicalPath() + "'", e);
-      } finally {
-        IOUtils.closeQuietly(outputStream);
-      }
-    }
-  }
-
   public void createOrUpdateTextFileIfRequired(final String fileIdentifier,
       final String newContents, final String descriptionOfChange, final boolean writeImmediately) {
     if (writeImmediately) {
-      createOrUpdateTextFileIfRequired(fileIdentifier, newContents, descriptionOfChange);
+      final PendingWrite write = prepareWrite(fileIdentifier, newContents, descriptionOfChange);
+      if (write != null) {
+        writeAll(Collections.singletonList(write));
+      }
     } else {
       deferredFileWrites.put(fileIdentifier, newContents);
 
@@ -224,6 +348,10 @@ public class DefaultFileManager implements FileManager, UndoListener {
     }
     Validate.notNull(undoManager, "UndoManager is required");
     undoManager.removeUndoListener(this);
+    if (pool != null) {
+      pool.shutdown();
+      pool = null;
+    }
   }
 
   public void delete(final String fileIdentifier) {
@@ -249,6 +377,7 @@ public class DefaultFileManager implements FileManager, UndoListener {
 
     final File actual = new File(fileIdentifier);
     Validate.isTrue(actual.exists(), "File '%s' does not exist", fileIdentifier);
+    contentDigests.remove(fileIdentifier);
     try {
       fileMonitorService.notifyDeleted(actual.getCanonicalPath());
     } catch (final IOException ignored) {
@@ -317,6 +446,20 @@ public class DefaultFileManager implements FileManager, UndoListener {
   }
 
   public MutableFile updateFile(final String fileIdentifier) {
+    final ManagedMessageRenderer renderer = registerUpdate(fileIdentifier);
+    // The caller may write to the file without our knowledge
+    contentDigests.remove(fileIdentifier);
+    return new DefaultMutableFile(new File(fileIdentifier), fileMonitorService, renderer);
+  }
+
+  /**
+   * Records with the {@link UndoManager} that the given file is about to be
+   * updated.
+   * 
+   * @param fileIdentifier the existing file to update (required)
+   * @return a renderer for the message describing the update
+   */
+  private ManagedMessageRenderer registerUpdate(final String fileIdentifier) {
     if (fileMonitorService == null) {
       fileMonitorService = getFileMonitorService();
     }
@@ -340,7 +483,130 @@ public class DefaultFileManager implements FileManager, UndoListener {
     final ManagedMessageRenderer renderer =
         new ManagedMessageRenderer(filenameResolver, actual, false);
     renderer.setIncludeHashCode(processManager.isDevelopmentMode());
-    return new DefaultMutableFile(actual, fileMonitorService, renderer);
+    return renderer;
+  }
+
+  /**
+   * Returns the digest of the given file's contents, reading the file unless
+   * its digest was taken since it last changed.
+   * 
+   * @param fileIdentifier the file's identifier (required)
+   * @return the digest, or <code>null</code> if the file can't be read
+   */
+  private byte[] getContentDigest(final String fileIdentifier) {
+    final File file = new File(fileIdentifier);
+    final long lastModified;
+    try {
+      lastModified = Files.getLastModifiedTime(file.toPath()).toMillis();
+    } catch (final IOException e) {
+      return null;
+    }
+    final long length = file.length();
+    final ContentDigest cached = contentDigests.get(fileIdentifier);
+    if (cached != null && cached.isCurrent(length, lastModified)) {
+      return cached.digest;
+    }
+
+    final long taken = System.currentTimeMillis();
+    InputStream in = null;
+    try {
+      in = new FileInputStream(file);
+      final byte[] digest = DigestUtils.sha1(in);
+      contentDigests.put(fileIdentifier, new ContentDigest(digest, length, lastModified, taken));
+      return digest;
+    } catch (final IOException e) {
+      return null;
+    } finally {
+      IOUtils.closeQuietly(in);
+    }
+  }
+
+  /**
+   * Prepares to give the given file the given contents, creating it or
+   * recording its update with the {@link UndoManager} as required.
+   * 
+   * @param fileIdentifier the file to write (required)
+   * @param newContents the contents to write (required)
+   * @param descriptionOfChange the description of the change, if any
+   * @return the write to perform, or <code>null</code> if the file already
+   *         has the given contents
+   */
+  private PendingWrite prepareWrite(final String fileIdentifier, final String newContents,
+      final String descriptionOfChange) {
+    final byte[] contents = newContents.getBytes();
+    final byte[] digest = DigestUtils.sha1(contents);
+    final ManagedMessageRenderer renderer;
+    final boolean created;
+    if (exists(fileIdentifier)) {
+      // First verify if the file has even changed
+      if (new File(fileIdentifier).length() == contents.length
+          && Arrays.equals(digest, getContentDigest(fileIdentifier))) {
+        return null;
+      }
+      renderer = registerUpdate(fileIdentifier);
+      created = false;
+    } else {
+      renderer = registerCreate(fileIdentifier);
+      created = true;
+    }
+
+    if (StringUtils.isNotBlank(descriptionOfChange)) {
+      renderer.setDescriptionOfChange(descriptionOfChange);
+    }
+    renderer.setHashCode(Hex.encodeHexString(digest));
+    renderer.logManagedMessage();
+    return new PendingWrite(fileIdentifier, contents, digest, created);
+  }
+
+  /**
+   * Writes the given files, in parallel if there are several, then notifies
+   * the {@link NotifiableFileMonitorService} of those that were updated.
+   * 
+   * @param writes the prepared writes (required)
+   * @throws IllegalStateException if any file could not be written
+   */
+  private void writeAll(final List<PendingWrite> writes) {
+    final ForkJoinPool currentPool = pool;
+    if (currentPool == null || writes.size() < 2) {
+      for (final PendingWrite write : writes) {
+        write.run();
+      }
+    } else {
+      final List<ForkJoinTask<?>> tasks = new ArrayList<ForkJoinTask<?>>(writes.size());
+      for (final PendingWrite write : writes) {
+        tasks.add(currentPool.submit(write));
+      }
+      for (final ForkJoinTask<?> task : tasks) {
+        task.join();
+      }
+    }
+
+    PendingWrite failed = null;
+    final List<String> updated = new ArrayList<String>();
+    for (final PendingWrite write : writes) {
+      if (write.failure != null) {
+        if (failed == null) {
+          failed = write;
+        }
+        continue;
+      }
+      try {
+        contentDigests.put(write.fileIdentifier, new ContentDigest(write.digest,
+            write.contents.length, Files.getLastModifiedTime(write.file.toPath()).toMillis(),
+            write.started));
+      } catch (final IOException ignored) {
+      }
+      // Created files were notified as they were created
+      if (!write.created) {
+        updated.add(write.canonicalPath);
+      }
+    }
+    if (!updated.isEmpty() && fileMonitorService != null) {
+      fileMonitorService.notifyChanged(updated);
+    }
+    if (failed != null) {
+      throw new IllegalStateException("Could not output '" + failed.file + "'", failed.failure);
+    }
   }
 
   public NotifiableFileMonitorService getFileMonitorService() {
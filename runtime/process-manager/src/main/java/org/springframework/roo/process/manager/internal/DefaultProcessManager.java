@@ -19,7 +19,9 @@ import org.osgi.service.startlevel.StartLevel;
 import org.springframework.roo.file.monitor.FileMonitorService;
 import org.springframework.roo.file.monitor.MonitoringRequest;
 import org.springframework.roo.file.monitor.NotifiableFileMonitorService;
+import org.springframework.roo.file.monitor.watch.WatchingFileMonitorService;
 import org.springframework.roo.file.undo.UndoManager;
+import org.springframework.roo.metadata.MetadataDependencyRegistry;
 import org.springframework.roo.process.manager.ActiveProcessManager;
 import org.springframework.roo.process.manager.CommandCallback;
 import org.springframework.roo.process.manager.ProcessManager;
@@ -48,6 +50,7 @@ public class DefaultProcessManager extends AbstractProcessManagerStatusPublisher
   private FileMonitorService fileMonitorService;
   private long lastScanDuration = 0;
   private long lastScanTime = 0; // What time the last scan was completed
+  private MetadataDependencyRegistry metadataDependencyRegistry;
   private long minimumDelayBetweenScan = -1; // How many ms must pass at
   private StartLevel startLevel;
   private UndoManager undoManager;
@@ -197,7 +200,8 @@ public class DefaultProcessManager extends AbstractProcessManagerStatusPublisher
       }
     });
 
-    // Now start a thread that will undertake a background scan every second
+    // Now start a thread that will undertake a background scan every second,
+    // or as soon as a watching file monitor reports a change
     final Thread t = new Thread(new Runnable() {
       public void run() {
         // Unsynchronized lookup of terminated status to avoid anything
@@ -208,9 +212,14 @@ public class DefaultProcessManager extends AbstractProcessManagerStatusPublisher
           if (getProcessManagerStatus() == ProcessManagerStatus.AVAILABLE) {
             timerBasedScan();
           }
-          try {
-            Thread.sleep(1000);
-          } catch (final InterruptedException ignoreAndContinue) {
+          final FileMonitorService monitor = fileMonitorService;
+          if (monitor instanceof WatchingFileMonitorService) {
+            ((WatchingFileMonitorService) monitor).awaitChanges(1000);
+          } else {
+            try {
+              Thread.sleep(1000);
+            } catch (final InterruptedException ignoreAndContinue) {
+            }
           }
         }
       }
@@ -299,7 +308,7 @@ public class DefaultProcessManager extends AbstractProcessManagerStatusPublisher
 
       // Run the requested operation
       if (callback == null) {
-        fileMonitorService.scanAll();
+        scan(false);
       } else {
         result = callback.callback();
       }
@@ -310,11 +319,7 @@ public class DefaultProcessManager extends AbstractProcessManagerStatusPublisher
 
       // Guarantee scans repeat until there are no more changes detected
       while (fileMonitorService.isDirty()) {
-        if (fileMonitorService instanceof NotifiableFileMonitorService) {
-          ((NotifiableFileMonitorService) fileMonitorService).scanNotified();
-        } else {
-          fileMonitorService.scanAll();
-        }
+        scan(true);
         // In case something else happened as a result of event
         // notifications above
         undoManager.flush();
@@ -342,6 +347,39 @@ public class DefaultProcessManager extends AbstractProcessManagerStatusPublisher
     return result;
   }
 
+  /**
+   * Scans for file changes, delivering the metadata notifications raised by
+   * the scan as one batch so that metadata depending on several changed files
+   * is only notified once they have all been processed.
+   * 
+   * @param notifiedOnly whether to only scan the files the file monitor has
+   *            been notified about, if it supports that
+   */
+  private void scan(final boolean notifiedOnly) {
+    if (metadataDependencyRegistry == null) {
+      metadataDependencyRegistry = getMetadataDependencyRegistry();
+    }
+
+    final MetadataDependencyRegistry registry = metadataDependencyRegistry;
+    if (registry != null) {
+      registry.startNotificationBatch();
+    }
+    try {
+      if (notifiedOnly && fileMonitorService instanceof NotifiableFileMonitorService) {
+        ((NotifiableFileMonitorService) fileMonitorService).scanNotified();
+      } else {
+        fileMonitorService.scanAll();
+      }
+    } finally {
+      if (registry != null) {
+        final int avoided = registry.completeNotificationBatch();
+        if (avoided > 0 && LOGGER.isLoggable(Level.FINEST)) {
+          LOGGER.finest("Avoided " + avoided + " redundant metadata notifications");
+        }
+      }
+    }
+  }
+
   private void logException(final Throwable t) {
     final Throwable root = ObjectUtils.defaultIfNull(ExceptionUtils.getRootCause(t), t);
     if (developmentMode) {
@@ -378,6 +416,28 @@ public class DefaultProcessManager extends AbstractProcessManagerStatusPublisher
     }
   }
 
+  public MetadataDependencyRegistry getMetadataDependencyRegistry() {
+    // Get all Services implement MetadataDependencyRegistry interface
+    try {
+      ServiceReference<?>[] references =
+          this.context.getAllServiceReferences(MetadataDependencyRegistry.class.getName(), null);
+
+      if (references == null) {
+        return null;
+      }
+
+      for (ServiceReference<?> ref : references) {
+        return (MetadataDependencyRegistry) this.context.getService(ref);
+      }
+
+      return null;
+
+    } catch (InvalidSyntaxException e) {
+      LOGGER.warning("Cannot load MetadataDependencyRegistry on DefaultProcessManager.");
+      return null;
+    }
+  }
+
   public StartLevel getStartLevel() {
     // Get all Services implement StartLevel interface
     try {
@@ -0,0 +1,180 @@
+package org.springframework.roo.process.manager.internal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.anyCollectionOf;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.osgi.service.component.ComponentContext;
+import org.springframework.roo.file.monitor.NotifiableFileMonitorService;
+import org.springframework.roo.file.undo.DefaultUndoManager;
+import org.springframework.roo.file.undo.FilenameResolver;
+import org.springframework.roo.process.manager.ProcessManager;
+
+/**
+ * Unit test of {@link DefaultFileManager}'s writing of text files
+ *
+ * @since 2.0
+ */
+public class DefaultFileManagerTest {
+
+  // Even seconds, as some file systems can't record odd ones
+  private static final long TIME = 1434363630000L;
+
+  /**
+   * Names files by their own names, replacing the given file with a directory
+   * as its write is prepared, so that the write itself fails
+   */
+  private static class SabotagingFilenameResolver implements FilenameResolver {
+
+    private final File sabotaged;
+
+    SabotagingFilenameResolver(final File sabotaged) {
+      this.sabotaged = sabotaged;
+    }
+
+    public String getMeaningfulName(final File file) {
+      if (file.equals(sabotaged) && file.isFile()) {
+        assertTrue(file.delete() && file.mkdir());
+      }
+      return file.getName();
+    }
+  }
+
+  // Fixture
+  private File directory;
+  private DefaultFileManager fileManager;
+  private NotifiableFileMonitorService mockFileMonitorService;
+
+  private File createFile(final String name, final String contents) throws IOException {
+    final File file = new File(directory, name);
+    FileUtils.writeStringToFile(file, contents, "UTF-8");
+    assertTrue(file.setLastModified(TIME));
+    return file;
+  }
+
+  private static String read(final File file) throws IOException {
+    return FileUtils.readFileToString(file, "UTF-8");
+  }
+
+  @SuppressWarnings("unchecked")
+  private Collection<String> getChangedPaths() {
+    final ArgumentCaptor<Collection> captor = ArgumentCaptor.forClass(Collection.class);
+    verify(mockFileMonitorService).notifyChanged(captor.capture());
+    return new HashSet<String>(captor.getValue());
+  }
+
+  @Before
+  public void setUp() throws IOException {
+    directory = File.createTempFile("DefaultFileManagerTest", "").getCanonicalFile();
+    assertTrue(directory.delete() && directory.mkdir());
+    mockFileMonitorService = mock(NotifiableFileMonitorService.class);
+    fileManager = new DefaultFileManager();
+    fileManager.fileMonitorService = mockFileMonitorService;
+    fileManager.filenameResolver = new SabotagingFilenameResolver(null);
+    fileManager.processManager = mock(ProcessManager.class);
+    fileManager.undoManager = new DefaultUndoManager();
+    fileManager.activate(mock(ComponentContext.class));
+  }
+
+  @After
+  public void tearDown() {
+    fileManager.deactivate(null);
+    FileUtils.deleteQuietly(directory);
+  }
+
+  @Test
+  public void testUnchangedFileIsNotWritten() throws IOException {
+    // Set up
+    final File file = createFile("pom.xml", "<project/>");
+
+    // Invoke
+    fileManager.createOrUpdateTextFileIfRequired(file.getPath(), "<project/>", true);
+
+    // Check
+    assertEquals(TIME, file.lastModified());
+    verify(mockFileMonitorService, never()).notifyChanged(anyCollectionOf(String.class));
+  }
+
+  @Test
+  public void testExternalEditWithinTheFileTimeResolutionIsWrittenOver() throws IOException {
+    // Set up: the file is changed to contents of the same length, without
+    // its modification time changing
+    final File file = new File(directory, "pom.xml");
+    fileManager.createOrUpdateTextFileIfRequired(file.getPath(), "<project/>", true);
+    final long lastModified = file.lastModified();
+    FileUtils.writeStringToFile(file, "<changed/>", "UTF-8");
+    assertTrue(file.setLastModified(lastModified));
+
+    // Invoke
+    fileManager.createOrUpdateTextFileIfRequired(file.getPath(), "<project/>", true);
+
+    // Check
+    assertEquals("<project/>", read(file));
+    assertEquals(new HashSet<String>(Arrays.asList(file.getPath())), getChangedPaths());
+  }
+
+  @Test
+  public void testCommitWritesEveryChangedFileAndNotifiesThemAtOnce() throws IOException {
+    // Set up
+    final List<File> files = new ArrayList<File>();
+    final Collection<String> paths = new HashSet<String>();
+    for (int i = 0; i < 8; i++) {
+      final File file = createFile("file" + i + ".txt", "before");
+      files.add(file);
+      paths.add(file.getPath());
+      fileManager.createOrUpdateTextFileIfRequired(file.getPath(), "after" + i, false);
+    }
+
+    // Invoke
+    fileManager.commit();
+
+    // Check
+    for (int i = 0; i < files.size(); i++) {
+      assertEquals("after" + i, read(files.get(i)));
+    }
+    assertEquals(paths, getChangedPaths());
+  }
+
+  @Test
+  public void testFailedWriteIsReportedOnceTheOtherFilesAreWritten() throws IOException {
+    // Set up
+    final File first = createFile("first.txt", "before");
+    final File second = createFile("second.txt", "before");
+    final File third = createFile("third.txt", "before");
+    fileManager.filenameResolver = new SabotagingFilenameResolver(second);
+    fileManager.createOrUpdateTextFileIfRequired(first.getPath(), "after", false);
+    fileManager.createOrUpdateTextFileIfRequired(second.getPath(), "after", false);
+    fileManager.createOrUpdateTextFileIfRequired(third.getPath(), "after", false);
+
+    // Invoke
+    try {
+      fileManager.commit();
+      fail("Expected an IllegalStateException");
+    } catch (final IllegalStateException expected) {
+      assertEquals("Could not output '" + second + "'", expected.getMessage());
+    }
+
+    // Check
+    assertEquals("after", read(first));
+    assertEquals("after", read(third));
+    assertEquals(new HashSet<String>(Arrays.asList(first.getPath(), third.getPath())),
+        getChangedPaths());
+  }
+}
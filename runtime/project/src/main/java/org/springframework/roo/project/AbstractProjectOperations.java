@@ -4,6 +4,8 @@ import static org.springframework.roo.project.DependencyScope.COMPILE;
 import static org.springframework.roo.support.util.AnsiEscapeCode.FG_CYAN;
 import static org.springframework.roo.support.util.AnsiEscapeCode.decorate;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
@@ -13,6 +15,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.logging.Level;
 
+import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.Validate;
 import org.apache.felix.scr.annotations.Component;
@@ -58,6 +61,7 @@ public abstract class AbstractProjectOperations implements ProjectOperations {
   static final String UPDATED = "updated";
 
   private final Map<String, Feature> features = new HashMap<String, Feature>();
+  private final PomWorkingCopies pomWorkingCopies = new PomWorkingCopies();
 
   @Reference(policy = ReferencePolicy.DYNAMIC)
   protected FileManager fileManager;
@@ -115,7 +119,7 @@ public abstract class AbstractProjectOperations implements ProjectOperations {
     final Pom pom = getPomFromModuleName(moduleName);
     Validate.notNull(pom, "The pom is not available, so plugin addition cannot be performed");
 
-    final Document document = XmlUtils.readXml(fileManager.getInputStream(pom.getPath()));
+    final Document document = readPom(pom);
     final Element root = document.getDocumentElement();
     final Element pluginsElement =
         DomUtils.createChildIfNotExists("/project/build/plugins", root, document);
@@ -162,8 +166,7 @@ public abstract class AbstractProjectOperations implements ProjectOperations {
 
     if (!newPlugins.isEmpty()) {
       final String message = getPomPluginsUpdateMessage(addedPlugins, removedPlugins);
-      fileManager.createOrUpdateTextFileIfRequired(pom.getPath(), XmlUtils.nodeToString(document),
-          message, false);
+      writePom(pom, document, message, false);
     }
   }
 
@@ -174,7 +177,7 @@ public abstract class AbstractProjectOperations implements ProjectOperations {
     final Pom pom = getPomFromModuleName(moduleName);
     Validate.notNull(pom, "The pom is not available, so dependencies cannot be added");
 
-    final Document document = XmlUtils.readXml(fileManager.getInputStream(pom.getPath()));
+    final Document document = readPom(pom);
     final Element dependenciesElement =
         DomUtils.createChildIfNotExists("dependencies", document.getDocumentElement(), document);
     final List<Element> existingDependencyElements =
@@ -237,8 +240,7 @@ public abstract class AbstractProjectOperations implements ProjectOperations {
       final String message =
           getPomDependenciesUpdateMessage(addedDependencies, removedDependencies,
               skippedDependencies);
-      fileManager.createOrUpdateTextFileIfRequired(pom.getPath(), XmlUtils.nodeToString(document),
-          message, false);
+      writePom(pom, document, message, false);
     }
 
     return finalDependencies;
@@ -312,7 +314,7 @@ public abstract class AbstractProjectOperations implements ProjectOperations {
       return;
     }
 
-    final Document document = XmlUtils.readXml(fileManager.getInputStream(pom.getPath()));
+    final Document document = readPom(pom);
     final Element root = document.getDocumentElement();
     final String descriptionOfChange;
     final Element buildElement = XmlUtils.findFirstElement("/project/build", root);
@@ -329,8 +331,7 @@ public abstract class AbstractProjectOperations implements ProjectOperations {
       descriptionOfChange = highlight(UPDATED + " filter") + " '" + filter.getValue() + "'";
     }
 
-    fileManager.createOrUpdateTextFileIfRequired(pom.getPath(), XmlUtils.nodeToString(document),
-        descriptionOfChange, false);
+    writePom(pom, document, descriptionOfChange, false);
   }
 
 
@@ -343,7 +344,7 @@ public abstract class AbstractProjectOperations implements ProjectOperations {
 
     String descriptionOfChange;
     final Pom pom = getPomFromModuleName(moduleName);
-    final Document document = XmlUtils.readXml(fileManager.getInputStream(pom.getPath()));
+    final Document document = readPom(pom);
     final Element root = document.getDocumentElement();
 
 
@@ -381,8 +382,7 @@ public abstract class AbstractProjectOperations implements ProjectOperations {
                 .createTextElement(document, "package", packageName));
             descriptionOfChange = highlight(ADDED + " package") + " '" + packageName + "'";
 
-            fileManager.createOrUpdateTextFileIfRequired(pom.getPath(),
-                XmlUtils.nodeToString(document), descriptionOfChange, false);
+            writePom(pom, document, descriptionOfChange, false);
           }
         }
       }
@@ -443,7 +443,7 @@ public abstract class AbstractProjectOperations implements ProjectOperations {
       return;
     }
 
-    final Document document = XmlUtils.readXml(fileManager.getInputStream(pom.getPath()));
+    final Document document = readPom(pom);
     final Element root = document.getDocumentElement();
     final String descriptionOfChange;
     final Element existing =
@@ -465,8 +465,7 @@ public abstract class AbstractProjectOperations implements ProjectOperations {
               + property.getValue() + "'";
     }
 
-    fileManager.createOrUpdateTextFileIfRequired(pom.getPath(), XmlUtils.nodeToString(document),
-        descriptionOfChange, false);
+    writePom(pom, document, descriptionOfChange, false);
   }
 
   public void addRepositories(final String moduleName,
@@ -486,7 +485,7 @@ public abstract class AbstractProjectOperations implements ProjectOperations {
     }
     final Pom pom = getPomFromModuleName(moduleName);
     Validate.notNull(pom, "The pom is not available, so repository addition cannot be performed");
-    final Document document = XmlUtils.readXml(fileManager.getInputStream(pom.getPath()));
+    final Document document = readPom(pom);
     final Element repositoriesElement =
         DomUtils.createChildIfNotExists(containingPath, document.getDocumentElement(), document);
 
@@ -525,8 +524,7 @@ public abstract class AbstractProjectOperations implements ProjectOperations {
     }
     final String message = getDescriptionOfChange(ADDED, addedRepositories, path, containingPath);
 
-    fileManager.createOrUpdateTextFileIfRequired(pom.getPath(), XmlUtils.nodeToString(document),
-        message, false);
+    writePom(pom, document, message, false);
   }
 
   public void addRepository(final String moduleName, final Repository repository) {
@@ -551,7 +549,7 @@ public abstract class AbstractProjectOperations implements ProjectOperations {
       return;
     }
 
-    final Document document = XmlUtils.readXml(fileManager.getInputStream(pom.getPath()));
+    final Document document = readPom(pom);
     final Element buildElement =
         XmlUtils.findFirstElement("/project/build", document.getDocumentElement());
     final Element resourcesElement =
@@ -560,8 +558,7 @@ public abstract class AbstractProjectOperations implements ProjectOperations {
     final String descriptionOfChange =
         highlight(ADDED + " resource") + " " + resource.getSimpleDescription();
 
-    fileManager.createOrUpdateTextFileIfRequired(pom.getPath(), XmlUtils.nodeToString(document),
-        descriptionOfChange, false);
+    writePom(pom, document, descriptionOfChange, false);
   }
 
   protected void bindFeature(final Feature feature) {
@@ -767,7 +764,7 @@ public abstract class AbstractProjectOperations implements ProjectOperations {
       return;
     }
 
-    final Document document = XmlUtils.readXml(fileManager.getInputStream(pom.getPath()));
+    final Document document = readPom(pom);
     final Element root = document.getDocumentElement();
     final Element pluginsElement = XmlUtils.findFirstElement("/project/build/plugins", root);
     if (pluginsElement == null) {
@@ -798,8 +795,7 @@ public abstract class AbstractProjectOperations implements ProjectOperations {
     DomUtils.removeTextNodes(pluginsElement);
     final String message = getDescriptionOfChange(REMOVED, removedPlugins, "plugin", "plugins");
 
-    fileManager.createOrUpdateTextFileIfRequired(pom.getPath(), XmlUtils.nodeToString(document),
-        message, writeImmediately);
+    writePom(pom, document, message, writeImmediately);
   }
 
   public void removeDependencies(final String moduleName,
@@ -816,7 +812,7 @@ public abstract class AbstractProjectOperations implements ProjectOperations {
       return;
     }
 
-    final Document document = XmlUtils.readXml(fileManager.getInputStream(pom.getPath()));
+    final Document document = readPom(pom);
     final Element root = document.getDocumentElement();
     final Element dependenciesElement = XmlUtils.findFirstElement("/project/dependencies", root);
     if (dependenciesElement == null) {
@@ -850,8 +846,7 @@ public abstract class AbstractProjectOperations implements ProjectOperations {
     final String message =
         getDescriptionOfChange(REMOVED, removedDependencies, "dependency", "dependencies");
 
-    fileManager.createOrUpdateTextFileIfRequired(pom.getPath(), XmlUtils.nodeToString(document),
-        message, false);
+    writePom(pom, document, message, false);
   }
 
   public void removeDependency(final String moduleName, final Dependency dependency) {
@@ -879,7 +874,7 @@ public abstract class AbstractProjectOperations implements ProjectOperations {
       return;
     }
 
-    final Document document = XmlUtils.readXml(fileManager.getInputStream(pom.getPath()));
+    final Document document = readPom(pom);
     final Element root = document.getDocumentElement();
 
     String descriptionOfChange = "";
@@ -896,8 +891,7 @@ public abstract class AbstractProjectOperations implements ProjectOperations {
 
     DomUtils.removeTextNodes(dependenciesElement);
 
-    fileManager.createOrUpdateTextFileIfRequired(pom.getPath(), XmlUtils.nodeToString(document),
-        descriptionOfChange, false);
+    writePom(pom, document, descriptionOfChange, false);
   }
 
   public final void removeDependency(final String moduleName, final String groupId,
@@ -926,7 +920,7 @@ public abstract class AbstractProjectOperations implements ProjectOperations {
       return;
     }
 
-    final Document document = XmlUtils.readXml(fileManager.getInputStream(pom.getPath()));
+    final Document document = readPom(pom);
     final Element root = document.getDocumentElement();
 
     final Element filtersElement = XmlUtils.findFirstElement("/project/build/filters", root);
@@ -951,8 +945,7 @@ public abstract class AbstractProjectOperations implements ProjectOperations {
 
     DomUtils.removeTextNodes(root);
 
-    fileManager.createOrUpdateTextFileIfRequired(pom.getPath(), XmlUtils.nodeToString(document),
-        descriptionOfChange, false);
+    writePom(pom, document, descriptionOfChange, false);
   }
 
   public void removePluginRepository(final String moduleName, final Repository repository) {
@@ -972,7 +965,7 @@ public abstract class AbstractProjectOperations implements ProjectOperations {
       return;
     }
 
-    final Document document = XmlUtils.readXml(fileManager.getInputStream(pom.getPath()));
+    final Document document = readPom(pom);
     final Element root = document.getDocumentElement();
     final Element propertiesElement = XmlUtils.findFirstElement("/project/properties", root);
     String descriptionOfChange = "";
@@ -988,14 +981,31 @@ public abstract class AbstractProjectOperations implements ProjectOperations {
 
     DomUtils.removeTextNodes(propertiesElement);
 
-    fileManager.createOrUpdateTextFileIfRequired(pom.getPath(), XmlUtils.nodeToString(document),
-        descriptionOfChange, false);
+    writePom(pom, document, descriptionOfChange, false);
   }
 
   public void removeRepository(final String moduleName, final Repository repository) {
     removeRepository(moduleName, repository, "/project/repositories/repository");
   }
 
+  /**
+   * Reads the given POM's current contents for changing
+   * 
+   * @param pom the POM to read (required)
+   * @return a document that the caller may change and then
+   *         {@link #writePom(Pom, Document, String, boolean) write}
+   */
+  private Document readPom(final Pom pom) {
+    final InputStream inputStream = fileManager.getInputStream(pom.getPath());
+    try {
+      return pomWorkingCopies.checkOut(pom.getPath(), IOUtils.toByteArray(inputStream));
+    } catch (final IOException e) {
+      throw new IllegalStateException("Could not read '" + pom.getPath() + "'", e);
+    } finally {
+      IOUtils.closeQuietly(inputStream);
+    }
+  }
+
   private void removeRepository(final String moduleName, final Repository repository,
       final String path) {
     Validate.isTrue(isProjectAvailable(moduleName),
@@ -1013,7 +1023,7 @@ public abstract class AbstractProjectOperations implements ProjectOperations {
       }
     }
 
-    final Document document = XmlUtils.readXml(fileManager.getInputStream(pom.getPath()));
+    final Document document = readPom(pom);
     final Element root = document.getDocumentElement();
 
     String descriptionOfChange = "";
@@ -1026,8 +1036,7 @@ public abstract class AbstractProjectOperations implements ProjectOperations {
       }
     }
 
-    fileManager.createOrUpdateTextFileIfRequired(pom.getPath(), XmlUtils.nodeToString(document),
-        descriptionOfChange, false);
+    writePom(pom, document, descriptionOfChange, false);
   }
 
   public void removeResource(final String moduleName, final Resource resource) {
@@ -1040,7 +1049,7 @@ public abstract class AbstractProjectOperations implements ProjectOperations {
       return;
     }
 
-    final Document document = XmlUtils.readXml(fileManager.getInputStream(pom.getPath()));
+    final Document document = readPom(pom);
     final Element root = document.getDocumentElement();
     final Element resourcesElement = XmlUtils.findFirstElement("/project/build/resources", root);
     if (resourcesElement == null) {
@@ -1065,8 +1074,7 @@ public abstract class AbstractProjectOperations implements ProjectOperations {
 
     DomUtils.removeTextNodes(root);
 
-    fileManager.createOrUpdateTextFileIfRequired(pom.getPath(), XmlUtils.nodeToString(document),
-        descriptionOfChange, false);
+    writePom(pom, document, descriptionOfChange, false);
   }
 
   public void setModule(final Pom module) {
@@ -1111,7 +1119,7 @@ public abstract class AbstractProjectOperations implements ProjectOperations {
       return;
     }
 
-    final Document document = XmlUtils.readXml(fileManager.getInputStream(pom.getPath()));
+    final Document document = readPom(pom);
     final Element root = document.getDocumentElement();
     final Element dependencyElement =
         XmlUtils.findFirstElement(
@@ -1148,8 +1156,7 @@ public abstract class AbstractProjectOperations implements ProjectOperations {
     }
 
     if (descriptionOfChange != null) {
-      fileManager.createOrUpdateTextFileIfRequired(pom.getPath(), XmlUtils.nodeToString(document),
-          descriptionOfChange, false);
+      writePom(pom, document, descriptionOfChange, false);
     }
   }
 
@@ -1158,7 +1165,7 @@ public abstract class AbstractProjectOperations implements ProjectOperations {
     final Pom pom = getPomFromModuleName(moduleName);
     Validate.notNull(pom, "The pom is not available, so the project type cannot be changed");
 
-    final Document document = XmlUtils.readXml(fileManager.getInputStream(pom.getPath()));
+    final Document document = readPom(pom);
     final Element packaging =
         DomUtils.createChildIfNotExists("packaging", document.getDocumentElement(), document);
     if (packaging.getTextContent().equals(projectType.getType())) {
@@ -1169,7 +1176,24 @@ public abstract class AbstractProjectOperations implements ProjectOperations {
     final String descriptionOfChange =
         highlight(UPDATED + " project type") + " to " + projectType.getType();
 
-    fileManager.createOrUpdateTextFileIfRequired(pom.getPath(), XmlUtils.nodeToString(document),
-        descriptionOfChange, false);
+    writePom(pom, document, descriptionOfChange, false);
+  }
+
+  /**
+   * Writes the given document to the given POM, keeping it as the POM's
+   * working copy
+   * 
+   * @param pom the POM to write (required)
+   * @param document a document returned by {@link #readPom(Pom)} (required)
+   * @param descriptionOfChange a description of the change (can be blank)
+   * @param writeImmediately whether to write the POM now rather than when the
+   *            current operation completes
+   */
+  private void writePom(final Pom pom, final Document document, final String descriptionOfChange,
+      final boolean writeImmediately) {
+    final String contents = XmlUtils.nodeToString(document);
+    fileManager.createOrUpdateTextFileIfRequired(pom.getPath(), contents, descriptionOfChange,
+        writeImmediately);
+    pomWorkingCopies.checkIn(pom.getPath(), document, contents.getBytes());
   }
 }
@@ -16,6 +16,7 @@ import java.util.Map;
 import java.util.Set;
 import java.util.logging.Logger;
 
+import org.apache.commons.codec.digest.DigestUtils;
 import org.apache.commons.io.FilenameUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.Validate;
@@ -36,7 +37,6 @@ import org.springframework.roo.support.logging.HandlerUtils;
 import org.springframework.roo.support.osgi.OSGiUtils;
 import org.springframework.roo.support.util.FileUtils;
 import org.springframework.roo.support.util.XmlUtils;
-import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 
 @Component
@@ -80,7 +80,6 @@ public class PomManagementServiceImpl implements PomManagementService {
 
   private static final String SEPARATOR = File.separator;
   private static final String DEFAULT_POM_NAME = "pom.xml";
-  private static final String DEFAULT_RELATIVE_PATH = ".." + SEPARATOR + DEFAULT_POM_NAME;
 
   FileManager fileManager;
   FileMonitorService fileMonitorService;
@@ -90,6 +89,8 @@ public class PomManagementServiceImpl implements PomManagementService {
   Shell shell;
 
   private String focusedModulePath;
+  // key: POM path, value: digest of the contents its Pom was created from
+  private final Map<String, byte[]> pomDigests = new HashMap<String, byte[]>();
   private final Map<String, Pom> pomMap = new LinkedHashMap<String, Pom>();
   private String projectRootDirectory;
   private final Set<String> toBeParsed = new HashSet<String>();
@@ -190,7 +191,6 @@ public class PomManagementServiceImpl implements PomManagementService {
   }
 
   private Set<Pom> parseUnparsedPoms() {
-    final Map<String, String> pomModuleMap = new HashMap<String, String>();
     final Set<Pom> newPoms = new HashSet<Pom>();
     for (final Iterator<String> iter = toBeParsed.iterator(); iter.hasNext();) {
       final String pathToChangedPom = iter.next();
@@ -202,13 +202,20 @@ public class PomManagementServiceImpl implements PomManagementService {
         } catch (IOException ignored) {
         }
         if (StringUtils.isNotBlank(pomContents)) {
+          final byte[] digest = DigestUtils.sha1(pomContents);
+          if (pomMap.containsKey(pathToChangedPom)
+              && Arrays.equals(digest, pomDigests.get(pathToChangedPom))) {
+            // Unchanged since its Pom was created
+            iter.remove();
+            continue;
+          }
           final Element rootElement = XmlUtils.stringToElement(pomContents);
-          resolvePoms(rootElement, pathToChangedPom, pomModuleMap);
           final String moduleName = getModuleName(FileUtils.getFirstDirectory(pathToChangedPom));
           final Pom pom = getPomFactory().getInstance(rootElement, pathToChangedPom, moduleName);
           Validate.notNull(pom, "POM is null for module '%s' and path '%s'", moduleName,
               pathToChangedPom);
           pomMap.put(pathToChangedPom, pom);
+          pomDigests.put(pathToChangedPom, digest);
           newPoms.add(pom);
           iter.remove();
         }
@@ -217,90 +224,6 @@ public class PomManagementServiceImpl implements PomManagementService {
     return newPoms;
   }
 
-  private void resolveChildModulePoms(final Element pomRoot, final String pomPath,
-      final Map<String, String> pomSet) {
-    for (final Element module : XmlUtils.findElements("/project/modules/module", pomRoot)) {
-      final String moduleName = module.getTextContent();
-      if (StringUtils.isNotBlank(moduleName)) {
-        final String modulePath = resolveRelativePath(pomPath, moduleName);
-        final boolean alreadyDiscovered = pomSet.containsKey(modulePath);
-        pomSet.put(modulePath, moduleName);
-        if (!alreadyDiscovered) {
-          final Document pomDocument =
-              XmlUtils.readXml(getFileManager().getInputStream(modulePath));
-          final Element root = pomDocument.getDocumentElement();
-          resolvePoms(root, modulePath, pomSet);
-        }
-      }
-    }
-  }
-
-  private void resolveParentPom(final String pomPath, final Map<String, String> pomSet,
-      final Element parentElement) {
-    final String relativePath =
-        XmlUtils.getTextContent("/relativePath", parentElement, DEFAULT_RELATIVE_PATH);
-    final String parentPomPath = resolveRelativePath(pomPath, relativePath);
-    final boolean alreadyDiscovered = pomSet.containsKey(parentPomPath);
-    if (!alreadyDiscovered) {
-      pomSet.put(parentPomPath, pomSet.get(parentPomPath));
-      if (new File(parentPomPath).isFile()) {
-        final Document pomDocument =
-            XmlUtils.readXml(getFileManager().getInputStream(parentPomPath));
-        final Element root = pomDocument.getDocumentElement();
-        resolvePoms(root, parentPomPath, pomSet);
-      }
-    }
-  }
-
-  private void resolvePoms(final Element pomRoot, final String pomPath,
-      final Map<String, String> pomSet) {
-    pomSet.put(pomPath, pomSet.get(pomPath)); // ensures this key exists
-
-    final Element parentElement = XmlUtils.findFirstElement("/project/parent", pomRoot);
-    if (parentElement != null) {
-      resolveParentPom(pomPath, pomSet, parentElement);
-    }
-
-    resolveChildModulePoms(pomRoot, pomPath, pomSet);
-  }
-
-  private String resolveRelativePath(String relativeTo, final String relativePath) {
-    if (relativeTo.endsWith(SEPARATOR)) {
-      relativeTo = relativeTo.substring(0, relativeTo.length() - 1);
-    }
-    while (new File(relativeTo).isFile()) {
-      relativeTo = relativeTo.substring(0, relativeTo.lastIndexOf(SEPARATOR));
-    }
-    final String[] relativePathSegments = relativePath.split(FileUtils.getFileSeparatorAsRegex());
-
-    int backCount = 0;
-    for (final String relativePathSegment : relativePathSegments) {
-      if (relativePathSegment.equals("..")) {
-        backCount++;
-      } else {
-        break;
-      }
-    }
-    final StringBuilder sb = new StringBuilder();
-    for (int i = backCount; i < relativePathSegments.length; i++) {
-      sb.append(relativePathSegments[i]);
-      sb.append(SEPARATOR);
-    }
-
-    while (backCount > 0) {
-      relativeTo = relativeTo.substring(0, relativeTo.lastIndexOf(SEPARATOR));
-      backCount--;
-    }
-    String path = relativeTo + SEPARATOR + sb.toString();
-    if (new File(path).isDirectory()) {
-      path = path + DEFAULT_POM_NAME;
-    }
-    if (path.endsWith(SEPARATOR)) {
-      path = path.substring(0, path.length() - 1);
-    }
-    return path;
-  }
-
   public void setFocusedModule(final Pom focusedModule) {
     Validate.notNull(focusedModule, "Module required");
     if (focusedModule.getPath().equals(focusedModulePath)) {
@@ -330,11 +253,20 @@ public class PomManagementServiceImpl implements PomManagementService {
     updateProjectMetadataForModules(newPoms);
   }
 
-  private void updateProjectMetadataForModules(final Iterable<Pom> newPoms) {
-    for (final Pom pom : newPoms) {
-      final String projectMetadataId = ProjectMetadata.getProjectIdentifier(pom.getModuleName());
-      getMetadataService().evictAndGet(projectMetadataId);
-      getMetadataDependencyRegistry().notifyDownstream(projectMetadataId);
+  private void updateProjectMetadataForModules(final Collection<Pom> newPoms) {
+    if (newPoms.isEmpty()) {
+      return;
+    }
+    // Metadata depending on several modules is notified once they're all refreshed
+    getMetadataDependencyRegistry().startNotificationBatch();
+    try {
+      for (final Pom pom : newPoms) {
+        final String projectMetadataId = ProjectMetadata.getProjectIdentifier(pom.getModuleName());
+        getMetadataService().evictAndGet(projectMetadataId);
+        getMetadataDependencyRegistry().notifyDownstream(projectMetadataId);
+      }
+    } finally {
+      getMetadataDependencyRegistry().completeNotificationBatch();
     }
   }
 
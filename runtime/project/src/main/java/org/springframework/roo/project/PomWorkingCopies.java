@@ -0,0 +1,70 @@
+package org.springframework.roo.project;
+
+import java.io.ByteArrayInputStream;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.commons.lang3.Validate;
+import org.springframework.roo.support.util.XmlUtils;
+import org.w3c.dom.Document;
+
+/**
+ * The parsed {@link Document}s of the POMs most recently changed by
+ * {@link AbstractProjectOperations}, so that changing the same POM several
+ * times in a row doesn't parse it each time.
+ * <p>
+ * A working copy is only used while the POM still has the contents it was
+ * written with, so changes made to the POM by anything else are never lost.
+ * It is checked out while being changed, so that a change which fails halfway
+ * doesn't leave a half-changed document behind. All methods are thread safe.
+ *
+ * @since 2.0
+ */
+final class PomWorkingCopies {
+
+  private static class WorkingCopy {
+    private final byte[] contents;
+    private final Document document;
+
+    WorkingCopy(final Document document, final byte[] contents) {
+      this.document = document;
+      this.contents = contents;
+    }
+  }
+
+  // key: POM path
+  private final Map<String, WorkingCopy> workingCopies = new HashMap<String, WorkingCopy>();
+
+  /**
+   * Checks in the given document, which has just been written to the given
+   * POM
+   *
+   * @param pomPath the canonical path of the POM (required)
+   * @param document the document to check in (required)
+   * @param contents the contents written to the POM (required)
+   */
+  synchronized void checkIn(final String pomPath, final Document document, final byte[] contents) {
+    Validate.notNull(document, "Document required");
+    Validate.notNull(contents, "Contents required");
+    workingCopies.put(pomPath, new WorkingCopy(document, contents));
+  }
+
+  /**
+   * Checks out the document with the given contents, parsing them if this POM
+   * has no working copy with those contents
+   *
+   * @param pomPath the canonical path of the POM (required)
+   * @param contents the POM's current contents (required)
+   * @return a document that the caller may change, which remains checked out
+   *         until the caller writes it and
+   *         {@link #checkIn(String, Document, byte[]) checks it in}
+   */
+  synchronized Document checkOut(final String pomPath, final byte[] contents) {
+    final WorkingCopy workingCopy = workingCopies.remove(pomPath);
+    if (workingCopy != null && Arrays.equals(workingCopy.contents, contents)) {
+      return workingCopy.document;
+    }
+    return XmlUtils.readXml(new ByteArrayInputStream(contents));
+  }
+}
@@ -235,6 +235,26 @@ public class PomManagementServiceImplTest {
     assertEquals(0, poms.size());
   }
 
+  @Test
+  public void testGetPomsDoesNotReparseAnUnchangedPom() throws Exception {
+    // Set up
+    setUpWorkingDirectory("single");
+    final String canonicalPath = getCanonicalPath("single/pom.xml");
+    when(mockFileMonitorService.getDirtyFiles(PomManagementServiceImpl.class.getName()))
+        .thenReturn(Arrays.asList(canonicalPath));
+    final Pom mockPom = getMockPom(ROOT_MODULE_NAME, canonicalPath);
+    service.getPoms();
+
+    // Invoke
+    final Collection<Pom> poms = service.getPoms();
+
+    // Check
+    assertEquals(Arrays.asList(mockPom), poms);
+    verify(mockPomFactory).getInstance(any(Element.class), eq(canonicalPath),
+        eq(ROOT_MODULE_NAME));
+    verifyProjectMetadataNotification(ROOT_MODULE_NAME);
+  }
+
   private void verifyProjectMetadataNotification(final String... moduleNames) {
     for (final String moduleName : moduleNames) {
       final String projectMetadataId = ProjectMetadata.getProjectIdentifier(moduleName);
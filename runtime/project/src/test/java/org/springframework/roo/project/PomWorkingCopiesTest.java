@@ -0,0 +1,73 @@
+package org.springframework.roo.project;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.w3c.dom.Document;
+
+/**
+ * Unit test of {@link PomWorkingCopies}
+ *
+ * @since 2.0
+ */
+public class PomWorkingCopiesTest {
+
+  private static final byte[] CHANGED_POM = "<project><version>2</version></project>".getBytes();
+  private static final byte[] POM = "<project><version>1</version></project>".getBytes();
+  private static final String POM_PATH = "/tmp/pom.xml";
+
+  // Fixture
+  private PomWorkingCopies workingCopies;
+
+  @Before
+  public void setUp() {
+    workingCopies = new PomWorkingCopies();
+  }
+
+  @Test
+  public void testCheckOutParsesPomWithoutWorkingCopy() {
+    // Invoke
+    final Document document = workingCopies.checkOut(POM_PATH, POM);
+
+    // Check
+    assertEquals("1", document.getDocumentElement().getTextContent());
+  }
+
+  @Test
+  public void testCheckOutReusesWorkingCopyWithSameContents() {
+    // Set up
+    final Document document = workingCopies.checkOut(POM_PATH, POM);
+    workingCopies.checkIn(POM_PATH, document, POM);
+
+    // Invoke and check
+    assertSame(document, workingCopies.checkOut(POM_PATH, POM.clone()));
+  }
+
+  @Test
+  public void testCheckOutParsesPomChangedSinceCheckIn() {
+    // Set up
+    final Document document = workingCopies.checkOut(POM_PATH, POM);
+    workingCopies.checkIn(POM_PATH, document, POM);
+
+    // Invoke
+    final Document changed = workingCopies.checkOut(POM_PATH, CHANGED_POM);
+
+    // Check
+    assertNotSame(document, changed);
+    assertEquals("2", changed.getDocumentElement().getTextContent());
+  }
+
+  @Test
+  public void testCheckedOutDocumentIsNotReused() {
+    // Set up
+    final Document document = workingCopies.checkOut(POM_PATH, POM);
+    workingCopies.checkIn(POM_PATH, document, POM);
+    workingCopies.checkOut(POM_PATH, POM);
+
+    // Invoke and check
+    assertNotSame(document, workingCopies.checkOut(POM_PATH, POM));
+  }
+}
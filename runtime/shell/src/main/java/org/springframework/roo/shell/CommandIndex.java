@@ -0,0 +1,156 @@
+package org.springframework.roo.shell;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.Validate;
+
+/**
+ * The {@link CliCommand}s offered by a set of {@link CommandMarker}s, indexed
+ * by the first word of each command, for {@link SimpleParser}.
+ * <p>
+ * Each {@link CommandMarker}'s methods are reflected upon once, when it is
+ * added, rather than each time the user's input is matched against the
+ * available commands. Not thread safe.
+ *
+ * @since 2.0
+ */
+final class CommandIndex {
+
+  /**
+   * One of the values of a {@link CliCommand}.
+   */
+  static final class Entry {
+    private final CliCommand command;
+    private final Method method;
+    private final CommandMarker target;
+    private final String value;
+
+    Entry(final CommandMarker target, final Method method, final CliCommand command,
+        final String value) {
+      this.target = target;
+      this.method = method;
+      this.command = command;
+      this.value = value;
+    }
+
+    CliCommand getCommand() {
+      return command;
+    }
+
+    Method getMethod() {
+      return method;
+    }
+
+    CommandMarker getTarget() {
+      return target;
+    }
+
+    String getValue() {
+      return value;
+    }
+  }
+
+  // key: the first word of a command, value: the commands starting with it
+  private final TreeMap<String, List<Entry>> entriesByFirstWord =
+      new TreeMap<String, List<Entry>>();
+
+  /**
+   * Adds the commands offered by the given {@link CommandMarker}
+   *
+   * @param target the instance offering the commands (required)
+   */
+  void add(final CommandMarker target) {
+    Validate.notNull(target, "Command marker required");
+    for (final Method method : target.getClass().getMethods()) {
+      final CliCommand command = method.getAnnotation(CliCommand.class);
+      if (command == null) {
+        continue;
+      }
+      for (final String value : command.value()) {
+        final String[] words = StringUtils.split(value, " ");
+        Validate.notEmpty(words, "Command required");
+        List<Entry> entries = entriesByFirstWord.get(words[0]);
+        if (entries == null) {
+          entries = new ArrayList<Entry>();
+          entriesByFirstWord.put(words[0], entries);
+        }
+        entries.add(new Entry(target, method, command, value));
+      }
+    }
+  }
+
+  /**
+   * Removes all commands from this index
+   */
+  void clear() {
+    entriesByFirstWord.clear();
+  }
+
+  /**
+   * Returns the commands that could match the given input, i.e. those whose
+   * first word starts with the input's first word. The caller still needs to
+   * check whether each command actually matches the whole input.
+   *
+   * @param buffer the user's input (required)
+   * @return a non-<code>null</code> collection
+   */
+  Collection<Entry> getCandidates(final String buffer) {
+    Validate.notNull(buffer, "Buffer required");
+    if (StringUtils.isBlank(buffer)) {
+      return getEntries();
+    }
+    final int endOfFirstWord = buffer.indexOf(' ');
+    if (endOfFirstWord == 0) {
+      // Input starting with a space matches no command
+      return new ArrayList<Entry>();
+    }
+    final String firstWord = endOfFirstWord < 0 ? buffer : buffer.substring(0, endOfFirstWord);
+    return getEntries(entriesByFirstWord.subMap(firstWord, firstWord + Character.MAX_VALUE));
+  }
+
+  /**
+   * Returns every command in this index
+   *
+   * @return a non-<code>null</code> collection
+   */
+  Collection<Entry> getEntries() {
+    return getEntries(entriesByFirstWord);
+  }
+
+  private Collection<Entry> getEntries(final SortedMap<String, List<Entry>> entries) {
+    final Collection<Entry> result = new ArrayList<Entry>();
+    for (final List<Entry> entriesForWord : entries.values()) {
+      result.addAll(entriesForWord);
+    }
+    return result;
+  }
+
+  /**
+   * Removes the commands offered by the given {@link CommandMarker}
+   *
+   * @param target the instance offering the commands (required)
+   */
+  void remove(final CommandMarker target) {
+    final Iterator<Map.Entry<String, List<Entry>>> iterator =
+        entriesByFirstWord.entrySet().iterator();
+    while (iterator.hasNext()) {
+      final List<Entry> entries = iterator.next().getValue();
+      for (final Iterator<Entry> entryIterator = entries.iterator(); entryIterator.hasNext();) {
+        if (entryIterator.next().target == target) {
+          entryIterator.remove();
+        }
+      }
+      if (entries.isEmpty()) {
+        iterator.remove();
+      }
+    }
+  }
+}
@@ -152,6 +152,7 @@ public class SimpleParser implements Parser {
   private final Map<String, MethodTarget> optionAutocompleteIndicators =
       new HashMap<String, MethodTarget>();
   private final Set<CommandMarker> commands = new HashSet<CommandMarker>();
+  private final CommandIndex commandIndex = new CommandIndex();
   private final Set<Converter<?>> converters = new HashSet<Converter<?>>();
 
   // ROO-3697: Include global parameters in all Spring Roo commands.
@@ -161,7 +162,9 @@ public class SimpleParser implements Parser {
 
   public final void add(final CommandMarker command) {
     synchronized (mutex) {
-      commands.add(command);
+      if (commands.add(command)) {
+        commandIndex.add(command);
+      }
       for (final Method method : command.getClass().getMethods()) {
 
         // Getting method availability indicators
@@ -1009,6 +1012,7 @@ public class SimpleParser implements Parser {
       if (commands.isEmpty() || hasToReloadComponents()) {
         // Cleaning commands
         commands.clear();
+        commandIndex.clear();
         availabilityIndicators.clear();
         // Get all Services implement CommandMarker interface
         try {
@@ -1063,14 +1067,8 @@ public class SimpleParser implements Parser {
 
       // Return commands list
       final SortedSet<String> result = new TreeSet<String>(COMPARATOR);
-      for (final Object o : commands) {
-        final Method[] methods = o.getClass().getMethods();
-        for (final Method m : methods) {
-          final CliCommand cmd = m.getAnnotation(CliCommand.class);
-          if (cmd != null) {
-            result.addAll(Arrays.asList(cmd.value()));
-          }
-        }
+      for (final CommandIndex.Entry entry : commandIndex.getEntries()) {
+        result.add(entry.getValue());
       }
       return result;
     }
@@ -1105,6 +1103,7 @@ public class SimpleParser implements Parser {
     if (commands.isEmpty() || hasToReloadComponents()) {
       // Cleaning commands
       commands.clear();
+      commandIndex.clear();
       availabilityIndicators.clear();
       // Get all Services implement CommandMarker interface
       try {
@@ -1126,53 +1125,59 @@ public class SimpleParser implements Parser {
     Validate.notNull(buffer, "Buffer required");
     final Collection<MethodTarget> result = new HashSet<MethodTarget>();
 
-    // The reflection could certainly be optimised, but it's good enough for
-    // now (and cached reflection
-    // is unlikely to be noticeable to a human being using the CLI)
-    for (final CommandMarker command : commands) {
-      for (final Method method : command.getClass().getMethods()) {
-        final CliCommand cmd = method.getAnnotation(CliCommand.class);
-        if (cmd != null) {
-          // We have a @CliCommand.
-          if (checkAvailabilityIndicators) {
-            // Decide if this @CliCommand is available at this
-            // moment
-            Boolean available = null;
-            for (final String value : cmd.value()) {
-              final MethodTarget mt = getAvailabilityIndicator(value);
-              if (mt != null) {
-                Validate.isTrue(
-                    available == null,
-                    "More than one availability indicator is defined for '"
-                        + method.toGenericString() + "'");
-                try {
-                  available = (Boolean) mt.getMethod().invoke(mt.getTarget());
-                  // We should "break" here, but we loop over
-                  // all to ensure no conflicting availability
-                  // indicators are defined
-                } catch (final Exception e) {
-                  available = false;
-                }
-              }
-            }
-            // Skip this @CliCommand if it's not available
-            if (available != null && !available) {
-              continue;
-            }
-          }
-
-          for (final String value : cmd.value()) {
-            final String remainingBuffer = isMatch(buffer, value, strictMatching);
-            if (remainingBuffer != null) {
-              result.add(new MethodTarget(method, command, remainingBuffer, value));
-            }
-          }
+    // Only the commands starting with the buffer's first word can match it,
+    // and only the availability of those that do match needs checking
+    final Map<Method, Boolean> availability = new HashMap<Method, Boolean>();
+    for (final CommandIndex.Entry entry : commandIndex.getCandidates(buffer)) {
+      final String remainingBuffer = isMatch(buffer, entry.getValue(), strictMatching);
+      if (remainingBuffer == null) {
+        continue;
+      }
+      final Method method = entry.getMethod();
+      if (checkAvailabilityIndicators) {
+        Boolean available = availability.get(method);
+        if (available == null) {
+          available = isAvailable(method, entry.getCommand());
+          availability.put(method, available);
+        }
+        // Skip this @CliCommand if it's not available
+        if (!available) {
+          continue;
         }
       }
+      result.add(new MethodTarget(method, entry.getTarget(), remainingBuffer, entry.getValue()));
     }
     return result;
   }
 
+  /**
+   * Decides if the given @CliCommand is available at this moment
+   * 
+   * @param method the method annotated with the command (required)
+   * @param cmd the command (required)
+   * @return <code>false</code> if the command's availability indicator says
+   *         it is unavailable
+   */
+  private boolean isAvailable(final Method method, final CliCommand cmd) {
+    Boolean available = null;
+    for (final String value : cmd.value()) {
+      final MethodTarget mt = getAvailabilityIndicator(value);
+      if (mt != null) {
+        Validate.isTrue(available == null, "More than one availability indicator is defined for '"
+            + method.toGenericString() + "'");
+        try {
+          available = (Boolean) mt.getMethod().invoke(mt.getTarget());
+          // We should "break" here, but we loop over
+          // all to ensure no conflicting availability
+          // indicators are defined
+        } catch (final Exception e) {
+          available = false;
+        }
+      }
+    }
+    return available == null || available;
+  }
+
   /**
    * Normalises the given raw user input string ready for parsing
    * 
@@ -1684,6 +1689,7 @@ public class SimpleParser implements Parser {
   public final void remove(final CommandMarker command) {
     synchronized (mutex) {
       commands.remove(command);
+      commandIndex.remove(command);
       for (final Method m : command.getClass().getMethods()) {
         final CliAvailabilityIndicator availability =
             m.getAnnotation(CliAvailabilityIndicator.class);
@@ -0,0 +1,85 @@
+package org.springframework.roo.shell;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collection;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit test of {@link CommandIndex}
+ *
+ * @since 2.0
+ */
+public class CommandIndexTest {
+
+  public static class EntityCommands implements CommandMarker {
+
+    @CliCommand(value = {"entity jpa", "entity projection"})
+    public void entity() {}
+
+    @CliCommand(value = "enum type")
+    public void enumType() {}
+  }
+
+  public static class WebCommands implements CommandMarker {
+
+    @CliCommand(value = "web mvc setup")
+    public void setup() {}
+  }
+
+  // Fixture
+  private CommandIndex index;
+  private WebCommands webCommands;
+
+  private SortedSet<String> getValues(final Collection<CommandIndex.Entry> entries) {
+    final SortedSet<String> values = new TreeSet<String>();
+    for (final CommandIndex.Entry entry : entries) {
+      values.add(entry.getValue());
+    }
+    return values;
+  }
+
+  @Before
+  public void setUp() {
+    index = new CommandIndex();
+    webCommands = new WebCommands();
+    index.add(new EntityCommands());
+    index.add(webCommands);
+  }
+
+  @Test
+  public void testCandidatesStartWithFirstWordOfBuffer() {
+    assertEquals("[entity jpa, entity projection]",
+        getValues(index.getCandidates("entity jpa --class ~.Foo")).toString());
+    assertEquals("[entity jpa, entity projection, enum type]", getValues(index.getCandidates("en"))
+        .toString());
+    assertEquals("[web mvc setup]", getValues(index.getCandidates("web")).toString());
+    assertTrue(index.getCandidates("security").isEmpty());
+  }
+
+  @Test
+  public void testBlankBufferHasEveryCandidate() {
+    assertEquals(4, index.getCandidates(" ").size());
+    assertEquals(4, index.getEntries().size());
+  }
+
+  @Test
+  public void testBufferStartingWithSpaceHasNoCandidates() {
+    assertTrue(index.getCandidates(" entity").isEmpty());
+  }
+
+  @Test
+  public void testRemovedCommandsAreNotCandidates() {
+    // Invoke
+    index.remove(webCommands);
+
+    // Check
+    assertTrue(index.getCandidates("web").isEmpty());
+    assertEquals(3, index.getEntries().size());
+  }
+}
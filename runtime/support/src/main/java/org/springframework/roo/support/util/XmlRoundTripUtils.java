@@ -2,13 +2,13 @@ package org.springframework.roo.support.util;
 
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
-import java.util.Collections;
-import java.util.Map.Entry;
-import java.util.SortedMap;
-import java.util.TreeMap;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
 
 import org.apache.commons.codec.binary.Base64;
-import org.apache.commons.lang3.Validate;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 import org.w3c.dom.NamedNodeMap;
@@ -23,18 +23,135 @@ import org.w3c.dom.NodeList;
  */
 public final class XmlRoundTripUtils {
 
-  private static MessageDigest digest;
+  /**
+   * The elements of a document indexed by id, kept up to date as elements are
+   * added and removed, so that elements can be found by id without searching
+   * the whole document each time. Ids used by more than one element are looked
+   * up by XPath, as they were before, so that the first one in document order
+   * is still found.
+   */
+  private static class IdIndex {
+
+    private final Set<String> duplicateIds = new HashSet<String>();
+    private final Map<String, Element> elements = new HashMap<String, Element>();
+    private final Element root;
+
+    IdIndex(final Document document) {
+      root = document.getDocumentElement();
+      index(root);
+    }
+
+    /**
+     * Indexes the given element and its descendants, if they're in the
+     * document
+     * 
+     * @param element the element added to the document
+     */
+    void add(final Element element) {
+      if (isAttached(element)) {
+        index(element);
+      }
+    }
 
-  static {
-    try {
-      digest = MessageDigest.getInstance("sha-1");
-    } catch (final NoSuchAlgorithmException e) {
-      throw new IllegalStateException("Could not create hash key for identifier");
+    private void index(final Element element) {
+      final String id = element.getAttribute("id");
+      if (id.length() != 0) {
+        final Element existing = elements.get(id);
+        if (existing == null) {
+          elements.put(id, element);
+        } else if (existing != element) {
+          duplicateIds.add(id);
+        }
+      }
+      final NodeList children = element.getChildNodes();
+      for (int i = 0, n = children.getLength(); i < n; i++) {
+        final Node child = children.item(i);
+        if (child != null && child.getNodeType() == Node.ELEMENT_NODE) {
+          index((Element) child);
+        }
+      }
+    }
+
+    /**
+     * Returns the first element with the given id in the tree containing the
+     * given node
+     * 
+     * @param id the id to look for
+     * @param context a node in the tree to search; a detached subtree is
+     *            searched on its own, as XPath would
+     * @return <code>null</code> if there's no such element
+     */
+    Element find(final String id, final Node context) {
+      if (duplicateIds.contains(id) || !isAttached(context)) {
+        return XmlUtils.findFirstElement("//*[@id='" + id + "']", context);
+      }
+      return elements.get(id);
+    }
+
+    /**
+     * Returns the first element with the given id in the document
+     * 
+     * @param id the id to look for
+     * @return <code>null</code> if there's no such element
+     */
+    Element find(final String id) {
+      return find(id, root);
+    }
+
+    private boolean isAttached(final Node node) {
+      Node ancestor = node;
+      while (ancestor != null && ancestor != root) {
+        ancestor = ancestor.getParentNode();
+      }
+      return ancestor != null && root.getParentNode() != null;
+    }
+
+    /**
+     * Removes the given element and its descendants from the index
+     * 
+     * @param element the element being removed from the document
+     */
+    void remove(final Element element) {
+      final String id = element.getAttribute("id");
+      if (id.length() != 0 && elements.get(id) == element) {
+        elements.remove(id);
+      }
+      final NodeList children = element.getChildNodes();
+      for (int i = 0, n = children.getLength(); i < n; i++) {
+        final Node child = children.item(i);
+        if (child != null && child.getNodeType() == Node.ELEMENT_NODE) {
+          remove((Element) child);
+        }
+      }
+    }
+
+    /**
+     * Replaces the given element in its parent, updating the index
+     * 
+     * @param oldElement the element to replace
+     * @param newElement the element to replace it with
+     */
+    void replace(final Element oldElement, final Element newElement) {
+      remove(oldElement);
+      oldElement.getParentNode().replaceChild(newElement, oldElement);
+      add(newElement);
     }
   }
 
-  private static boolean addOrUpdateElements(final Element original, final Element proposed,
-      boolean originalDocumentChanged) {
+  // MessageDigests aren't thread-safe
+  private static final ThreadLocal<MessageDigest> DIGEST = new ThreadLocal<MessageDigest>() {
+    @Override
+    protected MessageDigest initialValue() {
+      try {
+        return MessageDigest.getInstance("sha-1");
+      } catch (final NoSuchAlgorithmException e) {
+        throw new IllegalStateException("Could not create hash key for identifier");
+      }
+    }
+  };
+
+  private static boolean addOrUpdateElements(final Element original, final IdIndex originalIndex,
+      final Element proposed, final IdIndex proposedIndex, boolean originalDocumentChanged) {
     final NodeList proposedChildren = proposed.getChildNodes();
     // Check proposed elements and compare to originals to find out if we
     // need to add or replace elements
@@ -46,17 +163,17 @@ public final class XmlRoundTripUtils {
         // Only proposed elements with
         // an id will be considered
         if (proposedId.length() != 0) {
-          final Element originalElement =
-              XmlUtils.findFirstElement("//*[@id='" + proposedId + "']", original);
+          final Element originalElement = originalIndex.find(proposedId, original);
           // Insert proposed element given the original document has
           // no element with a matching id
           if (null == originalElement) {
             final Element placeHolder =
                 DomUtils.findFirstElementByName("util:placeholder", original);
+            final Element newElement =
+                (Element) original.getOwnerDocument().importNode(proposedElement, false);
             if (placeHolder != null) { // Insert right before place
                                        // holder if we can find it
-              placeHolder.getParentNode().insertBefore(
-                  original.getOwnerDocument().importNode(proposedElement, false), placeHolder);
+              placeHolder.getParentNode().insertBefore(newElement, placeHolder);
             }
             // Find the best place to insert the element
             else {
@@ -64,29 +181,26 @@ public final class XmlRoundTripUtils {
               // parent id in the original document
               if (proposed.getAttribute("id").length() != 0) {
                 final Element originalParent =
-                    XmlUtils.findFirstElement("//*[@id='" + proposed.getAttribute("id") + "']",
-                        original);
+                    originalIndex.find(proposed.getAttribute("id"), original);
                 // Found parent with the same id, so we can just
                 // add it as new child
                 if (originalParent != null) {
-                  originalParent.appendChild(original.getOwnerDocument().importNode(
-                      proposedElement, false));
+                  originalParent.appendChild(newElement);
                 }
                 // No parent found so we add it as a
                 // child of the root element (last
                 // resort)
                 else {
-                  original.appendChild(original.getOwnerDocument().importNode(proposedElement,
-                      false));
+                  original.appendChild(newElement);
                 }
               }
               // No parent found so we add it as a child of
               // the root element (last resort)
               else {
-                original
-                    .appendChild(original.getOwnerDocument().importNode(proposedElement, false));
+                original.appendChild(newElement);
               }
             }
+            originalIndex.add(newElement);
             originalDocumentChanged = true;
           }
           // We found an element in the original document with
@@ -115,20 +229,17 @@ public final class XmlRoundTripUtils {
                         // Getting proposed element and
                         // replace it with user managed
                         Element proposedElementToReplace =
-                            XmlUtils.findFirstElement(
-                                "//*[@id='" + child.getAttribute("id") + "']", proposed);
-                        proposedElementToReplace.getParentNode().replaceChild(
-                            proposed.getOwnerDocument().importNode(child, false),
-                            proposedElementToReplace);
+                            proposedIndex.find(child.getAttribute("id"), proposed);
+                        proposedIndex.replace(proposedElementToReplace, (Element) proposed
+                            .getOwnerDocument().importNode(child, false));
                       }
                     }
                   }
 
                   // Replace the original with the proposed
                   // element
-                  originalElement.getParentNode().replaceChild(
-                      original.getOwnerDocument().importNode(proposedElement, false),
-                      originalElement);
+                  originalIndex.replace(originalElement, (Element) original.getOwnerDocument()
+                      .importNode(proposedElement, false));
                   originalDocumentChanged = true;
                 }
                 // Replace z if the user sets its value to '?'
@@ -154,7 +265,8 @@ public final class XmlRoundTripUtils {
         }
         // Walk through the document tree recursively
         originalDocumentChanged =
-            addOrUpdateElements(original, proposedElement, originalDocumentChanged);
+            addOrUpdateElements(original, originalIndex, proposedElement, proposedIndex,
+                originalDocumentChanged);
       }
     }
     return originalDocumentChanged;
@@ -173,16 +285,17 @@ public final class XmlRoundTripUtils {
     final StringBuilder sb = new StringBuilder();
     sb.append(element.getTagName());
     final NamedNodeMap attributes = element.getAttributes();
-    final SortedMap<String, String> attrKVStore =
-        Collections.synchronizedSortedMap(new TreeMap<String, String>());
+    final Map<String, String> attributeValues = new HashMap<String, String>();
     for (int i = 0, n = attributes.getLength(); i < n; i++) {
       final Node attr = attributes.item(i);
       if (!"z".equals(attr.getNodeName()) && !attr.getNodeName().startsWith("_")) {
-        attrKVStore.put(attr.getNodeName(), attr.getNodeValue());
+        attributeValues.put(attr.getNodeName(), attr.getNodeValue());
       }
     }
-    for (final Entry<String, String> entry : attrKVStore.entrySet()) {
-      sb.append(entry.getKey()).append(entry.getValue());
+    final String[] attributeNames = attributeValues.keySet().toArray(new String[0]);
+    Arrays.sort(attributeNames);
+    for (final String attributeName : attributeNames) {
+      sb.append(attributeName).append(attributeValues.get(attributeName));
     }
     return Base64.encodeBase64String(sha1(sb.toString().getBytes()));
   }
@@ -222,12 +335,12 @@ public final class XmlRoundTripUtils {
    */
   public static boolean compareDocuments(final Document original, final Document proposed) {
     boolean originalDocumentAdjusted = checkNamespaces(original, proposed);
+    final IdIndex proposedIndex = new IdIndex(proposed);
     originalDocumentAdjusted |=
-        addOrUpdateElements(original.getDocumentElement(), proposed.getDocumentElement(),
-            originalDocumentAdjusted);
+        addOrUpdateElements(original.getDocumentElement(), new IdIndex(original),
+            proposed.getDocumentElement(), proposedIndex, originalDocumentAdjusted);
     originalDocumentAdjusted |=
-        removeElements(original.getDocumentElement(), proposed.getDocumentElement(),
-            originalDocumentAdjusted);
+        removeElements(original.getDocumentElement(), proposedIndex, originalDocumentAdjusted);
     return originalDocumentAdjusted;
   }
 
@@ -255,7 +368,7 @@ public final class XmlRoundTripUtils {
     return true;
   }
 
-  private static boolean removeElements(final Element original, final Element proposed,
+  private static boolean removeElements(final Element original, final IdIndex proposedIndex,
       boolean originalDocumentChanged) {
     final NodeList originalChildren = original.getChildNodes();
     // Check original elements and compare to proposed to find out if we
@@ -268,8 +381,7 @@ public final class XmlRoundTripUtils {
         if (originalId.length() != 0) {
           // Only proposed elements with
           // an id will be considered
-          final Element proposedElement =
-              XmlUtils.findFirstElement("//*[@id='" + originalId + "']", proposed);
+          final Element proposedElement = proposedIndex.find(originalId);
           if (null == proposedElement
               && (originalElement.getAttribute("z").equals(calculateUniqueKeyFor(originalElement)) || originalElement
                   .getAttribute("z").equals("?"))) {
@@ -281,7 +393,7 @@ public final class XmlRoundTripUtils {
         }
         // Walk through the document tree recursively
         originalDocumentChanged =
-            removeElements(originalElement, proposed, originalDocumentChanged);
+            removeElements(originalElement, proposedIndex, originalDocumentChanged);
       }
     }
     return originalDocumentChanged;
@@ -294,8 +406,7 @@ public final class XmlRoundTripUtils {
    * @return byte[] hash of the input data
    */
   private static byte[] sha1(final byte[] data) {
-    Validate.notNull(digest, "Could not create hash key for identifier");
-    return digest.digest(data);
+    return DIGEST.get().digest(data);
   }
 
   /**
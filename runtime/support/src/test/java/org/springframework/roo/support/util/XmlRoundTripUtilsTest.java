@@ -0,0 +1,81 @@
+package org.springframework.roo.support.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+
+import org.junit.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+/**
+ * Unit test of {@link XmlRoundTripUtils}
+ *
+ * @since 2.0
+ */
+public class XmlRoundTripUtilsTest {
+
+  // The key of the element below, as written to existing view files
+  private static final String FIELD_KEY = "xiIefOg6Z7as1GqDQxwRNMe9gUU=";
+  private static final String FIELD_XML =
+      "<field:input field=\"name\" id=\"c_pet_name\" required=\"true\" z=\"" + FIELD_KEY + "\"/>";
+
+  private static Document readXml(final String xml) {
+    return XmlUtils.readXml(new ByteArrayInputStream(("<div xmlns:field=\"urn:field\">" + xml
+        + "</div>").getBytes()));
+  }
+
+  private static Element findById(final Document document, final String id) {
+    return XmlUtils.findFirstElement("//*[@id='" + id + "']", document.getDocumentElement());
+  }
+
+  @Test
+  public void testCalculateUniqueKeyIgnoresAttributeOrderAndKey() {
+    // Set up
+    final Document document =
+        readXml("<field:input z=\"?\" required=\"true\" id=\"c_pet_name\" field=\"name\"/>");
+
+    // Invoke
+    final String key =
+        XmlRoundTripUtils.calculateUniqueKeyFor(findById(document, "c_pet_name"));
+
+    // Check
+    assertEquals(FIELD_KEY, key);
+  }
+
+  @Test
+  public void testCompareIdenticalDocuments() {
+    // Set up
+    final Document original = readXml(FIELD_XML);
+    final Document proposed = readXml(FIELD_XML);
+
+    // Invoke and check
+    assertFalse(XmlRoundTripUtils.compareDocuments(original, proposed));
+  }
+
+  @Test
+  public void testCompareDocumentsUpdatesAddsAndRemovesManagedElements() {
+    // Set up
+    final Document original =
+        readXml(FIELD_XML
+            + "<field:input field=\"age\" id=\"c_pet_age\" z=\"user-changed\"/>"
+            + "<field:input field=\"owner\" id=\"c_pet_owner\" z=\"?\"/>");
+    final Document proposed =
+        readXml("<field:input field=\"name\" id=\"c_pet_name\" required=\"false\" z=\"x\"/>"
+            + "<field:input field=\"age\" id=\"c_pet_age\" z=\"x\"/>"
+            + "<field:input field=\"type\" id=\"c_pet_type\" z=\"x\"/>");
+
+    // Invoke
+    final boolean changed = XmlRoundTripUtils.compareDocuments(original, proposed);
+
+    // Check
+    assertTrue(changed);
+    assertEquals("false", findById(original, "c_pet_name").getAttribute("required"));
+    assertEquals("user-managed", findById(original, "c_pet_age").getAttribute("z"));
+    assertEquals("type", findById(original, "c_pet_type").getAttribute("field"));
+    assertNull(findById(original, "c_pet_owner"));
+  }
+}